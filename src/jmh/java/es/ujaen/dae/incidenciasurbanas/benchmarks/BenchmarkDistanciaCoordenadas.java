@@ -0,0 +1,88 @@
+package es.ujaen.dae.incidenciasurbanas.benchmarks;
+
+import es.ujaen.dae.indicenciasurbanas.utils.CoordenadasGps;
+import es.ujaen.dae.indicenciasurbanas.utils.DistanciaCoordenadas;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cálculo de distancias: entre dos puntos (con y sin objetos) y por lotes de PUNTOS puntos con cada una de
+ * las versiones de DistanciaCoordenadas
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BenchmarkDistanciaCoordenadas {
+    private static final int PUNTOS = 1024;
+    private static final double RADIO_METROS = 10;
+
+    private CoordenadasGps coordenadas1;
+    private CoordenadasGps coordenadas2;
+
+    private float latitud;
+    private float longitud;
+    private final float[] latitudes = new float[PUNTOS];
+    private final float[] longitudes = new float[PUNTOS];
+    private final double[] cosenos = new double[PUNTOS];
+    private final double[] distancias = new double[PUNTOS];
+    private final long[] marcas = new long[(PUNTOS + 63) / 64];
+
+    @Setup
+    public void preparar() {
+        Random random = new Random(1);
+        coordenadas1 = GeneradorPuntos.punto(random);
+        coordenadas2 = GeneradorPuntos.punto(random);
+
+        latitud = coordenadas1.latitud();
+        longitud = coordenadas1.longitud();
+        for (int i = 0; i < PUNTOS; i++) {
+            CoordenadasGps punto = GeneradorPuntos.punto(random);
+            latitudes[i] = punto.latitud();
+            longitudes[i] = punto.longitud();
+        }
+        DistanciaCoordenadas.precalcularCosenos(latitudes, PUNTOS, cosenos);
+    }
+
+    @Benchmark
+    public double distancia() {
+        return DistanciaCoordenadas.calcularDistanciaMetros(coordenadas1, coordenadas2);
+    }
+
+    @Benchmark
+    public double distanciaSinObjetos() {
+        return DistanciaCoordenadas.calcularDistanciaMetros(coordenadas1.latitud(), coordenadas1.longitud(),
+                coordenadas2.latitud(), coordenadas2.longitud());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PUNTOS)
+    public double[] distanciasLote() {
+        DistanciaCoordenadas.calcularDistanciasMetros(latitud, longitud, latitudes, longitudes, null, PUNTOS, distancias);
+        return distancias;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PUNTOS)
+    public double[] distanciasLoteCosenosPrecalculados() {
+        DistanciaCoordenadas.calcularDistanciasMetros(latitud, longitud, latitudes, longitudes, cosenos, PUNTOS, distancias);
+        return distancias;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PUNTOS)
+    public double[] distanciasAproximadasLote() {
+        DistanciaCoordenadas.calcularDistanciasAproximadasMetros(latitud, longitud, latitudes, longitudes, PUNTOS, distancias);
+        return distancias;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PUNTOS)
+    public int marcarCercanas() {
+        return DistanciaCoordenadas.marcarCercanas(latitud, longitud, latitudes, longitudes, PUNTOS, RADIO_METROS, marcas);
+    }
+}
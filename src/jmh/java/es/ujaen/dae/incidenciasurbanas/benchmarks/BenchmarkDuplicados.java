@@ -0,0 +1,73 @@
+package es.ujaen.dae.incidenciasurbanas.benchmarks;
+
+import es.ujaen.dae.indicenciasurbanas.repositorios.IndiceEspacialIncidencias;
+import es.ujaen.dae.indicenciasurbanas.utils.CoordenadasGps;
+import es.ujaen.dae.indicenciasurbanas.utils.DistanciaCoordenadas;
+import es.ujaen.dae.indicenciasurbanas.utils.EstadoIncidencia;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Búsqueda de duplicados de nuevaIncidencia (¿hay otra incidencia activa a menos de 10 metros?) con distintos
+ * tamaños del conjunto de incidencias activas: con el índice espacial en memoria y recorriendo todas las
+ * coordenadas con DistanciaCoordenadas.marcarCercanas. La mitad de las consultas son duplicados.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BenchmarkDuplicados {
+    private static final double DISTANCIA_MINIMA_METROS = 10; // La de ServicioIncidencia
+    private static final int CONSULTAS = 1024;
+
+    @Param({"1000", "10000", "100000"})
+    private int activas;
+
+    private IndiceEspacialIncidencias indice;
+    private float[] latitudes;
+    private float[] longitudes;
+    private long[] marcas;
+    private CoordenadasGps[] consultas;
+    private int siguiente;
+
+    @Setup
+    public void preparar() {
+        Random random = new Random(1);
+        List<CoordenadasGps> puntos = GeneradorPuntos.puntos(random, activas);
+
+        // El índice se llena como tras el commit de cada registro, sin BBDD
+        indice = new IndiceEspacialIncidencias();
+        latitudes = new float[activas];
+        longitudes = new float[activas];
+        marcas = new long[(activas + 63) / 64];
+        for (int i = 0; i < activas; i++) {
+            CoordenadasGps punto = puntos.get(i);
+            indice.actualizar(i + 1, EstadoIncidencia.PENDIENTE, punto.latitud(), punto.longitud());
+            latitudes[i] = punto.latitud();
+            longitudes[i] = punto.longitud();
+        }
+        consultas = GeneradorPuntos.consultas(random, puntos, CONSULTAS);
+    }
+
+    private CoordenadasGps consulta() {
+        siguiente = (siguiente + 1) % CONSULTAS;
+        return consultas[siguiente];
+    }
+
+    @Benchmark
+    public boolean indiceEspacial() {
+        return indice.hayIncidenciaCercana(consulta(), DISTANCIA_MINIMA_METROS);
+    }
+
+    @Benchmark
+    public boolean recorridoCompleto() {
+        CoordenadasGps coordenadas = consulta();
+        return DistanciaCoordenadas.marcarCercanas(coordenadas.latitud(), coordenadas.longitud(), latitudes, longitudes,
+                activas, DISTANCIA_MINIMA_METROS, marcas) > 0;
+    }
+}
@@ -0,0 +1,168 @@
+package es.ujaen.dae.incidenciasurbanas.benchmarks;
+
+import es.ujaen.dae.indicenciasurbanas.app.DaePracticaApplication;
+import es.ujaen.dae.indicenciasurbanas.dto.DatosIncidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.Incidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.TipoIncidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.Usuario;
+import es.ujaen.dae.indicenciasurbanas.repositorios.RepositorioIncidencias;
+import es.ujaen.dae.indicenciasurbanas.servicios.ServicioIncidencia;
+import es.ujaen.dae.indicenciasurbanas.utils.CoordenadasGps;
+import jakarta.persistence.EntityManagerFactory;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Consultas del servicio contra la aplicación completa (perfil "test", H2 en memoria) con un histórico de
+ * incidencias registradas: búsquedas de RepositorioIncidencias con la caché caliente y vaciándola antes de cada
+ * consulta, login, y la consulta de candidatos de la búsqueda de duplicados en la BBDD
+ * (incidencias.duplicados.comprobar-en-bbdd). Con metricas=false no se miden los tiempos del servicio ni del
+ * repositorio (incidencias.metricas.tiempos), para ver lo que cuestan.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BenchmarkServicio {
+    private static final double DISTANCIA_MINIMA_METROS = 10; // La de ServicioIncidencia
+    private static final int USUARIOS = 100;
+    private static final int TAMANO_LOTE = 1000;
+    private static final int CONSULTAS = 1024;
+
+    @Param({"1000", "10000"})
+    private int incidencias;
+
+    @Param({"true", "false"})
+    private boolean metricas;
+
+    private ConfigurableApplicationContext contexto;
+    private ServicioIncidencia servicioIncidencia;
+    private RepositorioIncidencias repositorioIncidencias;
+    private Cache cachePorId;
+    private Cache cachePorEmail;
+    private Cache cacheUsuarios;
+    private EntityManagerFactory entityManagerFactory;
+
+    private int[] ids;
+    private String[] emails;
+    private CoordenadasGps[] consultas;
+
+    /**
+     * Posición de cada hilo en los arrays de ids, emails y consultas
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int siguiente;
+
+        int siguiente(int n) {
+            siguiente = (siguiente + 1) % n;
+            return siguiente;
+        }
+    }
+
+    @Setup
+    public void preparar() {
+        contexto = new SpringApplicationBuilder(DaePracticaApplication.class)
+                .profiles("test")
+                .web(WebApplicationType.NONE)
+                .run("--spring.main.banner-mode=off", "--logging.level.root=warn",
+                        "--incidencias.metricas.tiempos=" + metricas);
+        servicioIncidencia = contexto.getBean(ServicioIncidencia.class);
+        repositorioIncidencias = contexto.getBean(RepositorioIncidencias.class);
+        CacheManager cacheManager = contexto.getBean(CacheManager.class);
+        cachePorId = cacheManager.getCache("incidenciasPorId");
+        cachePorEmail = cacheManager.getCache("incidenciasPorEmail");
+        cacheUsuarios = cacheManager.getCache("usuarios");
+        entityManagerFactory = contexto.getBean(EntityManagerFactory.class);
+
+        Usuario admin = servicioIncidencia.login("admin.dae@ujaen.es", "admin").get();
+        servicioIncidencia.crearTipoIncidencia(admin, "Bache");
+        TipoIncidencia tipo = servicioIncidencia.obtenerTipoIncidencia("Bache").get();
+
+        emails = new String[USUARIOS];
+        List<Usuario> usuarios = new ArrayList<>();
+        for (int i = 0; i < USUARIOS; i++) {
+            emails[i] = "usuario" + i + "@ujaen.es";
+            servicioIncidencia.nuevoUsuario(new Usuario("nombre", "apellido", LocalDate.of(2000, 1, 1), "direccion",
+                    "+34777123456", emails[i], "clave"));
+            usuarios.add(servicioIncidencia.login(emails[i], "clave").get());
+        }
+
+        List<CoordenadasGps> puntos = GeneradorPuntos.rejilla(incidencias);
+        List<Integer> registradas = new ArrayList<>();
+        for (int inicio = 0; inicio < incidencias; inicio += TAMANO_LOTE) {
+            List<DatosIncidencia> lote = new ArrayList<>();
+            for (int i = inicio; i < Math.min(incidencias, inicio + TAMANO_LOTE); i++) {
+                lote.add(new DatosIncidencia(LocalDateTime.now(), tipo, "desc", "loc", puntos.get(i).latitud(),
+                        puntos.get(i).longitud(), "dpt", usuarios.get(i % USUARIOS), null));
+            }
+            servicioIncidencia.nuevasIncidencias(lote).registradas().stream().map(Incidencia::id).forEach(registradas::add);
+        }
+        ids = registradas.stream().mapToInt(Integer::intValue).toArray();
+        consultas = GeneradorPuntos.consultas(new Random(1), puntos, CONSULTAS);
+    }
+
+    @TearDown
+    public void terminar() {
+        contexto.close();
+    }
+
+    @Benchmark
+    public Optional<Incidencia> buscarPorIdConCache(Cursor cursor) {
+        return repositorioIncidencias.buscarPorId(ids[cursor.siguiente(ids.length)]);
+    }
+
+    @Benchmark
+    public Optional<Incidencia> buscarPorIdSinCache(Cursor cursor) {
+        int id = ids[cursor.siguiente(ids.length)];
+        cachePorId.evict(id);
+        return repositorioIncidencias.buscarPorId(id);
+    }
+
+    @Benchmark
+    public List<Incidencia> buscarPorEmailConCache(Cursor cursor) {
+        return repositorioIncidencias.buscarPorEmailUsuario(emails[cursor.siguiente(USUARIOS)]);
+    }
+
+    @Benchmark
+    public List<Incidencia> buscarPorEmailSinCache(Cursor cursor) {
+        String email = emails[cursor.siguiente(USUARIOS)];
+        cachePorEmail.evict(email);
+        return repositorioIncidencias.buscarPorEmailUsuario(email);
+    }
+
+    @Benchmark
+    public Optional<Usuario> login(Cursor cursor) {
+        return servicioIncidencia.login(emails[cursor.siguiente(USUARIOS)], "clave");
+    }
+
+    /**
+     * Login sin la caché "usuarios" ni la de segundo nivel de Hibernate: el usuario se lee de la BBDD
+     */
+    @Benchmark
+    public Optional<Usuario> loginSinCache(Cursor cursor) {
+        String email = emails[cursor.siguiente(USUARIOS)];
+        cacheUsuarios.evict(email);
+        entityManagerFactory.getCache().evict(Usuario.class, email);
+        return servicioIncidencia.login(email, "clave");
+    }
+
+    @Benchmark
+    public int duplicadosEnBbdd(Cursor cursor) {
+        return repositorioIncidencias.buscarCoordenadasActivasEnArea(consultas[cursor.siguiente(CONSULTAS)], DISTANCIA_MINIMA_METROS).size();
+    }
+}
@@ -0,0 +1,65 @@
+package es.ujaen.dae.incidenciasurbanas.benchmarks;
+
+import es.ujaen.dae.indicenciasurbanas.utils.CoordenadasGps;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Coordenadas de incidencias repartidas por una ciudad (una caja de unos 5 x 5 km en Jaén) para los benchmarks
+ */
+class GeneradorPuntos {
+    private static final float LATITUD_MIN = 37.75f;
+    private static final float LONGITUD_MIN = -3.81f;
+    private static final float LADO_GRADOS = 0.045f;
+
+    private static final float SEPARACION_GRADOS = 0.0002f; // ~22 metros: más que la distancia mínima entre incidencias activas
+    private static final float DESPLAZAMIENTO_DUPLICADO_GRADOS = 0.00003f; // ~3 metros
+
+    /**
+     * Un punto al azar de la ciudad
+     */
+    static CoordenadasGps punto(Random random) {
+        return new CoordenadasGps(LATITUD_MIN + random.nextFloat() * LADO_GRADOS, LONGITUD_MIN + random.nextFloat() * LADO_GRADOS);
+    }
+
+    /**
+     * Puntos al azar de la ciudad, con posibles duplicados entre ellos
+     */
+    static List<CoordenadasGps> puntos(Random random, int n) {
+        List<CoordenadasGps> puntos = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            puntos.add(punto(random));
+        }
+        return puntos;
+    }
+
+    /**
+     * Puntos sobre una rejilla, lo bastante separados para que ninguno sea duplicado de otro
+     */
+    static List<CoordenadasGps> rejilla(int n) {
+        int lado = (int) Math.ceil(Math.sqrt(n));
+        List<CoordenadasGps> puntos = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            puntos.add(new CoordenadasGps(LATITUD_MIN + (i / lado) * SEPARACION_GRADOS, LONGITUD_MIN + (i % lado) * SEPARACION_GRADOS));
+        }
+        return puntos;
+    }
+
+    /**
+     * Coordenadas de nuevas incidencias: la mitad junto a una de las existentes (duplicados) y la otra mitad al azar
+     */
+    static CoordenadasGps[] consultas(Random random, List<CoordenadasGps> existentes, int n) {
+        CoordenadasGps[] consultas = new CoordenadasGps[n];
+        for (int i = 0; i < n; i++) {
+            if (i % 2 == 0) {
+                CoordenadasGps existente = existentes.get(random.nextInt(existentes.size()));
+                consultas[i] = new CoordenadasGps(existente.latitud() + DESPLAZAMIENTO_DUPLICADO_GRADOS, existente.longitud());
+            } else {
+                consultas[i] = punto(random);
+            }
+        }
+        return consultas;
+    }
+}
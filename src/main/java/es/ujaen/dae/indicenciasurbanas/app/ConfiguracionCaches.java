@@ -0,0 +1,119 @@
+package es.ujaen.dae.indicenciasurbanas.app;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.CaffeineSpec;
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.spi.RegionFactory;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.Caching;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.UUID;
+
+/**
+ * Cachés de la aplicación con Caffeine. Cada caché tiene su propia especificación en application.yml
+ * (incidencias.caches.especificaciones.&lt;nombre&gt;, con la sintaxis de CaffeineSpec); las que no aparecen usan
+ * incidencias.caches.por-defecto. Todas registran estadísticas, que Micrometer publica como métricas cache.*
+ * (aciertos, fallos, desalojos, tiempo de carga) etiquetadas con el nombre de la caché.
+ * <p>
+ * Con maximumWeight cada entrada pesa lo que ocupe: las listas su número de elementos y el resto 1, de modo que
+ * el límite de las cachés de listas se expresa en incidencias y no en número de listas.
+ * <p>
+ * Aparte está la caché de segundo nivel de Hibernate, también con Caffeine (a través de JCache) y local a cada
+ * instancia. Guarda las entidades que casi nunca cambian (TipoIncidencia, Usuario) y los resultados de las consultas
+ * marcadas como cacheables, de modo que también se ahorran las cargas de esas entidades que hace Hibernate por su
+ * cuenta, como las del tipo y el usuario de cada Incidencia, que las cachés de Spring no ven. Cada región tiene su
+ * número máximo de entradas en incidencias.caches.segundo-nivel.regiones.
+ */
+@Configuration
+@EnableConfigurationProperties(ConfiguracionCaches.PropiedadesCaches.class)
+public class ConfiguracionCaches {
+
+    /**
+     * @param porDefecto especificación de las cachés sin especificación propia
+     * @param especificaciones especificación de cada caché por nombre
+     * @param segundoNivel configuración de la caché de segundo nivel de Hibernate
+     */
+    @ConfigurationProperties(prefix = "incidencias.caches")
+    public record PropiedadesCaches(String porDefecto, Map<String, String> especificaciones, SegundoNivel segundoNivel) {
+        public PropiedadesCaches {
+            porDefecto = porDefecto != null ? porDefecto : "maximumSize=1000,expireAfterAccess=1h";
+            especificaciones = especificaciones != null ? especificaciones : Map.of();
+            segundoNivel = segundoNivel != null ? segundoNivel : new SegundoNivel(null, null);
+        }
+    }
+
+    /**
+     * @param caducidad tiempo máximo que se guarda una entrada, para acotar lo que tarda en verse un cambio hecho
+     *                  desde otra instancia
+     * @param regiones número máximo de entradas de cada región por nombre
+     */
+    public record SegundoNivel(Duration caducidad, Map<String, Long> regiones) {
+        public SegundoNivel {
+            caducidad = caducidad != null ? caducidad : Duration.ofMinutes(10);
+            regiones = regiones != null ? regiones : Map.of();
+        }
+    }
+
+    @Bean
+    public CacheManager cacheManager(PropiedadesCaches propiedades) {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        cacheManager.setCaffeine(constructor(propiedades.porDefecto()));
+        propiedades.especificaciones().forEach((nombre, especificacion) ->
+                cacheManager.registerCustomCache(nombre, constructor(especificacion).build()));
+        return cacheManager;
+    }
+
+    /**
+     * Gestor JCache de las regiones de la caché de segundo nivel. Las regiones que Hibernate pida y no estén
+     * configuradas hacen fallar el arranque (missing_cache_strategy: fail).
+     */
+    @Bean(destroyMethod = "close")
+    public javax.cache.CacheManager cacheManagerSegundoNivel(PropiedadesCaches propiedades) {
+        // Un gestor propio por contexto, para que dos contextos en la misma JVM (en los tests) no compartan regiones
+        javax.cache.CacheManager cacheManager = Caching.getCachingProvider(CaffeineCachingProvider.class.getName())
+                .getCacheManager(URI.create("incidencias-" + UUID.randomUUID()), getClass().getClassLoader());
+
+        SegundoNivel segundoNivel = propiedades.segundoNivel();
+        segundoNivel.regiones().forEach((region, maximo) ->
+                cacheManager.createCache(region, region(OptionalLong.of(maximo), segundoNivel.caducidad())));
+
+        // Marcas de tiempo de la caché de consultas (una por tabla): no deben desalojarse ni caducar nunca
+        cacheManager.createCache(RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME,
+                region(OptionalLong.empty(), null));
+        return cacheManager;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer cacheSegundoNivel(javax.cache.CacheManager cacheManagerSegundoNivel) {
+        return propiedades -> propiedades.put(ConfigSettings.CACHE_MANAGER, cacheManagerSegundoNivel);
+    }
+
+    private static CaffeineConfiguration<Object, Object> region(OptionalLong maximo, Duration caducidad) {
+        CaffeineConfiguration<Object, Object> configuracion = new CaffeineConfiguration<>();
+        configuracion.setMaximumSize(maximo);
+        configuracion.setExpireAfterWrite(caducidad != null ? OptionalLong.of(caducidad.toNanos()) : OptionalLong.empty());
+        configuracion.setStatisticsEnabled(true);
+        return configuracion;
+    }
+
+    private static Caffeine<Object, Object> constructor(String especificacion) {
+        Caffeine<Object, Object> constructor = Caffeine.from(CaffeineSpec.parse(especificacion)).recordStats();
+        if (especificacion.contains("maximumWeight")) {
+            constructor.weigher((clave, valor) -> valor instanceof Collection<?> lista ? Math.max(1, lista.size()) : 1);
+        }
+        return constructor;
+    }
+}
@@ -0,0 +1,80 @@
+package es.ujaen.dae.indicenciasurbanas.app;
+
+import es.ujaen.dae.indicenciasurbanas.dto.Pagina;
+import es.ujaen.dae.indicenciasurbanas.jfr.EventoConsultaRepositorio;
+import es.ujaen.dae.indicenciasurbanas.repositorios.RepositorioIncidencias;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.ComposablePointcut;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.RootClassFilter;
+import org.springframework.aop.support.StaticMethodMatcher;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.Optional;
+
+/**
+ * Eventos de Java Flight Recorder para atribuir los picos de latencia: cada llamada a RepositorioIncidencias queda como
+ * EventoConsultaRepositorio (los de la comprobación de duplicados y las cargas de las cachés los crean
+ * IndiceEspacialIncidencias, ServicioIncidencia y LecturaCache). Si no se está grabando, crear el evento y preguntar si
+ * hay que guardarlo es prácticamente gratis, así que se puede grabar de forma continua en producción:
+ * <pre>
+ * java -XX:StartFlightRecording=settings=profile,maxage=1h,filename=incidencias.jfr -jar ...
+ * jfr print --events incidencias.ConsultaRepositorio,incidencias.CargaCache incidencias.jfr
+ * </pre>
+ * Las consultas y las cargas solo se guardan si duran 1 ms o más; el umbral se puede cambiar en la configuración de la
+ * grabación (p. ej. incidencias.ConsultaRepositorio#threshold=0 ms).
+ */
+@Configuration
+public class ConfiguracionJfr {
+
+    @Bean
+    static Advisor eventosConsultasRepositorio() {
+        StaticMethodMatcher publicos = new StaticMethodMatcher() {
+            @Override
+            public boolean matches(Method metodo, Class<?> clase) {
+                return Modifier.isPublic(metodo.getModifiers());
+            }
+        };
+        return new DefaultPointcutAdvisor(new ComposablePointcut(new RootClassFilter(RepositorioIncidencias.class), publicos),
+                new EventosConsultas());
+    }
+
+    /**
+     * Registra cada llamada como EventoConsultaRepositorio
+     */
+    static class EventosConsultas implements MethodInterceptor {
+        @Override
+        public Object invoke(MethodInvocation invocacion) throws Throwable {
+            EventoConsultaRepositorio evento = new EventoConsultaRepositorio();
+            evento.begin();
+            Object resultado;
+            try {
+                resultado = invocacion.proceed();
+            } catch (Throwable e) {
+                evento.terminar(invocacion.getMethod().getName(), -1, e.getClass().getSimpleName());
+                throw e;
+            }
+            evento.terminar(invocacion.getMethod().getName(), filas(resultado), null);
+            return resultado;
+        }
+
+        /**
+         * @return Número de filas de un resultado (listas, páginas y opcionales) o filas modificadas (int), o -1
+         */
+        private static int filas(Object resultado) {
+            return switch (resultado) {
+                case Collection<?> coleccion -> coleccion.size();
+                case Pagina<?> pagina -> pagina.elementos().size();
+                case Optional<?> opcional -> opcional.isPresent() ? 1 : 0;
+                case Integer modificadas -> modificadas;
+                case null, default -> -1;
+            };
+        }
+    }
+}
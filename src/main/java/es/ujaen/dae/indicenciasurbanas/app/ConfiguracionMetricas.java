@@ -0,0 +1,82 @@
+package es.ujaen.dae.indicenciasurbanas.app;
+
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBooleanProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tiempo de cada método público de las clases anotadas con @Timed (ServicioIncidencia y RepositorioIncidencias), como
+ * un Timer con el nombre de la anotación y las etiquetas class, method y exception, las mismas que usa el TimedAspect de
+ * Micrometer. Ese aspecto construye las etiquetas y busca el Timer en el registro en cada llamada, lo que en las
+ * consultas servidas desde la caché (unos pocos microsegundos) se notaba; aquí el Timer de cada método se crea la primera
+ * vez y se guarda, y solo se buscan en el registro los de las llamadas que acaban en excepción.
+ * <p>
+ * Se desactiva con incidencias.metricas.tiempos=false (ver BenchmarkServicio).
+ */
+@Configuration
+@ConditionalOnBooleanProperty(name = "incidencias.metricas.tiempos", matchIfMissing = true)
+public class ConfiguracionMetricas {
+
+    @Bean
+    static Advisor tiemposMetodosAnotados(ObjectProvider<MeterRegistry> registro) {
+        return new DefaultPointcutAdvisor(new AnnotationMatchingPointcut(Timed.class, true), new TiemposMetodos(registro));
+    }
+
+    /**
+     * Mide cada llamada con el Timer de su método
+     */
+    static class TiemposMetodos implements MethodInterceptor {
+        // El registro se pide al crear el primer Timer, no al crear los proxies
+        private final ObjectProvider<MeterRegistry> registro;
+        private final Map<Method, Timer> correctos = new ConcurrentHashMap<>();
+
+        TiemposMetodos(ObjectProvider<MeterRegistry> registro) {
+            this.registro = registro;
+        }
+
+        @Override
+        public Object invoke(MethodInvocation invocacion) throws Throwable {
+            long inicio = System.nanoTime();
+            Object resultado;
+            try {
+                resultado = invocacion.proceed();
+            } catch (Throwable e) {
+                timer(invocacion, e.getClass().getSimpleName()).record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+                throw e;
+            }
+            correctos.computeIfAbsent(invocacion.getMethod(), metodo -> timer(invocacion, "none"))
+                    .record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+            return resultado;
+        }
+
+        private Timer timer(MethodInvocation invocacion, String excepcion) {
+            Method metodo = invocacion.getMethod();
+            Class<?> clase = invocacion.getThis() != null ? invocacion.getThis().getClass() : metodo.getDeclaringClass();
+            Timed timed = AnnotatedElementUtils.findMergedAnnotation(clase, Timed.class);
+            return Timer.builder(timed.value())
+                    .description(timed.description().isEmpty() ? null : timed.description())
+                    .tags(timed.extraTags())
+                    .tag("class", metodo.getDeclaringClass().getName())
+                    .tag("method", metodo.getName())
+                    .tag("exception", excepcion)
+                    .publishPercentileHistogram(timed.histogram() ? true : null)
+                    .publishPercentiles(timed.percentiles().length > 0 ? timed.percentiles() : null)
+                    .register(registro.getObject());
+        }
+    }
+}
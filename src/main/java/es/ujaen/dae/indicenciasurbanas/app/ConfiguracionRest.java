@@ -0,0 +1,23 @@
+package es.ujaen.dae.indicenciasurbanas.app;
+
+import es.ujaen.dae.indicenciasurbanas.rest.ResolvedorUsuarioAutenticado;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+/**
+ * Configuración de la API REST: los controladores reciben el usuario autenticado como parámetro de tipo Usuario
+ */
+@Configuration
+public class ConfiguracionRest implements WebMvcConfigurer {
+    @Autowired
+    private ResolvedorUsuarioAutenticado resolvedorUsuarioAutenticado;
+
+    @Override
+    public void addArgumentResolvers(List<HandlerMethodArgumentResolver> resolvers) {
+        resolvers.add(resolvedorUsuarioAutenticado);
+    }
+}
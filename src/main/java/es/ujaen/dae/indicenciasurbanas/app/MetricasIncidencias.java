@@ -0,0 +1,144 @@
+package es.ujaen.dae.indicenciasurbanas.app;
+
+import es.ujaen.dae.indicenciasurbanas.repositorios.ContadoresIncidencias;
+import es.ujaen.dae.indicenciasurbanas.repositorios.IndiceEspacialIncidencias;
+import es.ujaen.dae.indicenciasurbanas.servicios.BusEventosIncidencia;
+import es.ujaen.dae.indicenciasurbanas.servicios.EstadisticasLogin;
+import es.ujaen.dae.indicenciasurbanas.servicios.EstadisticasRegistro;
+import es.ujaen.dae.indicenciasurbanas.servicios.ProcesadorImagenes;
+import es.ujaen.dae.indicenciasurbanas.servicios.ServicioIncidencia;
+import es.ujaen.dae.indicenciasurbanas.servicios.TransicionesIncidencia;
+import es.ujaen.dae.indicenciasurbanas.utils.EstadoIncidencia;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Publica en Micrometer las estadísticas que ya llevan los servicios en sus LongAdder (registro de incidencias,
+ * búsqueda de duplicados, login, transiciones, procesado de imágenes y bus de eventos) y los contadores de incidencias
+ * por estado. Micrometer solo las lee al publicarlas, así que no añaden nada al camino de cada petición.
+ * <p>
+ * Los tiempos de cada método público de ServicioIncidencia y de cada consulta de RepositorioIncidencias los mide
+ * ConfiguracionMetricas (incidencias.servicio e incidencias.repositorio, con etiquetas method y exception), con
+ * histograma para calcular percentiles en Prometheus. Todo se expone en /actuator/prometheus y /actuator/metrics, en el
+ * puerto de gestión (management.server.port), no en el de la API.
+ */
+@Component
+public class MetricasIncidencias implements MeterBinder {
+    @Autowired
+    private ServicioIncidencia servicioIncidencia;
+
+    @Autowired
+    private IndiceEspacialIncidencias indiceEspacial;
+
+    @Autowired
+    private ContadoresIncidencias contadores;
+
+    @Autowired
+    private TransicionesIncidencia transiciones;
+
+    @Autowired
+    private ProcesadorImagenes procesadorImagenes;
+
+    @Autowired
+    private BusEventosIncidencia eventos;
+
+    @Override
+    public void bindTo(MeterRegistry registro) {
+        EstadisticasRegistro estadisticasRegistro = servicioIncidencia.estadisticasRegistro();
+        contador(registro, "incidencias.registro.recibidas", "Incidencias recibidas para registrar", estadisticasRegistro,
+                EstadisticasRegistro::registrosIndividuales, "modo", "individual");
+        contador(registro, "incidencias.registro.recibidas", "Incidencias recibidas para registrar", estadisticasRegistro,
+                EstadisticasRegistro::incidenciasEnLotes, "modo", "lote");
+        contador(registro, "incidencias.registro.rechazadas", "Incidencias rechazadas por tener otra activa cerca",
+                estadisticasRegistro, EstadisticasRegistro::rechazadasIndividuales, "modo", "individual");
+        contador(registro, "incidencias.registro.rechazadas", "Incidencias rechazadas por tener otra activa cerca",
+                estadisticasRegistro, EstadisticasRegistro::rechazadasEnLotes, "modo", "lote");
+        contador(registro, "incidencias.registro.lotes", "Lotes de incidencias registrados", estadisticasRegistro,
+                EstadisticasRegistro::lotes);
+
+        // Búsqueda de duplicados: comprobaciones y candidatas revisadas en cada una, en el índice o en la BBDD
+        contador(registro, "incidencias.duplicados.comprobaciones", "Comprobaciones de incidencias activas cercanas",
+                indiceEspacial, IndiceEspacialIncidencias::consultas, "origen", "indice");
+        contador(registro, "incidencias.duplicados.comprobaciones", "Comprobaciones de incidencias activas cercanas",
+                estadisticasRegistro, EstadisticasRegistro::comprobacionesEnBbdd, "origen", "bbdd");
+        contador(registro, "incidencias.duplicados.candidatas", "Incidencias activas cuya distancia se ha calculado",
+                indiceEspacial, IndiceEspacialIncidencias::candidatas, "origen", "indice");
+        contador(registro, "incidencias.duplicados.candidatas", "Incidencias activas cuya distancia se ha calculado",
+                estadisticasRegistro, EstadisticasRegistro::candidatasEnBbdd, "origen", "bbdd");
+        Gauge.builder("incidencias.duplicados.indice", indiceEspacial, IndiceEspacialIncidencias::tamano)
+                .description("Incidencias activas en el índice espacial")
+                .register(registro);
+
+        EstadisticasLogin estadisticasLogin = servicioIncidencia.estadisticasLogin();
+        contador(registro, "incidencias.login", "Intentos de login", estadisticasLogin, EstadisticasLogin::correctos,
+                "resultado", "correcto");
+        contador(registro, "incidencias.login", "Intentos de login", estadisticasLogin, EstadisticasLogin::fallidos,
+                "resultado", "fallido");
+
+        for (EstadoIncidencia estado : EstadoIncidencia.values()) {
+            Gauge.builder("incidencias.por-estado", contadores, recuento -> recuento.contar(estado))
+                    .description("Incidencias registradas por estado")
+                    .tag("estado", estado.name())
+                    .register(registro);
+        }
+
+        contador(registro, "incidencias.transiciones.intentos", "Intentos de cambio de estado o borrado", transiciones,
+                TransicionesIncidencia::intentos);
+        contador(registro, "incidencias.transiciones.conflictos", "Intentos que han chocado con otra modificación",
+                transiciones, TransicionesIncidencia::conflictos);
+        contador(registro, "incidencias.transiciones.pesimistas", "Transiciones hechas con bloqueo pesimista",
+                transiciones, TransicionesIncidencia::pesimistas);
+        contador(registro, "incidencias.transiciones.agotadas", "Transiciones abandonadas tras agotar los intentos",
+                transiciones, TransicionesIncidencia::agotadas);
+
+        Gauge.builder("incidencias.imagenes.cola", procesadorImagenes, ProcesadorImagenes::tamanoCola)
+                .description("Imágenes esperando a generar sus variantes")
+                .register(registro);
+        Gauge.builder("incidencias.imagenes.en-proceso", procesadorImagenes, ProcesadorImagenes::enProceso)
+                .description("Imágenes generando sus variantes")
+                .register(registro);
+        contador(registro, "incidencias.imagenes", "Imágenes por resultado del procesado", procesadorImagenes,
+                ProcesadorImagenes::encoladas, "resultado", "encolada");
+        contador(registro, "incidencias.imagenes", "Imágenes por resultado del procesado", procesadorImagenes,
+                ProcesadorImagenes::procesadas, "resultado", "procesada");
+        contador(registro, "incidencias.imagenes", "Imágenes por resultado del procesado", procesadorImagenes,
+                ProcesadorImagenes::descartadas, "resultado", "descartada");
+        contador(registro, "incidencias.imagenes", "Imágenes por resultado del procesado", procesadorImagenes,
+                ProcesadorImagenes::noSoportadas, "resultado", "no-soportada");
+        contador(registro, "incidencias.imagenes", "Imágenes por resultado del procesado", procesadorImagenes,
+                ProcesadorImagenes::demasiadoGrandes, "resultado", "demasiado-grande");
+        contador(registro, "incidencias.imagenes", "Imágenes por resultado del procesado", procesadorImagenes,
+                ProcesadorImagenes::fallidas, "resultado", "fallida");
+
+        contador(registro, "incidencias.eventos.publicados", "Eventos publicados en el bus", eventos,
+                BusEventosIncidencia::publicados);
+        contador(registro, "incidencias.eventos.descartados", "Eventos descartados por estar el anillo lleno", eventos,
+                BusEventosIncidencia::descartados);
+        contador(registro, "incidencias.eventos.esperas", "Publicaciones que han esperado por estar el anillo lleno",
+                eventos, BusEventosIncidencia::esperasLleno);
+        for (BusEventosIncidencia.Suscripcion suscripcion : eventos.suscripciones()) {
+            Gauge.builder("incidencias.eventos.retraso", suscripcion, BusEventosIncidencia.Suscripcion::retraso)
+                    .description("Eventos publicados que el suscriptor aún no ha procesado")
+                    .tag("suscriptor", suscripcion.nombre())
+                    .register(registro);
+            contador(registro, "incidencias.eventos.procesados", "Eventos procesados por el suscriptor", suscripcion,
+                    BusEventosIncidencia.Suscripcion::procesados, "suscriptor", suscripcion.nombre());
+            contador(registro, "incidencias.eventos.fallidos", "Eventos de lotes en los que el suscriptor ha fallado",
+                    suscripcion, BusEventosIncidencia.Suscripcion::fallidos, "suscriptor", suscripcion.nombre());
+        }
+    }
+
+    private static <T> void contador(MeterRegistry registro, String nombre, String descripcion, T origen,
+                                     ToDoubleFunction<T> valor, String... etiquetas) {
+        FunctionCounter.builder(nombre, origen, valor)
+                .description(descripcion)
+                .tags(etiquetas)
+                .register(registro);
+    }
+}
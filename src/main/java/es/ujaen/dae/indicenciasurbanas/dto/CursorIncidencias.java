@@ -0,0 +1,13 @@
+package es.ujaen.dae.indicenciasurbanas.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Posición en un listado de incidencias paginado por clave (keyset). Los listados se ordenan de más reciente a más
+ * antigua (fecha y, a igual fecha, id descendentes) y cada página empieza justo después de la última incidencia
+ * de la anterior, sin OFFSET, así que el coste de pedir una página no depende de cuántas haya antes.
+ * @param fecha fecha de la última incidencia de la página anterior
+ * @param id identificador de la última incidencia de la página anterior
+ */
+public record CursorIncidencias(LocalDateTime fecha, int id) {
+}
@@ -0,0 +1,24 @@
+package es.ujaen.dae.indicenciasurbanas.dto;
+
+import es.ujaen.dae.indicenciasurbanas.entidades.TipoIncidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.Usuario;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+
+import java.time.LocalDateTime;
+
+/**
+ * Datos de una incidencia que se quiere registrar, con los mismos campos que recibe ServicioIncidencia.nuevaIncidencia.
+ * Se usa para registrar incidencias por lotes.
+ */
+public record DatosIncidencia(@NotNull LocalDateTime fecha,
+                              @NotNull TipoIncidencia tipo,
+                              @NotBlank String descripcion,
+                              @NotBlank String localizacion,
+                              float latitud,
+                              float longitud,
+                              @NotBlank String dpto,
+                              @Valid Usuario usuario,
+                              byte[] foto) {
+}
@@ -0,0 +1,46 @@
+package es.ujaen.dae.indicenciasurbanas.dto;
+
+import es.ujaen.dae.indicenciasurbanas.entidades.Incidencia;
+import es.ujaen.dae.indicenciasurbanas.utils.EstadoIncidencia;
+
+import java.time.Instant;
+
+/**
+ * Algo que le ha pasado a una incidencia, ya confirmado en la BBDD (ver BusEventosIncidencia). Lleva copiados los
+ * datos que necesitan los suscriptores, para que no tengan que volver a leer la incidencia (que puede haber cambiado
+ * o haberse borrado cuando lo procesen).
+ * @param accion lo que ha pasado
+ * @param id identificador de la incidencia
+ * @param tipo nombre del tipo de incidencia
+ * @param dpto departamento asignado
+ * @param usuarioEmail email del usuario que la registró
+ * @param estadoAnterior estado antes del cambio (null al registrarla)
+ * @param estado estado después del cambio (al borrarla, el que tenía)
+ * @param instante momento en que se produjo (dentro de su transacción)
+ */
+public record EventoIncidencia(Accion accion, int id, String tipo, String dpto, String usuarioEmail,
+                               EstadoIncidencia estadoAnterior, EstadoIncidencia estado, Instant instante) {
+
+    public enum Accion {
+        REGISTRADA,
+        ESTADO_CAMBIADO,
+        BORRADA
+    }
+
+    public static EventoIncidencia registrada(Incidencia incidencia) {
+        return de(Accion.REGISTRADA, incidencia, null);
+    }
+
+    public static EventoIncidencia estadoCambiado(Incidencia incidencia, EstadoIncidencia anterior) {
+        return de(Accion.ESTADO_CAMBIADO, incidencia, anterior);
+    }
+
+    public static EventoIncidencia borrada(Incidencia incidencia) {
+        return de(Accion.BORRADA, incidencia, incidencia.estado());
+    }
+
+    private static EventoIncidencia de(Accion accion, Incidencia incidencia, EstadoIncidencia anterior) {
+        return new EventoIncidencia(accion, incidencia.id(), incidencia.tipo().nombre(), incidencia.dpto(),
+                incidencia.usuario().email(), anterior, incidencia.estado(), Instant.now());
+    }
+}
@@ -0,0 +1,27 @@
+package es.ujaen.dae.indicenciasurbanas.dto;
+
+import es.ujaen.dae.indicenciasurbanas.utils.EstadoIncidencia;
+
+import java.time.LocalDateTime;
+
+/**
+ * Vista reducida de una incidencia para listados y mapas. Se obtiene con una proyección que solo lee estas
+ * columnas (más el nombre del tipo), sin cargar la entidad, su usuario ni sus imágenes, y sin que quede
+ * en el contexto de persistencia.
+ * @param id identificador de la incidencia
+ * @param fecha fecha de la incidencia
+ * @param tipo nombre del tipo de incidencia
+ * @param estado estado de la incidencia
+ * @param latitud latitud en grados
+ * @param longitud longitud en grados
+ */
+public record IncidenciaResumen(int id, LocalDateTime fecha, String tipo, EstadoIncidencia estado,
+                                float latitud, float longitud) {
+
+    /**
+     * @return Cursor que apunta a esta incidencia en un listado paginado
+     */
+    public CursorIncidencias cursor() {
+        return new CursorIncidencias(fecha, id);
+    }
+}
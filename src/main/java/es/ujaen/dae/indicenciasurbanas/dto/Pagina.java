@@ -0,0 +1,15 @@
+package es.ujaen.dae.indicenciasurbanas.dto;
+
+import java.util.List;
+
+/**
+ * Página de un listado paginado por clave
+ * @param elementos elementos de la página
+ * @param siguiente cursor para pedir la página siguiente, o null si es la última
+ */
+public record Pagina<T>(List<T> elementos, CursorIncidencias siguiente) {
+
+    public boolean haySiguiente() {
+        return siguiente != null;
+    }
+}
@@ -0,0 +1,13 @@
+package es.ujaen.dae.indicenciasurbanas.dto;
+
+import es.ujaen.dae.indicenciasurbanas.utils.EstadoIncidencia;
+
+/**
+ * Número de incidencias de un tipo y departamento que están en un estado
+ * @param tipo nombre del tipo de incidencia
+ * @param dpto departamento asignado
+ * @param estado estado de las incidencias
+ * @param total número de incidencias
+ */
+public record RecuentoIncidencias(String tipo, String dpto, EstadoIncidencia estado, long total) {
+}
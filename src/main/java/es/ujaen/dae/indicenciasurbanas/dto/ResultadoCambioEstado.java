@@ -0,0 +1,11 @@
+package es.ujaen.dae.indicenciasurbanas.dto;
+
+/**
+ * Resultado de cambiar el estado de una incidencia dentro de un cambio en bloque
+ */
+public enum ResultadoCambioEstado {
+    MODIFICADA,   // Ha pasado al estado nuevo
+    SIN_CAMBIOS,  // Ya estaba en el estado nuevo
+    NO_PERMITIDA, // Desde su estado no se puede pasar al nuevo (ver EstadoIncidencia.puedePasarA)
+    NO_EXISTE     // No hay ninguna incidencia con ese id
+}
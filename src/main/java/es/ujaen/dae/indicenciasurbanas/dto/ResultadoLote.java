@@ -0,0 +1,14 @@
+package es.ujaen.dae.indicenciasurbanas.dto;
+
+import es.ujaen.dae.indicenciasurbanas.entidades.Incidencia;
+
+import java.util.List;
+
+/**
+ * Resultado de registrar un lote de incidencias
+ * @param registradas incidencias registradas, en el orden del lote
+ * @param rechazadas datos de las incidencias rechazadas por tener otra incidencia activa a menos de 10 metros
+ *                   (ya registrada o anterior dentro del mismo lote)
+ */
+public record ResultadoLote(List<Incidencia> registradas, List<DatosIncidencia> rechazadas) {
+}
@@ -0,0 +1,20 @@
+package es.ujaen.dae.indicenciasurbanas.dto;
+
+import es.ujaen.dae.indicenciasurbanas.utils.EstadoIncidencia;
+
+/**
+ * Lo que hace falta saber de una incidencia para cambiarle el estado en bloque y llevar el cambio a las cachés,
+ * al índice espacial y a los contadores, o para cargarla en el índice espacial. Se lee con una proyección, sin cargar
+ * la entidad ni su tipo o usuario.
+ * @param id identificador de la incidencia
+ * @param version versión actual
+ * @param estado estado actual
+ * @param tipoId identificador del tipo de incidencia
+ * @param dpto departamento asignado
+ * @param usuarioEmail email del usuario que la registró
+ * @param latitud latitud en grados
+ * @param longitud longitud en grados
+ */
+public record SituacionIncidencia(int id, int version, EstadoIncidencia estado, int tipoId, String dpto,
+                                  String usuarioEmail, float latitud, float longitud) {
+}
@@ -1,5 +1,6 @@
 package es.ujaen.dae.indicenciasurbanas.entidades;
 
+import es.ujaen.dae.indicenciasurbanas.repositorios.CacheIncidencias;
 import es.ujaen.dae.indicenciasurbanas.utils.CoordenadasGps;
 import es.ujaen.dae.indicenciasurbanas.utils.EstadoIncidencia;
 import jakarta.persistence.*;
@@ -8,14 +9,31 @@ import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Positive;
+import org.hibernate.annotations.DynamicUpdate;
 
 import java.time.LocalDateTime;
 import java.util.Objects;
 
 @Entity
+@EntityListeners(CacheIncidencias.class) // Mantiene al día las cachés de RepositorioIncidencias
+@DynamicUpdate // Los UPDATE solo incluyen las columnas modificadas, para no pisar las variantes de imagen que se generan aparte
+@Table(indexes = {
+        // Búsqueda de incidencias activas por caja de coordenadas (comprobación de duplicados)
+        @Index(name = "idx_incidencia_estado_coordenadas", columnList = "estado, latitud, longitud"),
+        // Listados paginados por clave (fecha, id), con y sin filtro
+        @Index(name = "idx_incidencia_fecha_id", columnList = "fecha, id"),
+        @Index(name = "idx_incidencia_estado_fecha_id", columnList = "estado, fecha, id"),
+        @Index(name = "idx_incidencia_tipo_fecha_id", columnList = "tipo_id, fecha, id"),
+        @Index(name = "idx_incidencia_usuario_fecha_id", columnList = "usuario_email, fecha, id")
+})
 public class Incidencia {
+    /**
+     * Secuencia con reserva de 50 identificadores por consulta (optimizador pooled). A diferencia de IDENTITY,
+     * Hibernate conoce el id antes del INSERT y puede agrupar las inserciones en lotes JDBC
+     */
     @Id
-    @GeneratedValue(strategy= GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "seq_incidencia")
+    @SequenceGenerator(name = "seq_incidencia", sequenceName = "seq_incidencia", allocationSize = 50)
     private int id;
 
     @NotNull
@@ -47,11 +65,28 @@ public class Incidencia {
     private Usuario usuario; //< Usuario que ha registrado la incidencia
 
     /**
-     * @Lob indica que es un "Large Object", lo que será en la BBDD un BLOB (Binary Large Object)
-     * @Basic(fetch=FetchType.LAZY) Usamos carga perezosa para que la imagen no se cargue en memoria al cargar la incidencia
-     * No se llama hasta que se llame a la función para cargar la imagen. Si no, colapsaría la aplicación con todas
-     * las imágenes de todas las incidencias
-     * Se podría almacenar también una ruta en la BBDD y recuperarla en el servidor (que aloja las imágenes en disco duro)
+     * Hash SHA-256 (en hexadecimal) de la imagen, que se guarda fuera de la BBDD en el RepositorioImagenes.
+     * Las imágenes idénticas comparten hash y solo se almacenan una vez.
+     */
+    @Column(length = 64)
+    private String hashImagen;
+
+    /**
+     * Hashes de las versiones reducidas de la imagen (ver VarianteImagen), que se generan en segundo plano
+     * después de registrar la incidencia. Son null mientras no estén generadas.
+     */
+    @Column(length = 64)
+    private String hashMiniatura;
+
+    @Column(length = 64)
+    private String hashVistaPrevia;
+
+    /**
+     * Columna antigua en la que se guardaba la imagen completa como BLOB.
+     * Solo se mantiene para migrar las filas existentes al RepositorioImagenes (ver MigracionImagenes);
+     * las incidencias nuevas la dejan a null.
+     * @Basic(fetch=FetchType.LAZY) Usamos carga perezosa para que la imagen no se cargue en memoria al cargar la incidencia.
+     * Hibernate solo la respeta con la mejora de bytecode (hibernate-enhance-maven-plugin en el pom.xml)
      */
     @Lob
     @Basic(fetch=FetchType.LAZY)
@@ -61,7 +96,7 @@ public class Incidencia {
     private int version;
 
     public Incidencia(LocalDateTime fecha, TipoIncidencia tipo, String descripcion, String localizacion,
-                      float latitud, float longitud,  String dpto,  Usuario usuario, byte[] imagen) {
+                      float latitud, float longitud,  String dpto,  Usuario usuario, String hashImagen) {
         this.fecha = fecha;
         this.tipo = tipo;
         this.descripcion = descripcion;
@@ -70,11 +105,30 @@ public class Incidencia {
         this.estado = EstadoIncidencia.PENDIENTE; // Asignamos por defecto el estado PENDIENTE al ser el primer estado por el que debe pasar una Incidencia
         this.dpto = dpto;
         this.usuario = usuario;
-        this.imagen = imagen;
+        this.hashImagen = hashImagen;
     }
 
     public Incidencia() {}
 
+    /**
+     * Reconstruye una incidencia a partir de su copia en caché (ver InstantaneaIncidencia)
+     */
+    Incidencia(InstantaneaIncidencia instantanea, TipoIncidencia tipo, Usuario usuario) {
+        this.id = instantanea.id();
+        this.version = instantanea.version();
+        this.fecha = instantanea.fecha();
+        this.tipo = tipo;
+        this.descripcion = instantanea.descripcion();
+        this.localizacion = instantanea.localizacion();
+        this.coordenadas = new CoordenadasGps(instantanea.latitud(), instantanea.longitud());
+        this.estado = instantanea.estado();
+        this.dpto = instantanea.dpto();
+        this.usuario = usuario;
+        this.hashImagen = instantanea.hashImagen();
+        this.hashMiniatura = instantanea.hashMiniatura();
+        this.hashVistaPrevia = instantanea.hashVistaPrevia();
+    }
+
 
     public int id() {
         return id;
@@ -138,12 +192,41 @@ public class Incidencia {
 
     public void usuario(Usuario usuario) {this.usuario = usuario; }
 
-    public byte[] imagen() {
+    public String hashImagen() {
+        return hashImagen;
+    }
+
+    public void hashImagen(String hashImagen) {
+        this.hashImagen = hashImagen;
+    }
+
+    public String hashMiniatura() {
+        return hashMiniatura;
+    }
+
+    public String hashVistaPrevia() {
+        return hashVistaPrevia;
+    }
+
+    public int version() {
+        return version;
+    }
+
+    /**
+     * Imagen guardada en la columna antigua, pendiente de migrar al RepositorioImagenes
+     * @return Contenido de la imagen, o null si no hay nada que migrar
+     */
+    public byte[] imagenSinMigrar() {
         return imagen;
     }
 
-    public void imagen(byte[] imagen) {
-        this.imagen = imagen;
+    /**
+     * Marca la imagen como migrada: guarda su hash y vacía la columna antigua
+     * @param hashImagen hash con el que se ha guardado la imagen en el RepositorioImagenes
+     */
+    public void imagenMigrada(String hashImagen) {
+        this.hashImagen = hashImagen;
+        this.imagen = null;
     }
 
     @Override
@@ -0,0 +1,49 @@
+package es.ujaen.dae.indicenciasurbanas.entidades;
+
+import es.ujaen.dae.indicenciasurbanas.utils.EstadoIncidencia;
+
+import java.time.LocalDateTime;
+
+/**
+ * Copia inmutable de una Incidencia para guardar en caché. A diferencia de la entidad no está ligada a ninguna
+ * sesión ni la puede modificar otra transacción, no arrastra el grafo de objetos de su usuario y tipo (solo sus
+ * claves) ni la columna antigua de la imagen, y se puede leer desde cualquier hilo.
+ * Cada lectura de la caché reconstruye una Incidencia nueva con incidencia(usuario).
+ */
+public record InstantaneaIncidencia(int id, int version, LocalDateTime fecha, int tipoId, String tipoNombre,
+                                    String descripcion, String localizacion, float latitud, float longitud,
+                                    EstadoIncidencia estado, String dpto, String usuarioEmail,
+                                    String hashImagen, String hashMiniatura, String hashVistaPrevia) {
+
+    public static InstantaneaIncidencia de(Incidencia incidencia) {
+        TipoIncidencia tipo = incidencia.tipo();
+        Usuario usuario = incidencia.usuario();
+        return new InstantaneaIncidencia(incidencia.id(), incidencia.version(), incidencia.fecha(),
+                tipo != null ? tipo.id() : 0, tipo != null ? tipo.nombre() : null,
+                incidencia.descripcion(), incidencia.localizacion(),
+                incidencia.coordenadas().latitud(), incidencia.coordenadas().longitud(),
+                incidencia.estado(), incidencia.dpto(), usuario != null ? usuario.email() : null,
+                incidencia.hashImagen(), incidencia.hashMiniatura(), incidencia.hashVistaPrevia());
+    }
+
+    /**
+     * Copia con otro estado y otra versión, para reflejar un cambio de estado hecho sin cargar la entidad
+     */
+    public InstantaneaIncidencia conEstado(EstadoIncidencia estado, int version) {
+        return new InstantaneaIncidencia(id, version, fecha, tipoId, tipoNombre, descripcion, localizacion, latitud,
+                longitud, estado, dpto, usuarioEmail, hashImagen, hashMiniatura, hashVistaPrevia);
+    }
+
+    /**
+     * Reconstruye la incidencia, separada de cualquier sesión
+     * @param usuario usuario que la registró (ver usuarioEmail), o null
+     */
+    public Incidencia incidencia(Usuario usuario) {
+        TipoIncidencia tipo = null;
+        if (tipoNombre != null) {
+            tipo = new TipoIncidencia(tipoNombre);
+            tipo.id(tipoId);
+        }
+        return new Incidencia(this, tipo, usuario);
+    }
+}
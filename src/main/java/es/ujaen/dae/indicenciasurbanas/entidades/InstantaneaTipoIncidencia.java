@@ -0,0 +1,17 @@
+package es.ujaen.dae.indicenciasurbanas.entidades;
+
+/**
+ * Copia inmutable de un TipoIncidencia para guardar en caché (ver InstantaneaIncidencia)
+ */
+public record InstantaneaTipoIncidencia(int id, String nombre) {
+
+    public static InstantaneaTipoIncidencia de(TipoIncidencia tipo) {
+        return new InstantaneaTipoIncidencia(tipo.id(), tipo.nombre());
+    }
+
+    public TipoIncidencia tipoIncidencia() {
+        TipoIncidencia tipo = new TipoIncidencia(nombre);
+        tipo.id(id);
+        return tipo;
+    }
+}
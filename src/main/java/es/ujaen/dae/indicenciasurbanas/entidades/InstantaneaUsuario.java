@@ -0,0 +1,19 @@
+package es.ujaen.dae.indicenciasurbanas.entidades;
+
+import java.time.LocalDate;
+
+/**
+ * Copia inmutable de un Usuario para guardar en caché (ver InstantaneaIncidencia)
+ */
+public record InstantaneaUsuario(String nombre, String apellido, LocalDate fNacimiento, String direccion,
+                                 String telefono, String email, String clave) {
+
+    public static InstantaneaUsuario de(Usuario usuario) {
+        return new InstantaneaUsuario(usuario.nombre(), usuario.apellido(), usuario.fNacimiento(),
+                usuario.direccion(), usuario.telefono(), usuario.email(), usuario.clave());
+    }
+
+    public Usuario usuario() {
+        return new Usuario(nombre, apellido, fNacimiento, direccion, telefono, email, clave);
+    }
+}
@@ -4,14 +4,20 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.validation.constraints.NotBlank;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.util.Objects;
 
+// En la caché de segundo nivel: es un catálogo pequeño que casi nunca cambia
 @Entity
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "TipoIncidencia")
 public class TipoIncidencia {
     @Id
-    @GeneratedValue(strategy= GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "seq_tipo_incidencia")
+    @SequenceGenerator(name = "seq_tipo_incidencia", sequenceName = "seq_tipo_incidencia", allocationSize = 50)
     private int id;
 
     @NotBlank
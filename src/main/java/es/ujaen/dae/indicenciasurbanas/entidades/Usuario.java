@@ -7,10 +7,14 @@ import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Pattern;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.time.LocalDate;
 
+// En la caché de segundo nivel: se lee en cada login y en cada carga de sus incidencias, y casi nunca cambia
 @Entity
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "Usuario")
 public class Usuario {
 
     @NotBlank
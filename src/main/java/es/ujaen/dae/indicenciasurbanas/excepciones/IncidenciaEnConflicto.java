@@ -0,0 +1,7 @@
+package es.ujaen.dae.indicenciasurbanas.excepciones;
+
+public class IncidenciaEnConflicto extends RuntimeException {
+    public IncidenciaEnConflicto() {
+
+    }
+}
@@ -0,0 +1,7 @@
+package es.ujaen.dae.indicenciasurbanas.excepciones;
+
+public class TransicionNoPermitida extends RuntimeException {
+    public TransicionNoPermitida() {
+
+    }
+}
@@ -0,0 +1,45 @@
+package es.ujaen.dae.indicenciasurbanas.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Carga de una clave que no estaba en una de las cachés de los repositorios (ver LecturaCache)
+ */
+@Name("incidencias.CargaCache")
+@Label("Carga de caché")
+@Category({"Incidencias urbanas", "Persistencia"})
+@StackTrace(false)
+@Threshold("1 ms")
+public class EventoCargaCache extends Event {
+
+    @Label("Caché")
+    String cache;
+
+    @Label("Clave")
+    String clave;
+
+    @Label("Encontrada")
+    @Description("Si la clave existe en la BBDD")
+    boolean encontrada;
+
+    /**
+     * Termina el evento y lo guarda si se está grabando y supera el umbral
+     * @param cache nombre de la caché
+     * @param clave clave cargada
+     * @param encontrada si la carga ha devuelto un valor
+     */
+    public void terminar(String cache, Object clave, boolean encontrada) {
+        if (shouldCommit()) {
+            this.cache = cache;
+            this.clave = String.valueOf(clave);
+            this.encontrada = encontrada;
+            commit();
+        }
+    }
+}
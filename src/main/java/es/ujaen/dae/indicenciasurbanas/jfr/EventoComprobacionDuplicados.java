@@ -0,0 +1,56 @@
+package es.ujaen.dae.indicenciasurbanas.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Comprobación de si hay una incidencia activa cerca de una nueva (en nuevaIncidencia y en cada incidencia de
+ * nuevasIncidencias), en el índice espacial o en la BBDD, con las candidatas cuya distancia se ha calculado
+ */
+@Name("incidencias.ComprobacionDuplicados")
+@Label("Comprobación de duplicados")
+@Category({"Incidencias urbanas", "Registro"})
+@StackTrace(false)
+public class EventoComprobacionDuplicados extends Event {
+
+    @Label("Origen")
+    @Description("indice o bbdd (incidencias.duplicados.comprobar-en-bbdd)")
+    String origen;
+
+    @Label("Latitud")
+    float latitud;
+
+    @Label("Longitud")
+    float longitud;
+
+    @Label("Candidatas")
+    @Description("Incidencias activas cuya distancia se ha calculado")
+    int candidatas;
+
+    @Label("Encontrada")
+    @Description("Si hay una incidencia activa a menos de la distancia mínima")
+    boolean encontrada;
+
+    /**
+     * Termina el evento y lo guarda si se está grabando
+     * @param origen indice o bbdd
+     * @param latitud latitud de la nueva incidencia
+     * @param longitud longitud de la nueva incidencia
+     * @param candidatas candidatas revisadas
+     * @param encontrada si se ha encontrado una cercana
+     */
+    public void terminar(String origen, float latitud, float longitud, int candidatas, boolean encontrada) {
+        if (shouldCommit()) {
+            this.origen = origen;
+            this.latitud = latitud;
+            this.longitud = longitud;
+            this.candidatas = candidatas;
+            this.encontrada = encontrada;
+            commit();
+        }
+    }
+}
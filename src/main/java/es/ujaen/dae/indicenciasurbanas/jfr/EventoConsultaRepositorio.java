@@ -0,0 +1,47 @@
+package es.ujaen.dae.indicenciasurbanas.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Llamada a un método público de RepositorioIncidencias, con su duración y el número de filas que devuelve
+ * (ver ConfiguracionJfr). Las respuestas desde la caché también cuentan; sus cargas aparecen aparte como EventoCargaCache.
+ */
+@Name("incidencias.ConsultaRepositorio")
+@Label("Consulta de incidencias")
+@Category({"Incidencias urbanas", "Persistencia"})
+@StackTrace(false)
+@Threshold("1 ms")
+public class EventoConsultaRepositorio extends Event {
+
+    @Label("Consulta")
+    @Description("Método de RepositorioIncidencias")
+    String consulta;
+
+    @Label("Filas")
+    @Description("Filas devueltas (o modificadas, en las actualizaciones); -1 si no aplica")
+    int filas;
+
+    @Label("Excepción")
+    String excepcion;
+
+    /**
+     * Termina el evento y lo guarda si se está grabando y supera el umbral
+     * @param consulta nombre del método
+     * @param filas filas devueltas o modificadas, o -1
+     * @param excepcion nombre de la excepción lanzada, o null
+     */
+    public void terminar(String consulta, int filas, String excepcion) {
+        if (shouldCommit()) {
+            this.consulta = consulta;
+            this.filas = filas;
+            this.excepcion = excepcion;
+            commit();
+        }
+    }
+}
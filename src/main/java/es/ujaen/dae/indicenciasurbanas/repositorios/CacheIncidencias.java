@@ -0,0 +1,273 @@
+package es.ujaen.dae.indicenciasurbanas.repositorios;
+
+import es.ujaen.dae.indicenciasurbanas.entidades.Incidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.InstantaneaIncidencia;
+import es.ujaen.dae.indicenciasurbanas.utils.EstadoIncidencia;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.interceptor.SimpleKey;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Mantenimiento incremental de las cachés de incidencias de RepositorioIncidencias, que guardan copias inmutables
+ * (InstantaneaIncidencia). En lugar de vaciar todas las
+ * listas en cada escritura, cada alta, modificación (incluidos los cambios de estado por dirty checking) o borrado
+ * se aplica solo a las claves afectadas: la incidencia por id, la lista de todas y la lista del usuario que la registró.
+ * <p>
+ * Se registra como listener JPA de Incidencia, así que ve todas las escrituras que pasan por el EntityManager, hagan
+ * o no una llamada explícita al repositorio. Las actualizaciones masivas con JPQL no pasan por los listeners: los
+ * cambios de estado en bloque se registran con estadoCambiado y el resto con caducada, que quita la incidencia de la
+ * caché por id. Los cambios se acumulan por transacción y se aplican juntos tras el commit, de forma
+ * atómica por clave respecto a la carga de esa misma clave (las cachés se leen con sync = true), y son idempotentes:
+ * una lista cargada antes o después del commit acaba igual. Si una caché no permite modificar una entrada de forma
+ * atómica, la entrada afectada simplemente se quita.
+ */
+@Component
+public class CacheIncidencias {
+    static final String POR_ID = "incidenciasPorId";
+    static final String TODAS = "todasIncidencias";
+    static final String POR_EMAIL = "incidenciasPorEmail";
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    /**
+     * Cambio de estado hecho sin cargar la incidencia
+     * @param email email del usuario que la registró, para localizar su lista
+     * @param version versión que tenía antes del cambio, que la incrementa en uno
+     * @param estado estado nuevo
+     */
+    private record CambioEstado(String email, int version, EstadoIncidencia estado) {}
+
+    /**
+     * Cambios de una transacción: id -> copia de la incidencia tras el cambio, o null si se ha borrado.
+     * Para las borradas se guarda aparte el email, que hace falta para localizar su lista.
+     * Los cambios de estado en bloque, de los que no hay copia completa, van aparte, igual que las incidencias
+     * modificadas sin cargarlas, que solo se quitan de la caché por id.
+     */
+    private static class Cambios implements TransactionSynchronization {
+        final Map<Integer, InstantaneaIncidencia> incidencias = new LinkedHashMap<>();
+        final Map<Integer, String> emailsBorradas = new HashMap<>();
+        final Map<Integer, CambioEstado> estados = new LinkedHashMap<>();
+        final Set<Integer> caducadas = new LinkedHashSet<>();
+        private final CacheIncidencias cache;
+
+        Cambios(CacheIncidencias cache) {
+            this.cache = cache;
+        }
+
+        @Override
+        public void afterCommit() {
+            cache.aplicar(this);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(cache);
+        }
+    }
+
+    @PostPersist
+    @PostUpdate
+    void alGuardar(Incidencia incidencia) {
+        // La copia se hace ya: la entidad puede seguir cambiando en la transacción, pero el siguiente flush volverá a avisar
+        InstantaneaIncidencia instantanea = InstantaneaIncidencia.de(incidencia);
+        cambios(cambios -> cambios.incidencias.put(instantanea.id(), instantanea));
+    }
+
+    @PostRemove
+    void alBorrar(Incidencia incidencia) {
+        cambios(cambios -> {
+            cambios.incidencias.put(incidencia.id(), null);
+            if (incidencia.usuario() != null) {
+                cambios.emailsBorradas.put(incidencia.id(), incidencia.usuario().email());
+            }
+        });
+    }
+
+    /**
+     * Registra el cambio de estado de una incidencia hecho con una actualización en bloque (UPDATE VERSIONED),
+     * que no pasa por los listeners JPA
+     * @param id identificador de la incidencia
+     * @param email email del usuario que la registró
+     * @param version versión que tenía antes del cambio
+     * @param estado estado nuevo
+     */
+    public void estadoCambiado(int id, String email, int version, EstadoIncidencia estado) {
+        cambios(cambios -> cambios.estados.put(id, new CambioEstado(email, version, estado)));
+    }
+
+    /**
+     * Registra una incidencia modificada con una actualización en bloque que no cambia nada de lo que hay en las listas
+     * cacheadas: tras el commit se quita de la caché por id y se volverá a cargar la próxima vez que se pida
+     * @param id identificador de la incidencia
+     */
+    public void caducada(int id) {
+        cambios(cambios -> cambios.caducadas.add(id));
+    }
+
+    private void cambios(Consumer<Cambios> registrar) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            Cambios cambios = new Cambios(this);
+            registrar.accept(cambios);
+            aplicar(cambios);
+            return;
+        }
+
+        Cambios cambios = (Cambios) TransactionSynchronizationManager.getResource(this);
+        if (cambios == null) {
+            cambios = new Cambios(this);
+            TransactionSynchronizationManager.bindResource(this, cambios);
+            TransactionSynchronizationManager.registerSynchronization(cambios);
+        }
+        registrar.accept(cambios);
+    }
+
+    private void aplicar(Cambios cambios) {
+        // Por id
+        cambios.incidencias.forEach((id, incidencia) -> modificar(POR_ID, id, true,
+                actual -> incidencia == null ? null : masReciente(actual, incidencia)));
+
+        // Lista de todas
+        modificar(TODAS, SimpleKey.EMPTY, false, lista -> fusionar(lista, cambios.incidencias));
+
+        // Listas por usuario
+        Map<String, Map<Integer, InstantaneaIncidencia>> porEmail = new HashMap<>();
+        cambios.incidencias.forEach((id, incidencia) -> {
+            String email = incidencia != null ? incidencia.usuarioEmail() : cambios.emailsBorradas.get(id);
+            if (email != null) {
+                porEmail.computeIfAbsent(email, e -> new LinkedHashMap<>()).put(id, incidencia);
+            }
+        });
+        porEmail.forEach((email, delEmail) -> modificar(POR_EMAIL, email, false, lista -> fusionar(lista, delEmail)));
+
+        // Cambios de estado en bloque
+        if (!cambios.estados.isEmpty()) {
+            cambios.estados.forEach((id, cambio) -> modificar(POR_ID, id, false, actual -> conEstado(actual, cambio)));
+            modificar(TODAS, SimpleKey.EMPTY, false, lista -> conEstados(lista, cambios.estados));
+
+            Map<String, Map<Integer, CambioEstado>> estadosPorEmail = new HashMap<>();
+            cambios.estados.forEach((id, cambio) -> {
+                if (cambio.email() != null) {
+                    estadosPorEmail.computeIfAbsent(cambio.email(), e -> new HashMap<>()).put(id, cambio);
+                }
+            });
+            estadosPorEmail.forEach((email, delEmail) -> modificar(POR_EMAIL, email, false, lista -> conEstados(lista, delEmail)));
+        }
+
+        // Modificadas sin cargarlas
+        cambios.caducadas.forEach(id -> modificar(POR_ID, id, false, actual -> null));
+    }
+
+    /**
+     * Modifica de forma atómica una entrada de una caché
+     * @param crear si es true la función se aplica también cuando la entrada no existe (recibe null)
+     * @param cambio recibe el valor actual y devuelve el nuevo, o null para quitar la entrada
+     */
+    @SuppressWarnings("unchecked")
+    private void modificar(String nombreCache, Object clave, boolean crear, UnaryOperator<Object> cambio) {
+        Cache cache = cacheManager.getCache(nombreCache);
+        if (cache == null) {
+            return;
+        }
+
+        ConcurrentMap<Object, Object> entradas = switch (cache.getNativeCache()) {
+            case com.github.benmanes.caffeine.cache.Cache<?, ?> caffeine -> (ConcurrentMap<Object, Object>) caffeine.asMap();
+            case ConcurrentMap<?, ?> mapa -> (ConcurrentMap<Object, Object>) mapa;
+            default -> null;
+        };
+        if (entradas == null) {
+            cache.evict(clave);
+            return;
+        }
+
+        // Siempre compute: en Caffeine computeIfPresent no espera a una carga en curso de la misma clave, y el cambio
+        // se perdería dejando en caché lo cargado antes del commit
+        entradas.compute(clave, (k, actual) -> actual == null && !crear ? null : cambio.apply(actual));
+    }
+
+    private static Object masReciente(Object actual, InstantaneaIncidencia nueva) {
+        return actual instanceof InstantaneaIncidencia cacheada && cacheada.version() > nueva.version() ? cacheada : nueva;
+    }
+
+    /**
+     * Aplica un cambio de estado a la copia en caché de una incidencia. Si la copia ya es posterior al cambio se deja
+     * como está; si es anterior a la versión modificada no se puede saber cómo queda, así que se quita (null)
+     */
+    private static Object conEstado(Object actual, CambioEstado cambio) {
+        if (!(actual instanceof InstantaneaIncidencia cacheada) || cacheada.version() < cambio.version()) {
+            return null;
+        }
+        return cacheada.version() > cambio.version() ? cacheada : cacheada.conEstado(cambio.estado(), cambio.version() + 1);
+    }
+
+    /**
+     * Aplica unos cambios de estado a una lista de incidencias, sin modificar la original. Si alguno no se puede
+     * aplicar se quita la lista entera, que se volverá a cargar
+     */
+    @SuppressWarnings("unchecked")
+    private static Object conEstados(Object actual, Map<Integer, CambioEstado> cambios) {
+        if (!(actual instanceof List<?>)) {
+            return null;
+        }
+
+        List<InstantaneaIncidencia> lista = (List<InstantaneaIncidencia>) actual;
+        List<InstantaneaIncidencia> resultado = new ArrayList<>(lista.size());
+        for (InstantaneaIncidencia incidencia : lista) {
+            CambioEstado cambio = cambios.get(incidencia.id());
+            Object cambiada = cambio != null ? conEstado(incidencia, cambio) : incidencia;
+            if (cambiada == null) {
+                return null;
+            }
+            resultado.add((InstantaneaIncidencia) cambiada);
+        }
+        return Collections.unmodifiableList(resultado);
+    }
+
+    /**
+     * Aplica unos cambios a una lista de incidencias ordenada por id, sin modificar la original
+     */
+    @SuppressWarnings("unchecked")
+    private static Object fusionar(Object actual, Map<Integer, InstantaneaIncidencia> cambios) {
+        if (!(actual instanceof List<?>)) {
+            return null; // Valor inesperado: se quita la entrada y se volverá a cargar
+        }
+
+        Map<Integer, InstantaneaIncidencia> pendientes = new HashMap<>(cambios);
+        List<InstantaneaIncidencia> lista = (List<InstantaneaIncidencia>) actual;
+        List<InstantaneaIncidencia> resultado = new ArrayList<>(lista.size() + cambios.size());
+        for (InstantaneaIncidencia incidencia : lista) {
+            if (!pendientes.containsKey(incidencia.id())) {
+                resultado.add(incidencia);
+                continue;
+            }
+            InstantaneaIncidencia cambiada = pendientes.remove(incidencia.id());
+            if (cambiada != null) {
+                resultado.add((InstantaneaIncidencia) masReciente(incidencia, cambiada));
+            }
+        }
+
+        boolean anadidas = false;
+        for (InstantaneaIncidencia nueva : pendientes.values()) {
+            if (nueva != null) {
+                resultado.add(nueva);
+                anadidas = true;
+            }
+        }
+        if (anadidas) {
+            resultado.sort(Comparator.comparingInt(InstantaneaIncidencia::id));
+        }
+        return Collections.unmodifiableList(resultado);
+    }
+}
@@ -0,0 +1,203 @@
+package es.ujaen.dae.indicenciasurbanas.repositorios;
+
+import es.ujaen.dae.indicenciasurbanas.dto.RecuentoIncidencias;
+import es.ujaen.dae.indicenciasurbanas.entidades.Incidencia;
+import es.ujaen.dae.indicenciasurbanas.utils.EstadoIncidencia;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contadores en memoria del número de incidencias en cada estado, en total, por tipo de incidencia y por
+ * departamento, para los paneles de seguimiento. Se cargan de la BBDD al arrancar con una consulta agrupada
+ * y a partir de ahí se mantienen con las altas, cambios de estado y borrados, que el servicio aplica cuando
+ * se confirma su transacción. Las consultas son O(1) y no tocan la BBDD.
+ * <p>
+ * Cada contador es un LongAdder, que reparte las actualizaciones concurrentes entre celdas en lugar de
+ * hacer que todos los hilos compitan por la misma variable.
+ */
+@Component
+public class ContadoresIncidencias {
+
+    private static final EstadoIncidencia[] ESTADOS = EstadoIncidencia.values();
+
+    /**
+     * Contadores de todos los grupos. Se sustituyen enteros al recargar, así que nunca se ven a medio cargar.
+     */
+    private record Contadores(LongAdder[] totales, Map<String, LongAdder[]> porTipo, Map<String, LongAdder[]> porDpto) {
+        Contadores() {
+            this(nuevos(), new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+        }
+    }
+
+    @Autowired
+    private RepositorioIncidencias repositorioIncidencias;
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    private volatile Contadores contadores = new Contadores();
+
+    /**
+     * Carga los contadores al arrancar. Solo con el refresco del contexto de la aplicación: el del contexto hijo del
+     * servidor de gestión llega con la API ya en marcha, y las altas confirmadas entre la consulta y la sustitución
+     * se perderían
+     */
+    @EventListener
+    public void alArrancar(ContextRefreshedEvent evento) {
+        if (evento.getApplicationContext() == applicationContext) {
+            cargar();
+        }
+    }
+
+    /**
+     * Carga los contadores a partir de las incidencias que haya en la BBDD
+     */
+    public void cargar() {
+        Contadores cargados = new Contadores();
+        for (RecuentoIncidencias recuento : repositorioIncidencias.contarPorTipoDptoYEstado()) {
+            sumar(cargados, recuento.tipo(), recuento.dpto(), recuento.estado(), recuento.total());
+        }
+        contadores = cargados;
+    }
+
+    /**
+     * Cuenta una incidencia nueva
+     * @param incidencia incidencia registrada
+     */
+    public void anadir(Incidencia incidencia) {
+        sumar(contadores, incidencia.tipo().nombre(), incidencia.dpto(), incidencia.estado(), 1);
+    }
+
+    /**
+     * Descuenta una incidencia borrada
+     * @param incidencia incidencia borrada, con el estado que tenía al borrarse
+     */
+    public void quitar(Incidencia incidencia) {
+        sumar(contadores, incidencia.tipo().nombre(), incidencia.dpto(), incidencia.estado(), -1);
+    }
+
+    /**
+     * Pasa una incidencia de su estado anterior al actual
+     * @param incidencia incidencia modificada, ya con el estado nuevo
+     * @param anterior estado que tenía antes de modificarla
+     */
+    public void cambiarEstado(Incidencia incidencia, EstadoIncidencia anterior) {
+        cambiarEstado(incidencia.tipo().nombre(), incidencia.dpto(), anterior, incidencia.estado());
+    }
+
+    /**
+     * Como cambiarEstado(Incidencia, EstadoIncidencia), para cuando no se tiene la entidad cargada
+     * @param tipo nombre del tipo de la incidencia
+     * @param dpto departamento asignado
+     * @param anterior estado que tenía antes de modificarla
+     * @param nuevo estado que tiene ahora
+     */
+    public void cambiarEstado(String tipo, String dpto, EstadoIncidencia anterior, EstadoIncidencia nuevo) {
+        if (anterior == nuevo) {
+            return;
+        }
+
+        Contadores actuales = contadores;
+        sumar(actuales, tipo, dpto, anterior, -1);
+        sumar(actuales, tipo, dpto, nuevo, 1);
+    }
+
+    /**
+     * @param estado estado de las incidencias
+     * @return Número de incidencias en un estado
+     */
+    public long contar(EstadoIncidencia estado) {
+        return contadores.totales()[estado.ordinal()].sum();
+    }
+
+    /**
+     * @param tipo nombre del tipo de incidencia
+     * @param estado estado de las incidencias
+     * @return Número de incidencias de un tipo en un estado
+     */
+    public long contarPorTipo(String tipo, EstadoIncidencia estado) {
+        return contar(contadores.porTipo().get(tipo), estado);
+    }
+
+    /**
+     * @param tipo nombre del tipo de incidencia
+     * @return Número de incidencias de un tipo, en cualquier estado
+     */
+    public long contarPorTipo(String tipo) {
+        LongAdder[] grupo = contadores.porTipo().get(tipo);
+        long total = 0;
+        for (EstadoIncidencia estado : ESTADOS) {
+            total += contar(grupo, estado);
+        }
+        return total;
+    }
+
+    /**
+     * @param dpto departamento asignado
+     * @param estado estado de las incidencias
+     * @return Número de incidencias de un departamento en un estado
+     */
+    public long contarPorDpto(String dpto, EstadoIncidencia estado) {
+        return contar(contadores.porDpto().get(dpto), estado);
+    }
+
+    /**
+     * @return Número de incidencias en cada estado por nombre de tipo (solo los tipos con alguna incidencia)
+     */
+    public Map<String, Map<EstadoIncidencia, Long>> recuentoPorTipo() {
+        return recuento(contadores.porTipo());
+    }
+
+    /**
+     * @return Número de incidencias en cada estado por departamento (solo los departamentos con alguna incidencia)
+     */
+    public Map<String, Map<EstadoIncidencia, Long>> recuentoPorDpto() {
+        return recuento(contadores.porDpto());
+    }
+
+    private static void sumar(Contadores contadores, String tipo, String dpto, EstadoIncidencia estado, long cantidad) {
+        int i = estado.ordinal();
+        contadores.totales()[i].add(cantidad);
+        contadores.porTipo().computeIfAbsent(tipo, t -> nuevos())[i].add(cantidad);
+        contadores.porDpto().computeIfAbsent(dpto, d -> nuevos())[i].add(cantidad);
+    }
+
+    private static long contar(LongAdder[] grupo, EstadoIncidencia estado) {
+        return grupo != null ? grupo[estado.ordinal()].sum() : 0;
+    }
+
+    private static Map<String, Map<EstadoIncidencia, Long>> recuento(Map<String, LongAdder[]> grupos) {
+        Map<String, Map<EstadoIncidencia, Long>> recuento = new HashMap<>();
+        grupos.forEach((clave, grupo) -> {
+            Map<EstadoIncidencia, Long> porEstado = new EnumMap<>(EstadoIncidencia.class);
+            long total = 0;
+            for (EstadoIncidencia estado : ESTADOS) {
+                long cuenta = grupo[estado.ordinal()].sum();
+                porEstado.put(estado, cuenta);
+                total += cuenta;
+            }
+            // Los grupos que se han quedado sin incidencias no aparecen, igual que tras recargar
+            if (total > 0) {
+                recuento.put(clave, porEstado);
+            }
+        });
+        return recuento;
+    }
+
+    private static LongAdder[] nuevos() {
+        LongAdder[] contadores = new LongAdder[ESTADOS.length];
+        for (int i = 0; i < contadores.length; i++) {
+            contadores[i] = new LongAdder();
+        }
+        return contadores;
+    }
+}
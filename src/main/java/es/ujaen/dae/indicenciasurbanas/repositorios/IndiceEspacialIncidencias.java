@@ -0,0 +1,320 @@
+package es.ujaen.dae.indicenciasurbanas.repositorios;
+
+import es.ujaen.dae.indicenciasurbanas.dto.SituacionIncidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.Incidencia;
+import es.ujaen.dae.indicenciasurbanas.jfr.EventoComprobacionDuplicados;
+import es.ujaen.dae.indicenciasurbanas.utils.CoordenadasGps;
+import es.ujaen.dae.indicenciasurbanas.utils.DistanciaCoordenadas;
+import es.ujaen.dae.indicenciasurbanas.utils.EstadoIncidencia;
+import es.ujaen.dae.indicenciasurbanas.utils.RejillaGeografica;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Índice en memoria de las incidencias activas (PENDIENTE o EN_EVALUACION) organizado por celdas
+ * de la RejillaGeografica. Permite comprobar si hay una incidencia activa cerca de un punto revisando
+ * solo las celdas vecinas, sin leer todas las incidencias de la BBDD.
+ * Las incidencias con coordenadas fuera de rango no caben en la rejilla y se guardan aparte, revisándose siempre.
+ * Los cambios se aplican tras el commit de cada transacción, en su propio hilo, así que pueden llegar desordenados:
+ * cada uno lleva la versión (@Version) de la incidencia y se descarta si ya se ha aplicado uno igual o más reciente.
+ */
+@Component
+public class IndiceEspacialIncidencias {
+
+    record Entrada(int id, float latitud, float longitud) {}
+
+    // Versión de las incidencias borradas: no vuelven a cambiar, así que cualquier cambio que llegue después es anterior
+    private static final int VERSION_BORRADA = Integer.MAX_VALUE;
+
+    /**
+     * Contenido completo del índice. Se sustituye entero al recargar, así que nunca se ve vacío ni a medio cargar.
+     * En versiones está la última versión aplicada de cada incidencia, también de las que se han quitado, para
+     * descartar los cambios atrasados; se vacía al recargar.
+     */
+    private record Contenido(Map<Long, Map<Integer, Entrada>> celdas, Map<Integer, Entrada> fueraDeRango,
+                             Map<Integer, Entrada> porId, Map<Integer, Integer> versiones) {
+        Contenido() {
+            this(new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+        }
+    }
+
+    @Autowired
+    private RepositorioIncidencias repositorioIncidencias;
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    private volatile Contenido contenido = new Contenido();
+
+    // Mientras se recarga, los cambios se aplican al índice en uso y se apuntan en pendientes para repetirlos sobre
+    // el nuevo antes de sustituirlo; el bloqueo de escritura solo se toma al empezar y al sustituir
+    private final ReadWriteLock recarga = new ReentrantReadWriteLock();
+    private Queue<Consumer<Contenido>> pendientes;
+
+    private final LongAdder consultas = new LongAdder();
+    private final LongAdder candidatas = new LongAdder();
+
+    /**
+     * Carga el índice al arrancar. Solo con el refresco del contexto de la aplicación: el servidor de gestión
+     * (management.server.port) tiene su propio contexto hijo, cuyo refresco también llega aquí con la API ya en marcha
+     */
+    @EventListener
+    public void alArrancar(ContextRefreshedEvent evento) {
+        if (evento.getApplicationContext() == applicationContext) {
+            cargar();
+        }
+    }
+
+    /**
+     * Carga en el índice las incidencias activas que haya en la BBDD. El índice nuevo se construye aparte
+     * y sustituye al anterior de una vez, con los cambios confirmados mientras tanto ya aplicados
+     */
+    public synchronized void cargar() {
+        recarga.writeLock().lock();
+        try {
+            pendientes = new ConcurrentLinkedQueue<>();
+        } finally {
+            recarga.writeLock().unlock();
+        }
+
+        Contenido cargado = null;
+        try {
+            cargado = leerActivas();
+        } finally {
+            recarga.writeLock().lock();
+            try {
+                if (cargado != null) {
+                    for (Consumer<Contenido> cambio : pendientes) {
+                        cambio.accept(cargado);
+                    }
+                    contenido = cargado;
+                }
+                pendientes = null;
+            } finally {
+                recarga.writeLock().unlock();
+            }
+        }
+    }
+
+    private Contenido leerActivas() {
+        Contenido cargado = new Contenido();
+
+        // Solo se leen id y coordenadas, sin cargar las entidades con su usuario y tipo
+        List<EstadoIncidencia> activos = Arrays.stream(EstadoIncidencia.values())
+                .filter(IndiceEspacialIncidencias::esActivo)
+                .toList();
+        for (SituacionIncidencia situacion : repositorioIncidencias.buscarSituacionesPorEstados(activos)) {
+            anadir(cargado, new Entrada(situacion.id(), situacion.latitud(), situacion.longitud()), situacion.version());
+        }
+        return cargado;
+    }
+
+    /**
+     * Refleja en el índice el estado actual de una incidencia: si está activa se añade (o se mueve),
+     * si no, se quita
+     * @param incidencia incidencia creada o modificada, ya confirmada (con la versión que se ha guardado)
+     */
+    public void actualizar(Incidencia incidencia) {
+        CoordenadasGps coordenadas = incidencia.coordenadas();
+        actualizar(incidencia.id(), incidencia.version(), incidencia.estado(), coordenadas.latitud(), coordenadas.longitud());
+    }
+
+    /**
+     * Como actualizar(Incidencia), para cuando no se tiene la entidad cargada
+     * @param id identificador de la incidencia
+     * @param version versión guardada con ese estado
+     * @param estado estado actual
+     * @param latitud latitud en grados
+     * @param longitud longitud en grados
+     */
+    public void actualizar(int id, int version, EstadoIncidencia estado, float latitud, float longitud) {
+        if (esActivo(estado)) {
+            Entrada entrada = new Entrada(id, latitud, longitud);
+            aplicar(contenido -> anadir(contenido, entrada, version));
+        } else {
+            aplicar(contenido -> quitar(contenido, id, version));
+        }
+    }
+
+    /**
+     * Quita del índice una incidencia borrada. Los cambios suyos que lleguen después se descartan
+     * @param id identificador de la incidencia
+     */
+    public void quitar(int id) {
+        aplicar(contenido -> quitar(contenido, id, VERSION_BORRADA));
+    }
+
+    private void aplicar(Consumer<Contenido> cambio) {
+        recarga.readLock().lock();
+        try {
+            cambio.accept(contenido);
+            if (pendientes != null) {
+                pendientes.add(cambio);
+            }
+        } finally {
+            recarga.readLock().unlock();
+        }
+    }
+
+    private static void quitar(Contenido contenido, int id, int version) {
+        siEsMasReciente(contenido, id, version, () -> quitarEntrada(contenido, id));
+    }
+
+    private static void quitarEntrada(Contenido contenido, int id) {
+        Entrada entrada = contenido.porId().remove(id);
+        if (entrada == null) {
+            return;
+        }
+
+        if (!RejillaGeografica.enRango(entrada.latitud(), entrada.longitud())) {
+            contenido.fueraDeRango().remove(id);
+            return;
+        }
+
+        contenido.celdas().computeIfPresent(RejillaGeografica.celda(entrada.latitud(), entrada.longitud()), (celda, entradas) -> {
+            entradas.remove(id);
+            return entradas.isEmpty() ? null : entradas;
+        });
+    }
+
+    /**
+     * Comprueba si hay alguna incidencia activa a menos de una distancia de un punto
+     * @param coordenadas punto a comprobar
+     * @param radioMetros distancia máxima en metros
+     * @return true si hay alguna incidencia activa a menos de radioMetros (cada comprobación queda como
+     * EventoComprobacionDuplicados en las grabaciones de JFR)
+     */
+    public boolean hayIncidenciaCercana(CoordenadasGps coordenadas, double radioMetros) {
+        EventoComprobacionDuplicados evento = new EventoComprobacionDuplicados();
+        evento.begin();
+        Contenido contenido = this.contenido;
+        int revisadas = 0;
+        boolean encontrada = false;
+
+        buscar:
+        {
+            for (Entrada entrada : contenido.fueraDeRango().values()) {
+                revisadas++;
+                if (cercana(coordenadas, entrada, radioMetros)) {
+                    encontrada = true;
+                    break buscar;
+                }
+            }
+
+            long[] vecinas = RejillaGeografica.enRango(coordenadas.latitud(), coordenadas.longitud())
+                    ? RejillaGeografica.celdasCercanas(coordenadas.latitud(), coordenadas.longitud(), radioMetros)
+                    : null;
+
+            // Coordenadas fuera de rango o junto a los polos: no hay forma de acotar las celdas, se revisan todas
+            if (vecinas == null) {
+                for (Map<Integer, Entrada> entradas : contenido.celdas().values()) {
+                    for (Entrada entrada : entradas.values()) {
+                        revisadas++;
+                        if (cercana(coordenadas, entrada, radioMetros)) {
+                            encontrada = true;
+                            break buscar;
+                        }
+                    }
+                }
+                break buscar;
+            }
+
+            for (long celda : vecinas) {
+                Map<Integer, Entrada> entradas = contenido.celdas().get(celda);
+                if (entradas == null) {
+                    continue;
+                }
+                for (Entrada entrada : entradas.values()) {
+                    revisadas++;
+                    if (cercana(coordenadas, entrada, radioMetros)) {
+                        encontrada = true;
+                        break buscar;
+                    }
+                }
+            }
+        }
+
+        consultas.increment();
+        candidatas.add(revisadas);
+        evento.terminar("indice", coordenadas.latitud(), coordenadas.longitud(), revisadas, encontrada);
+        return encontrada;
+    }
+
+    /**
+     * @return Número de comprobaciones de incidencias cercanas hechas con el índice
+     */
+    public long consultas() {
+        return consultas.sum();
+    }
+
+    /**
+     * @return Número total de incidencias activas cuya distancia se ha calculado en esas comprobaciones
+     */
+    public long candidatas() {
+        return candidatas.sum();
+    }
+
+    /**
+     * @return Número de incidencias activas en el índice
+     */
+    public int tamano() {
+        return contenido.porId().size();
+    }
+
+    private static void anadir(Contenido contenido, Entrada entrada, int version) {
+        siEsMasReciente(contenido, entrada.id(), version, () -> anadirEntrada(contenido, entrada));
+    }
+
+    private static void anadirEntrada(Contenido contenido, Entrada entrada) {
+        quitarEntrada(contenido, entrada.id());
+        contenido.porId().put(entrada.id(), entrada);
+
+        if (!RejillaGeografica.enRango(entrada.latitud(), entrada.longitud())) {
+            contenido.fueraDeRango().put(entrada.id(), entrada);
+            return;
+        }
+
+        contenido.celdas().compute(RejillaGeografica.celda(entrada.latitud(), entrada.longitud()), (celda, entradas) -> {
+            Map<Integer, Entrada> resultado = entradas != null ? entradas : new ConcurrentHashMap<>();
+            resultado.put(entrada.id(), entrada);
+            return resultado;
+        });
+    }
+
+    /**
+     * Aplica un cambio de una incidencia solo si su versión es posterior a la última aplicada. Se hace dentro del
+     * compute de versiones, así que los cambios de una misma incidencia no se mezclan
+     */
+    private static void siEsMasReciente(Contenido contenido, int id, int version, Runnable cambio) {
+        contenido.versiones().compute(id, (clave, aplicada) -> {
+            if (aplicada != null && aplicada >= version) {
+                return aplicada;
+            }
+            cambio.run();
+            return version;
+        });
+    }
+
+    private static boolean cercana(CoordenadasGps coordenadas, Entrada entrada, double radioMetros) {
+        return DistanciaCoordenadas.calcularDistanciaMetros(coordenadas.latitud(), coordenadas.longitud(),
+                entrada.latitud(), entrada.longitud()) < radioMetros;
+    }
+
+    private static boolean esActivo(EstadoIncidencia estado) {
+        return estado == EstadoIncidencia.PENDIENTE || estado == EstadoIncidencia.EN_EVALUACION;
+    }
+}
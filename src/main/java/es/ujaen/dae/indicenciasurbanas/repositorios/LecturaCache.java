@@ -0,0 +1,103 @@
+package es.ujaen.dae.indicenciasurbanas.repositorios;
+
+import es.ujaen.dae.indicenciasurbanas.jfr.EventoCargaCache;
+import org.springframework.cache.Cache;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.function.Supplier;
+
+/**
+ * Lectura de las cachés de los repositorios, que guardan copias inmutables (Instantanea*) en lugar de entidades.
+ * Los repositorios acceden a la caché directamente (sin @Cacheable) para poder convertir entre entidad y copia
+ * a la entrada y a la salida.
+ * <p>
+ * Las cargas solo se guardan en caché fuera de transacciones de escritura. Dentro de una, la carga ve lo que la
+ * transacción aún no ha confirmado (o una instantánea ya antigua, con REPEATABLE READ), y guardarlo lo serviría a
+ * todos los demás; ahí se usa lo que ya haya en caché y si no está se carga sin guardarlo. Los cambios de las
+ * transacciones de escritura llegan a la caché tras el commit (ver CacheIncidencias).
+ */
+final class LecturaCache {
+
+    private LecturaCache() {}
+
+    /**
+     * Lee una clave, cargándola si no está. La carga es atómica respecto a otras cargas y modificaciones de la misma
+     * clave, y también se guarda en caché que no existe (null).
+     * @param cargar carga el valor de la BBDD; puede devolver null
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T leer(Cache cache, Object clave, Supplier<T> cargar) {
+        if (enTransaccionDeEscritura()) {
+            return leerSinGuardar(cache, clave, cargar);
+        }
+        try {
+            return (T) cache.get(clave, () -> cargar(cache, clave, cargar));
+        } catch (Cache.ValueRetrievalException e) {
+            throw causa(e);
+        }
+    }
+
+    /**
+     * Lee una clave, cargándola si no está, sin guardar en caché los valores que no existen, para las cachés
+     * cuyas altas no se llevan a la caché. La carga es atómica como en leer: si varias lecturas de la misma clave
+     * fallan a la vez solo una va a la BBDD, y no puede pisar con un valor más antiguo el que haya guardado otra.
+     * @param cargar carga el valor de la BBDD; puede devolver null
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T leerSinAusentes(Cache cache, Object clave, Supplier<T> cargar) {
+        if (enTransaccionDeEscritura()) {
+            return leerSinGuardar(cache, clave, cargar);
+        }
+        try {
+            return (T) cache.get(clave, () -> {
+                T valor = cargar(cache, clave, cargar);
+                if (valor == null) {
+                    throw Ausente.INSTANCIA; // Así no se guarda nada en la caché
+                }
+                return valor;
+            });
+        } catch (Cache.ValueRetrievalException e) {
+            if (e.getCause() == Ausente.INSTANCIA) {
+                return null;
+            }
+            throw causa(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T leerSinGuardar(Cache cache, Object clave, Supplier<T> cargar) {
+        Cache.ValueWrapper cacheado = cache.get(clave);
+        return cacheado != null ? (T) cacheado.get() : cargar(cache, clave, cargar);
+    }
+
+    private static boolean enTransaccionDeEscritura() {
+        return TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    }
+
+    /**
+     * Indica desde la carga que el valor no existe. Es siempre la misma instancia y sin traza, porque no es un error
+     */
+    private static final class Ausente extends RuntimeException {
+        static final Ausente INSTANCIA = new Ausente();
+
+        private Ausente() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static RuntimeException causa(Cache.ValueRetrievalException e) {
+        return e.getCause() instanceof RuntimeException causa ? causa : e;
+    }
+
+    /**
+     * Carga un valor registrando la carga como evento de JFR
+     */
+    private static <T> T cargar(Cache cache, Object clave, Supplier<T> cargar) {
+        EventoCargaCache evento = new EventoCargaCache();
+        evento.begin();
+        T valor = cargar.get();
+        evento.terminar(cache.getName(), clave, valor != null);
+        return valor;
+    }
+}
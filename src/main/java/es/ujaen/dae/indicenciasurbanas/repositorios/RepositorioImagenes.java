@@ -0,0 +1,77 @@
+package es.ujaen.dae.indicenciasurbanas.repositorios;
+
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Almacén de imágenes direccionado por contenido: cada imagen se identifica por el hash SHA-256 de sus bytes,
+ * de forma que guardar dos veces la misma imagen no ocupa espacio extra.
+ * La implementación por defecto guarda las imágenes en el sistema de ficheros (RepositorioImagenesFicheros).
+ */
+public interface RepositorioImagenes {
+
+    /**
+     * Guarda una imagen si no estaba ya guardada
+     * @param contenido bytes de la imagen
+     * @return Hash SHA-256 en hexadecimal con el que se podrá recuperar la imagen
+     */
+    String guardar(byte[] contenido);
+
+    /**
+     * Guarda una imagen cuyo hash ya se ha calculado con hash(byte[]), si no estaba ya guardada
+     * @param hash hash de la imagen
+     * @param contenido bytes de la imagen
+     * @return true si la imagen se ha creado en esta llamada, false si ya estaba guardada
+     */
+    boolean guardar(String hash, byte[] contenido);
+
+    /**
+     * @param contenido bytes de la imagen
+     * @return Hash SHA-256 en hexadecimal con el que se guardaría la imagen
+     */
+    String hash(byte[] contenido);
+
+    /**
+     * Guarda una imagen leyéndola de un flujo, sin cargarla entera en memoria
+     * @param contenido flujo con los bytes de la imagen (no se cierra)
+     * @return Hash SHA-256 en hexadecimal con el que se podrá recuperar la imagen
+     */
+    String guardar(InputStream contenido) throws IOException;
+
+    /**
+     * @param hash hash de la imagen
+     * @return true si hay una imagen guardada con ese hash
+     */
+    boolean existe(String hash);
+
+    /**
+     * @param hash hash de la imagen
+     * @return Tamaño de la imagen en bytes
+     */
+    long tamano(String hash) throws IOException;
+
+    /**
+     * Abre un canal para leer la imagen por partes
+     * @param hash hash de la imagen
+     * @return Canal de lectura, que debe cerrar quien lo abre
+     */
+    ReadableByteChannel abrir(String hash) throws IOException;
+
+    /**
+     * La imagen como recurso, para enviarla por partes (p. ej. en la respuesta de la API REST) sin cargarla en memoria.
+     * El fichero se abre al leer el recurso, no al crearlo
+     * @param hash hash de la imagen
+     * @return Recurso con el contenido y el tamaño de la imagen
+     */
+    Resource recurso(String hash);
+
+    /**
+     * Borra una imagen si existe. Solo debe usarse con imágenes que no referencia ninguna incidencia
+     * (p. ej. las guardadas por una transacción que se ha deshecho)
+     * @param hash hash de la imagen
+     */
+    void borrar(String hash) throws IOException;
+}
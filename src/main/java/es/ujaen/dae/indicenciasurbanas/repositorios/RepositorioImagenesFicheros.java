@@ -0,0 +1,142 @@
+package es.ujaen.dae.indicenciasurbanas.repositorios;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.*;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * RepositorioImagenes sobre el sistema de ficheros local. Cada imagen se guarda en
+ * {directorio}/{2 primeros caracteres del hash}/{hash}, escribiendo primero un fichero temporal
+ * y moviéndolo después, para que nunca se vea una imagen a medio escribir.
+ */
+@Repository
+public class RepositorioImagenesFicheros implements RepositorioImagenes {
+
+    private final Path directorio;
+
+    public RepositorioImagenesFicheros(@Value("${incidencias.imagenes.directorio:imagenes}") String directorio) {
+        this.directorio = Paths.get(directorio).toAbsolutePath();
+    }
+
+    @Override
+    public String guardar(byte[] contenido) {
+        String hash = hash(contenido);
+        guardar(hash, contenido);
+        return hash;
+    }
+
+    @Override
+    public boolean guardar(String hash, byte[] contenido) {
+        Path destino = ruta(hash);
+        if (Files.exists(destino)) {
+            return false;
+        }
+
+        try {
+            Path temporal = crearTemporal(destino);
+            Files.write(temporal, contenido);
+            return mover(temporal, destino);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public String hash(byte[] contenido) {
+        return HexFormat.of().formatHex(sha256().digest(contenido));
+    }
+
+    @Override
+    public String guardar(InputStream contenido) throws IOException {
+        // Se escribe en un temporal mientras se calcula el hash, y luego se mueve a su sitio (o se descarta si ya existía)
+        Files.createDirectories(directorio);
+        Path temporal = Files.createTempFile(directorio, "subida", ".tmp");
+        MessageDigest digest = sha256();
+        try (DigestInputStream entrada = new DigestInputStream(contenido, digest)) {
+            Files.copy(entrada, temporal, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporal);
+            throw e;
+        }
+
+        String hash = HexFormat.of().formatHex(digest.digest());
+        Path destino = ruta(hash);
+        if (Files.exists(destino)) {
+            Files.delete(temporal);
+        } else {
+            Files.createDirectories(destino.getParent());
+            mover(temporal, destino);
+        }
+        return hash;
+    }
+
+    @Override
+    public boolean existe(String hash) {
+        return Files.exists(ruta(hash));
+    }
+
+    @Override
+    public long tamano(String hash) throws IOException {
+        return Files.size(ruta(hash));
+    }
+
+    @Override
+    public ReadableByteChannel abrir(String hash) throws IOException {
+        return FileChannel.open(ruta(hash), StandardOpenOption.READ);
+    }
+
+    @Override
+    public Resource recurso(String hash) {
+        return new FileSystemResource(ruta(hash));
+    }
+
+    @Override
+    public void borrar(String hash) throws IOException {
+        Files.deleteIfExists(ruta(hash));
+    }
+
+    private Path ruta(String hash) {
+        if (!hash.matches("[0-9a-f]{64}")) {
+            throw new IllegalArgumentException("Hash de imagen no válido: " + hash);
+        }
+        return directorio.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private static Path crearTemporal(Path destino) throws IOException {
+        Files.createDirectories(destino.getParent());
+        return Files.createTempFile(destino.getParent(), destino.getFileName().toString(), ".tmp");
+    }
+
+    /**
+     * @return true si el fichero se ha movido a su sitio, false si otra petición ha guardado la misma imagen a la vez
+     */
+    private static boolean mover(Path temporal, Path destino) throws IOException {
+        try {
+            Files.move(temporal, destino, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            Files.deleteIfExists(temporal);
+            return false;
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
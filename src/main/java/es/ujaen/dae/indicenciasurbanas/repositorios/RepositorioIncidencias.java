@@ -1,34 +1,88 @@
 package es.ujaen.dae.indicenciasurbanas.repositorios;
 
+import es.ujaen.dae.indicenciasurbanas.dto.CursorIncidencias;
+import es.ujaen.dae.indicenciasurbanas.dto.IncidenciaResumen;
+import es.ujaen.dae.indicenciasurbanas.dto.Pagina;
+import es.ujaen.dae.indicenciasurbanas.dto.RecuentoIncidencias;
+import es.ujaen.dae.indicenciasurbanas.dto.SituacionIncidencia;
 import es.ujaen.dae.indicenciasurbanas.entidades.Incidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.InstantaneaIncidencia;
 import es.ujaen.dae.indicenciasurbanas.entidades.TipoIncidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.Usuario;
+import es.ujaen.dae.indicenciasurbanas.utils.CoordenadasGps;
 import es.ujaen.dae.indicenciasurbanas.utils.EstadoIncidencia;
+import es.ujaen.dae.indicenciasurbanas.utils.RejillaGeografica;
+import io.micrometer.core.annotation.Timed;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.LockModeType;
 import jakarta.persistence.PersistenceContext;
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.Cacheable;
-import org.springframework.cache.annotation.Caching; // Importante añadir esta
+import jakarta.persistence.TypedQuery;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.interceptor.SimpleKey;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
 
 @Repository
 @Transactional(propagation = Propagation.REQUIRED)
+@Timed("incidencias.repositorio") // Tiempo de cada consulta, ver ConfiguracionMetricas
 public class RepositorioIncidencias {
 
     @PersistenceContext
     EntityManager em;
 
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private RepositorioUsuarios repositorioUsuarios;
+
+    @Autowired
+    private CacheIncidencias cacheIncidencias;
+
+    private static final String SELECT_INCIDENCIA = "SELECT i FROM Incidencia i";
+
+    // Proyección por constructor: Hibernate solo lee estas columnas y el resultado no entra en el contexto de persistencia
+    private static final String SELECT_RESUMEN = "SELECT new es.ujaen.dae.indicenciasurbanas.dto.IncidenciaResumen(" +
+            "i.id, i.fecha, t.nombre, i.estado, i.coordenadas.latitud, i.coordenadas.longitud) " +
+            "FROM Incidencia i JOIN i.tipo t";
+
+    // Sin JOIN: el tipo y el usuario se leen de las claves ajenas y el bloqueo solo afecta a las filas de incidencia
+    private static final String SELECT_SITUACION = "SELECT new es.ujaen.dae.indicenciasurbanas.dto.SituacionIncidencia(" +
+            "i.id, i.version, i.estado, i.tipo.id, i.dpto, i.usuario.email, i.coordenadas.latitud, i.coordenadas.longitud) " +
+            "FROM Incidencia i";
+
     /**
      * Busca por ID. El resultado se cachea.
-     * La caché se llama "incidenciasPorId" y la clave es el id.
+     * La caché se llama "incidenciasPorId", la clave es el id y guarda una InstantaneaIncidencia (o null si no existe).
+     * La caché la mantiene CacheIncidencias; la carga es atómica para que no se cruce con su actualización.
+     * Cada llamada devuelve una incidencia nueva, no ligada a la transacción: para modificarla usar buscarParaModificar.
      */
-    @Cacheable(value = "incidenciasPorId", key = "#id", unless = "#result == null")
     @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public Optional<Incidencia> buscarPorId(int id) {
+        InstantaneaIncidencia instantanea = LecturaCache.leer(cache(CacheIncidencias.POR_ID), id, () -> {
+            Incidencia incidencia = em.find(Incidencia.class, id);
+            return incidencia != null ? InstantaneaIncidencia.de(incidencia) : null;
+        });
+        return Optional.ofNullable(instantanea).map(i -> rehidratar(List.of(i)).getFirst());
+    }
+
+    /**
+     * Busca por ID sin pasar por la caché, para modificar la incidencia dentro de la transacción en curso
+     * (los cambios se guardan por dirty checking y CacheIncidencias los lleva a las cachés).
+     */
+    public Optional<Incidencia> buscarParaModificar(int id) {
         return Optional.ofNullable(em.find(Incidencia.class, id));
     }
 
@@ -44,91 +98,430 @@ public class RepositorioIncidencias {
 
     /**
      * Busca por email del usuario. El resultado se cachea.
-     * La caché se llama "incidenciasPorEmail" y la clave es el email.
+     * La caché se llama "incidenciasPorEmail", la clave es el email y guarda una lista de InstantaneaIncidencia.
      */
-    @Cacheable(value = "incidenciasPorEmail", key = "#email", unless = "#result == null || #result.isEmpty()")
     @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public List<Incidencia> buscarPorEmailUsuario(String email) {
-        return em.createQuery("SELECT i FROM Incidencia i WHERE i.usuario.email = ?1", Incidencia.class)
-                .setParameter(1, email)
-                .getResultList();
+        return rehidratar(LecturaCache.leer(cache(CacheIncidencias.POR_EMAIL), email, () -> instantaneas(
+                em.createQuery("SELECT i FROM Incidencia i WHERE i.usuario.email = ?1 ORDER BY i.id", Incidencia.class)
+                        .setParameter(1, email)
+                        .getResultList())));
     }
 
     /**
-     * Busca por tipo. El resultado se cachea.
-     * La caché se llama "incidenciasPorTipo" y la clave es el objeto TipoIncidencia.
+     * Busca por tipo. No se cachea.
      */
     @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public List<Incidencia> buscarPorTipo(TipoIncidencia tipo) {
-        return em.createQuery("SELECT i FROM Incidencia i WHERE i.tipo = ?1", Incidencia.class)
+        return em.createQuery("SELECT i FROM Incidencia i WHERE i.tipo = ?1 ORDER BY i.id", Incidencia.class)
                 .setParameter(1, tipo)
                 .getResultList();
     }
 
     /**
-     * Busca por estado. El resultado se cachea.
-     * La caché se llama "incidenciasPorEstado" y la clave es el Enum EstadoIncidencia.
+     * Comprueba si hay alguna incidencia de un tipo, sin cargarlas. Se resuelve con el índice por tipo
+     * (idx_incidencia_tipo_fecha_id) leyendo como mucho una entrada, así que no depende de cuántas haya. No se cachea.
+     * @param tipo tipo de incidencia
+     * @return true si hay al menos una incidencia de ese tipo
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public boolean existePorTipo(TipoIncidencia tipo) {
+        return !em.createQuery("SELECT 1 FROM Incidencia i WHERE i.tipo = ?1", Integer.class)
+                .setParameter(1, tipo)
+                .setMaxResults(1)
+                .getResultList()
+                .isEmpty();
+    }
+
+    /**
+     * Cuenta las incidencias de un tipo sin cargarlas, recorriendo solo el índice por tipo. No se cachea.
+     * @param tipo tipo de incidencia
+     * @return Número de incidencias de ese tipo
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public long contarPorTipo(TipoIncidencia tipo) {
+        return em.createQuery("SELECT COUNT(i) FROM Incidencia i WHERE i.tipo = ?1", Long.class)
+                .setParameter(1, tipo)
+                .getSingleResult();
+    }
+
+    /**
+     * Busca por estado. No se cachea.
      */
     @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public List<Incidencia> buscarPorEstado(EstadoIncidencia estado) {
-        return em.createQuery("SELECT i FROM Incidencia i WHERE i.estado = ?1", Incidencia.class)
+        return em.createQuery("SELECT i FROM Incidencia i WHERE i.estado = ?1 ORDER BY i.id", Incidencia.class)
                 .setParameter(1, estado)
                 .getResultList();
     }
 
     /**
-     * Busca por tipo y estado. El resultado se cachea.
-     * La caché se llama "incidenciasPorTipoYEstado" y la clave es una combinación de tipo y estado.
+     * Busca por tipo y estado. No se cachea.
      */
     @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public List<Incidencia> buscarPorTipoYEstado(TipoIncidencia tipo, EstadoIncidencia estado) {
-        return em.createQuery("SELECT i FROM Incidencia i WHERE i.tipo = ?1 AND i.estado = ?2", Incidencia.class)
+        return em.createQuery("SELECT i FROM Incidencia i WHERE i.tipo = ?1 AND i.estado = ?2 ORDER BY i.id", Incidencia.class)
                 .setParameter(1, tipo)
                 .setParameter(2, estado)
                 .getResultList();
     }
 
+    /**
+     * Busca una página de incidencias por tipo y/o estado, de más reciente a más antigua. No se cachea.
+     * @param tipo tipo de las incidencias, o null para no filtrar por tipo
+     * @param estado estado de las incidencias, o null para no filtrar por estado
+     * @param desde cursor devuelto con la página anterior, o null para la primera página
+     * @param tamano número máximo de incidencias de la página
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public Pagina<Incidencia> buscarPaginaPorTipoYEstado(TipoIncidencia tipo, EstadoIncidencia estado,
+                                                         CursorIncidencias desde, int tamano) {
+        return buscarPagina(SELECT_INCIDENCIA, Incidencia.class, i -> new CursorIncidencias(i.fecha(), i.id()),
+                filtroTipoYEstado(tipo, estado), desde, tamano);
+    }
+
+    /**
+     * Busca una página de incidencias de un usuario, de más reciente a más antigua. No se cachea.
+     * @param email email del usuario
+     * @param desde cursor devuelto con la página anterior, o null para la primera página
+     * @param tamano número máximo de incidencias de la página
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public Pagina<Incidencia> buscarPaginaPorEmailUsuario(String email, CursorIncidencias desde, int tamano) {
+        return buscarPagina(SELECT_INCIDENCIA, Incidencia.class, i -> new CursorIncidencias(i.fecha(), i.id()),
+                Map.of("i.usuario.email", email), desde, tamano);
+    }
+
+    /**
+     * Como buscarPaginaPorTipoYEstado, pero devolviendo solo el resumen de cada incidencia. No se cachea.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public Pagina<IncidenciaResumen> buscarResumenesPorTipoYEstado(TipoIncidencia tipo, EstadoIncidencia estado,
+                                                                   CursorIncidencias desde, int tamano) {
+        return buscarPagina(SELECT_RESUMEN, IncidenciaResumen.class, IncidenciaResumen::cursor,
+                filtroTipoYEstado(tipo, estado), desde, tamano);
+    }
+
+    /**
+     * Como buscarPaginaPorEmailUsuario, pero devolviendo solo el resumen de cada incidencia. No se cachea.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public Pagina<IncidenciaResumen> buscarResumenesPorEmailUsuario(String email, CursorIncidencias desde, int tamano) {
+        return buscarPagina(SELECT_RESUMEN, IncidenciaResumen.class, IncidenciaResumen::cursor,
+                Map.of("i.usuario.email", email), desde, tamano);
+    }
+
+    /**
+     * Busca la situación (con su versión) de todas las incidencias en alguno de unos estados, ordenadas por id,
+     * sin bloquearlas. No se cachea.
+     * @param estados estados de las incidencias
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public List<SituacionIncidencia> buscarSituacionesPorEstados(List<EstadoIncidencia> estados) {
+        return em.createQuery(SELECT_SITUACION + " WHERE i.estado IN ?1 ORDER BY i.id", SituacionIncidencia.class)
+                .setParameter(1, estados)
+                .getResultList();
+    }
+
+    /**
+     * Cuenta las incidencias agrupadas por tipo, departamento y estado, sin cargar ninguna. No se cachea.
+     * @return Un recuento por cada combinación de tipo, departamento y estado con alguna incidencia
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public List<RecuentoIncidencias> contarPorTipoDptoYEstado() {
+        return em.createQuery("SELECT new es.ujaen.dae.indicenciasurbanas.dto.RecuentoIncidencias(" +
+                        "t.nombre, i.dpto, i.estado, COUNT(i)) FROM Incidencia i JOIN i.tipo t " +
+                        "GROUP BY t.nombre, i.dpto, i.estado", RecuentoIncidencias.class)
+                .getResultList();
+    }
+
+    /**
+     * Lee la situación de unas incidencias bloqueando sus filas hasta que termine la transacción, en orden de id
+     * para no cruzarse con otro bloqueo en bloque. Las que no existen no aparecen. No se cachea.
+     * @param ids identificadores de las incidencias
+     */
+    public List<SituacionIncidencia> buscarSituacionesBloqueando(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        return em.createQuery(SELECT_SITUACION + " WHERE i.id IN ?1 ORDER BY i.id", SituacionIncidencia.class)
+                .setParameter(1, ids)
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                .getResultList();
+    }
+
+    /**
+     * Como buscarSituacionesBloqueando, pero para las incidencias que cumplen un filtro
+     * @param tipo tipo de las incidencias, o null para cualquiera
+     * @param dpto departamento asignado, o null para cualquiera
+     * @param estado estado de las incidencias, o null para cualquiera
+     */
+    public List<SituacionIncidencia> buscarSituacionesBloqueando(TipoIncidencia tipo, String dpto, EstadoIncidencia estado) {
+        Map<String, Object> filtro = filtroTipoYEstado(tipo, estado);
+        if (dpto != null) {
+            filtro.put("i.dpto", dpto);
+        }
+
+        List<String> condiciones = condiciones(filtro);
+        TypedQuery<SituacionIncidencia> consulta = em.createQuery(SELECT_SITUACION +
+                        (condiciones.isEmpty() ? "" : " WHERE " + String.join(" AND ", condiciones)) +
+                        " ORDER BY i.id", SituacionIncidencia.class)
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE);
+        int n = 0;
+        for (Object valor : filtro.values()) {
+            consulta.setParameter(++n, valor);
+        }
+        return consulta.getResultList();
+    }
+
+    /**
+     * Cambia el estado de unas incidencias con una sola sentencia UPDATE, sin cargarlas. Es VERSIONED: incrementa
+     * la versión como lo haría Hibernate al guardar cada una, así que una transacción que tuviera cargada alguna de
+     * ellas fallará por conflicto de versión en lugar de pisar el cambio. Las filas deben estar bloqueadas con
+     * buscarSituacionesBloqueando, para que la situación leída siga siendo la actual.
+     * La sentencia no pasa por los listeners JPA, así que el cambio se registra aquí en CacheIncidencias, que lo
+     * aplica a las cachés tras el commit.
+     * @param situaciones situación de las incidencias antes del cambio
+     * @param estado estado nuevo
+     * @return Número de incidencias modificadas
+     */
+    public int actualizarEstados(List<SituacionIncidencia> situaciones, EstadoIncidencia estado) {
+        if (situaciones.isEmpty()) {
+            return 0;
+        }
+
+        int modificadas = em.createQuery("UPDATE VERSIONED Incidencia i SET i.estado = ?1 WHERE i.id IN ?2")
+                .setParameter(1, estado)
+                .setParameter(2, situaciones.stream().map(SituacionIncidencia::id).toList())
+                .executeUpdate();
+        for (SituacionIncidencia situacion : situaciones) {
+            cacheIncidencias.estadoCambiado(situacion.id(), situacion.usuarioEmail(), situacion.version(), estado);
+        }
+        return modificadas;
+    }
+
+    private static Map<String, Object> filtroTipoYEstado(TipoIncidencia tipo, EstadoIncidencia estado) {
+        Map<String, Object> filtro = new LinkedHashMap<>();
+        if (tipo != null) {
+            filtro.put("i.tipo", tipo);
+        }
+        if (estado != null) {
+            filtro.put("i.estado", estado);
+        }
+        return filtro;
+    }
+
+    /**
+     * Paginación por clave sobre (fecha, id): la condición sobre el cursor y el ORDER BY coinciden con los índices
+     * idx_incidencia_*_fecha_id, de modo que la BBDD salta directamente a la posición del cursor en lugar de
+     * recorrer y descartar las filas anteriores como haría un OFFSET. Se pide una fila de más para saber si hay
+     * página siguiente.
+     * @param select SELECT ... FROM Incidencia i de la consulta
+     * @param clase tipo de los resultados
+     * @param cursorDe obtiene el cursor de un resultado
+     * @param filtro condiciones de igualdad (atributo -> valor)
+     */
+    private <T> Pagina<T> buscarPagina(String select, Class<T> clase, Function<T, CursorIncidencias> cursorDe,
+                                       Map<String, Object> filtro, CursorIncidencias desde, int tamano) {
+        List<String> condiciones = condiciones(filtro);
+        List<Object> parametros = new ArrayList<>(filtro.values());
+        int n = parametros.size();
+        if (desde != null) {
+            condiciones.add("(i.fecha < ?" + (n + 1) + " OR (i.fecha = ?" + (n + 1) + " AND i.id < ?" + (n + 2) + "))");
+        }
+
+        TypedQuery<T> consulta = em.createQuery(select +
+                        (condiciones.isEmpty() ? "" : " WHERE " + String.join(" AND ", condiciones)) +
+                        " ORDER BY i.fecha DESC, i.id DESC", clase)
+                .setMaxResults(tamano + 1);
+        for (int i = 0; i < n; i++) {
+            consulta.setParameter(i + 1, parametros.get(i));
+        }
+        if (desde != null) {
+            consulta.setParameter(n + 1, desde.fecha())
+                    .setParameter(n + 2, desde.id());
+        }
+
+        List<T> resultado = consulta.getResultList();
+        if (resultado.size() <= tamano) {
+            return new Pagina<>(resultado, null);
+        }
+
+        List<T> elementos = List.copyOf(resultado.subList(0, tamano));
+        return new Pagina<>(elementos, cursorDe.apply(elementos.getLast()));
+    }
+
+    /**
+     * Condiciones de igualdad de un filtro (atributo -> valor), con parámetros ?1, ?2... en el orden del filtro
+     */
+    private static List<String> condiciones(Map<String, Object> filtro) {
+        List<String> condiciones = new ArrayList<>();
+        for (String atributo : filtro.keySet()) {
+            condiciones.add(atributo + " = ?" + (condiciones.size() + 1));
+        }
+        return condiciones;
+    }
+
+    /**
+     * Busca las coordenadas de las incidencias activas (PENDIENTE o EN_EVALUACION) dentro de la caja
+     * que rodea a un círculo. La caja se resuelve en la BBDD con el índice por estado y coordenadas, así
+     * que solo se traen los candidatos cercanos (sin usuario, tipo ni imagen); la distancia exacta la debe
+     * comprobar quien llama. No se cachea.
+     * @param centro centro del círculo
+     * @param radioMetros radio del círculo en metros
+     * @return Coordenadas de las incidencias activas dentro de la caja
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public List<CoordenadasGps> buscarCoordenadasActivasEnArea(CoordenadasGps centro, double radioMetros) {
+        List<EstadoIncidencia> activos = List.of(EstadoIncidencia.PENDIENTE, EstadoIncidencia.EN_EVALUACION);
+
+        // Fuera de rango no se puede acotar la caja: se comprueban todas las activas
+        if (!RejillaGeografica.enRango(centro.latitud(), centro.longitud())) {
+            return em.createQuery("SELECT i.coordenadas FROM Incidencia i WHERE i.estado IN ?1", CoordenadasGps.class)
+                    .setParameter(1, activos)
+                    .getResultList();
+        }
+
+        double margenLatitud = RejillaGeografica.margenLatitud(radioMetros);
+        double margenLongitud = RejillaGeografica.margenLongitud(centro.latitud(), radioMetros);
+        // Los límites se redondean hacia fuera para que el paso a float no deje fuera ningún candidato
+        float longitudMin = Math.nextDown((float) (centro.longitud() - margenLongitud));
+        float longitudMax = Math.nextUp((float) (centro.longitud() + margenLongitud));
+
+        // Cerca de los polos o del antimeridiano la caja de longitudes da la vuelta: se acota solo por latitud
+        boolean acotarLongitud = longitudMin >= -180 && longitudMax <= 180;
+
+        TypedQuery<CoordenadasGps> consulta = em.createQuery("SELECT i.coordenadas FROM Incidencia i " +
+                        "WHERE i.estado IN ?1 AND i.coordenadas.latitud BETWEEN ?2 AND ?3" +
+                        (acotarLongitud ? " AND i.coordenadas.longitud BETWEEN ?4 AND ?5" : ""), CoordenadasGps.class)
+                .setParameter(1, activos)
+                .setParameter(2, Math.nextDown((float) (centro.latitud() - margenLatitud)))
+                .setParameter(3, Math.nextUp((float) (centro.latitud() + margenLatitud)));
+        if (acotarLongitud) {
+            consulta.setParameter(4, longitudMin)
+                    .setParameter(5, longitudMax);
+        }
+        return consulta.getResultList();
+    }
+
     /**
      * Busca todas. El resultado se cachea.
-     * La caché se llama "todasIncidencias".
+     * La caché se llama "todasIncidencias" y guarda una lista de InstantaneaIncidencia.
      */
-    @Cacheable(value = "todasIncidencias", unless = "#result == null || #result.isEmpty()")
     @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public List<Incidencia> buscarTodas() {
-        return em.createQuery("SELECT i FROM Incidencia i", Incidencia.class)
+        return rehidratar(LecturaCache.leer(cache(CacheIncidencias.TODAS), SimpleKey.EMPTY, () -> instantaneas(
+                em.createQuery("SELECT i FROM Incidencia i ORDER BY i.id", Incidencia.class)
+                        .getResultList())));
+    }
+
+    private Cache cache(String nombre) {
+        return cacheManager.getCache(nombre);
+    }
+
+    private static List<InstantaneaIncidencia> instantaneas(List<Incidencia> incidencias) {
+        return incidencias.stream().map(InstantaneaIncidencia::de).toList();
+    }
+
+    /**
+     * Reconstruye incidencias a partir de sus copias en caché. Los usuarios se leen de su propia caché,
+     * una sola vez por usuario distinto.
+     */
+    private List<Incidencia> rehidratar(List<InstantaneaIncidencia> instantaneas) {
+        Map<String, Usuario> usuarios = new HashMap<>();
+        List<Incidencia> incidencias = new ArrayList<>(instantaneas.size());
+        for (InstantaneaIncidencia instantanea : instantaneas) {
+            Usuario usuario = instantanea.usuarioEmail() == null ? null : usuarios.computeIfAbsent(instantanea.usuarioEmail(),
+                    email -> repositorioUsuarios.buscar(email).orElse(null));
+            incidencias.add(instantanea.incidencia(usuario));
+        }
+        return incidencias;
+    }
+
+    /**
+     * Busca las incidencias que aún tienen la imagen en la columna antigua (BLOB). No se cachea.
+     * @param maximo número máximo de identificadores a devolver
+     * @return Identificadores de las incidencias con imagen pendiente de migrar
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public List<Integer> buscarIdsConImagenSinMigrar(int maximo) {
+        return em.createQuery("SELECT i.id FROM Incidencia i WHERE i.imagen IS NOT NULL ORDER BY i.id", Integer.class)
+                .setMaxResults(maximo)
                 .getResultList();
     }
 
+    /**
+     * Lee la imagen de la columna antigua de una incidencia, sin cargar la entidad. No se cachea.
+     * @param id identificador de la incidencia
+     * @return Contenido de la imagen, o vacío si no tiene imagen pendiente de migrar
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public Optional<byte[]> buscarImagenSinMigrar(int id) {
+        return em.createQuery("SELECT i.imagen FROM Incidencia i WHERE i.id = ?1 AND i.imagen IS NOT NULL", byte[].class)
+                .setParameter(1, id)
+                .getResultStream()
+                .findFirst();
+    }
+
     /**
      * Guarda una incidencia.
-     * Evicta (limpia) todos los cachés de listas, ya que su contenido ha cambiado.
+     * Tras el commit, CacheIncidencias la añade a las cachés de listas que estén cargadas.
      */
     public void guardar(Incidencia incidencia) {
         em.persist(incidencia);
     }
 
+    /**
+     * Guarda un lote de incidencias. Los INSERT se agrupan en lotes JDBC (hibernate.jdbc.batch_size)
+     * al hacer flush, en lugar de ir uno a uno a la BBDD.
+     * El id de Usuario es el email, asignado por la aplicación, así que al persistir una incidencia cuyo usuario no está
+     * en el contexto de persistencia Hibernate lo consulta para saber si existe, una vez por usuario. Para evitarlo los
+     * usuarios del lote se cargan antes todos juntos (de la caché de segundo nivel o con una sola consulta) y se ponen
+     * en las incidencias.
+     */
+    public void guardarTodas(List<Incidencia> incidencias) {
+        List<String> emails = incidencias.stream().map(incidencia -> incidencia.usuario().email()).distinct().toList();
+        Map<String, Usuario> usuarios = new HashMap<>();
+        for (Usuario usuario : em.unwrap(Session.class).byMultipleIds(Usuario.class).multiLoad(emails)) {
+            if (usuario != null) {
+                usuarios.put(usuario.email(), usuario);
+            }
+        }
+        for (Incidencia incidencia : incidencias) {
+            incidencia.usuario(usuarios.getOrDefault(incidencia.usuario().email(), incidencia.usuario()));
+            em.persist(incidencia);
+        }
+        em.flush();
+    }
+
+    /**
+     * Guarda los hashes de las variantes reducidas de la imagen de una incidencia, sin cargarla.
+     * Tras el commit CacheIncidencias la quita de la caché por ID (antes, una lectura concurrente podría volver a
+     * cachear la copia sin las variantes). Las listas cacheadas no se tocan: las variantes solo se consultan a través
+     * de buscarPorId.
+     * No cambia la versión: las variantes no afectan a quien esté modificando la incidencia a la vez.
+     */
+    public void actualizarVariantesImagen(int id, String hashMiniatura, String hashVistaPrevia) {
+        em.createQuery("UPDATE Incidencia i SET i.hashMiniatura = ?1, i.hashVistaPrevia = ?2 WHERE i.id = ?3")
+                .setParameter(1, hashMiniatura)
+                .setParameter(2, hashVistaPrevia)
+                .setParameter(3, id)
+                .executeUpdate();
+        cacheIncidencias.caducada(id);
+    }
+
     /**
      * Actualiza una incidencia.
-     * Evict (limpia) el caché de esta incidencia por ID y también
-     * todos los cachés de listas, ya que el estado, tipo, etc., porque podrían haber cambiado.
+     * Tras el commit, CacheIncidencias la sustituye en la caché por ID y en las listas cacheadas que la contengan.
      */
-    @Caching(evict = {
-            @CacheEvict(value = "incidenciasPorId", key = "#incidencia.id()"),
-            @CacheEvict(value = {"todasIncidencias", "incidenciasPorEmail", "incidenciasPorTipo", "incidenciasPorEstado", "incidenciasPorTipoYEstado"}, allEntries = true)
-    })
     public Incidencia actualizar(Incidencia incidencia) {
         return em.merge(incidencia);
     }
 
     /**
      * Borra una incidencia.
-     * Evict (limpia) el caché de esta incidencia por ID y también
-     * todos los cachés de listas.
+     * Tras el commit, CacheIncidencias la quita de la caché por ID y de las listas cacheadas.
      */
-    @Caching(evict = {
-            @CacheEvict(value = "incidenciasPorId", key = "#incidencia.id()"),
-            @CacheEvict(value = {"todasIncidencias", "incidenciasPorEmail", "incidenciasPorTipo", "incidenciasPorEstado", "incidenciasPorTipoYEstado"}, allEntries = true)
-    })
     public void borrar(Incidencia incidencia) {
         em.remove(em.merge(incidencia));
     }
@@ -1,13 +1,17 @@
 package es.ujaen.dae.indicenciasurbanas.repositorios;
 
+import es.ujaen.dae.indicenciasurbanas.entidades.InstantaneaTipoIncidencia;
 import es.ujaen.dae.indicenciasurbanas.entidades.TipoIncidencia;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
+import org.hibernate.jpa.HibernateHints;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.interceptor.SimpleKey;
 import org.springframework.cache.annotation.Caching;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Propagation;
@@ -19,46 +23,62 @@ public class RepositorioTipoIncidencia {
     @PersistenceContext
     EntityManager em;
 
+    @Autowired
+    private CacheManager cacheManager;
+
     /**
      * Busca por ID. El resultado se cachea.
-     * La caché se llama "tiposPorId" y la clave es el propio id.
+     * La caché se llama "tiposPorId", la clave es el propio id y guarda una InstantaneaTipoIncidencia.
      */
-    @Cacheable(value = "tiposPorId", key = "#id", unless = "#result == null")
     @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public Optional<TipoIncidencia> buscarPorId(int id) {
-        return Optional.ofNullable(em.find(TipoIncidencia.class, id));
+        InstantaneaTipoIncidencia instantanea = LecturaCache.leerSinAusentes(cacheManager.getCache("tiposPorId"), id, () -> {
+            TipoIncidencia tipo = em.find(TipoIncidencia.class, id);
+            return tipo != null ? InstantaneaTipoIncidencia.de(tipo) : null;
+        });
+        return Optional.ofNullable(instantanea).map(InstantaneaTipoIncidencia::tipoIncidencia);
     }
 
     /**
      * Busca por nombre. El resultado se cachea.
-     * La caché se llama "tiposPorNombre" y la clave es el nombre.
+     * La caché se llama "tiposPorNombre", la clave es el nombre y guarda una InstantaneaTipoIncidencia.
+     * La consulta va además a la caché de consultas de Hibernate, que también recuerda los nombres que no existen.
      */
-    @Cacheable(value = "tiposPorNombre", key = "#nombre", unless = "#result == null")
     @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public Optional<TipoIncidencia> buscarPorNombre(String nombre) {
-        List<TipoIncidencia> resultados = em.createQuery(
-                        "SELECT t FROM TipoIncidencia t WHERE t.nombre = :nombre", TipoIncidencia.class)
-                .setParameter("nombre", nombre)
-                .getResultList();
+        InstantaneaTipoIncidencia instantanea = LecturaCache.leerSinAusentes(cacheManager.getCache("tiposPorNombre"), nombre, () -> {
+            List<TipoIncidencia> resultados = em.createQuery(
+                            "SELECT t FROM TipoIncidencia t WHERE t.nombre = :nombre", TipoIncidencia.class)
+                    .setParameter("nombre", nombre)
+                    .setHint(HibernateHints.HINT_CACHEABLE, true)
+                    .getResultList();
 
-        return resultados.isEmpty() ? Optional.empty() : Optional.of(resultados.get(0));
+            return resultados.isEmpty() ? null : InstantaneaTipoIncidencia.de(resultados.get(0));
+        });
+        return Optional.ofNullable(instantanea).map(InstantaneaTipoIncidencia::tipoIncidencia);
     }
 
     /**
      * Busca todos. El resultado se cachea.
-     * La caché se llama "todosTipos" y guarda la lista completa.
+     * La caché se llama "todosTipos" y guarda la lista completa de InstantaneaTipoIncidencia.
+     * La consulta va además a la caché de consultas de Hibernate.
      */
-    @Cacheable(value = "todosTipos", unless = "#result == null || #result.isEmpty()")
     @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public List<TipoIncidencia> buscarTodos() {
-        return em.createQuery("SELECT t FROM TipoIncidencia t", TipoIncidencia.class)
-                .getResultList();
+        List<InstantaneaTipoIncidencia> instantaneas = LecturaCache.leer(cacheManager.getCache("todosTipos"), SimpleKey.EMPTY, () ->
+                em.createQuery("SELECT t FROM TipoIncidencia t", TipoIncidencia.class)
+                        .setHint(HibernateHints.HINT_CACHEABLE, true)
+                        .getResultStream()
+                        .map(InstantaneaTipoIncidencia::de)
+                        .toList());
+        return instantaneas.stream().map(InstantaneaTipoIncidencia::tipoIncidencia).toList();
     }
 
     /**
      * Al guardar, borramos la caché "todosTipos" porque la lista ha cambiado.
      * No borramos las otras, ya que es un elemento nuevo.
      */
+    @CacheEvict(value = "todosTipos", allEntries = true)
     public void guardar(TipoIncidencia tipoIncidencia) {
         em.persist(tipoIncidencia);
     }
@@ -1,5 +1,6 @@
 package es.ujaen.dae.indicenciasurbanas.repositorios;
 
+import es.ujaen.dae.indicenciasurbanas.entidades.InstantaneaUsuario;
 import es.ujaen.dae.indicenciasurbanas.entidades.Usuario;
 import es.ujaen.dae.indicenciasurbanas.excepciones.UsuarioYaRegistrado;
 import jakarta.persistence.EntityManager;
@@ -8,7 +9,8 @@ import java.util.Optional;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.cache.annotation.Cacheable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CacheEvict;
 
 @Repository
@@ -18,15 +20,21 @@ public class RepositorioUsuarios {
     @PersistenceContext
     EntityManager em;
 
+    @Autowired
+    private CacheManager cacheManager;
+
     /**
      * Busca un usuario por su email (PK).
-     * El resultado se cachea en "usuarios" usando el email como clave.
-     * Esto acelera muchísimo el login.
+     * El resultado se cachea en "usuarios" usando el email como clave, como InstantaneaUsuario.
+     * Esto acelera muchísimo el login. Cada llamada devuelve un Usuario nuevo, no ligado a la transacción.
      */
-    @Cacheable(value = "usuarios", key = "#email", unless = "#result == null")
     @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public Optional<Usuario> buscar(String email) {
-        return Optional.ofNullable(em.find(Usuario.class, email));
+        InstantaneaUsuario instantanea = LecturaCache.leerSinAusentes(cacheManager.getCache("usuarios"), email, () -> {
+            Usuario usuario = em.find(Usuario.class, email);
+            return usuario != null ? InstantaneaUsuario.de(usuario) : null;
+        });
+        return Optional.ofNullable(instantanea).map(InstantaneaUsuario::usuario);
     }
 
     /**
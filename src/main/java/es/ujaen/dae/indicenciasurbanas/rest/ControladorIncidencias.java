@@ -0,0 +1,210 @@
+package es.ujaen.dae.indicenciasurbanas.rest;
+
+import es.ujaen.dae.indicenciasurbanas.dto.CursorIncidencias;
+import es.ujaen.dae.indicenciasurbanas.dto.IncidenciaResumen;
+import es.ujaen.dae.indicenciasurbanas.dto.Pagina;
+import es.ujaen.dae.indicenciasurbanas.entidades.Incidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.TipoIncidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.Usuario;
+import es.ujaen.dae.indicenciasurbanas.excepciones.*;
+import es.ujaen.dae.indicenciasurbanas.rest.dto.DCambioEstado;
+import es.ujaen.dae.indicenciasurbanas.rest.dto.DIncidencia;
+import es.ujaen.dae.indicenciasurbanas.rest.dto.DNuevaIncidencia;
+import es.ujaen.dae.indicenciasurbanas.rest.dto.DTipoIncidencia;
+import es.ujaen.dae.indicenciasurbanas.rest.dto.DUsuario;
+import es.ujaen.dae.indicenciasurbanas.servicios.ServicioIncidencia;
+import es.ujaen.dae.indicenciasurbanas.utils.EstadoIncidencia;
+import es.ujaen.dae.indicenciasurbanas.utils.VarianteImagen;
+import jakarta.validation.ConstraintViolationException;
+import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.Resource;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * API REST sobre ServicioIncidencia. Las operaciones de usuarios registrados se autentican con HTTP Basic
+ * (ver ResolvedorUsuarioAutenticado); registrarse y consultar los tipos de incidencia no necesitan credenciales.
+ * <p>
+ * Cada petición se atiende en un hilo virtual (spring.threads.virtual.enabled), así que las esperas a la BBDD
+ * no ocupan hilos del sistema.
+ */
+@RestController
+@RequestMapping("/incidencias")
+public class ControladorIncidencias {
+    private static final int TAMANO_PAGINA = 50; // Tamaño de página si no se indica
+
+    @Autowired
+    private ServicioIncidencia servicioIncidencia;
+
+    @Autowired
+    private Mapeador mapeador;
+
+    // Usuarios
+
+    @PostMapping("/usuarios")
+    public ResponseEntity<Void> nuevoUsuario(@RequestBody @Valid DUsuario usuario) {
+        servicioIncidencia.nuevoUsuario(mapeador.entidad(usuario));
+        return ResponseEntity.created(URI.create("/incidencias/usuarios/" + usuario.email())).build();
+    }
+
+    /**
+     * Login: devuelve los datos del usuario si las credenciales son las suyas
+     */
+    @GetMapping("/usuarios/{email}")
+    public DUsuario login(Usuario usuario, @PathVariable String email) {
+        comprobarMismoUsuario(usuario, email);
+        return mapeador.dto(usuario);
+    }
+
+    @GetMapping("/usuarios/{email}/incidencias")
+    public Pagina<IncidenciaResumen> incidenciasUsuario(Usuario usuario, @PathVariable String email,
+                                                        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime desdeFecha,
+                                                        @RequestParam(required = false) Integer desdeId,
+                                                        @RequestParam(defaultValue = "" + TAMANO_PAGINA) int tamano) {
+        comprobarMismoUsuario(usuario, email);
+        return servicioIncidencia.obtenerResumenesIncidenciasUsuario(usuario, cursor(desdeFecha, desdeId), tamano);
+    }
+
+    // Tipos de incidencia
+
+    @GetMapping("/tipos")
+    public List<DTipoIncidencia> tiposIncidencia() {
+        return servicioIncidencia.obtenerTiposIncidencia().stream().map(mapeador::dto).toList();
+    }
+
+    @PostMapping("/tipos")
+    public ResponseEntity<Void> nuevoTipoIncidencia(Usuario usuario, @RequestBody @Valid DTipoIncidencia tipo) {
+        servicioIncidencia.crearTipoIncidencia(usuario, tipo.nombre());
+        return ResponseEntity.created(URI.create("/incidencias/tipos/" + tipo.nombre())).build();
+    }
+
+    @DeleteMapping("/tipos/{nombre}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void borrarTipoIncidencia(Usuario usuario, @PathVariable String nombre) {
+        servicioIncidencia.borrarTipoIncidencia(usuario, tipo(nombre));
+    }
+
+    // Incidencias
+
+    @PostMapping(path = "/incidencias", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<DIncidencia> nuevaIncidencia(Usuario usuario, @RequestBody @Valid DNuevaIncidencia incidencia) {
+        return registrar(usuario, incidencia, null);
+    }
+
+    /**
+     * Registro con foto: petición multipart con la parte "incidencia" (JSON) y la parte "foto"
+     */
+    @PostMapping(path = "/incidencias", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<DIncidencia> nuevaIncidencia(Usuario usuario, @RequestPart("incidencia") @Valid DNuevaIncidencia incidencia,
+                                                       @RequestPart(name = "foto", required = false) MultipartFile foto) throws IOException {
+        return registrar(usuario, incidencia, foto != null && !foto.isEmpty() ? foto.getBytes() : null);
+    }
+
+    private ResponseEntity<DIncidencia> registrar(Usuario usuario, DNuevaIncidencia incidencia, byte[] foto) {
+        Incidencia registrada = servicioIncidencia.nuevaIncidencia(
+                incidencia.fecha() != null ? incidencia.fecha() : LocalDateTime.now(), tipo(incidencia.tipo()),
+                incidencia.descripcion(), incidencia.localizacion(), incidencia.latitud(), incidencia.longitud(),
+                incidencia.dpto(), usuario, foto);
+        return ResponseEntity.created(URI.create("/incidencias/incidencias/" + registrada.id())).body(mapeador.dto(registrada));
+    }
+
+    @GetMapping("/incidencias")
+    public Pagina<IncidenciaResumen> buscarIncidencias(Usuario usuario,
+                                                       @RequestParam(required = false) String tipo,
+                                                       @RequestParam(required = false) EstadoIncidencia estado,
+                                                       @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime desdeFecha,
+                                                       @RequestParam(required = false) Integer desdeId,
+                                                       @RequestParam(defaultValue = "" + TAMANO_PAGINA) int tamano) {
+        return servicioIncidencia.buscarResumenesTipoEstado(tipo != null ? tipo(tipo) : null, estado,
+                cursor(desdeFecha, desdeId), tamano);
+    }
+
+    @GetMapping("/incidencias/{id}")
+    public DIncidencia incidencia(Usuario usuario, @PathVariable int id) {
+        return mapeador.dto(incidencia(id));
+    }
+
+    /**
+     * La imagen se copia del almacén a la respuesta por partes, sin cargarla entera en memoria
+     */
+    @GetMapping("/incidencias/{id}/imagen")
+    public ResponseEntity<Resource> imagen(Usuario usuario, @PathVariable int id,
+                                           @RequestParam(defaultValue = "ORIGINAL") VarianteImagen variante) {
+        return servicioIncidencia.obtenerImagen(incidencia(id), variante)
+                .map(imagen -> ResponseEntity.ok().contentType(MediaType.APPLICATION_OCTET_STREAM).body(imagen))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @PutMapping("/incidencias/{id}/estado")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void modificarEstado(Usuario usuario, @PathVariable int id, @RequestBody @Valid DCambioEstado cambio) {
+        servicioIncidencia.modificarEstadoIncidencia(usuario, cambio.estado(), incidencia(id));
+    }
+
+    @DeleteMapping("/incidencias/{id}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void borrarIncidencia(Usuario usuario, @PathVariable int id) {
+        if (!servicioIncidencia.borrarIncidencia(usuario, incidencia(id))) {
+            throw new AccionNoAutorizada();
+        }
+    }
+
+    // Errores
+
+    @ExceptionHandler(CredencialesNoValidas.class)
+    public ResponseEntity<Void> credencialesNoValidas() {
+        return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                .header(HttpHeaders.WWW_AUTHENTICATE, "Basic realm=\"incidencias\"")
+                .build();
+    }
+
+    @ExceptionHandler(AccionNoAutorizada.class)
+    @ResponseStatus(HttpStatus.FORBIDDEN)
+    public void accionNoAutorizada() {
+    }
+
+    @ExceptionHandler({IncidenciaNoExiste.class, TipoIncidenciaNoExiste.class})
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    public void noExiste() {
+    }
+
+    @ExceptionHandler({UsuarioYaRegistrado.class, TipoIncidenciaExiste.class, TipoIncidenciaEnUso.class,
+            IncidenciaEnCurso.class, TransicionNoPermitida.class, IncidenciaEnConflicto.class})
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public void conflicto() {
+    }
+
+    @ExceptionHandler(ConstraintViolationException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public void datosNoValidos() {
+    }
+
+    private void comprobarMismoUsuario(Usuario usuario, String email) {
+        if (!usuario.email().equals(email)) {
+            throw new AccionNoAutorizada();
+        }
+    }
+
+    private TipoIncidencia tipo(String nombre) {
+        return servicioIncidencia.obtenerTipoIncidencia(nombre).orElseThrow(TipoIncidenciaNoExiste::new);
+    }
+
+    private Incidencia incidencia(int id) {
+        return servicioIncidencia.buscarIncidencia(id).orElseThrow(IncidenciaNoExiste::new);
+    }
+
+    private static CursorIncidencias cursor(LocalDateTime desdeFecha, Integer desdeId) {
+        return desdeFecha != null && desdeId != null ? new CursorIncidencias(desdeFecha, desdeId) : null;
+    }
+}
@@ -0,0 +1,36 @@
+package es.ujaen.dae.indicenciasurbanas.rest;
+
+import es.ujaen.dae.indicenciasurbanas.entidades.Incidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.TipoIncidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.Usuario;
+import es.ujaen.dae.indicenciasurbanas.rest.dto.DIncidencia;
+import es.ujaen.dae.indicenciasurbanas.rest.dto.DTipoIncidencia;
+import es.ujaen.dae.indicenciasurbanas.rest.dto.DUsuario;
+import org.springframework.stereotype.Component;
+
+/**
+ * Conversión entre las entidades y los DTO de la API REST
+ */
+@Component
+public class Mapeador {
+
+    public DUsuario dto(Usuario usuario) {
+        return new DUsuario(usuario.nombre(), usuario.apellido(), usuario.fNacimiento(), usuario.direccion(),
+                usuario.telefono(), usuario.email(), null);
+    }
+
+    public Usuario entidad(DUsuario usuario) {
+        return new Usuario(usuario.nombre(), usuario.apellido(), usuario.fNacimiento(), usuario.direccion(),
+                usuario.telefono(), usuario.email(), usuario.clave());
+    }
+
+    public DTipoIncidencia dto(TipoIncidencia tipo) {
+        return new DTipoIncidencia(tipo.nombre());
+    }
+
+    public DIncidencia dto(Incidencia incidencia) {
+        return new DIncidencia(incidencia.id(), incidencia.fecha(), incidencia.tipo().nombre(), incidencia.descripcion(),
+                incidencia.localizacion(), incidencia.coordenadas().latitud(), incidencia.coordenadas().longitud(),
+                incidencia.estado(), incidencia.dpto(), incidencia.usuario().email(), incidencia.hashImagen() != null);
+    }
+}
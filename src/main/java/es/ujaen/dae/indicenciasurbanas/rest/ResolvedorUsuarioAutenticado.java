@@ -0,0 +1,64 @@
+package es.ujaen.dae.indicenciasurbanas.rest;
+
+import es.ujaen.dae.indicenciasurbanas.entidades.Usuario;
+import es.ujaen.dae.indicenciasurbanas.excepciones.CredencialesNoValidas;
+import es.ujaen.dae.indicenciasurbanas.servicios.ServicioIncidencia;
+import jakarta.validation.ConstraintViolationException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Resuelve los parámetros de tipo Usuario de los controladores con el usuario de la cabecera Authorization
+ * (autenticación HTTP Basic: email y clave), comprobado con ServicioIncidencia.login. Si no viene o no es válido
+ * se lanza CredencialesNoValidas (401).
+ */
+@Component
+public class ResolvedorUsuarioAutenticado implements HandlerMethodArgumentResolver {
+    private static final String BASIC = "Basic ";
+
+    @Autowired
+    private ServicioIncidencia servicioIncidencia;
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        return parameter.getParameterType() == Usuario.class;
+    }
+
+    @Override
+    public Usuario resolveArgument(MethodParameter parameter, ModelAndViewContainer mavContainer,
+                                   NativeWebRequest webRequest, WebDataBinderFactory binderFactory) {
+        String cabecera = webRequest.getHeader(HttpHeaders.AUTHORIZATION);
+        if (cabecera == null || !cabecera.regionMatches(true, 0, BASIC, 0, BASIC.length())) {
+            throw new CredencialesNoValidas();
+        }
+
+        String credenciales;
+        try {
+            credenciales = new String(Base64.getDecoder().decode(cabecera.substring(BASIC.length()).trim()), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new CredencialesNoValidas();
+        }
+
+        int separador = credenciales.indexOf(':');
+        if (separador < 0) {
+            throw new CredencialesNoValidas();
+        }
+
+        try {
+            return servicioIncidencia.login(credenciales.substring(0, separador), credenciales.substring(separador + 1))
+                    .orElseThrow(CredencialesNoValidas::new);
+        } catch (ConstraintViolationException e) {
+            // Email mal formado o clave vacía
+            throw new CredencialesNoValidas();
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package es.ujaen.dae.indicenciasurbanas.rest.dto;
+
+import es.ujaen.dae.indicenciasurbanas.utils.EstadoIncidencia;
+import jakarta.validation.constraints.NotNull;
+
+/**
+ * Nuevo estado de una incidencia (PUT /incidencias/incidencias/{id}/estado)
+ */
+public record DCambioEstado(@NotNull EstadoIncidencia estado) {
+}
@@ -0,0 +1,23 @@
+package es.ujaen.dae.indicenciasurbanas.rest.dto;
+
+import es.ujaen.dae.indicenciasurbanas.utils.EstadoIncidencia;
+
+import java.time.LocalDateTime;
+
+/**
+ * Incidencia tal como la devuelve la API REST. La imagen se pide aparte (GET /incidencias/incidencias/{id}/imagen).
+ * @param usuario email del usuario que la registró
+ * @param imagen si tiene imagen
+ */
+public record DIncidencia(int id,
+                          LocalDateTime fecha,
+                          String tipo,
+                          String descripcion,
+                          String localizacion,
+                          float latitud,
+                          float longitud,
+                          EstadoIncidencia estado,
+                          String dpto,
+                          String usuario,
+                          boolean imagen) {
+}
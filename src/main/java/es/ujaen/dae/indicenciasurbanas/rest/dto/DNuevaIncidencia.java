@@ -0,0 +1,20 @@
+package es.ujaen.dae.indicenciasurbanas.rest.dto;
+
+import jakarta.validation.constraints.NotBlank;
+
+import java.time.LocalDateTime;
+
+/**
+ * Datos para registrar una incidencia por la API REST. El usuario es el autenticado y la foto, si la hay, va en su
+ * propia parte de la petición multipart.
+ * @param fecha fecha de la incidencia, o null para la actual
+ * @param tipo nombre del tipo de incidencia
+ */
+public record DNuevaIncidencia(LocalDateTime fecha,
+                               @NotBlank String tipo,
+                               @NotBlank String descripcion,
+                               @NotBlank String localizacion,
+                               float latitud,
+                               float longitud,
+                               @NotBlank String dpto) {
+}
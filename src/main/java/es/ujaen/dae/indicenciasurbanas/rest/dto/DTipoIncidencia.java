@@ -0,0 +1,9 @@
+package es.ujaen.dae.indicenciasurbanas.rest.dto;
+
+import jakarta.validation.constraints.NotBlank;
+
+/**
+ * Tipo de incidencia en la API REST (se identifica por su nombre)
+ */
+public record DTipoIncidencia(@NotBlank String nombre) {
+}
@@ -0,0 +1,21 @@
+package es.ujaen.dae.indicenciasurbanas.rest.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import jakarta.validation.constraints.Email;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+
+import java.time.LocalDate;
+
+/**
+ * Usuario tal como se recibe y se devuelve por la API REST. La clave solo se recibe (al registrarse): en las
+ * respuestas va a null y no se incluye.
+ */
+public record DUsuario(@NotBlank String nombre,
+                       @NotBlank String apellido,
+                       @NotNull LocalDate fNacimiento,
+                       @NotBlank String direccion,
+                       String telefono,
+                       @NotBlank @Email String email,
+                       @JsonInclude(JsonInclude.Include.NON_NULL) String clave) {
+}
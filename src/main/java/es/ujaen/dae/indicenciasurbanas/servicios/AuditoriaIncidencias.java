@@ -0,0 +1,35 @@
+package es.ujaen.dae.indicenciasurbanas.servicios;
+
+import es.ujaen.dae.indicenciasurbanas.dto.EventoIncidencia;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Deja constancia de cada alta, cambio de estado y borrado de incidencias en el log "auditoria.incidencias",
+ * una línea por evento. Recibe los eventos del BusEventosIncidencia, así que no suma a la latencia de las peticiones.
+ */
+@Component
+public class AuditoriaIncidencias implements SuscriptorEventosIncidencia {
+    private static final Logger log = LoggerFactory.getLogger("auditoria.incidencias");
+
+    @Override
+    public void procesar(List<EventoIncidencia> lote) {
+        if (!log.isInfoEnabled()) {
+            return;
+        }
+
+        for (EventoIncidencia evento : lote) {
+            switch (evento.accion()) {
+                case REGISTRADA -> log.info("{} incidencia {} ({}, {}) registrada por {}", evento.instante(),
+                        evento.id(), evento.tipo(), evento.dpto(), evento.usuarioEmail());
+                case ESTADO_CAMBIADO -> log.info("{} incidencia {} ({}, {}) pasa de {} a {}", evento.instante(),
+                        evento.id(), evento.tipo(), evento.dpto(), evento.estadoAnterior(), evento.estado());
+                case BORRADA -> log.info("{} incidencia {} ({}, {}) borrada en estado {}", evento.instante(),
+                        evento.id(), evento.tipo(), evento.dpto(), evento.estado());
+            }
+        }
+    }
+}
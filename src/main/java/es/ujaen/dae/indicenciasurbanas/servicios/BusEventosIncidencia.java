@@ -0,0 +1,379 @@
+package es.ujaen.dae.indicenciasurbanas.servicios;
+
+import es.ujaen.dae.indicenciasurbanas.dto.EventoIncidencia;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reparte los eventos de las incidencias (altas, cambios de estado, borrados) a los suscriptores que reaccionan a
+ * ellos (auditoría, avisos...) fuera del hilo de la petición. El servicio publica cada evento cuando se confirma su
+ * transacción, así que los de transacciones deshechas nunca llegan; publicar solo cuesta escribirlo en el anillo.
+ * <p>
+ * Los eventos se guardan en un anillo de tamaño fijo reservado al arrancar (incidencias.eventos.capacidad, redondeada
+ * a potencia de 2) y sin cerrojos: los que publican se reservan la siguiente posición con un CAS sobre el cursor, y
+ * cada suscriptor tiene su propio hilo y su propia secuencia con lo último que ha procesado. Un suscriptor recoge de
+ * una vez todo lo publicado desde su último lote (hasta incidencias.eventos.lote-maximo), de modo que cuando va con
+ * retraso lo recupera procesando lotes más grandes. Un suscriptor sin eventos se duerme sin plazo después de unas
+ * vueltas de espera activa, y quien publica solo lo despierta si hay alguno dormido.
+ * <p>
+ * Si el suscriptor más lento va una vuelta entera por detrás, el anillo está lleno: quien publica espera a que quede
+ * sitio hasta incidencias.eventos.espera-si-lleno y, si no lo hay, descarta el evento y lo cuenta en descartados().
+ */
+@Component
+public class BusEventosIncidencia {
+    private static final Logger log = LoggerFactory.getLogger(BusEventosIncidencia.class);
+
+    private static final long NANOS_ESPERA_PUBLICAR = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final int ESPERAS_ACTIVAS = 100; // Vueltas sin dormir antes de que un suscriptor sin eventos se duerma
+
+    private final EventoIncidencia[] eventos;
+    // Vuelta del anillo (secuencia / capacidad) del último evento publicado en cada posición
+    private final AtomicIntegerArray vueltas;
+    private final int mascara;
+    private final int bitsCapacidad;
+    private final int loteMaximo;
+    private final long nanosEsperaSiLleno;
+
+    // Última secuencia reservada por los que publican
+    private final AtomicLong cursor = new AtomicLong(-1);
+    // Cota inferior de lo procesado por el suscriptor más lento, para no recorrerlos en cada publicación
+    private volatile long minimoProcesado = -1;
+    private final List<Suscripcion> suscripciones = new CopyOnWriteArrayList<>();
+    // Suscriptores dormidos o a punto de dormirse; mientras sea 0 publicar no tiene que despertar a nadie
+    private final AtomicInteger dormidos = new AtomicInteger();
+    private volatile boolean detenido;
+
+    private final LongAdder publicados = new LongAdder();
+    private final LongAdder descartados = new LongAdder();
+    private final LongAdder esperasLleno = new LongAdder();
+
+    public BusEventosIncidencia(@Value("${incidencias.eventos.capacidad:4096}") int capacidad,
+                                @Value("${incidencias.eventos.lote-maximo:256}") int loteMaximo,
+                                @Value("${incidencias.eventos.espera-si-lleno:100ms}") Duration esperaSiLleno,
+                                List<SuscriptorEventosIncidencia> suscriptores) {
+        int tamano = Integer.highestOneBit(Math.max(2, capacidad - 1)) << 1;
+        this.eventos = new EventoIncidencia[tamano];
+        this.vueltas = new AtomicIntegerArray(tamano);
+        for (int i = 0; i < tamano; i++) {
+            vueltas.set(i, -1);
+        }
+        this.mascara = tamano - 1;
+        this.bitsCapacidad = Integer.numberOfTrailingZeros(tamano);
+        this.loteMaximo = Math.max(1, loteMaximo);
+        this.nanosEsperaSiLleno = esperaSiLleno.toNanos();
+
+        suscriptores.forEach(suscriptor -> suscribir(suscriptor.getClass().getSimpleName(), suscriptor));
+    }
+
+    /**
+     * Publica un evento para todos los suscriptores. No espera a que lo procesen.
+     * @param evento evento ya confirmado
+     * @return false si se ha descartado por estar el anillo lleno (o el bus detenido)
+     */
+    public boolean publicar(EventoIncidencia evento) {
+        long secuencia = detenido ? -1 : reservar();
+        if (secuencia < 0) {
+            descartados.increment();
+            return false;
+        }
+
+        int posicion = (int) secuencia & mascara;
+        eventos[posicion] = evento;
+        // La escritura del evento queda visible para quien vea la vuelta nueva
+        vueltas.setRelease(posicion, (int) (secuencia >>> bitsCapacidad));
+        publicados.increment();
+        if (dormidos.get() > 0) {
+            despertar();
+        }
+        return true;
+    }
+
+    private void despertar() {
+        for (Suscripcion suscripcion : suscripciones) {
+            if (suscripcion.dormido) {
+                LockSupport.unpark(suscripcion.hilo);
+            }
+        }
+    }
+
+    /**
+     * Publica varios eventos, en orden
+     * @param eventos eventos ya confirmados
+     */
+    public void publicar(List<EventoIncidencia> eventos) {
+        eventos.forEach(this::publicar);
+    }
+
+    /**
+     * Reserva la siguiente posición del anillo, esperando si hace falta a que el suscriptor más lento la deje libre
+     * @return Secuencia reservada, o -1 si no ha quedado sitio a tiempo
+     */
+    private long reservar() {
+        long limite = 0;
+        while (true) {
+            long actual = cursor.get();
+            long siguiente = actual + 1;
+            if (siguiente - eventos.length > minimoProcesado) {
+                long minimo = minimoProcesado();
+                minimoProcesado = minimo;
+                if (siguiente - eventos.length > minimo) {
+                    if (limite == 0) {
+                        limite = System.nanoTime() + nanosEsperaSiLleno;
+                    }
+                    if (detenido || System.nanoTime() - limite >= 0) {
+                        return -1;
+                    }
+                    esperasLleno.increment();
+                    LockSupport.parkNanos(NANOS_ESPERA_PUBLICAR);
+                    continue;
+                }
+            }
+            if (cursor.compareAndSet(actual, siguiente)) {
+                return siguiente;
+            }
+        }
+    }
+
+    private long minimoProcesado() {
+        long minimo = cursor.get();
+        for (Suscripcion suscripcion : suscripciones) {
+            minimo = Math.min(minimo, suscripcion.procesado.get());
+        }
+        return minimo;
+    }
+
+    /**
+     * Suscribe a los eventos que se publiquen a partir de ahora, con un hilo propio para el suscriptor.
+     * Conviene hacerlo al arrancar, antes de que se empiece a publicar.
+     * @param nombre nombre del suscriptor (para el hilo y las métricas)
+     * @param suscriptor quien procesa los eventos
+     * @return La suscripción, con sus métricas
+     */
+    public Suscripcion suscribir(String nombre, SuscriptorEventosIncidencia suscriptor) {
+        Suscripcion suscripcion = new Suscripcion(nombre, suscriptor, cursor.get());
+        suscripciones.add(suscripcion);
+        suscripcion.hilo.start();
+        return suscripcion;
+    }
+
+    /**
+     * Espera a que todos los suscriptores hayan procesado lo publicado hasta ahora
+     * @param espera tiempo máximo de espera
+     * @return true si lo han procesado todo
+     */
+    public boolean esperarProcesados(Duration espera) {
+        long publicado = cursor.get();
+        long limite = System.nanoTime() + espera.toNanos();
+        while (suscripciones.stream().anyMatch(suscripcion -> suscripcion.procesado.get() < publicado)) {
+            if (System.nanoTime() - limite >= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(NANOS_ESPERA_PUBLICAR);
+        }
+        return true;
+    }
+
+    /**
+     * Deja de admitir eventos y espera a que los suscriptores procesen los que quedan
+     */
+    @PreDestroy
+    public void detener() throws InterruptedException {
+        detenido = true;
+        for (Suscripcion suscripcion : suscripciones) {
+            LockSupport.unpark(suscripcion.hilo);
+            suscripcion.hilo.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    /**
+     * @return Eventos que caben en el anillo
+     */
+    public int capacidad() {
+        return eventos.length;
+    }
+
+    public long publicados() {
+        return publicados.sum();
+    }
+
+    /**
+     * @return Eventos descartados por estar el anillo lleno (o el bus detenido)
+     */
+    public long descartados() {
+        return descartados.sum();
+    }
+
+    /**
+     * @return Veces que alguien que publicaba ha tenido que esperar porque el anillo estaba lleno
+     */
+    public long esperasLleno() {
+        return esperasLleno.sum();
+    }
+
+    /**
+     * @return Eventos publicados que el suscriptor más lento aún no ha procesado
+     */
+    public long retrasoMaximo() {
+        return suscripciones.stream().mapToLong(Suscripcion::retraso).max().orElse(0);
+    }
+
+    public List<Suscripcion> suscripciones() {
+        return Collections.unmodifiableList(suscripciones);
+    }
+
+    /**
+     * Un suscriptor con su hilo, su posición en el anillo y sus métricas
+     */
+    public final class Suscripcion {
+        private final String nombre;
+        private final SuscriptorEventosIncidencia suscriptor;
+        private final Thread hilo;
+        // Última secuencia procesada
+        private final AtomicLong procesado;
+        private volatile boolean cancelada;
+        private volatile boolean dormido;
+
+        private final LongAdder procesados = new LongAdder();
+        private final LongAdder lotes = new LongAdder();
+        private final LongAccumulator loteMaximo = new LongAccumulator(Long::max, 0);
+        private final LongAdder fallidos = new LongAdder();
+
+        private Suscripcion(String nombre, SuscriptorEventosIncidencia suscriptor, long procesado) {
+            this.nombre = nombre;
+            this.suscriptor = suscriptor;
+            this.procesado = new AtomicLong(procesado);
+            this.hilo = new Thread(this::consumir, "eventos-" + nombre);
+            this.hilo.setDaemon(true);
+        }
+
+        private void consumir() {
+            long siguiente = procesado.get() + 1;
+            int vacias = 0;
+            while (!cancelada) {
+                long hasta = publicadoHasta(siguiente);
+                if (hasta < siguiente) {
+                    if (detenido && siguiente > cursor.get()) {
+                        return;
+                    }
+                    if (vacias < ESPERAS_ACTIVAS) {
+                        vacias++;
+                        Thread.onSpinWait();
+                    } else {
+                        dormir(siguiente);
+                    }
+                    continue;
+                }
+
+                vacias = 0;
+                int n = (int) (hasta - siguiente + 1);
+                List<EventoIncidencia> lote = new ArrayList<>(n);
+                for (long secuencia = siguiente; secuencia <= hasta; secuencia++) {
+                    lote.add(eventos[(int) secuencia & mascara]);
+                }
+                try {
+                    suscriptor.procesar(Collections.unmodifiableList(lote));
+                } catch (RuntimeException e) {
+                    // Un lote que falla no para al suscriptor ni a los demás
+                    fallidos.add(n);
+                    log.warn("El suscriptor {} no ha podido procesar {} eventos", nombre, n, e);
+                }
+
+                siguiente = hasta + 1;
+                procesado.set(hasta); // Deja libres las posiciones para los que publican
+                procesados.add(n);
+                lotes.increment();
+                loteMaximo.accumulate(n);
+            }
+        }
+
+        /**
+         * Duerme hasta que se publique algo a partir de siguiente (o se detenga el bus o se cancele la suscripción).
+         * Se anuncia antes de volver a mirar el cursor: o quien publica ve el anuncio y lo despierta, o este hilo ve
+         * el evento reservado y no llega a dormirse.
+         */
+        private void dormir(long siguiente) {
+            dormido = true;
+            dormidos.incrementAndGet();
+            try {
+                if (cursor.get() < siguiente && !cancelada && !detenido) {
+                    LockSupport.park(this);
+                }
+            } finally {
+                dormido = false;
+                dormidos.decrementAndGet();
+            }
+        }
+
+        /**
+         * @return Última secuencia a partir de desde con todos los eventos ya escritos (sin pasar del lote máximo),
+         * o desde - 1 si aún no hay ninguno
+         */
+        private long publicadoHasta(long desde) {
+            long limite = Math.min(cursor.get(), desde + BusEventosIncidencia.this.loteMaximo - 1);
+            long secuencia = desde;
+            while (secuencia <= limite
+                    && vueltas.getAcquire((int) secuencia & mascara) == (int) (secuencia >>> bitsCapacidad)) {
+                secuencia++;
+            }
+            return secuencia - 1;
+        }
+
+        /**
+         * Deja de recibir eventos. Lo que no haya procesado aún se pierde para este suscriptor.
+         */
+        public void cancelar() {
+            cancelada = true;
+            suscripciones.remove(this);
+            LockSupport.unpark(hilo);
+        }
+
+        public String nombre() {
+            return nombre;
+        }
+
+        /**
+         * @return Eventos publicados que este suscriptor aún no ha procesado
+         */
+        public long retraso() {
+            return Math.max(0, cursor.get() - procesado.get());
+        }
+
+        public long procesados() {
+            return procesados.sum();
+        }
+
+        public long lotes() {
+            return lotes.sum();
+        }
+
+        /**
+         * @return Tamaño del mayor lote procesado de una vez
+         */
+        public long loteMaximo() {
+            return loteMaximo.get();
+        }
+
+        /**
+         * @return Eventos de lotes en los que el suscriptor ha lanzado una excepción
+         */
+        public long fallidos() {
+            return fallidos.sum();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package es.ujaen.dae.indicenciasurbanas.servicios;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Estadísticas de login: intentos con credenciales correctas y con credenciales no válidas
+ * (usuario inexistente o clave incorrecta)
+ */
+public class EstadisticasLogin {
+
+    private final LongAdder correctos = new LongAdder();
+    private final LongAdder fallidos = new LongAdder();
+
+    void registrar(boolean correcto) {
+        (correcto ? correctos : fallidos).increment();
+    }
+
+    public long correctos() {
+        return correctos.sum();
+    }
+
+    public long fallidos() {
+        return fallidos.sum();
+    }
+}
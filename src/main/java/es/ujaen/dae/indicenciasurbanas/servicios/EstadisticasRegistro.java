@@ -0,0 +1,109 @@
+package es.ujaen.dae.indicenciasurbanas.servicios;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Estadísticas de registro de incidencias, para comparar el registro por lotes con el registro una a una.
+ * Los tiempos incluyen la confirmación de la transacción. Incluye también las comprobaciones de duplicados
+ * hechas en la BBDD (las del índice en memoria las lleva IndiceEspacialIncidencias).
+ */
+public class EstadisticasRegistro {
+
+    private final LongAdder registrosIndividuales = new LongAdder();
+    private final LongAdder nanosIndividuales = new LongAdder();
+    private final LongAdder rechazadasIndividuales = new LongAdder();
+
+    private final LongAdder lotes = new LongAdder();
+    private final LongAdder incidenciasEnLotes = new LongAdder();
+    private final LongAdder rechazadasEnLotes = new LongAdder();
+    private final LongAdder nanosLotes = new LongAdder();
+    private final LongAccumulator loteMaximo = new LongAccumulator(Math::max, 0);
+
+    private final LongAdder comprobacionesEnBbdd = new LongAdder();
+    private final LongAdder candidatasEnBbdd = new LongAdder();
+
+    void registrarIndividual(long nanos) {
+        registrosIndividuales.increment();
+        nanosIndividuales.add(nanos);
+    }
+
+    void registrarRechazoIndividual() {
+        rechazadasIndividuales.increment();
+    }
+
+    void registrarComprobacionEnBbdd(int candidatas) {
+        comprobacionesEnBbdd.increment();
+        candidatasEnBbdd.add(candidatas);
+    }
+
+    void registrarLote(int tamano, int registradas, long nanos) {
+        lotes.increment();
+        incidenciasEnLotes.add(tamano);
+        rechazadasEnLotes.add(tamano - registradas);
+        nanosLotes.add(nanos);
+        loteMaximo.accumulate(tamano);
+    }
+
+    public long registrosIndividuales() {
+        return registrosIndividuales.sum();
+    }
+
+    /**
+     * @return Número de incidencias registradas una a una rechazadas con IncidenciaEnCurso
+     */
+    public long rechazadasIndividuales() {
+        return rechazadasIndividuales.sum();
+    }
+
+    public long lotes() {
+        return lotes.sum();
+    }
+
+    public long incidenciasEnLotes() {
+        return incidenciasEnLotes.sum();
+    }
+
+    public long rechazadasEnLotes() {
+        return rechazadasEnLotes.sum();
+    }
+
+    public long loteMaximo() {
+        return loteMaximo.get();
+    }
+
+    /**
+     * @return Número de comprobaciones de duplicados hechas en la BBDD (incidencias.duplicados.comprobar-en-bbdd)
+     */
+    public long comprobacionesEnBbdd() {
+        return comprobacionesEnBbdd.sum();
+    }
+
+    /**
+     * @return Número total de incidencias activas devueltas por la BBDD como candidatas en esas comprobaciones
+     */
+    public long candidatasEnBbdd() {
+        return candidatasEnBbdd.sum();
+    }
+
+    public double tamanoMedioLote() {
+        long n = lotes.sum();
+        return n == 0 ? 0 : (double) incidenciasEnLotes.sum() / n;
+    }
+
+    /**
+     * @return Tiempo medio por incidencia registrada una a una, en nanosegundos
+     */
+    public double nanosPorIncidenciaIndividual() {
+        long n = registrosIndividuales.sum();
+        return n == 0 ? 0 : (double) nanosIndividuales.sum() / n;
+    }
+
+    /**
+     * @return Tiempo medio por incidencia recibida en un lote, en nanosegundos
+     */
+    public double nanosPorIncidenciaEnLote() {
+        long n = incidenciasEnLotes.sum();
+        return n == 0 ? 0 : (double) nanosLotes.sum() / n;
+    }
+}
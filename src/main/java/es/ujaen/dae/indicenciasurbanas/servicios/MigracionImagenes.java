@@ -0,0 +1,83 @@
+package es.ujaen.dae.indicenciasurbanas.servicios;
+
+import es.ujaen.dae.indicenciasurbanas.entidades.Incidencia;
+import es.ujaen.dae.indicenciasurbanas.repositorios.RepositorioImagenes;
+import es.ujaen.dae.indicenciasurbanas.repositorios.RepositorioIncidencias;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Migración de las imágenes guardadas en la columna antigua (BLOB) de Incidencia al RepositorioImagenes.
+ * Se procesa por lotes, cada uno en su propia transacción, para no bloquear la tabla entera ni cargar
+ * todas las imágenes a la vez. Se puede lanzar al arrancar (incidencias.imagenes.migrar-al-arrancar)
+ * o llamando a migrarTodas(). Cuando devuelve 0 ya se puede borrar la columna imagen de la BBDD.
+ */
+@Component
+public class MigracionImagenes {
+    private static final int TAMANO_LOTE = 100;
+
+    @Autowired
+    private RepositorioIncidencias repositorioIncidencias;
+
+    @Autowired
+    private RepositorioImagenes repositorioImagenes;
+
+    @Autowired
+    private ProcesadorImagenes procesadorImagenes;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${incidencias.imagenes.migrar-al-arrancar:false}")
+    private boolean migrarAlArrancar;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void alArrancar() {
+        if (migrarAlArrancar) {
+            migrarTodas();
+        }
+    }
+
+    /**
+     * Migra todas las imágenes pendientes
+     * @return Número de imágenes migradas
+     */
+    public int migrarTodas() {
+        TransactionTemplate transaccion = new TransactionTemplate(transactionManager);
+        int total = 0;
+        int migradas;
+        do {
+            Map<Integer, String> lote = new HashMap<>();
+            migradas = transaccion.execute(estado -> migrarLote(lote));
+            total += migradas;
+
+            // Ya confirmado el lote, se generan las miniaturas y vistas previas de las imágenes migradas
+            lote.forEach(procesadorImagenes::encolar);
+        } while (migradas > 0);
+        return total;
+    }
+
+    private int migrarLote(Map<Integer, String> migradas) {
+        List<Integer> ids = repositorioIncidencias.buscarIdsConImagenSinMigrar(TAMANO_LOTE);
+        for (int id : ids) {
+            Incidencia incidencia = repositorioIncidencias.buscarPorIdBloqueando(id).orElse(null);
+            byte[] imagen = repositorioIncidencias.buscarImagenSinMigrar(id).orElse(null);
+            if (incidencia == null || imagen == null) {
+                continue;
+            }
+
+            incidencia.imagenMigrada(repositorioImagenes.guardar(imagen)); // Se guarda por dirty checking; CacheIncidencias actualiza las cachés
+            migradas.put(id, incidencia.hashImagen());
+        }
+        return ids.size();
+    }
+}
@@ -0,0 +1,238 @@
+package es.ujaen.dae.indicenciasurbanas.servicios;
+
+import es.ujaen.dae.indicenciasurbanas.repositorios.RepositorioImagenes;
+import es.ujaen.dae.indicenciasurbanas.repositorios.RepositorioIncidencias;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Generación en segundo plano de las variantes reducidas (miniatura y vista previa) de las imágenes de las
+ * incidencias. El registro solo encola el trabajo, de modo que el escalado y la compresión no suman a su latencia.
+ * <p>
+ * La cola está acotada (incidencias.imagenes.procesado.capacidad-cola): si se llena, las imágenes que no caben
+ * se descartan y se cuentan en descartadas(); esas incidencias siguen sirviendo la imagen original.
+ * Las imágenes que ImageIO no sabe leer se cuentan en noSoportadas() y tampoco tienen variantes.
+ * <p>
+ * Antes de decodificar una imagen se leen sus dimensiones de la cabecera: las que pasan de
+ * incidencias.imagenes.procesado.maximo-pixeles se rechazan (demasiadoGrandes()), ya que un fichero pequeño con
+ * dimensiones enormes reservaría gigas al decodificarlo y podría tirar la JVM entera.
+ */
+@Component
+public class ProcesadorImagenes {
+    private static final Logger log = LoggerFactory.getLogger(ProcesadorImagenes.class);
+
+    static final int LADO_MINIATURA = 160;
+    static final int LADO_VISTA_PREVIA = 800;
+    private static final float CALIDAD_MINIATURA = 0.8f;
+    private static final float CALIDAD_VISTA_PREVIA = 0.7f;
+
+    @Autowired
+    private RepositorioIncidencias repositorioIncidencias;
+
+    @Autowired
+    private RepositorioImagenes repositorioImagenes;
+
+    private final ThreadPoolExecutor ejecutor;
+    private final long maximoPixeles;
+
+    private final LongAdder encoladas = new LongAdder();
+    private final LongAdder procesadas = new LongAdder();
+    private final LongAdder descartadas = new LongAdder();
+    private final LongAdder noSoportadas = new LongAdder();
+    private final LongAdder demasiadoGrandes = new LongAdder();
+    private final LongAdder fallidas = new LongAdder();
+    private final LongAdder nanosProceso = new LongAdder();
+    private final LongAccumulator nanosProcesoMaximo = new LongAccumulator(Long::max, 0);
+
+    public ProcesadorImagenes(@Value("${incidencias.imagenes.procesado.hilos:2}") int hilos,
+                              @Value("${incidencias.imagenes.procesado.capacidad-cola:1000}") int capacidadCola,
+                              @Value("${incidencias.imagenes.procesado.maximo-pixeles:50000000}") long maximoPixeles) {
+        this.maximoPixeles = maximoPixeles;
+        AtomicInteger contador = new AtomicInteger();
+        ThreadFactory fabricaHilos = tarea -> {
+            Thread hilo = new Thread(tarea, "procesador-imagenes-" + contador.incrementAndGet());
+            hilo.setDaemon(true);
+            hilo.setPriority(Thread.NORM_PRIORITY - 1); // Que no compita con las peticiones de los usuarios
+            return hilo;
+        };
+
+        ejecutor = new ThreadPoolExecutor(hilos, hilos, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacidadCola), fabricaHilos,
+                (tarea, ejecutor) -> descartadas.increment());
+    }
+
+    /**
+     * Encola la generación de las variantes de la imagen de una incidencia. No espera a que se generen.
+     * @param idIncidencia identificador de la incidencia, ya confirmada en la BBDD
+     * @param hashImagen hash de la imagen original en el RepositorioImagenes
+     */
+    public void encolar(int idIncidencia, String hashImagen) {
+        encoladas.increment();
+        ejecutor.execute(() -> procesar(idIncidencia, hashImagen));
+    }
+
+    private void procesar(int idIncidencia, String hashImagen) {
+        long inicio = System.nanoTime();
+        try (InputStream fichero = Channels.newInputStream(repositorioImagenes.abrir(hashImagen));
+             ImageInputStream entrada = ImageIO.createImageInputStream(fichero)) {
+            Iterator<ImageReader> lectores = ImageIO.getImageReaders(entrada);
+            if (!lectores.hasNext()) {
+                noSoportadas.increment();
+                return;
+            }
+
+            BufferedImage original;
+            ImageReader lector = lectores.next();
+            try {
+                lector.setInput(entrada, true, true);
+                long pixeles = (long) lector.getWidth(0) * lector.getHeight(0);
+                if (pixeles > maximoPixeles) {
+                    demasiadoGrandes.increment();
+                    log.warn("Imagen {} de la incidencia {} sin variantes: {}x{} pasa del máximo de {} píxeles",
+                            hashImagen, idIncidencia, lector.getWidth(0), lector.getHeight(0), maximoPixeles);
+                    return;
+                }
+                original = lector.read(0);
+            } finally {
+                lector.dispose();
+            }
+
+            String hashMiniatura = repositorioImagenes.guardar(comprimir(reducir(original, LADO_MINIATURA), CALIDAD_MINIATURA));
+            String hashVistaPrevia = repositorioImagenes.guardar(comprimir(reducir(original, LADO_VISTA_PREVIA), CALIDAD_VISTA_PREVIA));
+            repositorioIncidencias.actualizarVariantesImagen(idIncidencia, hashMiniatura, hashVistaPrevia);
+            procesadas.increment();
+        } catch (IOException | RuntimeException e) {
+            // Imagen corrupta, incidencia borrada mientras tanto, etc.: se sigue sirviendo la original
+            fallidas.increment();
+            log.warn("No se han podido generar las variantes de la imagen {} de la incidencia {}", hashImagen, idIncidencia, e);
+        } finally {
+            long nanos = System.nanoTime() - inicio;
+            nanosProceso.add(nanos);
+            nanosProcesoMaximo.accumulate(nanos);
+        }
+    }
+
+    /**
+     * Escala la imagen para que su lado mayor no pase de ladoMaximo (nunca la amplía) y la pasa a RGB,
+     * que es lo que admite el codificador JPEG
+     */
+    private static BufferedImage reducir(BufferedImage original, int ladoMaximo) {
+        double escala = Math.min(1.0, (double) ladoMaximo / Math.max(original.getWidth(), original.getHeight()));
+        int ancho = Math.max(1, (int) Math.round(original.getWidth() * escala));
+        int alto = Math.max(1, (int) Math.round(original.getHeight() * escala));
+
+        BufferedImage reducida = new BufferedImage(ancho, alto, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = reducida.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(original, 0, 0, ancho, alto, Color.WHITE, null);
+        } finally {
+            g.dispose();
+        }
+        return reducida;
+    }
+
+    private static byte[] comprimir(BufferedImage imagen, float calidad) throws IOException {
+        ImageWriter escritor = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        try (ImageOutputStream flujo = ImageIO.createImageOutputStream(salida)) {
+            ImageWriteParam parametros = escritor.getDefaultWriteParam();
+            parametros.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            parametros.setCompressionQuality(calidad);
+            escritor.setOutput(flujo);
+            escritor.write(null, new IIOImage(imagen, null, null), parametros);
+        } finally {
+            escritor.dispose();
+        }
+        return salida.toByteArray();
+    }
+
+    @PreDestroy
+    public void detener() throws InterruptedException {
+        ejecutor.shutdown();
+        ejecutor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @return Imágenes en la cola esperando a ser procesadas
+     */
+    public int tamanoCola() {
+        return ejecutor.getQueue().size();
+    }
+
+    /**
+     * @return Imágenes que se están procesando en este momento
+     */
+    public int enProceso() {
+        return ejecutor.getActiveCount();
+    }
+
+    public long encoladas() {
+        return encoladas.sum();
+    }
+
+    public long procesadas() {
+        return procesadas.sum();
+    }
+
+    public long descartadas() {
+        return descartadas.sum();
+    }
+
+    public long noSoportadas() {
+        return noSoportadas.sum();
+    }
+
+    /**
+     * @return Imágenes sin variantes por pasar del máximo de píxeles
+     */
+    public long demasiadoGrandes() {
+        return demasiadoGrandes.sum();
+    }
+
+    public long fallidas() {
+        return fallidas.sum();
+    }
+
+    /**
+     * @return Tiempo medio de proceso por imagen en nanosegundos (incluidas las no soportadas, las demasiado grandes
+     * y las fallidas)
+     */
+    public double nanosMedioProceso() {
+        long total = procesadas.sum() + noSoportadas.sum() + demasiadoGrandes.sum() + fallidas.sum();
+        return total == 0 ? 0 : (double) nanosProceso.sum() / total;
+    }
+
+    public long nanosMaximoProceso() {
+        return nanosProcesoMaximo.get();
+    }
+}
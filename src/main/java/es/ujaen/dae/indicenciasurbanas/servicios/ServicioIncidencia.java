@@ -1,24 +1,51 @@
 package es.ujaen.dae.indicenciasurbanas.servicios;
 
+import es.ujaen.dae.indicenciasurbanas.dto.CursorIncidencias;
+import es.ujaen.dae.indicenciasurbanas.dto.DatosIncidencia;
+import es.ujaen.dae.indicenciasurbanas.dto.EventoIncidencia;
+import es.ujaen.dae.indicenciasurbanas.dto.IncidenciaResumen;
+import es.ujaen.dae.indicenciasurbanas.dto.Pagina;
+import es.ujaen.dae.indicenciasurbanas.dto.ResultadoCambioEstado;
+import es.ujaen.dae.indicenciasurbanas.dto.ResultadoLote;
+import es.ujaen.dae.indicenciasurbanas.dto.SituacionIncidencia;
 import es.ujaen.dae.indicenciasurbanas.entidades.TipoIncidencia;
+import es.ujaen.dae.indicenciasurbanas.repositorios.ContadoresIncidencias;
+import es.ujaen.dae.indicenciasurbanas.repositorios.IndiceEspacialIncidencias;
+import es.ujaen.dae.indicenciasurbanas.repositorios.RepositorioImagenes;
 import es.ujaen.dae.indicenciasurbanas.repositorios.RepositorioIncidencias;
 import es.ujaen.dae.indicenciasurbanas.repositorios.RepositorioTipoIncidencia;
 import es.ujaen.dae.indicenciasurbanas.repositorios.RepositorioUsuarios;
+import es.ujaen.dae.indicenciasurbanas.utils.BloqueoCeldasGeograficas;
 import es.ujaen.dae.indicenciasurbanas.utils.CoordenadasGps;
 import es.ujaen.dae.indicenciasurbanas.utils.DistanciaCoordenadas;
 import es.ujaen.dae.indicenciasurbanas.utils.EstadoIncidencia;
+import es.ujaen.dae.indicenciasurbanas.utils.VarianteImagen;
 import es.ujaen.dae.indicenciasurbanas.entidades.Incidencia;
 import es.ujaen.dae.indicenciasurbanas.entidades.Usuario;
 import es.ujaen.dae.indicenciasurbanas.excepciones.*;
+import es.ujaen.dae.indicenciasurbanas.jfr.EventoComprobacionDuplicados;
+import io.micrometer.core.annotation.Timed;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.Email;
+import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.validation.annotation.Validated;
 
+import java.io.IOException;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
@@ -26,7 +53,10 @@ import java.util.*;
 @Service
 @Validated
 @Transactional
+@Timed("incidencias.servicio") // Tiempo de cada método público, ver ConfiguracionMetricas
 public class ServicioIncidencia {
+    private static final Logger log = LoggerFactory.getLogger(ServicioIncidencia.class);
+
     @Autowired
     private RepositorioUsuarios repositorioUsuarios;
     @Autowired
@@ -35,6 +65,43 @@ public class ServicioIncidencia {
     @Autowired
     private RepositorioTipoIncidencia repositorioTipoIncidencia;
 
+    @Autowired
+    private IndiceEspacialIncidencias indiceEspacial;
+
+    @Autowired
+    private ContadoresIncidencias contadores;
+
+    @Autowired
+    private RepositorioImagenes repositorioImagenes;
+
+    @Autowired
+    private ProcesadorImagenes procesadorImagenes;
+
+    @Autowired
+    private TransicionesIncidencia transiciones;
+
+    @Autowired
+    private BusEventosIncidencia eventos;
+
+    private static final double DISTANCIA_MINIMA_METROS = 10; // Distancia mínima entre dos incidencias activas
+
+    public static final int TAMANO_MAXIMO_PAGINA = 500; // Máximo de incidencias por página en los listados paginados
+
+    /**
+     * Si es true, los duplicados se buscan en la BBDD (consulta por caja de coordenadas) en lugar de en el índice
+     * en memoria. Es necesario cuando hay varias instancias del servicio escribiendo en la misma BBDD, ya que cada
+     * índice solo ve las incidencias registradas por su propia instancia.
+     */
+    @Value("${incidencias.duplicados.comprobar-en-bbdd:false}")
+    private boolean comprobarDuplicadosEnBbdd;
+
+    // Serializa los registros de incidencias cercanas entre sí (ver nuevaIncidencia)
+    private final BloqueoCeldasGeograficas bloqueoCeldas = new BloqueoCeldasGeograficas(1024);
+
+    private final EstadisticasRegistro estadisticasRegistro = new EstadisticasRegistro();
+
+    private final EstadisticasLogin estadisticasLogin = new EstadisticasLogin();
+
     private final Usuario admin = new Usuario("administrador","administrador",
             LocalDate.of(1995,1,1),"-","+34661030462","admin.dae@ujaen.es","admin");
 
@@ -54,30 +121,136 @@ public class ServicioIncidencia {
      */
     public Incidencia nuevaIncidencia(@NotNull LocalDateTime fecha, @NotNull TipoIncidencia tipo, @NotBlank String descripcion, @NotBlank String localizacion,
                                  float latitud, float longitud, @NotBlank String dpto, @Valid Usuario user, byte[] foto) {
+        long inicio = System.nanoTime();
 
         CoordenadasGps coordenadasNuevaIncidencia = new CoordenadasGps(latitud,longitud);
 
-        List<Incidencia> incidenciasRegistradas;
-        incidenciasRegistradas = repositorioIncidencias.buscarPorEstado(EstadoIncidencia.PENDIENTE);
-        incidenciasRegistradas.addAll(repositorioIncidencias.buscarPorEstado(EstadoIncidencia.EN_EVALUACION));
+        // Bloqueamos la zona hasta que termine la transacción, para que dos registros simultáneos
+        // en el mismo sitio no pasen los dos la comprobación de duplicados
+        bloquearHastaTerminar(List.of(coordenadasNuevaIncidencia));
 
-        for (Incidencia incidencia : incidenciasRegistradas) {
-            double distancia = DistanciaCoordenadas.calcularDistanciaMetros(coordenadasNuevaIncidencia, incidencia.coordenadas());
-            if(distancia<10){
-                throw new IncidenciaEnCurso();
-            }
+        if (hayIncidenciaCercana(coordenadasNuevaIncidencia)) {
+            estadisticasRegistro.registrarRechazoIndividual();
+            throw new IncidenciaEnCurso();
         }
 
+        // La imagen se guarda fuera de la BBDD; la incidencia solo guarda su hash
         Incidencia nuevaIncidencia = new Incidencia(fecha, tipo,
-                descripcion, localizacion, latitud, longitud, dpto, user, foto);
+                descripcion, localizacion, latitud, longitud, dpto, user, guardarImagen(foto));
 
         // Guardamos la entidad con el repositorio
         repositorioIncidencias.guardar(nuevaIncidencia);
+        EventoIncidencia registrada = EventoIncidencia.registrada(nuevaIncidencia);
+        trasConfirmar(() -> {
+            indiceEspacial.actualizar(nuevaIncidencia);
+            contadores.anadir(nuevaIncidencia);
+            encolarVariantesImagen(nuevaIncidencia);
+            eventos.publicar(registrada);
+            estadisticasRegistro.registrarIndividual(System.nanoTime() - inicio);
+        });
 
         // Devolvemos la nueva incidencia (o null si no ha podido ser creada al estar repetida)
         return nuevaIncidencia;
     }
 
+    /**
+     * Registro de un lote de incidencias (por ejemplo, las que sube de golpe la aplicación móvil al sincronizar).
+     * Los duplicados se comprueban en una sola pasada, tanto contra las incidencias activas como entre las
+     * del propio lote, y las aceptadas se insertan juntas en lotes JDBC.
+     * @param lote datos de las incidencias a registrar
+     * @return Las incidencias registradas y los datos de las rechazadas por estar a menos de 10 metros de otra activa
+     */
+    public ResultadoLote nuevasIncidencias(@NotNull List<@Valid DatosIncidencia> lote) {
+        long inicio = System.nanoTime();
+
+        List<CoordenadasGps> puntos = lote.stream()
+                .map(datos -> new CoordenadasGps(datos.latitud(), datos.longitud()))
+                .toList();
+        bloquearHastaTerminar(puntos);
+
+        List<Incidencia> registradas = new ArrayList<>();
+        List<DatosIncidencia> rechazadas = new ArrayList<>();
+
+        // Coordenadas de las ya aceptadas en este lote, para comprobar los duplicados dentro del propio lote
+        float[] latitudes = new float[lote.size()];
+        float[] longitudes = new float[lote.size()];
+        long[] marcas = new long[(lote.size() + 63) / 64];
+
+        for (int i = 0; i < lote.size(); i++) {
+            DatosIncidencia datos = lote.get(i);
+            int aceptadas = registradas.size();
+
+            if (hayIncidenciaCercana(puntos.get(i)) || DistanciaCoordenadas.marcarCercanas(datos.latitud(), datos.longitud(),
+                    latitudes, longitudes, aceptadas, DISTANCIA_MINIMA_METROS, marcas) > 0) {
+                rechazadas.add(datos);
+                continue;
+            }
+
+            latitudes[aceptadas] = datos.latitud();
+            longitudes[aceptadas] = datos.longitud();
+            registradas.add(new Incidencia(datos.fecha(), datos.tipo(), datos.descripcion(), datos.localizacion(),
+                    datos.latitud(), datos.longitud(), datos.dpto(), datos.usuario(), guardarImagen(datos.foto())));
+        }
+
+        repositorioIncidencias.guardarTodas(registradas);
+        List<EventoIncidencia> eventosRegistro = registradas.stream().map(EventoIncidencia::registrada).toList();
+        trasConfirmar(() -> {
+            registradas.forEach(indiceEspacial::actualizar);
+            registradas.forEach(contadores::anadir);
+            registradas.forEach(this::encolarVariantesImagen);
+            eventos.publicar(eventosRegistro);
+            estadisticasRegistro.registrarLote(lote.size(), registradas.size(), System.nanoTime() - inicio);
+        });
+
+        return new ResultadoLote(registradas, rechazadas);
+    }
+
+    /**
+     * Estadísticas de registro de incidencias (una a una y por lotes)
+     * @return Estadísticas acumuladas desde el arranque
+     */
+    public EstadisticasRegistro estadisticasRegistro() {
+        return estadisticasRegistro;
+    }
+
+    /**
+     * Obtener la imagen de una incidencia
+     * @param incidencia incidencia cuya imagen se quiere obtener
+     * @return Recurso con la imagen, que se lee del almacén de imágenes por partes al consumirlo (sin cargarla entera
+     * en memoria), o vacío si la incidencia no tiene imagen
+     */
+    @Transactional(readOnly = true)
+    public Optional<Resource> obtenerImagen(@NotNull Incidencia incidencia) {
+        return obtenerImagen(incidencia, VarianteImagen.ORIGINAL);
+    }
+
+    /**
+     * Obtener una variante de la imagen de una incidencia. Los listados deberían pedir la MINIATURA y la vista
+     * de detalle la VISTA_PREVIA; si la variante aún no se ha generado (o no se puede generar) se devuelve la original.
+     * @param incidencia incidencia cuya imagen se quiere obtener
+     * @param variante variante de la imagen
+     * @return Recurso con la imagen o vacío si la incidencia no tiene imagen
+     */
+    @Transactional(readOnly = true)
+    public Optional<Resource> obtenerImagen(@NotNull Incidencia incidencia, @NotNull VarianteImagen variante) {
+        Incidencia registrada = repositorioIncidencias.buscarPorId(incidencia.id())
+                .orElseThrow(IncidenciaNoExiste::new);
+
+        if (registrada.hashImagen() == null) {
+            // Incidencias antiguas cuya imagen aún no se ha migrado (ver MigracionImagenes)
+            return repositorioIncidencias.buscarImagenSinMigrar(registrada.id())
+                    .map(ByteArrayResource::new);
+        }
+
+        String hash = switch (variante) {
+            case ORIGINAL -> registrada.hashImagen();
+            case VISTA_PREVIA -> registrada.hashVistaPrevia();
+            case MINIATURA -> registrada.hashMiniatura();
+        };
+
+        return Optional.of(repositorioImagenes.recurso(hash != null ? hash : registrada.hashImagen()));
+    }
+
     /**
      * Registro de un nuevo usuario en el sistema
      * @param usuario El objeto usuario a ser añadido al sistema
@@ -98,14 +271,36 @@ public class ServicioIncidencia {
      */
     @Transactional(readOnly = true) // Optimización para consultas
     public Optional<Usuario> login(@Email String email, @NotBlank String clave){
-        if(email.equals(admin.email()) &&  clave.equals(admin.clave()))
+        if(email.equals(admin.email()) &&  clave.equals(admin.clave())) {
+            estadisticasLogin.registrar(true);
             return Optional.of(admin);
+        }
 
         // Buscamos al usuario. Esta consulta usará la caché "usuarios".
         Optional<Usuario> u = repositorioUsuarios.buscar(email);
 
         // Comprobamos la clave
-        return u.filter(usuario -> usuario.clave().equals(clave));
+        Optional<Usuario> identificado = u.filter(usuario -> usuario.clave().equals(clave));
+        estadisticasLogin.registrar(identificado.isPresent());
+        return identificado;
+    }
+
+    /**
+     * Estadísticas de login (los aciertos y fallos de la caché "usuarios" los publica la propia caché)
+     * @return Estadísticas acumuladas desde el arranque
+     */
+    public EstadisticasLogin estadisticasLogin() {
+        return estadisticasLogin;
+    }
+
+    /**
+     * Obtener una incidencia a partir de su identificador
+     * @param id identificador de la incidencia
+     * @return Un objeto Optional encapsulando la incidencia o vacío si no existe
+     */
+    @Transactional(readOnly = true)
+    public Optional<Incidencia> buscarIncidencia(int id){
+        return repositorioIncidencias.buscarPorId(id);
     }
 
     /**
@@ -118,12 +313,40 @@ public class ServicioIncidencia {
         return repositorioIncidencias.buscarPorEmailUsuario(usuario.email());
     }
 
+    /**
+     * Obtener una página de las incidencias generadas por un usuario concreto, de más reciente a más antigua
+     * @param usuario usuario logeado
+     * @param desde cursor de la página anterior (Pagina.siguiente()), o null para la primera página
+     * @param tamano número máximo de incidencias por página
+     * @return Página de incidencias del usuario y cursor para pedir la siguiente
+     */
+    @Transactional(readOnly = true)
+    public Pagina<Incidencia> obtenerListaIncidenciasUsuario(@NotNull Usuario usuario, CursorIncidencias desde,
+                                                             @Positive @Max(TAMANO_MAXIMO_PAGINA) int tamano){
+        return repositorioIncidencias.buscarPaginaPorEmailUsuario(usuario.email(), desde, tamano);
+    }
+
+    /**
+     * Obtener una página con el resumen de las incidencias generadas por un usuario concreto, para listados y mapas.
+     * Igual que obtenerListaIncidenciasUsuario paginado, pero sin cargar las entidades completas.
+     * @param usuario usuario logeado
+     * @param desde cursor de la página anterior (Pagina.siguiente()), o null para la primera página
+     * @param tamano número máximo de incidencias por página
+     * @return Página de resúmenes de incidencias del usuario y cursor para pedir la siguiente
+     */
+    @Transactional(readOnly = true)
+    public Pagina<IncidenciaResumen> obtenerResumenesIncidenciasUsuario(@NotNull Usuario usuario, CursorIncidencias desde,
+                                                                        @Positive @Max(TAMANO_MAXIMO_PAGINA) int tamano){
+        return repositorioIncidencias.buscarResumenesPorEmailUsuario(usuario.email(), desde, tamano);
+    }
+
     /**
      * Obtener las incidencias con un tipo de incidencia y/o estado de incidencia concreto
      * @param tipoIncidencia valor del tipo de incidencia deseado, puede ser nulo
      * @param estadoIncidencia valor del estado de incidencia deseado, puede ser nulo
      * @return Devuelve una lista con las incidencias que tienen los valores deseados
      */
+    @Transactional(readOnly = true)
     public List<Incidencia> buscarIncidenciasTipoEstado(TipoIncidencia tipoIncidencia, EstadoIncidencia estadoIncidencia){
 
 
@@ -140,47 +363,202 @@ public class ServicioIncidencia {
     }
 
     /**
-     * Eliminación de una incidencia registrada en el sistema
+     * Obtener una página de las incidencias con un tipo de incidencia y/o estado de incidencia concreto,
+     * de más reciente a más antigua
+     * @param tipoIncidencia valor del tipo de incidencia deseado, puede ser nulo
+     * @param estadoIncidencia valor del estado de incidencia deseado, puede ser nulo
+     * @param desde cursor de la página anterior (Pagina.siguiente()), o null para la primera página
+     * @param tamano número máximo de incidencias por página
+     * @return Página de incidencias con los valores deseados y cursor para pedir la siguiente
+     */
+    @Transactional(readOnly = true)
+    public Pagina<Incidencia> buscarIncidenciasTipoEstado(TipoIncidencia tipoIncidencia, EstadoIncidencia estadoIncidencia,
+                                                          CursorIncidencias desde, @Positive @Max(TAMANO_MAXIMO_PAGINA) int tamano){
+        return repositorioIncidencias.buscarPaginaPorTipoYEstado(tipoIncidencia, estadoIncidencia, desde, tamano);
+    }
+
+    /**
+     * Obtener una página con el resumen de las incidencias con un tipo y/o estado concreto, para listados y mapas.
+     * Igual que buscarIncidenciasTipoEstado paginado, pero sin cargar las entidades completas.
+     * @param tipoIncidencia valor del tipo de incidencia deseado, puede ser nulo
+     * @param estadoIncidencia valor del estado de incidencia deseado, puede ser nulo
+     * @param desde cursor de la página anterior (Pagina.siguiente()), o null para la primera página
+     * @param tamano número máximo de incidencias por página
+     * @return Página de resúmenes de incidencias y cursor para pedir la siguiente
+     */
+    @Transactional(readOnly = true)
+    public Pagina<IncidenciaResumen> buscarResumenesTipoEstado(TipoIncidencia tipoIncidencia, EstadoIncidencia estadoIncidencia,
+                                                               CursorIncidencias desde, @Positive @Max(TAMANO_MAXIMO_PAGINA) int tamano){
+        return repositorioIncidencias.buscarResumenesPorTipoYEstado(tipoIncidencia, estadoIncidencia, desde, tamano);
+    }
+
+    /**
+     * Eliminación de una incidencia registrada en el sistema. Se hace en su propia transacción con control optimista
+     * (ver TransicionesIncidencia): si la incidencia cambia mientras tanto, se vuelven a comprobar los permisos con
+     * su nuevo estado.
      * @param usuario usuario logeado
      * @param incidenciaBorrar Incidencia que se quiere eliminar
      */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public boolean borrarIncidencia(@NotNull Usuario usuario, @NotNull Incidencia incidenciaBorrar){
         // 1. Buscamos la incidencia
-        Incidencia incidencia = repositorioIncidencias.buscarPorIdBloqueando(incidenciaBorrar.id())
-                .orElseThrow(IncidenciaNoExiste::new);
-
-        // 2. Comprobamos permisos (lógica original)
-        boolean esAdmin = usuario.equals(admin);
-        boolean esPropietario = incidencia.usuario().email().equals(usuario.email());
-        boolean estaPendiente = (incidencia.estado() == EstadoIncidencia.PENDIENTE);
-
-        // 3. Borramos si cumple
-        if (esAdmin || (esPropietario && estaPendiente)) {
-            repositorioIncidencias.borrar(incidencia);
-            return true;
-        }
+        return transiciones.modificar(incidenciaBorrar.id(), incidencia -> {
+            // 2. Comprobamos permisos (lógica original)
+            boolean esAdmin = usuario.equals(admin);
+            boolean esPropietario = incidencia.usuario().email().equals(usuario.email());
+            boolean estaPendiente = (incidencia.estado() == EstadoIncidencia.PENDIENTE);
+
+            // 3. Borramos si cumple
+            if (esAdmin || (esPropietario && estaPendiente)) {
+                repositorioIncidencias.borrar(incidencia);
+                EventoIncidencia borrada = EventoIncidencia.borrada(incidencia);
+                trasConfirmar(() -> {
+                    indiceEspacial.quitar(incidencia.id());
+                    contadores.quitar(incidencia);
+                    eventos.publicar(borrada);
+                });
+                return true;
+            }
 
-        return false;
+            return false;
+        });
     }
 
     /**
-     * Modificación del estado de una incidencia
+     * Modificación del estado de una incidencia. Solo se permiten las transiciones de EstadoIncidencia.puedePasarA
+     * (pasar al estado que ya tiene no hace nada). Se hace en su propia transacción con control optimista
+     * (ver TransicionesIncidencia): si otro administrador la modifica a la vez, se repite con su nuevo estado.
      * @param usuario usuario logeado
      * @param estadoIncidencia Nuevo estado de la incidencia
      * @param Incidencia Identificador de la incidencia a modificar
      */
-    public void modificarEstadoIncidencia(@NotNull Usuario usuario, EstadoIncidencia estadoIncidencia, @NotNull Incidencia Incidencia){
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void modificarEstadoIncidencia(@NotNull Usuario usuario, @NotNull EstadoIncidencia estadoIncidencia, @NotNull Incidencia Incidencia){
+        if(!usuario.equals(admin)) {
+            throw new AccionNoAutorizada();
+        }
+
         // 1. Buscamos la incidencia
-        Incidencia incidencia = repositorioIncidencias.buscarPorId(Incidencia.id())
-                .orElseThrow(IncidenciaNoExiste::new);
+        transiciones.modificar(Incidencia.id(), incidencia -> {
+            EstadoIncidencia anterior = incidencia.estado();
+            if (anterior == estadoIncidencia) {
+                return;
+            }
+            if (!anterior.puedePasarA(estadoIncidencia)) {
+                throw new TransicionNoPermitida();
+            }
 
+            // 2. Modificamos la entidad en memoria (se guarda al confirmar, comprobando su versión)
+            incidencia.estado(estadoIncidencia);
+            EventoIncidencia cambio = EventoIncidencia.estadoCambiado(incidencia, anterior);
+            trasConfirmar(() -> {
+                indiceEspacial.actualizar(incidencia);
+                contadores.cambiarEstado(incidencia, anterior);
+                eventos.publicar(cambio);
+            });
+        });
+    }
+
+    /**
+     * Modificación del estado de un conjunto de incidencias (por ejemplo, las de una ruta que acaba de terminar una
+     * cuadrilla) con una sola sentencia UPDATE, sin cargarlas. Solo cambian las que pueden pasar al estado nuevo
+     * (EstadoIncidencia.puedePasarA). Las filas se bloquean mientras tanto, y se respetan las versiones: si otra
+     * transacción tenía cargada alguna de ellas, fallará al guardarla en lugar de pisar el cambio.
+     * @param usuario usuario logeado
+     * @param estadoIncidencia nuevo estado de las incidencias
+     * @param ids identificadores de las incidencias a modificar
+     * @return El resultado para cada id, en el orden recibido
+     */
+    public Map<Integer, ResultadoCambioEstado> modificarEstadoIncidencias(@NotNull Usuario usuario, @NotNull EstadoIncidencia estadoIncidencia,
+                                                                         @NotNull Collection<@NotNull Integer> ids) {
         if(!usuario.equals(admin)) {
             throw new AccionNoAutorizada();
         }
 
-        // 2. Modificamos la entidad en memoria (con el @Transactional ya se modifica en la BBDD al tenerlo linkeado dentro de la transacción)
-        incidencia.estado(estadoIncidencia);
+        Map<Integer, ResultadoCambioEstado> resultados = new LinkedHashMap<>();
+        ids.forEach(id -> resultados.put(id, ResultadoCambioEstado.NO_EXISTE));
+        cambiarEstados(repositorioIncidencias.buscarSituacionesBloqueando(resultados.keySet()), estadoIncidencia, resultados);
+        return resultados;
+    }
+
+    /**
+     * Como modificarEstadoIncidencias, para todas las incidencias que cumplen un filtro
+     * @param usuario usuario logeado
+     * @param estadoIncidencia nuevo estado de las incidencias
+     * @param tipoIncidencia tipo de las incidencias a modificar, o null para cualquiera
+     * @param dpto departamento de las incidencias a modificar, o null para cualquiera
+     * @param estadoActual estado de las incidencias a modificar, o null para cualquiera
+     * @return El resultado para cada incidencia que cumple el filtro, por orden de id
+     */
+    public Map<Integer, ResultadoCambioEstado> modificarEstadoIncidencias(@NotNull Usuario usuario, @NotNull EstadoIncidencia estadoIncidencia,
+                                                                         TipoIncidencia tipoIncidencia, String dpto, EstadoIncidencia estadoActual) {
+        if(!usuario.equals(admin)) {
+            throw new AccionNoAutorizada();
+        }
+
+        Map<Integer, ResultadoCambioEstado> resultados = new LinkedHashMap<>();
+        cambiarEstados(repositorioIncidencias.buscarSituacionesBloqueando(tipoIncidencia, dpto, estadoActual), estadoIncidencia, resultados);
+        return resultados;
+    }
+
+    /**
+     * Número de incidencias en un estado, sin consultar la BBDD
+     * @param estado estado de las incidencias
+     * @return Número de incidencias en ese estado
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public long contarIncidencias(@NotNull EstadoIncidencia estado) {
+        return contadores.contar(estado);
+    }
+
+    /**
+     * Número de incidencias de un tipo en un estado, sin consultar la BBDD
+     * @param tipoIncidencia tipo de las incidencias
+     * @param estado estado de las incidencias
+     * @return Número de incidencias de ese tipo en ese estado
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public long contarIncidenciasTipo(@NotNull TipoIncidencia tipoIncidencia, @NotNull EstadoIncidencia estado) {
+        return contadores.contarPorTipo(tipoIncidencia.nombre(), estado);
+    }
+
+    /**
+     * Número de incidencias de un tipo en cualquier estado, sin consultar la BBDD
+     * @param tipoIncidencia tipo de las incidencias
+     * @return Número de incidencias que usan ese tipo
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public long contarIncidenciasTipo(@NotNull TipoIncidencia tipoIncidencia) {
+        return contadores.contarPorTipo(tipoIncidencia.nombre());
+    }
 
+    /**
+     * Número de incidencias de un departamento en un estado, sin consultar la BBDD
+     * @param dpto departamento asignado
+     * @param estado estado de las incidencias
+     * @return Número de incidencias de ese departamento en ese estado
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public long contarIncidenciasDpto(@NotBlank String dpto, @NotNull EstadoIncidencia estado) {
+        return contadores.contarPorDpto(dpto, estado);
+    }
+
+    /**
+     * Número de incidencias en cada estado por tipo de incidencia, para los paneles de seguimiento
+     * @return Mapa nombre del tipo -> estado -> número de incidencias
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public Map<String, Map<EstadoIncidencia, Long>> recuentoIncidenciasPorTipo() {
+        return contadores.recuentoPorTipo();
+    }
+
+    /**
+     * Número de incidencias en cada estado por departamento, para los paneles de seguimiento
+     * @return Mapa departamento -> estado -> número de incidencias
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public Map<String, Map<EstadoIncidencia, Long>> recuentoIncidenciasPorDpto() {
+        return contadores.recuentoPorDpto();
     }
 
     /**
@@ -215,8 +593,9 @@ public class ServicioIncidencia {
         TipoIncidencia tipo = repositorioTipoIncidencia.buscarPorNombre(tipoIncidencia.nombre())
                 .orElseThrow(TipoIncidenciaNoExiste::new);
 
-        // Comprobamos si está en uso
-        if (!repositorioIncidencias.buscarPorTipo(tipo).isEmpty()) {
+        // Comprobamos si está en uso sin cargar sus incidencias: primero con los contadores en memoria y, si no
+        // tienen ninguna (pueden no ver las registradas desde otra instancia), con el índice por tipo de la BBDD
+        if (contadores.contarPorTipo(tipo.nombre()) > 0 || repositorioIncidencias.existePorTipo(tipo)) {
             throw new TipoIncidenciaEnUso();
         }
 
@@ -227,6 +606,7 @@ public class ServicioIncidencia {
      * Función que devuelve todos los tipos de incidencia registrados en el sistema
      * @return Devuelve una lista con los tipos de incidencia
      */
+    @Transactional(readOnly = true)
     public List<TipoIncidencia> obtenerTiposIncidencia(){
         return repositorioTipoIncidencia.buscarTodos();
     }
@@ -236,7 +616,166 @@ public class ServicioIncidencia {
      * @param tipoIncidencia Nombre del tipo de incidencia a devolver
      * @return Devuelve un Optional encaspsulando el TipoIncidencia (o vacío si no existe)
      */
+    @Transactional(readOnly = true)
     public Optional<TipoIncidencia> obtenerTipoIncidencia(String tipoIncidencia){
         return repositorioTipoIncidencia.buscarPorNombre(tipoIncidencia);
     }
+
+    /**
+     * Guarda la foto de una incidencia en el almacén de imágenes. El almacén no es transaccional: si la foto es nueva
+     * y la transacción se deshace, se borra al terminar para no dejar ficheros huérfanos
+     * @param foto contenido de la foto, puede ser nulo
+     * @return Hash de la foto, o null si no hay foto
+     */
+    private String guardarImagen(byte[] foto) {
+        if (foto == null) {
+            return null;
+        }
+
+        String hash = repositorioImagenes.hash(foto);
+        if (repositorioImagenes.guardar(hash, foto) && TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_ROLLED_BACK) {
+                        borrarImagen(hash);
+                    }
+                }
+            });
+        }
+        return hash;
+    }
+
+    private void borrarImagen(String hash) {
+        try {
+            repositorioImagenes.borrar(hash);
+        } catch (IOException e) {
+            log.warn("No se ha podido borrar la imagen {} de una transacción deshecha", hash, e);
+        }
+    }
+
+    /**
+     * Comprueba si hay alguna incidencia activa a menos de DISTANCIA_MINIMA_METROS de unas coordenadas
+     * @param coordenadas coordenadas de la nueva incidencia
+     * @return true si ya hay una incidencia activa cerca
+     */
+    private boolean hayIncidenciaCercana(CoordenadasGps coordenadas) {
+        if (!comprobarDuplicadosEnBbdd) {
+            // Solo se revisan las incidencias activas de las celdas vecinas del índice espacial
+            return indiceEspacial.hayIncidenciaCercana(coordenadas, DISTANCIA_MINIMA_METROS);
+        }
+
+        // La BBDD filtra por caja; la distancia exacta solo se calcula sobre los candidatos
+        EventoComprobacionDuplicados evento = new EventoComprobacionDuplicados();
+        evento.begin();
+        List<CoordenadasGps> candidatas = repositorioIncidencias.buscarCoordenadasActivasEnArea(coordenadas, DISTANCIA_MINIMA_METROS);
+        int n = candidatas.size();
+        estadisticasRegistro.registrarComprobacionEnBbdd(n);
+        float[] latitudes = new float[n];
+        float[] longitudes = new float[n];
+        for (int i = 0; i < n; i++) {
+            latitudes[i] = candidatas.get(i).latitud();
+            longitudes[i] = candidatas.get(i).longitud();
+        }
+
+        boolean encontrada = DistanciaCoordenadas.marcarCercanas(coordenadas.latitud(), coordenadas.longitud(), latitudes, longitudes,
+                n, DISTANCIA_MINIMA_METROS, new long[(n + 63) / 64]) > 0;
+        evento.terminar("bbdd", coordenadas.latitud(), coordenadas.longitud(), n, encontrada);
+        return encontrada;
+    }
+
+    /**
+     * Pasa al estado nuevo las incidencias (ya bloqueadas) que no lo tengan y puedan pasar a él, y lo lleva tras el commit al índice
+     * espacial, a los contadores y al bus de eventos
+     * @param situaciones situación de las incidencias
+     * @param estado estado nuevo
+     * @param resultados donde se anota el resultado para cada incidencia
+     */
+    private void cambiarEstados(List<SituacionIncidencia> situaciones, EstadoIncidencia estado, Map<Integer, ResultadoCambioEstado> resultados) {
+        List<SituacionIncidencia> cambiadas = new ArrayList<>();
+        for (SituacionIncidencia situacion : situaciones) {
+            if (situacion.estado() == estado) {
+                resultados.put(situacion.id(), ResultadoCambioEstado.SIN_CAMBIOS);
+            } else if (!situacion.estado().puedePasarA(estado)) {
+                resultados.put(situacion.id(), ResultadoCambioEstado.NO_PERMITIDA);
+            } else {
+                resultados.put(situacion.id(), ResultadoCambioEstado.MODIFICADA);
+                cambiadas.add(situacion);
+            }
+        }
+        repositorioIncidencias.actualizarEstados(cambiadas, estado);
+
+        // Los contadores van por nombre de tipo. Son pocos y se sacan de la lista de todos, que está en caché y si no
+        // se carga con una consulta, en lugar de buscar cada tipo por su id
+        Map<Integer, String> nombresTipos = new HashMap<>();
+        if (!cambiadas.isEmpty()) {
+            for (TipoIncidencia tipo : repositorioTipoIncidencia.buscarTodos()) {
+                nombresTipos.put(tipo.id(), tipo.nombre());
+            }
+            for (SituacionIncidencia situacion : cambiadas) {
+                if (!nombresTipos.containsKey(situacion.tipoId())) {
+                    throw new TipoIncidenciaNoExiste();
+                }
+            }
+        }
+
+        Instant instante = Instant.now();
+        trasConfirmar(() -> {
+            for (SituacionIncidencia situacion : cambiadas) {
+                String tipo = nombresTipos.get(situacion.tipoId());
+                // UPDATE VERSIONED ha incrementado la versión leída
+                indiceEspacial.actualizar(situacion.id(), situacion.version() + 1, estado, situacion.latitud(), situacion.longitud());
+                contadores.cambiarEstado(tipo, situacion.dpto(), situacion.estado(), estado);
+                eventos.publicar(new EventoIncidencia(EventoIncidencia.Accion.ESTADO_CAMBIADO, situacion.id(), tipo,
+                        situacion.dpto(), situacion.usuarioEmail(), situacion.estado(), estado, instante));
+            }
+        });
+    }
+
+    private void encolarVariantesImagen(Incidencia incidencia) {
+        if (incidencia.hashImagen() != null) {
+            procesadorImagenes.encolar(incidencia.id(), incidencia.hashImagen());
+        }
+    }
+
+    /**
+     * Bloquea las celdas alrededor de unos puntos hasta que termine (se confirme o se deshaga) la transacción en curso.
+     * Los bloqueos solo afectan a esta instancia del servicio. Si una transacción exterior registra varias incidencias,
+     * las zonas que ya tiene no se vuelven a bloquear y, si una nueva no se puede tomar sin romper el orden de
+     * bloqueo, se lanza IllegalStateException y la transacción se deshace (ver BloqueoCeldasGeograficas).
+     * @param puntos puntos cuyas zonas se bloquean
+     */
+    private void bloquearHastaTerminar(List<CoordenadasGps> puntos) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            // El servicio siempre se ejecuta en una transacción; sin ella no habría cuándo liberar el bloqueo
+            return;
+        }
+
+        BloqueoCeldasGeograficas.Bloqueo bloqueo = bloqueoCeldas.bloquear(puntos, DISTANCIA_MINIMA_METROS);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                bloqueo.liberar();
+            }
+        });
+    }
+
+    /**
+     * Ejecuta una acción cuando la transacción en curso se confirme (o inmediatamente si no hay transacción),
+     * para que los cambios de una transacción que se deshace no lleguen a las estructuras en memoria
+     * @param accion acción a ejecutar
+     */
+    private void trasConfirmar(Runnable accion) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            accion.run();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                accion.run();
+            }
+        });
+    }
 }
@@ -0,0 +1,19 @@
+package es.ujaen.dae.indicenciasurbanas.servicios;
+
+import es.ujaen.dae.indicenciasurbanas.dto.EventoIncidencia;
+
+import java.util.List;
+
+/**
+ * Quien quiere enterarse de lo que les pasa a las incidencias (ver BusEventosIncidencia). Los beans que implementan
+ * esta interfaz se suscriben solos al arrancar.
+ */
+public interface SuscriptorEventosIncidencia {
+
+    /**
+     * Procesa un lote de eventos, en el orden en que se publicaron. Se llama siempre desde el mismo hilo (el del
+     * suscriptor), nunca desde el de la petición que los generó.
+     * @param lote eventos publicados desde el lote anterior (como mucho incidencias.eventos.lote-maximo)
+     */
+    void procesar(List<EventoIncidencia> lote);
+}
@@ -0,0 +1,171 @@
+package es.ujaen.dae.indicenciasurbanas.servicios;
+
+import es.ujaen.dae.indicenciasurbanas.entidades.Incidencia;
+import es.ujaen.dae.indicenciasurbanas.excepciones.IncidenciaEnConflicto;
+import es.ujaen.dae.indicenciasurbanas.excepciones.IncidenciaNoExiste;
+import es.ujaen.dae.indicenciasurbanas.repositorios.RepositorioIncidencias;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Ejecuta las modificaciones de una incidencia ya registrada (cambios de estado, borrado) con control de
+ * concurrencia optimista. Cada intento es una transacción propia que lee la incidencia sin bloquearla; al confirmar,
+ * Hibernate comprueba su @Version. Si otra transacción la ha modificado entre medias, el intento se deshace y se
+ * repite con la incidencia ya actualizada, tras una espera exponencial con una parte aleatoria para que los que han
+ * chocado no vuelvan a coincidir. Tanto el número de intentos como las esperas están acotados.
+ * <p>
+ * El bloqueo pesimista (SELECT ... FOR UPDATE) queda como alternativa configurable con
+ * incidencias.transiciones.bloqueo-pesimista: NUNCA (por defecto; al agotar los intentos se lanza
+ * IncidenciaEnConflicto), AL_AGOTAR_REINTENTOS (un último intento bloqueando la fila, que ya no puede chocar)
+ * o SIEMPRE (sin intentos optimistas).
+ */
+@Component
+public class TransicionesIncidencia {
+
+    public enum BloqueoPesimista {
+        NUNCA,
+        AL_AGOTAR_REINTENTOS,
+        SIEMPRE
+    }
+
+    @Autowired
+    private RepositorioIncidencias repositorioIncidencias;
+
+    private final TransactionTemplate transaccion;
+    private final int intentosMaximos;
+    private final long nanosEsperaInicial;
+    private final long nanosEsperaMaxima;
+    private final BloqueoPesimista bloqueoPesimista;
+
+    private final LongAdder intentos = new LongAdder();
+    private final LongAdder conflictos = new LongAdder();
+    private final LongAdder pesimistas = new LongAdder();
+    private final LongAdder agotadas = new LongAdder();
+
+    public TransicionesIncidencia(PlatformTransactionManager transactionManager,
+                                  @Value("${incidencias.transiciones.intentos:5}") int intentosMaximos,
+                                  @Value("${incidencias.transiciones.espera-inicial:2ms}") Duration esperaInicial,
+                                  @Value("${incidencias.transiciones.espera-maxima:100ms}") Duration esperaMaxima,
+                                  @Value("${incidencias.transiciones.bloqueo-pesimista:NUNCA}") BloqueoPesimista bloqueoPesimista) {
+        // Cada intento en una transacción nueva, aunque quien llama tenga una: si no, no se podría repetir
+        this.transaccion = new TransactionTemplate(transactionManager);
+        this.transaccion.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.intentosMaximos = Math.max(1, intentosMaximos);
+        this.nanosEsperaInicial = esperaInicial.toNanos();
+        this.nanosEsperaMaxima = esperaMaxima.toNanos();
+        this.bloqueoPesimista = bloqueoPesimista;
+    }
+
+    /**
+     * Aplica una modificación a una incidencia, repitiéndola si choca con otra transacción
+     * @param id identificador de la incidencia
+     * @param modificacion recibe la incidencia cargada en la transacción del intento y la modifica (o la borra).
+     *                     Se puede ejecutar varias veces, así que solo debe tocar la incidencia y registrar lo que
+     *                     haya que hacer tras el commit. Si lanza una excepción el intento se deshace y la excepción
+     *                     llega a quien llama, sin reintentar.
+     * @return Lo que devuelva la modificación en el intento que se confirma
+     * @throws IncidenciaNoExiste si no hay ninguna incidencia con ese id
+     * @throws IncidenciaEnConflicto si se agotan los intentos sin conseguir aplicarla
+     */
+    public <T> T modificar(int id, Function<Incidencia, T> modificacion) {
+        if (bloqueoPesimista == BloqueoPesimista.SIEMPRE) {
+            return intentar(id, modificacion, true);
+        }
+
+        for (int intento = 1; ; intento++) {
+            try {
+                return intentar(id, modificacion, false);
+            } catch (ConcurrencyFailureException e) {
+                conflictos.increment();
+                if (intento == intentosMaximos) {
+                    break;
+                }
+                esperar(intento);
+            }
+        }
+
+        if (bloqueoPesimista == BloqueoPesimista.AL_AGOTAR_REINTENTOS) {
+            return intentar(id, modificacion, true);
+        }
+        agotadas.increment();
+        throw new IncidenciaEnConflicto();
+    }
+
+    /**
+     * Como modificar(int, Function), para modificaciones que no devuelven nada
+     */
+    public void modificar(int id, Consumer<Incidencia> modificacion) {
+        modificar(id, incidencia -> {
+            modificacion.accept(incidencia);
+            return null;
+        });
+    }
+
+    private <T> T intentar(int id, Function<Incidencia, T> modificacion, boolean bloquear) {
+        intentos.increment();
+        if (bloquear) {
+            pesimistas.increment();
+        }
+
+        return transaccion.execute(estado -> {
+            Incidencia incidencia = (bloquear ? repositorioIncidencias.buscarPorIdBloqueando(id)
+                    : repositorioIncidencias.buscarParaModificar(id))
+                    .orElseThrow(IncidenciaNoExiste::new);
+            return modificacion.apply(incidencia);
+        });
+    }
+
+    /**
+     * Espera antes de repetir: un tiempo aleatorio entre 0 y un máximo que se duplica en cada intento
+     * (hasta espera-maxima)
+     */
+    private void esperar(int intento) {
+        long maximo = Math.min(nanosEsperaMaxima, nanosEsperaInicial << Math.min(intento - 1, 30));
+        try {
+            TimeUnit.NANOSECONDS.sleep(ThreadLocalRandom.current().nextLong(maximo + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IncidenciaEnConflicto();
+        }
+    }
+
+    /**
+     * @return Transacciones intentadas, incluidas las repetidas
+     */
+    public long intentos() {
+        return intentos.sum();
+    }
+
+    /**
+     * @return Intentos deshechos por chocar con otra transacción
+     */
+    public long conflictos() {
+        return conflictos.sum();
+    }
+
+    /**
+     * @return Intentos hechos bloqueando la fila
+     */
+    public long pesimistas() {
+        return pesimistas.sum();
+    }
+
+    /**
+     * @return Modificaciones abandonadas (IncidenciaEnConflicto) por agotar los intentos
+     */
+    public long agotadas() {
+        return agotadas.sum();
+    }
+}
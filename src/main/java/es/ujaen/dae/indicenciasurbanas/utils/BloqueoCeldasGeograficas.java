@@ -0,0 +1,127 @@
+package es.ujaen.dae.indicenciasurbanas.utils;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bloqueos por zona geográfica repartidos en franjas (lock striping). Cada celda de la RejillaGeografica
+ * corresponde a una franja, de modo que dos operaciones sobre puntos cercanos comparten alguna franja y se
+ * ejecutan una detrás de otra, mientras que las de zonas distintas de la ciudad no se esperan entre sí.
+ * Las franjas se adquieren siempre en orden creciente para evitar interbloqueos.
+ * <p>
+ * Un hilo puede volver a bloquear mientras mantiene otro bloqueo (p. ej. varios registros dentro de la misma
+ * transacción, que no libera nada hasta terminar). Las franjas que ya tiene no se vuelven a adquirir, y las nuevas
+ * por debajo de la más alta que tiene romperían el orden creciente: esas solo se toman si están libres y, si no,
+ * se lanza IllegalStateException en lugar de esperar y arriesgar un interbloqueo.
+ */
+public class BloqueoCeldasGeograficas {
+
+    /**
+     * Conjunto de franjas adquiridas, que se liberan juntas
+     */
+    public static class Bloqueo {
+        private final ReentrantLock[] franjas;
+        private boolean liberado;
+
+        private Bloqueo(ReentrantLock[] franjas) {
+            this.franjas = franjas;
+        }
+
+        /**
+         * Libera las franjas en orden inverso al de adquisición. Llamarlo más de una vez no tiene efecto.
+         */
+        public void liberar() {
+            if (liberado) {
+                return;
+            }
+            liberado = true;
+            for (int i = franjas.length - 1; i >= 0; i--) {
+                franjas[i].unlock();
+            }
+        }
+    }
+
+    private final ReentrantLock[] franjas;
+
+    /**
+     * @param numFranjas número de franjas; cuantas más haya menos probable es que dos zonas alejadas compartan una
+     */
+    public BloqueoCeldasGeograficas(int numFranjas) {
+        franjas = new ReentrantLock[numFranjas];
+        for (int i = 0; i < numFranjas; i++) {
+            franjas[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Bloquea las celdas que rodean a unos puntos dentro de un radio. Si algún punto está fuera de rango
+     * o junto a un polo se bloquean todas las franjas, ya que su comprobación puede afectar a cualquier zona.
+     * @param puntos puntos a bloquear
+     * @param radioMetros radio alrededor de cada punto
+     * @return Bloqueo adquirido, que hay que liberar al terminar
+     */
+    public Bloqueo bloquear(Collection<CoordenadasGps> puntos, double radioMetros) {
+        TreeSet<Integer> indices = new TreeSet<>();
+        for (CoordenadasGps punto : puntos) {
+            long[] celdas = RejillaGeografica.enRango(punto.latitud(), punto.longitud())
+                    ? RejillaGeografica.celdasCercanas(punto.latitud(), punto.longitud(), radioMetros)
+                    : null;
+            if (celdas == null) {
+                indices.clear();
+                for (int i = 0; i < franjas.length; i++) {
+                    indices.add(i);
+                }
+                break;
+            }
+            for (long celda : celdas) {
+                indices.add(franja(celda));
+            }
+        }
+
+        int masAltaDelHilo = franjaMasAltaDelHilo();
+        ReentrantLock[] adquiridas = new ReentrantLock[indices.size()];
+        int n = 0;
+        try {
+            for (int indice : indices) {
+                ReentrantLock franja = franjas[indice];
+                if (franja.isHeldByCurrentThread()) {
+                    continue; // La libera el bloqueo que la adquirió
+                }
+                if (indice < masAltaDelHilo) {
+                    if (!franja.tryLock()) {
+                        throw new IllegalStateException("Bloqueo anidado de la franja " + indice
+                                + ", ocupada por otro hilo, teniendo ya la " + masAltaDelHilo);
+                    }
+                } else {
+                    franja.lock();
+                }
+                adquiridas[n++] = franja;
+            }
+        } catch (RuntimeException | Error e) {
+            for (int i = n - 1; i >= 0; i--) {
+                adquiridas[i].unlock();
+            }
+            throw e;
+        }
+        return new Bloqueo(n == adquiridas.length ? adquiridas : Arrays.copyOf(adquiridas, n));
+    }
+
+    /**
+     * @return Índice de la franja más alta que tiene el hilo actual, o -1 si no tiene ninguna
+     */
+    private int franjaMasAltaDelHilo() {
+        for (int i = franjas.length - 1; i >= 0; i--) {
+            if (franjas[i].isHeldByCurrentThread()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int franja(long celda) {
+        long mezcla = celda * 0x9E3779B97F4A7C15L; // Dispersión de Fibonacci para que celdas vecinas no caigan en franjas vecinas
+        return (int) Math.floorMod(mezcla ^ (mezcla >>> 32), (long) franjas.length);
+    }
+}
@@ -1,9 +1,33 @@
 package es.ujaen.dae.indicenciasurbanas.utils;
 
+import java.util.Arrays;
+
+/**
+ * Cálculo de distancias entre coordenadas GPS.
+ * <p>
+ * Además del cálculo entre dos puntos hay versiones por lotes que comparan un punto con arrays de
+ * latitudes y longitudes sin crear objetos. Contrato de precisión respecto a la fórmula de haversine
+ * de {@link #calcularDistanciaMetros(CoordenadasGps, CoordenadasGps)}:
+ * <ul>
+ *     <li>{@link #calcularDistanciasMetros}: mismo resultado, bit a bit (misma fórmula, cosenos precalculados).</li>
+ *     <li>{@link #calcularDistanciasAproximadasMetros}: aproximación equirectangular. Para distancias de hasta
+ *     1 km y latitudes entre -80 y 80 grados el error relativo es menor que {@link #ERROR_RELATIVO_APROXIMACION}.
+ *     Fuera de ese ámbito no hay garantía.</li>
+ *     <li>{@link #marcarCercanas}: mismo resultado que {@code calcularDistanciaMetros(...) < radio} para todos los
+ *     puntos. Usa la aproximación y solo recurre a haversine cuando la distancia aproximada cae en la franja de
+ *     error alrededor del radio, o cuando la aproximación no es válida (radio grande, latitudes extremas o
+ *     coordenadas fuera de rango).</li>
+ * </ul>
+ */
 public class DistanciaCoordenadas{
 
     private static final double RADIO_TIERRA_M = 6371000.0; // Radio de la Tierra en metros
 
+    public static final double ERROR_RELATIVO_APROXIMACION = 1e-3;
+
+    private static final double RADIO_MAXIMO_APROXIMACION_M = 1000;
+    private static final double LATITUD_MAXIMA_APROXIMACION = 80;
+
     /**
      * Calcula la distancia entre dos puntos geográficos usando la fórmula de haversine
      * @param coordenada1 coordenadas GPS de la primera incidencia
@@ -11,19 +35,140 @@ public class DistanciaCoordenadas{
      * @return Distancia en metros
      */
     public static double calcularDistanciaMetros(CoordenadasGps coordenada1, CoordenadasGps coordenada2) {
-        // Convertir grados a radianes
-        double lat1Rad = Math.toRadians(coordenada1.latitud());
-        double lon1Rad = Math.toRadians(coordenada1.longitud());
-        double lat2Rad = Math.toRadians(coordenada2.latitud());
-        double lon2Rad = Math.toRadians(coordenada2.longitud());
+        return calcularDistanciaMetros(coordenada1.latitud(), coordenada1.longitud(), coordenada2.latitud(), coordenada2.longitud());
+    }
+
+    /**
+     * Calcula la distancia entre dos puntos geográficos usando la fórmula de haversine, sin crear objetos
+     * @param latitud1 latitud del primer punto en grados
+     * @param longitud1 longitud del primer punto en grados
+     * @param latitud2 latitud del segundo punto en grados
+     * @param longitud2 longitud del segundo punto en grados
+     * @return Distancia en metros
+     */
+    public static double calcularDistanciaMetros(float latitud1, float longitud1, float latitud2, float longitud2) {
+        double lat1Rad = Math.toRadians(latitud1);
+        double lat2Rad = Math.toRadians(latitud2);
+        return haversine(lat1Rad, Math.toRadians(longitud1), Math.cos(lat1Rad), lat2Rad, Math.toRadians(longitud2), Math.cos(lat2Rad));
+    }
+
+    /**
+     * Precalcula los cosenos de un array de latitudes, para reutilizarlos en varias llamadas por lotes
+     * @param latitudes latitudes en grados
+     * @param n número de elementos a procesar
+     * @param cosenos array donde se escriben los cosenos (al menos n elementos)
+     */
+    public static void precalcularCosenos(float[] latitudes, int n, double[] cosenos) {
+        for (int i = 0; i < n; i++) {
+            cosenos[i] = Math.cos(Math.toRadians(latitudes[i]));
+        }
+    }
+
+    /**
+     * Calcula con haversine la distancia de un punto a cada uno de los puntos de unos arrays
+     * @param latitud latitud del punto en grados
+     * @param longitud longitud del punto en grados
+     * @param latitudes latitudes de los demás puntos en grados
+     * @param longitudes longitudes de los demás puntos en grados
+     * @param cosenos cosenos de las latitudes (ver precalcularCosenos), o null para calcularlos sobre la marcha
+     * @param n número de puntos a procesar
+     * @param distancias array donde se escriben las distancias en metros (al menos n elementos)
+     */
+    public static void calcularDistanciasMetros(float latitud, float longitud, float[] latitudes, float[] longitudes,
+                                                double[] cosenos, int n, double[] distancias) {
+        double lat1Rad = Math.toRadians(latitud);
+        double lon1Rad = Math.toRadians(longitud);
+        double cosLat1 = Math.cos(lat1Rad);
+
+        for (int i = 0; i < n; i++) {
+            double lat2Rad = Math.toRadians(latitudes[i]);
+            double cosLat2 = cosenos != null ? cosenos[i] : Math.cos(lat2Rad);
+            distancias[i] = haversine(lat1Rad, lon1Rad, cosLat1, lat2Rad, Math.toRadians(longitudes[i]), cosLat2);
+        }
+    }
 
+    /**
+     * Calcula la distancia aproximada (equirectangular) de un punto a cada uno de los puntos de unos arrays.
+     * Solo usa una raíz cuadrada por punto; ver el contrato de precisión en la documentación de la clase.
+     * @param latitud latitud del punto en grados
+     * @param longitud longitud del punto en grados
+     * @param latitudes latitudes de los demás puntos en grados
+     * @param longitudes longitudes de los demás puntos en grados
+     * @param n número de puntos a procesar
+     * @param distancias array donde se escriben las distancias aproximadas en metros (al menos n elementos)
+     */
+    public static void calcularDistanciasAproximadasMetros(float latitud, float longitud, float[] latitudes, float[] longitudes,
+                                                           int n, double[] distancias) {
+        double lat1Rad = Math.toRadians(latitud);
+        double lon1Rad = Math.toRadians(longitud);
+        double cosLat1 = Math.cos(lat1Rad);
+
+        for (int i = 0; i < n; i++) {
+            distancias[i] = Math.sqrt(distanciaAproximadaCuadrado(lat1Rad, lon1Rad, cosLat1, latitudes[i], longitudes[i]));
+        }
+    }
+
+    /**
+     * Marca en un bitmap los puntos que están a menos de un radio de un punto dado
+     * @param latitud latitud del punto en grados
+     * @param longitud longitud del punto en grados
+     * @param latitudes latitudes de los demás puntos en grados
+     * @param longitudes longitudes de los demás puntos en grados
+     * @param n número de puntos a procesar
+     * @param radioMetros radio en metros
+     * @param marcas bitmap donde el bit i queda a 1 si el punto i está a menos de radioMetros (al menos (n + 63) / 64 elementos)
+     * @return Número de puntos marcados
+     */
+    public static int marcarCercanas(float latitud, float longitud, float[] latitudes, float[] longitudes,
+                                     int n, double radioMetros, long[] marcas) {
+        Arrays.fill(marcas, 0, (n + 63) >>> 6, 0L);
+
+        double lat1Rad = Math.toRadians(latitud);
+        double lon1Rad = Math.toRadians(longitud);
+        double cosLat1 = Math.cos(lat1Rad);
+
+        boolean aproximacionValida = radioMetros <= RADIO_MAXIMO_APROXIMACION_M
+                && Math.abs(latitud) <= LATITUD_MAXIMA_APROXIMACION && Math.abs(longitud) <= 180;
+        double dentro = Math.pow(radioMetros * (1 - ERROR_RELATIVO_APROXIMACION), 2);
+        double fuera = Math.pow(radioMetros * (1 + ERROR_RELATIVO_APROXIMACION), 2);
+
+        int marcados = 0;
+        for (int i = 0; i < n; i++) {
+            boolean cercana;
+            if (aproximacionValida && Math.abs(latitudes[i]) <= 90) {
+                double d2 = distanciaAproximadaCuadrado(lat1Rad, lon1Rad, cosLat1, latitudes[i], longitudes[i]);
+                if (d2 < dentro) {
+                    cercana = true;
+                } else if (d2 > fuera) {
+                    cercana = false;
+                } else {
+                    cercana = haversineDesde(lat1Rad, lon1Rad, cosLat1, latitudes[i], longitudes[i]) < radioMetros;
+                }
+            } else {
+                cercana = haversineDesde(lat1Rad, lon1Rad, cosLat1, latitudes[i], longitudes[i]) < radioMetros;
+            }
+
+            if (cercana) {
+                marcas[i >>> 6] |= 1L << i;
+                marcados++;
+            }
+        }
+        return marcados;
+    }
+
+    private static double haversineDesde(double lat1Rad, double lon1Rad, double cosLat1, float latitud2, float longitud2) {
+        double lat2Rad = Math.toRadians(latitud2);
+        return haversine(lat1Rad, lon1Rad, cosLat1, lat2Rad, Math.toRadians(longitud2), Math.cos(lat2Rad));
+    }
+
+    private static double haversine(double lat1Rad, double lon1Rad, double cosLat1, double lat2Rad, double lon2Rad, double cosLat2) {
         // Diferencias
         double difLat = lat2Rad - lat1Rad;
         double difLon = lon2Rad - lon1Rad;
 
         // Fórmula de haversine
         double a = Math.sin(difLat / 2) * Math.sin(difLat / 2) +
-                Math.cos(lat1Rad) * Math.cos(lat2Rad) *
+                cosLat1 * cosLat2 *
                         Math.sin(difLon / 2) * Math.sin(difLon / 2);
 
         double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
@@ -31,4 +176,13 @@ public class DistanciaCoordenadas{
         // Distancia en metros
         return RADIO_TIERRA_M * c;
     }
-}
\ No newline at end of file
+
+    private static double distanciaAproximadaCuadrado(double lat1Rad, double lon1Rad, double cosLat1, float latitud2, float longitud2) {
+        double difLat = Math.toRadians(latitud2) - lat1Rad;
+        double difLon = Math.toRadians(longitud2) - lon1Rad;
+        difLon -= 2 * Math.PI * Math.rint(difLon / (2 * Math.PI)); // Se da la vuelta en el antimeridiano
+
+        double x = difLon * cosLat1;
+        return RADIO_TIERRA_M * RADIO_TIERRA_M * (x * x + difLat * difLat);
+    }
+}
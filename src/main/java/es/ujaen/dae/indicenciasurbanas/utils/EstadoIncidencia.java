@@ -3,5 +3,19 @@ package es.ujaen.dae.indicenciasurbanas.utils;
 public enum EstadoIncidencia {
     PENDIENTE,
     EN_EVALUACION,
-    RESUELTA
+    RESUELTA;
+
+    /**
+     * Transiciones permitidas: una incidencia pendiente pasa a evaluación o se resuelve directamente, una en
+     * evaluación se resuelve o vuelve a pendiente, y una resuelta ya no cambia
+     * @param destino estado al que se quiere pasar
+     * @return true si se puede pasar de este estado a destino (nunca para el mismo estado)
+     */
+    public boolean puedePasarA(EstadoIncidencia destino) {
+        return switch (this) {
+            case PENDIENTE -> destino == EN_EVALUACION || destino == RESUELTA;
+            case EN_EVALUACION -> destino == PENDIENTE || destino == RESUELTA;
+            case RESUELTA -> false;
+        };
+    }
 }
@@ -0,0 +1,103 @@
+package es.ujaen.dae.indicenciasurbanas.utils;
+
+/**
+ * Rejilla uniforme en grados que divide la superficie en celdas de ~11 metros de lado (en latitud).
+ * Cada celda se identifica con un long que combina el índice de latitud y el de longitud, de forma que
+ * se puede usar como clave de mapas o para repartir bloqueos.
+ */
+public class RejillaGeografica {
+
+    public static final double TAM_CELDA_GRADOS = 0.0001; // ~11.1 metros de latitud
+
+    private static final double METROS_POR_GRADO = Math.toRadians(1) * 6371000.0;
+    private static final int NUM_CELDAS_LONGITUD = (int) Math.round(360 / TAM_CELDA_GRADOS);
+
+    private RejillaGeografica() {}
+
+    /**
+     * Indica si unas coordenadas pueden ubicarse en la rejilla
+     * @param latitud latitud en grados
+     * @param longitud longitud en grados
+     * @return true si la latitud está en [-90, 90] y la longitud en [-180, 180]
+     */
+    public static boolean enRango(float latitud, float longitud) {
+        return latitud >= -90 && latitud <= 90 && longitud >= -180 && longitud <= 180;
+    }
+
+    /**
+     * Obtiene la celda en la que cae un punto
+     * @param latitud latitud en grados (debe estar en rango)
+     * @param longitud longitud en grados (debe estar en rango)
+     * @return Identificador de la celda
+     */
+    public static long celda(float latitud, float longitud) {
+        return clave(indiceLatitud(latitud), indiceLongitud(longitud));
+    }
+
+    /**
+     * Calcula las celdas que cubren un círculo de un radio dado alrededor de un punto
+     * @param latitud latitud del centro en grados (debe estar en rango)
+     * @param longitud longitud del centro en grados (debe estar en rango)
+     * @param radioMetros radio del círculo en metros
+     * @return Identificadores de las celdas a revisar, o null si el círculo abarca toda la rejilla (cerca de los polos)
+     */
+    public static long[] celdasCercanas(float latitud, float longitud, double radioMetros) {
+        double margenLatitud = margenLatitud(radioMetros);
+        double margenLongitud = margenLongitud(latitud, radioMetros);
+        if (margenLongitud >= 180) {
+            return null;
+        }
+
+        int latMin = indiceLatitud(latitud - margenLatitud);
+        int latMax = indiceLatitud(latitud + margenLatitud);
+        int lonMin = (int) Math.floor((longitud - margenLongitud) / TAM_CELDA_GRADOS);
+        int lonMax = (int) Math.floor((longitud + margenLongitud) / TAM_CELDA_GRADOS);
+
+        long[] celdas = new long[(latMax - latMin + 1) * (lonMax - lonMin + 1)];
+        int n = 0;
+        for (int lat = latMin; lat <= latMax; lat++) {
+            for (int lon = lonMin; lon <= lonMax; lon++) {
+                celdas[n++] = clave(lat, normalizarLongitud(lon)); // Se da la vuelta en el antimeridiano
+            }
+        }
+        return celdas;
+    }
+
+    /**
+     * Grados de latitud que abarca una distancia
+     * @param radioMetros distancia en metros
+     * @return Margen en grados de latitud
+     */
+    public static double margenLatitud(double radioMetros) {
+        return radioMetros / METROS_POR_GRADO;
+    }
+
+    /**
+     * Grados de longitud que abarca como máximo una distancia alrededor de una latitud
+     * (se toma el paralelo más cercano al polo dentro del radio, que es donde más grados ocupa)
+     * @param latitud latitud del centro en grados
+     * @param radioMetros distancia en metros
+     * @return Margen en grados de longitud, infinito si el radio llega al polo
+     */
+    public static double margenLongitud(float latitud, double radioMetros) {
+        double margenLatitud = margenLatitud(radioMetros);
+        double cosLatitud = Math.cos(Math.toRadians(Math.min(90, Math.abs(latitud) + margenLatitud)));
+        return cosLatitud > 1e-12 ? margenLatitud / cosLatitud : Double.POSITIVE_INFINITY;
+    }
+
+    private static int indiceLatitud(double latitud) {
+        return (int) Math.floor(latitud / TAM_CELDA_GRADOS);
+    }
+
+    private static int indiceLongitud(double longitud) {
+        return normalizarLongitud((int) Math.floor(longitud / TAM_CELDA_GRADOS));
+    }
+
+    private static int normalizarLongitud(int indice) {
+        return Math.floorMod(indice + NUM_CELDAS_LONGITUD / 2, NUM_CELDAS_LONGITUD) - NUM_CELDAS_LONGITUD / 2;
+    }
+
+    private static long clave(int indiceLatitud, int indiceLongitud) {
+        return ((long) indiceLatitud << 32) | (indiceLongitud & 0xFFFFFFFFL);
+    }
+}
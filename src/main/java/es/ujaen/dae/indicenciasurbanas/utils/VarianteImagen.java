@@ -0,0 +1,7 @@
+package es.ujaen.dae.indicenciasurbanas.utils;
+
+public enum VarianteImagen {
+    ORIGINAL,
+    VISTA_PREVIA, // Máximo 800 píxeles de lado, JPEG comprimido, para ver la incidencia
+    MINIATURA     // Máximo 160 píxeles de lado, para listados y mapas
+}
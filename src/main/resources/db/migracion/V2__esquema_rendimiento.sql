@@ -0,0 +1,28 @@
+-- Cambios de esquema de la BBDD de producción (MySQL), que no la genera Hibernate
+-- (jakarta.persistence.schema-generation.database.action: none). V1 es el esquema anterior, el de identificadores
+-- IDENTITY. Hay que aplicarlo una vez, con la aplicación parada, antes de desplegar la versión que lo necesita.
+
+-- Identificadores de Incidencia y TipoIncidencia con secuencia (@SequenceGenerator, reserva de 50).
+-- MySQL no tiene secuencias: Hibernate las emula con una tabla de una fila y una columna next_val. El optimizador
+-- pooled reparte los 50 identificadores que terminan en el valor leído, así que la tabla tiene que empezar en
+-- max(id) + 50 para que el primero que se reparta sea el siguiente al último que ya existe
+CREATE TABLE seq_incidencia (next_val BIGINT) ENGINE = InnoDB;
+INSERT INTO seq_incidencia (next_val) SELECT COALESCE(MAX(id), 0) + 50 FROM incidencia;
+
+CREATE TABLE seq_tipo_incidencia (next_val BIGINT) ENGINE = InnoDB;
+INSERT INTO seq_tipo_incidencia (next_val) SELECT COALESCE(MAX(id), 0) + 50 FROM tipo_incidencia;
+
+-- Imágenes en el almacén por contenido (RepositorioImagenes): la incidencia guarda el hash SHA-256 de la original y
+-- de sus variantes. La columna imagen se mantiene hasta migrar las antiguas (incidencias.imagenes.migrar-al-arrancar)
+ALTER TABLE incidencia
+    ADD COLUMN hash_imagen VARCHAR(64) NULL,
+    ADD COLUMN hash_miniatura VARCHAR(64) NULL,
+    ADD COLUMN hash_vista_previa VARCHAR(64) NULL;
+
+-- Índices de las consultas por caja de coordenadas (comprobación de duplicados) y de los listados paginados por
+-- clave (fecha, id); los mismos que declara @Table(indexes) en Incidencia
+CREATE INDEX idx_incidencia_estado_coordenadas ON incidencia (estado, latitud, longitud);
+CREATE INDEX idx_incidencia_fecha_id ON incidencia (fecha, id);
+CREATE INDEX idx_incidencia_estado_fecha_id ON incidencia (estado, fecha, id);
+CREATE INDEX idx_incidencia_tipo_fecha_id ON incidencia (tipo_id, fecha, id);
+CREATE INDEX idx_incidencia_usuario_fecha_id ON incidencia (usuario_email, fecha, id);
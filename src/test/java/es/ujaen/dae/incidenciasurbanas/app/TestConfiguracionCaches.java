@@ -0,0 +1,73 @@
+package es.ujaen.dae.incidenciasurbanas.app;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import es.ujaen.dae.indicenciasurbanas.entidades.Usuario;
+import es.ujaen.dae.indicenciasurbanas.servicios.ServicioIncidencia;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(classes = es.ujaen.dae.indicenciasurbanas.app.DaePracticaApplication.class, properties = {
+        "incidencias.caches.especificaciones.usuarios=maximumSize=2",
+        "incidencias.caches.especificaciones.todasIncidencias=maximumWeight=3"
+})
+@ActiveProfiles("test")
+public class TestConfiguracionCaches {
+    @Autowired
+    ServicioIncidencia servicioIncidencia;
+
+    @Autowired
+    CacheManager cacheManager;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Test
+    @DirtiesContext
+    public void testCachesAcotadasConEstadisticas() {
+        assertThat(cacheManager).isInstanceOf(CaffeineCacheManager.class);
+
+        // Cada caché con su especificación; las no configuradas con la de por defecto
+        assertThat(caffeine("usuarios").policy().eviction().get().getMaximum()).isEqualTo(2);
+        assertThat(caffeine("incidenciasPorId").policy().eviction().get().getMaximum()).isEqualTo(10000);
+        assertThat(caffeine("todasIncidencias").policy().eviction().get().isWeighted()).isTrue();
+        assertThat(caffeine("otraCache").policy().eviction().get().getMaximum()).isEqualTo(1000);
+
+        // La caché de usuarios no pasa de 2 entradas
+        for (int i = 0; i < 5; i++) {
+            Usuario usuario = new Usuario("nombre", "apellido", LocalDate.of(2000, 1, 1), "direccion", "+34777123456", "email" + i + "@gmail.com", "clave");
+            servicioIncidencia.nuevoUsuario(usuario);
+            servicioIncidencia.login(usuario.email(), usuario.clave());
+            servicioIncidencia.login(usuario.email(), usuario.clave());
+        }
+        caffeine("usuarios").cleanUp();
+        assertThat(caffeine("usuarios").estimatedSize()).isLessThanOrEqualTo(2);
+
+        // Las listas pesan su número de elementos
+        cacheManager.getCache("todasIncidencias").put("lista", List.of(1, 2, 3, 4));
+        caffeine("todasIncidencias").cleanUp();
+        assertThat(caffeine("todasIncidencias").estimatedSize()).isZero();
+
+        // Estadísticas y métricas
+        assertThat(caffeine("usuarios").stats().hitCount()).isGreaterThanOrEqualTo(5);
+        assertThat(caffeine("usuarios").stats().evictionCount()).isGreaterThanOrEqualTo(3);
+        assertThat(meterRegistry.get("cache.gets").tag("cache", "usuarios").tag("result", "hit").functionCounter().count())
+                .isGreaterThanOrEqualTo(5);
+    }
+
+    private Cache<Object, Object> caffeine(String nombre) {
+        @SuppressWarnings("unchecked")
+        Cache<Object, Object> nativa = (Cache<Object, Object>) cacheManager.getCache(nombre).getNativeCache();
+        return nativa;
+    }
+}
@@ -0,0 +1,94 @@
+package es.ujaen.dae.incidenciasurbanas.app;
+
+import es.ujaen.dae.indicenciasurbanas.entidades.Incidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.TipoIncidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.Usuario;
+import es.ujaen.dae.indicenciasurbanas.excepciones.IncidenciaEnCurso;
+import es.ujaen.dae.indicenciasurbanas.servicios.ServicioIncidencia;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingStream;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+@SpringBootTest(classes = es.ujaen.dae.indicenciasurbanas.app.DaePracticaApplication.class)
+@ActiveProfiles("test")
+public class TestEventosJfr {
+    @Autowired
+    ServicioIncidencia servicioIncidencia;
+
+    @Test
+    @DirtiesContext
+    public void testEventosGrabados() {
+        Usuario admin = servicioIncidencia.login("admin.dae@ujaen.es", "admin").get();
+        servicioIncidencia.crearTipoIncidencia(admin, "Tipo");
+        TipoIncidencia tipo = servicioIncidencia.obtenerTipoIncidencia("Tipo").get();
+
+        Usuario usuario = new Usuario("nombre", "apellido", LocalDate.of(2000, 1, 1), "direccion", "+34777123456", "email@gmail.com", "clave");
+        servicioIncidencia.nuevoUsuario(usuario);
+        Usuario user = servicioIncidencia.login(usuario.email(), usuario.clave()).get();
+
+        // Sin umbral, para que aparezcan también las consultas y cargas rápidas
+        Queue<RecordedEvent> eventos = new ConcurrentLinkedQueue<>();
+        Incidencia incidencia;
+        try (RecordingStream grabacion = new RecordingStream()) {
+            for (String nombre : List.of("incidencias.ConsultaRepositorio", "incidencias.ComprobacionDuplicados", "incidencias.CargaCache")) {
+                grabacion.enable(nombre).withThreshold(Duration.ZERO);
+                grabacion.onEvent(nombre, eventos::add);
+            }
+            grabacion.startAsync();
+
+            LocalDateTime fecha = LocalDateTime.now();
+            incidencia = servicioIncidencia.nuevaIncidencia(fecha, tipo, "desc", "loc", 40.416775f, -3.703790f, "dpt", user, null);
+            assertThatThrownBy(() -> servicioIncidencia.nuevaIncidencia(fecha, tipo, "desc", "loc", 40.41681991555875f, -3.703731005258922f, "dpt", user, null))
+                    .isInstanceOf(IncidenciaEnCurso.class);
+            assertThat(servicioIncidencia.buscarIncidencia(incidencia.id())).isPresent();
+            assertThat(servicioIncidencia.buscarIncidencia(incidencia.id())).isPresent();
+            assertThat(servicioIncidencia.buscarIncidencia(incidencia.id() + 1000)).isEmpty();
+
+            // Al parar se entregan los eventos que quedaban
+            grabacion.stop();
+        }
+
+        // Consultas del repositorio, con las filas devueltas
+        List<RecordedEvent> consultas = eventos("incidencias.ConsultaRepositorio", eventos);
+        assertThat(consultas).filteredOn(evento -> evento.getString("consulta").equals("buscarPorId"))
+                .extracting(evento -> evento.getInt("filas"))
+                .endsWith(1, 1, 0);
+        assertThat(consultas).filteredOn(evento -> evento.getString("consulta").equals("guardar")).hasSize(1);
+
+        // La primera comprobación de duplicados no encuentra nada; la segunda encuentra la primera incidencia
+        List<RecordedEvent> comprobaciones = eventos("incidencias.ComprobacionDuplicados", eventos);
+        assertThat(comprobaciones).hasSize(2);
+        assertThat(comprobaciones.get(0).getString("origen")).isEqualTo("indice");
+        assertThat(comprobaciones.get(0).getBoolean("encontrada")).isFalse();
+        assertThat(comprobaciones.get(1).getInt("candidatas")).isEqualTo(1);
+        assertThat(comprobaciones.get(1).getBoolean("encontrada")).isTrue();
+
+        // Las lecturas que no están en la caché se cargan de la BBDD una sola vez
+        List<RecordedEvent> cargas = eventos("incidencias.CargaCache", eventos);
+        assertThat(cargas).filteredOn(evento -> evento.getString("cache").equals("incidenciasPorId"))
+                .extracting(evento -> evento.getString("clave"), evento -> evento.getBoolean("encontrada"))
+                .contains(tuple(String.valueOf(incidencia.id() + 1000), false))
+                .doesNotHaveDuplicates();
+    }
+
+    private static List<RecordedEvent> eventos(String nombre, Queue<RecordedEvent> eventos) {
+        return eventos.stream()
+                .filter(evento -> evento.getEventType().getName().equals(nombre))
+                .toList();
+    }
+}
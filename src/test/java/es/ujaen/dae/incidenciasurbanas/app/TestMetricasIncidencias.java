@@ -0,0 +1,96 @@
+package es.ujaen.dae.incidenciasurbanas.app;
+
+import es.ujaen.dae.indicenciasurbanas.entidades.Incidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.TipoIncidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.Usuario;
+import es.ujaen.dae.indicenciasurbanas.excepciones.IncidenciaEnCurso;
+import es.ujaen.dae.indicenciasurbanas.servicios.ServicioIncidencia;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.test.web.server.LocalManagementPort;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(classes = es.ujaen.dae.indicenciasurbanas.app.DaePracticaApplication.class,
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureObservability(tracing = false) // En las pruebas Spring Boot solo activa el registro en memoria
+public class TestMetricasIncidencias {
+    @Autowired
+    ServicioIncidencia servicioIncidencia;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    TestRestTemplate restTemplate;
+
+    @LocalServerPort
+    int puerto;
+
+    @LocalManagementPort
+    int puertoGestion;
+
+    @Test
+    @DirtiesContext
+    public void testMetricasServicioYRepositorio() {
+        Usuario admin = servicioIncidencia.login("admin.dae@ujaen.es", "admin").get();
+        servicioIncidencia.crearTipoIncidencia(admin, "Tipo");
+        TipoIncidencia tipo = servicioIncidencia.obtenerTipoIncidencia("Tipo").get();
+
+        Usuario usuario = new Usuario("nombre", "apellido", LocalDate.of(2000, 1, 1), "direccion", "+34777123456", "email@gmail.com", "clave");
+        servicioIncidencia.nuevoUsuario(usuario);
+        Usuario user = servicioIncidencia.login(usuario.email(), usuario.clave()).get();
+        assertThat(servicioIncidencia.login(usuario.email(), "otra")).isEmpty();
+        assertThat(servicioIncidencia.login("otro@gmail.com", "clave")).isEmpty();
+
+        LocalDateTime fecha = LocalDateTime.now();
+        Incidencia incidencia = servicioIncidencia.nuevaIncidencia(fecha, tipo, "desc", "loc", 40.416775f, -3.703790f, "dpt", user, null);
+        assertThatThrownBy(() -> servicioIncidencia.nuevaIncidencia(fecha, tipo, "desc", "loc", 40.41681991555875f, -3.703731005258922f, "dpt", user, null))
+                .isInstanceOf(IncidenciaEnCurso.class);
+        assertThat(servicioIncidencia.buscarIncidencia(incidencia.id())).isPresent();
+
+        // Tiempos por método del servicio, separando los que acaban en excepción
+        assertThat(meterRegistry.get("incidencias.servicio").tag("method", "nuevaIncidencia").tag("exception", "none")
+                .timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("incidencias.servicio").tag("method", "nuevaIncidencia").tag("exception", "IncidenciaEnCurso")
+                .timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("incidencias.servicio").tag("method", "login").timer().count()).isEqualTo(4);
+
+        // Y por consulta del repositorio
+        assertThat(meterRegistry.get("incidencias.repositorio").tag("method", "buscarPorId").timer().count()).isPositive();
+        assertThat(meterRegistry.get("incidencias.repositorio").tag("method", "guardar").timer().count()).isEqualTo(1);
+
+        // Login, rechazos y comprobaciones de duplicados
+        assertThat(meterRegistry.get("incidencias.login").tag("resultado", "correcto").functionCounter().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("incidencias.login").tag("resultado", "fallido").functionCounter().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("incidencias.registro.rechazadas").tag("modo", "individual").functionCounter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("incidencias.duplicados.comprobaciones").tag("origen", "indice").functionCounter().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("incidencias.duplicados.candidatas").tag("origen", "indice").functionCounter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("incidencias.por-estado").tag("estado", "PENDIENTE").gauge().value()).isEqualTo(1);
+
+        // Publicadas en el endpoint de Prometheus, con histograma, solo en el puerto de gestión
+        assertThat(puertoGestion).isNotEqualTo(puerto);
+        assertThat(restTemplate.getForEntity("/actuator/prometheus", String.class).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+        ResponseEntity<String> prometheus = restTemplate.getForEntity("http://localhost:" + puertoGestion + "/actuator/prometheus", String.class);
+        assertThat(prometheus.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(prometheus.getBody())
+                .contains("incidencias_servicio_seconds_bucket{")
+                .contains("incidencias_repositorio_seconds_bucket{")
+                .contains("incidencias_login_total{")
+                .contains("cache_gets_total{");
+    }
+}
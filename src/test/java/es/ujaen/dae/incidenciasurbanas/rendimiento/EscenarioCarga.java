@@ -0,0 +1,313 @@
+package es.ujaen.dae.incidenciasurbanas.rendimiento;
+
+import es.ujaen.dae.indicenciasurbanas.entidades.Incidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.Usuario;
+import es.ujaen.dae.indicenciasurbanas.excepciones.IncidenciaEnConflicto;
+import es.ujaen.dae.indicenciasurbanas.excepciones.IncidenciaEnCurso;
+import es.ujaen.dae.indicenciasurbanas.excepciones.TransicionNoPermitida;
+import es.ujaen.dae.indicenciasurbanas.servicios.ServicioIncidencia;
+import es.ujaen.dae.indicenciasurbanas.utils.CoordenadasGps;
+import es.ujaen.dae.indicenciasurbanas.utils.EstadoIncidencia;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reproduce contra ServicioIncidencia una carga mixta sobre una ciudad cargada con GeneradorCiudad: registros de
+ * incidencias (con duplicados, por los focos de la ciudad), listados paginados, cambios de estado del administrador
+ * y borrados de sus propias incidencias pendientes por los usuarios. Mide la latencia de cada operación y la
+ * productividad total.
+ * <p>
+ * Los cambios de estado y los borrados trabajan sobre las incidencias activas, que se reparten entre los hilos
+ * con una cola: cada incidencia la usa un solo hilo a la vez.
+ */
+public class EscenarioCarga {
+    private static final Logger log = LoggerFactory.getLogger(EscenarioCarga.class);
+    private static final int TAMANO_PAGINA = 50;
+
+    public enum Operacion { REGISTRO, LISTADO, CAMBIO_ESTADO, BORRADO }
+
+    /**
+     * Peso de cada operación en la carga
+     */
+    public record Mezcla(int registros, int listados, int cambiosEstado, int borrados) {
+        Operacion elegir(Random random) {
+            int valor = random.nextInt(registros + listados + cambiosEstado + borrados);
+            if ((valor -= registros) < 0) {
+                return Operacion.REGISTRO;
+            }
+            if ((valor -= listados) < 0) {
+                return Operacion.LISTADO;
+            }
+            return valor < cambiosEstado ? Operacion.CAMBIO_ESTADO : Operacion.BORRADO;
+        }
+    }
+
+    /**
+     * Latencias de un tipo de operación, en milisegundos
+     * @param total operaciones hechas
+     * @param rechazadas operaciones que el servicio rechaza como es debido (duplicados, transiciones no permitidas,
+     *                   borrados no autorizados, conflictos tras agotar los reintentos)
+     * @param errores operaciones que fallan con cualquier otra excepción
+     */
+    public record Latencias(Operacion operacion, int total, int rechazadas, int errores,
+                            double p50, double p99, double p999, double maximo) {}
+
+    /**
+     * Resultado de una ejecución del escenario
+     */
+    public record Informe(int hilos, double segundos, List<Latencias> operaciones) {
+        public int total() {
+            return operaciones.stream().mapToInt(Latencias::total).sum();
+        }
+
+        public int errores() {
+            return operaciones.stream().mapToInt(Latencias::errores).sum();
+        }
+
+        public double operacionesPorSegundo() {
+            return total() / segundos;
+        }
+
+        public void registrar(String titulo) {
+            if (!log.isInfoEnabled()) {
+                return;
+            }
+            StringBuilder informe = new StringBuilder(String.format("%s: %d operaciones con %d hilos en %.2f s (%.0f operaciones/s)",
+                    titulo, total(), hilos, segundos, operacionesPorSegundo()));
+            for (Latencias latencias : operaciones) {
+                informe.append(String.format("%n  %-13s %7d (%d rechazadas, %d errores)  p50 %7.2f ms  p99 %7.2f ms  p999 %7.2f ms  máx %7.2f ms",
+                        latencias.operacion(), latencias.total(), latencias.rechazadas(), latencias.errores(),
+                        latencias.p50(), latencias.p99(), latencias.p999(), latencias.maximo()));
+            }
+            log.info(informe.toString());
+        }
+    }
+
+    /**
+     * Latencias y resultados que anota cada hilo, sin compartir nada con los demás
+     */
+    private static class Anotaciones {
+        final Map<Operacion, long[]> nanos = new EnumMap<>(Operacion.class);
+        final Map<Operacion, Integer> total = new EnumMap<>(Operacion.class);
+        final Map<Operacion, Integer> rechazadas = new EnumMap<>(Operacion.class);
+        final Map<Operacion, Integer> errores = new EnumMap<>(Operacion.class);
+
+        void anotar(Operacion operacion, long nanosOperacion, Resultado resultado) {
+            int n = total.merge(operacion, 1, Integer::sum);
+            long[] anotadas = nanos.computeIfAbsent(operacion, o -> new long[1024]);
+            if (n > anotadas.length) {
+                anotadas = Arrays.copyOf(anotadas, anotadas.length * 2);
+                nanos.put(operacion, anotadas);
+            }
+            anotadas[n - 1] = nanosOperacion;
+
+            if (resultado == Resultado.RECHAZADA) {
+                rechazadas.merge(operacion, 1, Integer::sum);
+            } else if (resultado == Resultado.ERROR) {
+                errores.merge(operacion, 1, Integer::sum);
+            }
+        }
+    }
+
+    private enum Resultado { HECHA, RECHAZADA, ERROR }
+
+    private final ServicioIncidencia servicioIncidencia;
+    private final GeneradorCiudad ciudad;
+    private final GeneradorCiudad.Carga carga;
+    private final Usuario admin;
+    private final long semilla;
+    private final ConcurrentLinkedQueue<Integer> activas = new ConcurrentLinkedQueue<>();
+    private volatile Throwable primerError;
+
+    /**
+     * @param servicioIncidencia servicio contra el que se lanza la carga
+     * @param ciudad generador con el que se cargó la ciudad (para elegir tipos, usuarios y puntos como él)
+     * @param carga resultado de la carga
+     * @param semilla semilla de las operaciones (cada hilo usa la suya, derivada de esta)
+     */
+    public EscenarioCarga(ServicioIncidencia servicioIncidencia, GeneradorCiudad ciudad, GeneradorCiudad.Carga carga, long semilla) {
+        this.servicioIncidencia = servicioIncidencia;
+        this.ciudad = ciudad;
+        this.carga = carga;
+        this.semilla = semilla;
+        this.admin = servicioIncidencia.login("admin.dae@ujaen.es", "admin").get();
+
+        List<Integer> ids = new ArrayList<>(carga.activas());
+        Collections.shuffle(ids, new Random(semilla));
+        activas.addAll(ids);
+    }
+
+    /**
+     * Primera excepción inesperada de las ejecuciones, para poder ver qué ha fallado
+     */
+    public Optional<Throwable> primerError() {
+        return Optional.ofNullable(primerError);
+    }
+
+    /**
+     * Lanza la carga desde varios hilos a la vez hasta hacer un número de operaciones
+     * @param mezcla peso de cada operación
+     * @param hilos número de hilos
+     * @param operaciones número total de operaciones
+     * @return Latencias por tipo de operación y productividad
+     */
+    public Informe ejecutar(Mezcla mezcla, int hilos, int operaciones) throws Exception {
+        AtomicInteger pendientes = new AtomicInteger(operaciones);
+        CyclicBarrier salida = new CyclicBarrier(hilos);
+        List<Anotaciones> anotaciones = new ArrayList<>();
+        long inicio;
+        try (ExecutorService ejecutor = Executors.newFixedThreadPool(hilos)) {
+            List<Future<?>> tareas = new ArrayList<>();
+            for (int hilo = 0; hilo < hilos; hilo++) {
+                Random random = new Random(semilla * 31 + hilo);
+                Anotaciones delHilo = new Anotaciones();
+                anotaciones.add(delHilo);
+                tareas.add(ejecutor.submit(() -> {
+                    salida.await();
+                    while (pendientes.getAndDecrement() > 0) {
+                        Operacion operacion = mezcla.elegir(random);
+                        long antes = System.nanoTime();
+                        Resultado resultado = ejecutar(operacion, random);
+                        delHilo.anotar(operacion, System.nanoTime() - antes, resultado);
+                    }
+                    return null;
+                }));
+            }
+            inicio = System.nanoTime();
+            for (Future<?> tarea : tareas) {
+                tarea.get();
+            }
+        }
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+
+        List<Latencias> latencias = new ArrayList<>();
+        for (Operacion operacion : Operacion.values()) {
+            int total = anotaciones.stream().mapToInt(a -> a.total.getOrDefault(operacion, 0)).sum();
+            if (total == 0) {
+                continue;
+            }
+            long[] nanos = new long[total];
+            int n = 0;
+            for (Anotaciones delHilo : anotaciones) {
+                int delHiloTotal = delHilo.total.getOrDefault(operacion, 0);
+                if (delHiloTotal > 0) {
+                    System.arraycopy(delHilo.nanos.get(operacion), 0, nanos, n, delHiloTotal);
+                    n += delHiloTotal;
+                }
+            }
+            Arrays.sort(nanos);
+            latencias.add(new Latencias(operacion, total,
+                    anotaciones.stream().mapToInt(a -> a.rechazadas.getOrDefault(operacion, 0)).sum(),
+                    anotaciones.stream().mapToInt(a -> a.errores.getOrDefault(operacion, 0)).sum(),
+                    milisPercentil(nanos, 0.5), milisPercentil(nanos, 0.99), milisPercentil(nanos, 0.999),
+                    nanos[total - 1] / 1e6));
+        }
+        return new Informe(hilos, segundos, latencias);
+    }
+
+    private Resultado ejecutar(Operacion operacion, Random random) {
+        try {
+            return switch (operacion) {
+                case REGISTRO -> registrar(random);
+                case LISTADO -> listar(random);
+                case CAMBIO_ESTADO -> cambiarEstado(random);
+                case BORRADO -> borrar();
+            };
+        } catch (IncidenciaEnCurso | TransicionNoPermitida | IncidenciaEnConflicto e) {
+            return Resultado.RECHAZADA;
+        } catch (RuntimeException e) {
+            if (primerError == null) {
+                primerError = e;
+            }
+            return Resultado.ERROR;
+        }
+    }
+
+    private Resultado registrar(Random random) {
+        int tipo = ciudad.elegirTipo(random);
+        CoordenadasGps punto = ciudad.elegirPunto(random);
+        Incidencia incidencia = servicioIncidencia.nuevaIncidencia(LocalDateTime.now(), carga.tipos().get(tipo), "Incidencia nueva",
+                "Calle", punto.latitud(), punto.longitud(), ciudad.dpto(tipo), carga.usuarios().get(ciudad.elegirUsuario(random)), null);
+        activas.add(incidencia.id());
+        return Resultado.HECHA;
+    }
+
+    /**
+     * La mitad de los listados son de un usuario (sus incidencias) y la otra mitad por tipo y estado, como los de los
+     * departamentos
+     */
+    private Resultado listar(Random random) {
+        if (random.nextBoolean()) {
+            servicioIncidencia.obtenerResumenesIncidenciasUsuario(carga.usuarios().get(ciudad.elegirUsuario(random)), null, TAMANO_PAGINA);
+        } else {
+            EstadoIncidencia estado = EstadoIncidencia.values()[random.nextInt(EstadoIncidencia.values().length)];
+            servicioIncidencia.buscarResumenesTipoEstado(carga.tipos().get(ciudad.elegirTipo(random)), estado, null, TAMANO_PAGINA);
+        }
+        return Resultado.HECHA;
+    }
+
+    /**
+     * Una pendiente pasa a evaluación; una en evaluación se resuelve o, a veces, vuelve a pendiente
+     */
+    private Resultado cambiarEstado(Random random) {
+        Integer id = activas.poll();
+        if (id == null) {
+            return Resultado.RECHAZADA;
+        }
+        Optional<Incidencia> incidencia = servicioIncidencia.buscarIncidencia(id);
+        if (incidencia.isEmpty()) {
+            return Resultado.RECHAZADA;
+        }
+
+        EstadoIncidencia estado = incidencia.get().estado() == EstadoIncidencia.PENDIENTE ? EstadoIncidencia.EN_EVALUACION
+                : random.nextInt(10) < 6 ? EstadoIncidencia.RESUELTA : EstadoIncidencia.PENDIENTE;
+        try {
+            servicioIncidencia.modificarEstadoIncidencia(admin, estado, incidencia.get());
+        } finally {
+            if (estado != EstadoIncidencia.RESUELTA) {
+                activas.add(id);
+            }
+        }
+        return Resultado.HECHA;
+    }
+
+    /**
+     * Quien la registró borra una incidencia activa: solo puede si sigue pendiente
+     */
+    private Resultado borrar() {
+        Integer id = activas.poll();
+        if (id == null) {
+            return Resultado.RECHAZADA;
+        }
+        Optional<Incidencia> incidencia = servicioIncidencia.buscarIncidencia(id);
+        if (incidencia.isEmpty()) {
+            return Resultado.RECHAZADA;
+        }
+
+        if (!servicioIncidencia.borrarIncidencia(incidencia.get().usuario(), incidencia.get())) {
+            activas.add(id);
+            return Resultado.RECHAZADA;
+        }
+        return Resultado.HECHA;
+    }
+
+    private static double milisPercentil(long[] nanos, double percentil) {
+        return nanos[(int) Math.min(nanos.length - 1, percentil * nanos.length)] / 1e6;
+    }
+}
@@ -0,0 +1,330 @@
+package es.ujaen.dae.incidenciasurbanas.rendimiento;
+
+import es.ujaen.dae.indicenciasurbanas.entidades.Incidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.TipoIncidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.Usuario;
+import es.ujaen.dae.indicenciasurbanas.repositorios.ContadoresIncidencias;
+import es.ujaen.dae.indicenciasurbanas.repositorios.IndiceEspacialIncidencias;
+import es.ujaen.dae.indicenciasurbanas.servicios.ServicioIncidencia;
+import es.ujaen.dae.indicenciasurbanas.utils.CoordenadasGps;
+import es.ujaen.dae.indicenciasurbanas.utils.EstadoIncidencia;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.EventType;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Genera, a partir de una semilla, una ciudad de incidencias con una distribución parecida a la real:
+ * <ul>
+ *     <li>Coordenadas agrupadas en focos (barrios, calles con mucho tráfico) de distinto tamaño y peso dentro de una caja
+ *     de unos 8 x 8 km, más un fondo repartido por toda la ciudad.</li>
+ *     <li>Tipos de incidencia con frecuencias de Zipf (muchos baches, pocos animales muertos); cada tipo tiene su departamento.</li>
+ *     <li>Usuarios con actividad de Zipf: unos pocos registran muchas incidencias y la mayoría solo alguna.</li>
+ *     <li>Fechas repartidas por los tres años anteriores a FIN_PERIODO. Las recientes siguen casi todas activas y las
+ *     antiguas casi todas resueltas. Como en el servicio, no hay dos incidencias activas a menos de 10 metros: las
+ *     que caerían junto a otra se recolocan y, si no se encuentra sitio, se dan por resueltas.</li>
+ * </ul>
+ * Con la misma semilla se generan siempre los mismos usuarios e incidencias, en el mismo orden.
+ * <p>
+ * cargar() las inserta directamente en la BBDD de la aplicación (H2, o MySQL si se arranca con otro
+ * spring.datasource.url; en MySQL conviene rewriteBatchedStatements=true) con INSERT en lotes JDBC, sin pasar por
+ * ServicioIncidencia ni por Hibernate (ni validación ni listeners por fila), y después recarga el índice espacial,
+ * los contadores y las cachés.
+ */
+public class GeneradorCiudad {
+    public static final LocalDateTime FIN_PERIODO = LocalDateTime.of(2026, 1, 1, 0, 0); // Fijo, para que la ciudad sea reproducible
+    private static final int DIAS_PERIODO = 3 * 365;
+    private static final int DIAS_RECIENTES = 60;
+
+    private static final float LATITUD_MIN = 37.74f;
+    private static final float LONGITUD_MIN = -3.83f;
+    private static final float LADO_GRADOS = 0.07f;
+    private static final double METROS_POR_GRADO = 111_195;
+
+    private static final int FOCOS = 50;
+    private static final double PROPORCION_EN_FOCOS = 0.75;
+    private static final int RECOLOCACIONES = 5;
+    private static final double DISTANCIA_MINIMA_METROS = 10; // La de ServicioIncidencia
+
+    private static final int INCIDENCIAS_POR_TRANSACCION = 10_000;
+    private static final int TAMANO_LOTE_JDBC = 500;
+
+    private static final String INSERT_USUARIO = "INSERT INTO usuario (email, nombre, apellido, f_nacimiento, direccion, telefono, clave) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_INCIDENCIA = "INSERT INTO incidencia (id, fecha, tipo_id, descripcion, localizacion, " +
+            "latitud, longitud, estado, dpto, usuario_email, version) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0)";
+
+    // Tipo de incidencia y departamento que la atiende, de más a menos frecuente
+    private static final String[][] TIPOS = {
+            {"Bache", "Vías y obras"},
+            {"Farola", "Alumbrado"},
+            {"Contenedor", "Limpieza"},
+            {"Pintada", "Limpieza"},
+            {"Árbol", "Parques y jardines"},
+            {"Semáforo", "Tráfico"},
+            {"Alcantarilla", "Aguas"},
+            {"Mobiliario urbano", "Vías y obras"},
+            {"Ruido", "Medio ambiente"},
+            {"Animal muerto", "Medio ambiente"}
+    };
+
+    /**
+     * Incidencia generada: tipo y usuario son índices en los de la ciudad
+     */
+    public record IncidenciaGenerada(LocalDateTime fecha, int tipo, int usuario, float latitud, float longitud,
+                                     EstadoIncidencia estado) {}
+
+    /**
+     * Foco de incidencias: centro y radio típico (desviación de la normal) en metros
+     */
+    private record Foco(double latitud, double longitud, double radioMetros) {}
+
+    /**
+     * Resultado de cargar la ciudad en la BBDD
+     * @param usuarios usuarios registrados (con su clave), en el orden de la ciudad
+     * @param tipos tipos de incidencia, en el orden de la ciudad
+     * @param activas ids de las incidencias activas (PENDIENTE o EN_EVALUACION)
+     * @param porEstado número de incidencias cargadas en cada estado
+     * @param segundos tiempo de carga
+     */
+    public record Carga(List<Usuario> usuarios, List<TipoIncidencia> tipos, List<Integer> activas,
+                        Map<EstadoIncidencia, Long> porEstado, double segundos) {
+        public long total() {
+            return porEstado.values().stream().mapToLong(Long::longValue).sum();
+        }
+
+        public double incidenciasPorSegundo() {
+            return total() / segundos;
+        }
+    }
+
+    private final Random random;
+    private final int usuarios;
+    private final Foco[] focos = new Foco[FOCOS];
+    private final double[] acumuladoFocos;
+    private final double[] acumuladoTipos;
+    private final double[] acumuladoUsuarios;
+
+    // Incidencias activas generadas hasta ahora, para no dejar dos a menos de DISTANCIA_MINIMA_METROS
+    private final IndiceEspacialIncidencias activas = new IndiceEspacialIncidencias();
+    private int generadas;
+
+    /**
+     * @param semilla semilla de la que sale toda la ciudad
+     * @param usuarios número de usuarios de la ciudad
+     */
+    public GeneradorCiudad(long semilla, int usuarios) {
+        this.random = new Random(semilla);
+        this.usuarios = usuarios;
+
+        for (int i = 0; i < FOCOS; i++) {
+            focos[i] = new Foco(LATITUD_MIN + LADO_GRADOS * (0.1 + 0.8 * random.nextDouble()),
+                    LONGITUD_MIN + LADO_GRADOS * (0.1 + 0.8 * random.nextDouble()), 80 + 320 * random.nextDouble());
+        }
+        acumuladoFocos = acumuladoZipf(FOCOS, 0.8);
+        acumuladoTipos = acumuladoZipf(TIPOS.length, 1.0);
+        acumuladoUsuarios = acumuladoZipf(usuarios, 1.1);
+    }
+
+    public int usuarios() {
+        return usuarios;
+    }
+
+    /**
+     * Usuario i de la ciudad: email usuario{i}@ciudad.es y clave clave{i}
+     */
+    public Usuario usuario(int i) {
+        return new Usuario("Nombre" + i, "Apellido" + i, LocalDate.of(1950 + i % 50, 1 + i % 12, 1 + i % 28),
+                "Calle " + i, "+34" + (600_000_000 + i), "usuario" + i + "@ciudad.es", "clave" + i);
+    }
+
+    public int tipos() {
+        return TIPOS.length;
+    }
+
+    public String tipo(int i) {
+        return TIPOS[i][0];
+    }
+
+    public String dpto(int i) {
+        return TIPOS[i][1];
+    }
+
+    /**
+     * Elige un tipo según su frecuencia
+     */
+    public int elegirTipo(Random random) {
+        return elegir(random, acumuladoTipos);
+    }
+
+    /**
+     * Elige un usuario según su actividad
+     */
+    public int elegirUsuario(Random random) {
+        return elegir(random, acumuladoUsuarios);
+    }
+
+    /**
+     * Un punto de la ciudad: en uno de los focos o, con menos probabilidad, en cualquier sitio
+     */
+    public CoordenadasGps elegirPunto(Random random) {
+        if (random.nextDouble() >= PROPORCION_EN_FOCOS) {
+            return new CoordenadasGps(LATITUD_MIN + random.nextFloat() * LADO_GRADOS, LONGITUD_MIN + random.nextFloat() * LADO_GRADOS);
+        }
+
+        Foco foco = focos[elegir(random, acumuladoFocos)];
+        double gradosLatitud = foco.radioMetros() / METROS_POR_GRADO;
+        double gradosLongitud = gradosLatitud / Math.cos(Math.toRadians(foco.latitud()));
+        return new CoordenadasGps((float) (foco.latitud() + random.nextGaussian() * gradosLatitud),
+                (float) (foco.longitud() + random.nextGaussian() * gradosLongitud));
+    }
+
+    /**
+     * Genera la siguiente incidencia de la ciudad
+     */
+    public IncidenciaGenerada siguiente() {
+        int dias = random.nextInt(DIAS_PERIODO);
+        LocalDateTime fecha = FIN_PERIODO.minusDays(dias + 1).plusSeconds(random.nextInt(24 * 3600));
+        int tipo = elegirTipo(random);
+        int usuario = elegirUsuario(random);
+        CoordenadasGps punto = elegirPunto(random);
+
+        EstadoIncidencia estado = elegirEstado(dias);
+        if (estado != EstadoIncidencia.RESUELTA) {
+            for (int i = 0; i < RECOLOCACIONES && activas.hayIncidenciaCercana(punto, DISTANCIA_MINIMA_METROS); i++) {
+                punto = elegirPunto(random);
+            }
+            if (activas.hayIncidenciaCercana(punto, DISTANCIA_MINIMA_METROS)) {
+                estado = EstadoIncidencia.RESUELTA;
+            } else {
+                activas.actualizar(generadas, 0, estado, punto.latitud(), punto.longitud());
+            }
+        }
+
+        generadas++;
+        return new IncidenciaGenerada(fecha, tipo, usuario, punto.latitud(), punto.longitud(), estado);
+    }
+
+    /**
+     * Las incidencias de los últimos DIAS_RECIENTES días siguen casi todas activas; las anteriores, casi ninguna
+     */
+    private EstadoIncidencia elegirEstado(int dias) {
+        double activa = dias < DIAS_RECIENTES ? 0.65 : 0.015;
+        double valor = random.nextDouble();
+        if (valor >= activa) {
+            return EstadoIncidencia.RESUELTA;
+        }
+        return valor < activa * 0.7 ? EstadoIncidencia.PENDIENTE : EstadoIncidencia.EN_EVALUACION;
+    }
+
+    /**
+     * Inserta en la BBDD los usuarios, los tipos y las incidencias siguientes de la ciudad. La BBDD no debe tener
+     * ya ninguno de estos usuarios ni tipos.
+     * @param contexto contexto de la aplicación
+     * @param incidencias número de incidencias a generar e insertar
+     * @return Lo cargado
+     */
+    public Carga cargar(ApplicationContext contexto, int incidencias) {
+        long inicio = System.nanoTime();
+        ServicioIncidencia servicioIncidencia = contexto.getBean(ServicioIncidencia.class);
+        EntityManagerFactory entityManagerFactory = contexto.getBean(EntityManagerFactory.class);
+
+        Usuario admin = servicioIncidencia.login("admin.dae@ujaen.es", "admin").get();
+        List<TipoIncidencia> tipos = new ArrayList<>();
+        for (int i = 0; i < TIPOS.length; i++) {
+            servicioIncidencia.crearTipoIncidencia(admin, tipo(i));
+            tipos.add(servicioIncidencia.obtenerTipoIncidencia(tipo(i)).get());
+        }
+
+        List<Usuario> usuariosCiudad = new ArrayList<>();
+        List<Object[]> filasUsuarios = new ArrayList<>();
+        for (int i = 0; i < usuarios; i++) {
+            Usuario usuario = usuario(i);
+            usuariosCiudad.add(usuario);
+            filasUsuarios.add(new Object[]{usuario.email(), usuario.nombre(), usuario.apellido(), usuario.fNacimiento(),
+                    usuario.direccion(), usuario.telefono(), usuario.clave()});
+        }
+        TransactionTemplate transaccion = new TransactionTemplate(contexto.getBean(PlatformTransactionManager.class));
+        JdbcTemplate jdbcTemplate = contexto.getBean(JdbcTemplate.class);
+        transaccion.executeWithoutResult(estado -> jdbcTemplate.batchUpdate(INSERT_USUARIO, filasUsuarios, TAMANO_LOTE_JDBC,
+                (sentencia, fila) -> {
+                    for (int i = 0; i < fila.length; i++) {
+                        sentencia.setObject(i + 1, fila[i]);
+                    }
+                }));
+
+        // Los ids salen de la secuencia de Incidencia, como si los hubiera reservado Hibernate al persistirlas
+        List<Integer> idsActivas = new ArrayList<>();
+        Map<EstadoIncidencia, Long> porEstado = new EnumMap<>(EstadoIncidencia.class);
+        Arrays.stream(EstadoIncidencia.values()).forEach(estado -> porEstado.put(estado, 0L));
+        SessionFactoryImplementor fabricaSesiones = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        BeforeExecutionGenerator generadorIds = (BeforeExecutionGenerator) fabricaSesiones.getMappingMetamodel()
+                .getEntityDescriptor(Incidencia.class).getGenerator();
+        try (StatelessSession sesion = fabricaSesiones.openStatelessSession()) {
+            for (int inicioLote = 0; inicioLote < incidencias; inicioLote += INCIDENCIAS_POR_TRANSACCION) {
+                List<Object[]> filas = new ArrayList<>();
+                for (int i = inicioLote; i < Math.min(incidencias, inicioLote + INCIDENCIAS_POR_TRANSACCION); i++) {
+                    IncidenciaGenerada generada = siguiente();
+                    int id = (Integer) generadorIds.generate((SharedSessionContractImplementor) sesion, null, null, EventType.INSERT);
+                    filas.add(new Object[]{id, generada.fecha(), tipos.get(generada.tipo()).id(), "Incidencia " + i,
+                            "Calle " + (i % 997), generada.latitud(), generada.longitud(), generada.estado().name(),
+                            dpto(generada.tipo()), usuariosCiudad.get(generada.usuario()).email()});
+
+                    porEstado.merge(generada.estado(), 1L, Long::sum);
+                    if (generada.estado() != EstadoIncidencia.RESUELTA) {
+                        idsActivas.add(id);
+                    }
+                }
+                transaccion.executeWithoutResult(estado -> jdbcTemplate.batchUpdate(INSERT_INCIDENCIA, filas, TAMANO_LOTE_JDBC,
+                        (sentencia, fila) -> {
+                            for (int i = 0; i < fila.length; i++) {
+                                sentencia.setObject(i + 1, fila[i]);
+                            }
+                        }));
+            }
+        }
+
+        // Lo que el servicio mantiene en memoria se vuelve a leer de la BBDD
+        contexto.getBean(IndiceEspacialIncidencias.class).cargar();
+        contexto.getBean(ContadoresIncidencias.class).cargar();
+        CacheManager cacheManager = contexto.getBean(CacheManager.class);
+        cacheManager.getCacheNames().forEach(nombre -> cacheManager.getCache(nombre).clear());
+        entityManagerFactory.getCache().evictAll();
+
+        return new Carga(usuariosCiudad, tipos, idsActivas, porEstado, (System.nanoTime() - inicio) / 1e9);
+    }
+
+    private static double[] acumuladoZipf(int n, double exponente) {
+        double[] acumulado = new double[n];
+        double suma = 0;
+        for (int i = 0; i < n; i++) {
+            suma += 1 / Math.pow(i + 1, exponente);
+            acumulado[i] = suma;
+        }
+        for (int i = 0; i < n; i++) {
+            acumulado[i] /= suma;
+        }
+        return acumulado;
+    }
+
+    private static int elegir(Random random, double[] acumulado) {
+        int posicion = Arrays.binarySearch(acumulado, random.nextDouble());
+        return Math.min(acumulado.length - 1, posicion >= 0 ? posicion + 1 : -posicion - 1);
+    }
+}
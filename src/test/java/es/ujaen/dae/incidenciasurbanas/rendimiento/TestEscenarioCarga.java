@@ -0,0 +1,81 @@
+package es.ujaen.dae.incidenciasurbanas.rendimiento;
+
+import es.ujaen.dae.indicenciasurbanas.repositorios.ContadoresIncidencias;
+import es.ujaen.dae.indicenciasurbanas.servicios.ServicioIncidencia;
+import es.ujaen.dae.indicenciasurbanas.utils.EstadoIncidencia;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Carga una ciudad generada y lanza sobre ella una carga mixta. Por defecto es pequeña, para comprobar en cada build
+ * que el escenario funciona sin alargar las pruebas; para medir de verdad se cambia el tamaño con
+ * -Drendimiento.incidencias=N (p. ej. 50000 o millones) y -Drendimiento.operaciones=N, y la BBDD con
+ * -Dspring.datasource.url=... (y usuario y clave). Los resultados se escriben en el log.
+ */
+@SpringBootTest(classes = es.ujaen.dae.indicenciasurbanas.app.DaePracticaApplication.class)
+@ActiveProfiles("test")
+public class TestEscenarioCarga {
+    @Autowired
+    ApplicationContext contexto;
+
+    @Autowired
+    ServicioIncidencia servicioIncidencia;
+
+    @Autowired
+    ContadoresIncidencias contadores;
+
+    private static final Logger log = LoggerFactory.getLogger(TestEscenarioCarga.class);
+
+    private static final int INCIDENCIAS = Integer.getInteger("rendimiento.incidencias", 2_000);
+    private static final int OPERACIONES = Integer.getInteger("rendimiento.operaciones", 1_000);
+    private static final int HILOS = 8;
+    private static final long SEMILLA = 2025;
+
+    @Test
+    @DirtiesContext
+    public void testEscenarioMixto() throws Exception {
+        GeneradorCiudad ciudad = new GeneradorCiudad(SEMILLA, Math.max(100, INCIDENCIAS / 20));
+        GeneradorCiudad.Carga carga = ciudad.cargar(contexto, INCIDENCIAS);
+        log.info(String.format("Ciudad cargada: %d incidencias (%s) de %d usuarios en %.2f s (%.0f incidencias/s)",
+                carga.total(), carga.porEstado(), carga.usuarios().size(), carga.segundos(), carga.incidenciasPorSegundo()));
+
+        // Los contadores recargados cuadran con lo generado
+        for (EstadoIncidencia estado : EstadoIncidencia.values()) {
+            assertThat(servicioIncidencia.contarIncidencias(estado)).isEqualTo(carga.porEstado().get(estado));
+        }
+
+        // Registros, listados, cambios de estado y borrados en la proporción de un día normal
+        EscenarioCarga escenario = new EscenarioCarga(servicioIncidencia, ciudad, carga, SEMILLA);
+        EscenarioCarga.Mezcla mezcla = new EscenarioCarga.Mezcla(20, 60, 15, 5);
+        escenario.ejecutar(mezcla, HILOS, OPERACIONES / 2).registrar("Calentamiento");
+        EscenarioCarga.Informe informe = escenario.ejecutar(mezcla, HILOS, OPERACIONES);
+        informe.registrar("Carga mixta");
+
+        assertThat(escenario.primerError()).isEmpty();
+        assertThat(informe.errores()).isZero();
+        assertThat(informe.total()).isEqualTo(OPERACIONES);
+
+        // Tras la carga, los contadores mantenidos en memoria son los mismos que los que se leen de la BBDD
+        Map<EstadoIncidencia, Long> mantenidos = recuento();
+        contadores.cargar();
+        assertThat(recuento()).isEqualTo(mantenidos);
+    }
+
+    private Map<EstadoIncidencia, Long> recuento() {
+        return Arrays.stream(EstadoIncidencia.values())
+                .collect(Collectors.toMap(Function.identity(), servicioIncidencia::contarIncidencias));
+    }
+}
@@ -0,0 +1,58 @@
+package es.ujaen.dae.incidenciasurbanas.rendimiento;
+
+import es.ujaen.dae.indicenciasurbanas.utils.DistanciaCoordenadas;
+import es.ujaen.dae.indicenciasurbanas.utils.EstadoIncidencia;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestGeneradorCiudad {
+    private static final int INCIDENCIAS = 20_000;
+
+    @Test
+    public void testCiudadGenerada() {
+        GeneradorCiudad ciudad = new GeneradorCiudad(7, 1000);
+        GeneradorCiudad otra = new GeneradorCiudad(7, 1000);
+
+        List<GeneradorCiudad.IncidenciaGenerada> generadas = new ArrayList<>();
+        for (int i = 0; i < INCIDENCIAS; i++) {
+            generadas.add(ciudad.siguiente());
+        }
+
+        // Con la misma semilla sale la misma ciudad
+        for (GeneradorCiudad.IncidenciaGenerada generada : generadas) {
+            assertThat(otra.siguiente()).isEqualTo(generada);
+        }
+
+        // Tipos y usuarios sesgados: el primero es mucho más frecuente que el último
+        int[] porTipo = new int[ciudad.tipos()];
+        int[] porUsuario = new int[ciudad.usuarios()];
+        int[] porEstado = new int[EstadoIncidencia.values().length];
+        for (GeneradorCiudad.IncidenciaGenerada generada : generadas) {
+            porTipo[generada.tipo()]++;
+            porUsuario[generada.usuario()]++;
+            porEstado[generada.estado().ordinal()]++;
+        }
+        assertThat(porTipo[0]).isGreaterThan(5 * porTipo[ciudad.tipos() - 1]);
+        assertThat(porUsuario[0]).isGreaterThan(100 * Math.max(1, porUsuario[ciudad.usuarios() - 1]));
+
+        // La mayoría están resueltas, pero hay activas en los dos estados
+        assertThat(porEstado[EstadoIncidencia.RESUELTA.ordinal()]).isGreaterThan(INCIDENCIAS / 2);
+        assertThat(porEstado[EstadoIncidencia.PENDIENTE.ordinal()]).isPositive();
+        assertThat(porEstado[EstadoIncidencia.EN_EVALUACION.ordinal()]).isPositive();
+
+        // Ninguna activa tiene otra activa a menos de 10 metros
+        List<GeneradorCiudad.IncidenciaGenerada> activas = generadas.stream()
+                .filter(generada -> generada.estado() != EstadoIncidencia.RESUELTA)
+                .toList();
+        for (int i = 0; i < activas.size(); i++) {
+            for (int j = i + 1; j < activas.size(); j++) {
+                assertThat(DistanciaCoordenadas.calcularDistanciaMetros(activas.get(i).latitud(), activas.get(i).longitud(),
+                        activas.get(j).latitud(), activas.get(j).longitud())).isGreaterThanOrEqualTo(10);
+            }
+        }
+    }
+}
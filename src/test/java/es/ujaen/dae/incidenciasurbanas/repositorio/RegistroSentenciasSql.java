@@ -0,0 +1,39 @@
+package es.ujaen.dae.incidenciasurbanas.repositorio;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Registra las sentencias SQL que prepara Hibernate. Se activa en un test con la propiedad
+ * spring.jpa.properties.hibernate.session_factory.statement_inspector
+ */
+public class RegistroSentenciasSql implements StatementInspector {
+
+    private record Sentencia(String sql, Thread hilo) {}
+
+    private static final Queue<Sentencia> sentencias = new ConcurrentLinkedQueue<>();
+
+    @Override
+    public String inspect(String sql) {
+        sentencias.add(new Sentencia(sql.toLowerCase(), Thread.currentThread()));
+        return sql;
+    }
+
+    public static void limpiar() {
+        sentencias.clear();
+    }
+
+    public static List<String> sentencias() {
+        return sentencias.stream().map(Sentencia::sql).toList();
+    }
+
+    /**
+     * @return Sentencias preparadas desde un hilo (sin las de los hilos en segundo plano de la aplicación)
+     */
+    public static List<String> sentencias(Thread hilo) {
+        return sentencias.stream().filter(sentencia -> sentencia.hilo() == hilo).map(Sentencia::sql).toList();
+    }
+}
@@ -0,0 +1,77 @@
+package es.ujaen.dae.incidenciasurbanas.repositorio;
+
+import es.ujaen.dae.indicenciasurbanas.entidades.Incidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.TipoIncidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.Usuario;
+import es.ujaen.dae.indicenciasurbanas.servicios.ServicioIncidencia;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static es.ujaen.dae.incidenciasurbanas.repositorio.RegistroSentenciasSql.limpiar;
+import static es.ujaen.dae.incidenciasurbanas.repositorio.RegistroSentenciasSql.sentencias;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Comprueba que el tipo y el usuario de las incidencias, y las consultas de tipos, salen de la caché de segundo
+ * nivel de Hibernate sin ir a la BBDD
+ */
+@SpringBootTest(classes = es.ujaen.dae.indicenciasurbanas.app.DaePracticaApplication.class, properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector=es.ujaen.dae.incidenciasurbanas.repositorio.RegistroSentenciasSql"
+})
+@ActiveProfiles("test")
+public class TestCacheSegundoNivel {
+    @Autowired
+    ServicioIncidencia servicioIncidencia;
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    @Test
+    @DirtiesContext
+    public void testAsociacionesDesdeCacheSegundoNivel() {
+        Usuario admin = servicioIncidencia.login("admin.dae@ujaen.es", "admin").get();
+        servicioIncidencia.crearTipoIncidencia(admin, "Tipo");
+        TipoIncidencia tipo = servicioIncidencia.obtenerTipoIncidencia("Tipo").get();
+
+        Usuario usuario = new Usuario("nombre", "apellido", LocalDate.of(2000, 1, 1), "direccion", "+34777123456", "email@gmail.com", "clave");
+        servicioIncidencia.nuevoUsuario(usuario);
+        Usuario user = servicioIncidencia.login(usuario.email(), usuario.clave()).get();
+
+        for (int i = 0; i < 3; i++) {
+            servicioIncidencia.nuevaIncidencia(LocalDateTime.now(), tipo, "desc", "loc", 37.77f + i * 0.01f, -3.78f, "dpt", user, null);
+        }
+
+        Statistics estadisticas = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        estadisticas.clear();
+        limpiar();
+
+        // El listado paginado no pasa por las cachés de Spring: solo se consulta la tabla de incidencias
+        List<Incidencia> incidencias = servicioIncidencia.buscarIncidenciasTipoEstado(null, null, null, 10).elementos();
+        assertThat(incidencias).hasSize(3).allMatch(incidencia -> incidencia.usuario().email().equals(user.email()) && incidencia.tipo().equals(tipo));
+        assertThat(sentencias()).hasSize(1).allMatch(sql -> sql.contains(" from incidencia "));
+        assertThat(estadisticas.getDomainDataRegionStatistics("Usuario").getHitCount()).isPositive();
+        assertThat(estadisticas.getDomainDataRegionStatistics("TipoIncidencia").getHitCount()).isPositive();
+
+        // La caché de consultas recuerda también los tipos que no existen...
+        limpiar();
+        assertThat(servicioIncidencia.obtenerTipoIncidencia("Otro")).isEmpty();
+        assertThat(servicioIncidencia.obtenerTipoIncidencia("Otro")).isEmpty();
+        assertThat(sentencias()).hasSize(1);
+
+        // ...hasta que cambia la tabla
+        servicioIncidencia.crearTipoIncidencia(admin, "Otro");
+        assertThat(servicioIncidencia.obtenerTipoIncidencia("Otro")).isPresent();
+        assertThat(servicioIncidencia.obtenerTiposIncidencia()).hasSize(2);
+    }
+}
@@ -0,0 +1,109 @@
+package es.ujaen.dae.incidenciasurbanas.repositorio;
+
+import es.ujaen.dae.indicenciasurbanas.entidades.Incidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.TipoIncidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.Usuario;
+import es.ujaen.dae.indicenciasurbanas.servicios.ServicioIncidencia;
+import es.ujaen.dae.indicenciasurbanas.utils.EstadoIncidencia;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Hibernate;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.PersistentAttributeInterceptable;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Comprueba que la columna antigua imagen (BLOB) no se lee al listar incidencias, gracias a la mejora
+ * de bytecode de Hibernate (hibernate-enhance-maven-plugin)
+ */
+@SpringBootTest(classes = es.ujaen.dae.indicenciasurbanas.app.DaePracticaApplication.class, properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector=es.ujaen.dae.incidenciasurbanas.repositorio.RegistroSentenciasSql"
+})
+@ActiveProfiles("test")
+public class TestCargaPerezosaImagen {
+    private static final int TAMANO_IMAGEN = 512 * 1024;
+    private static final String COLUMNA_IMAGEN = "\\.imagen\\b"; // La columna BLOB, no hash_imagen
+
+    @Autowired
+    ServicioIncidencia servicioIncidencia;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    @Test
+    @DirtiesContext
+    public void testListadosNoCarganImagen() throws Exception {
+        Usuario admin = servicioIncidencia.login("admin.dae@ujaen.es", "admin").get();
+        servicioIncidencia.crearTipoIncidencia(admin, "Tipo");
+        TipoIncidencia tipo = servicioIncidencia.obtenerTipoIncidencia("Tipo").get();
+
+        Usuario usuario = new Usuario("nombre", "apellido", LocalDate.of(2000, 1, 1), "direccion", "+34777123456", "email@gmail.com", "clave");
+        servicioIncidencia.nuevoUsuario(usuario);
+        Usuario user = servicioIncidencia.login(usuario.email(), usuario.clave()).get();
+
+        for (int i = 0; i < 3; i++) {
+            servicioIncidencia.nuevaIncidencia(LocalDateTime.now(), tipo, "desc", "loc", 37.77f + i * 0.01f, -3.78f, "dpt", user, null);
+        }
+
+        //Filas antiguas con la imagen en la propia tabla, como antes de la migración
+        jdbcTemplate.update("UPDATE incidencia SET imagen = ?", (Object) new byte[TAMANO_IMAGEN]);
+
+        Statistics estadisticas = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        List<Supplier<List<Incidencia>>> listados = List.of(
+                () -> servicioIncidencia.buscarIncidenciasTipoEstado(null, null),
+                () -> servicioIncidencia.buscarIncidenciasTipoEstado(tipo, null),
+                () -> servicioIncidencia.buscarIncidenciasTipoEstado(null, EstadoIncidencia.PENDIENTE),
+                () -> servicioIncidencia.buscarIncidenciasTipoEstado(tipo, EstadoIncidencia.PENDIENTE),
+                () -> servicioIncidencia.obtenerListaIncidenciasUsuario(user)
+        );
+
+        for (Supplier<List<Incidencia>> listado : listados) {
+            RegistroSentenciasSql.limpiar();
+            estadisticas.clear();
+
+            List<Incidencia> incidencias = listado.get();
+            assertThat(incidencias).hasSize(3);
+
+            //Una sola consulta sobre la tabla de incidencias, sin la columna imagen
+            List<String> consultasIncidencias = RegistroSentenciasSql.sentencias().stream()
+                    .filter(sql -> sql.contains(" from incidencia "))
+                    .toList();
+            assertThat(consultasIncidencias).hasSize(1);
+            assertThat(consultasIncidencias.getFirst()).doesNotContainPattern(COLUMNA_IMAGEN);
+            assertThat(estadisticas.getPrepareStatementCount()).isEqualTo(RegistroSentenciasSql.sentencias().size());
+
+            //Ningún byte de imagen cargado en las entidades (las reconstruidas desde la caché no llevan la imagen)
+            long bytesImagen = 0;
+            for (Incidencia incidencia : incidencias) {
+                assertThat(incidencia).isInstanceOf(PersistentAttributeInterceptable.class);
+                if (Hibernate.isPropertyInitialized(incidencia, "imagen") && incidencia.imagenSinMigrar() != null) {
+                    bytesImagen += TAMANO_IMAGEN;
+                }
+            }
+            assertThat(bytesImagen).isZero();
+        }
+
+        //La imagen sí se lee cuando se pide expresamente
+        RegistroSentenciasSql.limpiar();
+        Incidencia primera = servicioIncidencia.obtenerListaIncidenciasUsuario(user).getFirst();
+        assertThat(servicioIncidencia.obtenerImagen(primera).get().contentLength()).isEqualTo(TAMANO_IMAGEN);
+        assertThat(RegistroSentenciasSql.sentencias()).anyMatch(sql -> sql.matches(".*" + COLUMNA_IMAGEN + ".*"));
+    }
+}
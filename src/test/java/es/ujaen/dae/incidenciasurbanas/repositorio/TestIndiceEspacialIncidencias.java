@@ -0,0 +1,41 @@
+package es.ujaen.dae.incidenciasurbanas.repositorio;
+
+import es.ujaen.dae.indicenciasurbanas.repositorios.IndiceEspacialIncidencias;
+import es.ujaen.dae.indicenciasurbanas.utils.CoordenadasGps;
+import es.ujaen.dae.indicenciasurbanas.utils.EstadoIncidencia;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestIndiceEspacialIncidencias {
+
+    private static final CoordenadasGps JAEN = new CoordenadasGps(37.7796f, -3.7849f);
+
+    @Test
+    public void testCambiosAtrasadosNoSeAplican() {
+        IndiceEspacialIncidencias indice = new IndiceEspacialIncidencias();
+        indice.actualizar(1, 0, EstadoIncidencia.PENDIENTE, JAEN.latitud(), JAEN.longitud());
+
+        // El paso a RESUELTA (versión 2) llega antes que el paso a EN_EVALUACION (versión 1)
+        indice.actualizar(1, 2, EstadoIncidencia.RESUELTA, JAEN.latitud(), JAEN.longitud());
+        indice.actualizar(1, 1, EstadoIncidencia.EN_EVALUACION, JAEN.latitud(), JAEN.longitud());
+        assertThat(indice.tamano()).isZero();
+        assertThat(indice.hayIncidenciaCercana(JAEN, 10)).isFalse();
+
+        // Vuelve a estar activa con una versión posterior
+        indice.actualizar(1, 3, EstadoIncidencia.EN_EVALUACION, JAEN.latitud(), JAEN.longitud());
+        assertThat(indice.hayIncidenciaCercana(JAEN, 10)).isTrue();
+    }
+
+    @Test
+    public void testCambiosTrasBorrarNoLaDevuelven() {
+        IndiceEspacialIncidencias indice = new IndiceEspacialIncidencias();
+        indice.actualizar(1, 0, EstadoIncidencia.PENDIENTE, JAEN.latitud(), JAEN.longitud());
+
+        // El borrado llega antes que un cambio de estado confirmado antes que él
+        indice.quitar(1);
+        indice.actualizar(1, 1, EstadoIncidencia.EN_EVALUACION, JAEN.latitud(), JAEN.longitud());
+        assertThat(indice.tamano()).isZero();
+        assertThat(indice.hayIncidenciaCercana(JAEN, 10)).isFalse();
+    }
+}
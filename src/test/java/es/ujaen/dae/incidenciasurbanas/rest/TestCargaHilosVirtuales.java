@@ -0,0 +1,147 @@
+package es.ujaen.dae.incidenciasurbanas.rest;
+
+import es.ujaen.dae.indicenciasurbanas.app.DaePracticaApplication;
+import es.ujaen.dae.indicenciasurbanas.dto.DatosIncidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.Incidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.TipoIncidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.Usuario;
+import es.ujaen.dae.indicenciasurbanas.servicios.ServicioIncidencia;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Prueba de carga de la API REST con muchos clientes simultáneos, atendiendo las peticiones con hilos virtuales y con
+ * el pool clásico de hilos de Tomcat. Cada configuración arranca su propia aplicación, con su propia BBDD en memoria.
+ */
+public class TestCargaHilosVirtuales {
+    private static final Logger log = LoggerFactory.getLogger(TestCargaHilosVirtuales.class);
+
+    private static final int CLIENTES = 200;
+    private static final int PETICIONES_POR_CLIENTE = 10;
+    private static final int HILOS_POOL = 50; // Hilos de Tomcat sin hilos virtuales
+    private static final int INCIDENCIAS = 500;
+
+    private record Resultado(double segundos, long[] nanosPeticiones, int errores) {
+        double peticionesPorSegundo() {
+            return nanosPeticiones.length / segundos;
+        }
+
+        double milisPercentil(double percentil) {
+            return nanosPeticiones[(int) Math.min(nanosPeticiones.length - 1, percentil * nanosPeticiones.length)] / 1e6;
+        }
+    }
+
+    @Test
+    public void testHilosVirtualesFrentePoolHilos() throws Exception {
+        Resultado pool = medir(false);
+        Resultado virtuales = medir(true);
+
+        for (Resultado resultado : List.of(pool, virtuales)) {
+            log.debug(String.format("API REST con %s: %d peticiones de %d clientes en %.2f s (%.0f peticiones/s), " +
+                            "p50 %.1f ms, p99 %.1f ms, %d errores",
+                    resultado == pool ? HILOS_POOL + " hilos de plataforma" : "hilos virtuales",
+                    resultado.nanosPeticiones().length, CLIENTES, resultado.segundos(), resultado.peticionesPorSegundo(),
+                    resultado.milisPercentil(0.5), resultado.milisPercentil(0.99), resultado.errores()));
+        }
+
+        assertThat(pool.errores()).isZero();
+        assertThat(virtuales.errores()).isZero();
+    }
+
+    private Resultado medir(boolean hilosVirtuales) throws Exception {
+        try (ConfigurableApplicationContext contexto = new SpringApplicationBuilder(DaePracticaApplication.class)
+                .profiles("test")
+                .run("--server.port=0",
+                        "--spring.threads.virtual.enabled=" + hilosVirtuales,
+                        "--server.tomcat.threads.max=" + HILOS_POOL,
+                        "--spring.datasource.url=jdbc:h2:mem:carga-" + UUID.randomUUID() + ";MODE=MYSQL;DATABASE_TO_LOWER=TRUE")) {
+            List<Integer> ids = preparar(contexto.getBean(ServicioIncidencia.class));
+            int puerto = ((WebServerApplicationContext) contexto).getWebServer().getPort();
+
+            // Una primera ronda sin medir, para que el JIT haya compilado lo mismo en las dos configuraciones
+            cargar(puerto, ids);
+            return cargar(puerto, ids);
+        }
+    }
+
+    /**
+     * Lanza CLIENTES clientes simultáneos que alternan un listado paginado y la consulta de una incidencia
+     */
+    private static Resultado cargar(int puerto, List<Integer> ids) throws Exception {
+        String autorizacion = "Basic " + Base64.getEncoder().encodeToString("email@gmail.com:clave".getBytes(StandardCharsets.UTF_8));
+        long[] nanosPeticiones = new long[CLIENTES * PETICIONES_POR_CLIENTE];
+        AtomicInteger errores = new AtomicInteger();
+        CyclicBarrier salida = new CyclicBarrier(CLIENTES);
+        long inicio;
+        try (ExecutorService clientes = Executors.newVirtualThreadPerTaskExecutor();
+             HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).executor(clientes).build()) {
+            List<Future<?>> tareas = new ArrayList<>();
+            inicio = System.nanoTime();
+            for (int cliente = 0; cliente < CLIENTES; cliente++) {
+                int primera = cliente * PETICIONES_POR_CLIENTE;
+                tareas.add(clientes.submit(() -> {
+                    salida.await();
+                    for (int i = 0; i < PETICIONES_POR_CLIENTE; i++) {
+                        String ruta = i % 2 == 0 ? "/incidencias/incidencias?estado=PENDIENTE&tamano=20"
+                                : "/incidencias/incidencias/" + ids.get((primera + i) % ids.size());
+                        HttpRequest peticion = HttpRequest.newBuilder(URI.create("http://localhost:" + puerto + ruta))
+                                .header("Authorization", autorizacion)
+                                .build();
+                        long antes = System.nanoTime();
+                        HttpResponse<byte[]> respuesta = http.send(peticion, HttpResponse.BodyHandlers.ofByteArray());
+                        nanosPeticiones[primera + i] = System.nanoTime() - antes;
+                        if (respuesta.statusCode() != 200) {
+                            errores.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> tarea : tareas) {
+                tarea.get();
+            }
+        }
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+
+        Arrays.sort(nanosPeticiones);
+        return new Resultado(segundos, nanosPeticiones, errores.get());
+    }
+
+    private static List<Integer> preparar(ServicioIncidencia servicioIncidencia) {
+        Usuario admin = servicioIncidencia.login("admin.dae@ujaen.es", "admin").get();
+        servicioIncidencia.crearTipoIncidencia(admin, "Bache");
+        TipoIncidencia tipo = servicioIncidencia.obtenerTipoIncidencia("Bache").get();
+        servicioIncidencia.nuevoUsuario(new Usuario("nombre", "apellido", LocalDate.of(2000, 1, 1), "direccion", "+34777123456", "email@gmail.com", "clave"));
+        Usuario usuario = servicioIncidencia.login("email@gmail.com", "clave").get();
+
+        List<DatosIncidencia> lote = new ArrayList<>();
+        for (int i = 0; i < INCIDENCIAS; i++) {
+            lote.add(new DatosIncidencia(LocalDateTime.now(), tipo, "desc", "loc", 37.70f + i * 0.001f, -3.78f, "dpt", usuario, null));
+        }
+        return servicioIncidencia.nuevasIncidencias(lote).registradas().stream().map(Incidencia::id).toList();
+    }
+}
@@ -0,0 +1,133 @@
+package es.ujaen.dae.incidenciasurbanas.rest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import es.ujaen.dae.indicenciasurbanas.rest.dto.DCambioEstado;
+import es.ujaen.dae.indicenciasurbanas.rest.dto.DIncidencia;
+import es.ujaen.dae.indicenciasurbanas.rest.dto.DNuevaIncidencia;
+import es.ujaen.dae.indicenciasurbanas.rest.dto.DTipoIncidencia;
+import es.ujaen.dae.indicenciasurbanas.rest.dto.DUsuario;
+import es.ujaen.dae.indicenciasurbanas.utils.EstadoIncidencia;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(classes = es.ujaen.dae.indicenciasurbanas.app.DaePracticaApplication.class,
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+public class TestControladorIncidencias {
+    @Autowired
+    TestRestTemplate restTemplate;
+
+    @Test
+    @DirtiesContext
+    public void testUsuarios() {
+        DUsuario usuario = new DUsuario("nombre", "apellido", LocalDate.of(2000, 1, 1), "direccion", "+34777123456", "email@gmail.com", "clave");
+        assertThat(restTemplate.postForEntity("/incidencias/usuarios", usuario, Void.class).getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        assertThat(restTemplate.postForEntity("/incidencias/usuarios", usuario, Void.class).getStatusCode()).isEqualTo(HttpStatus.CONFLICT);
+
+        // Sin credenciales, con una clave errónea o con las de otro usuario no hay login
+        ResponseEntity<DUsuario> sinCredenciales = restTemplate.getForEntity("/incidencias/usuarios/email@gmail.com", DUsuario.class);
+        assertThat(sinCredenciales.getStatusCode()).isEqualTo(HttpStatus.UNAUTHORIZED);
+        assertThat(sinCredenciales.getHeaders().getFirst(HttpHeaders.WWW_AUTHENTICATE)).startsWith("Basic");
+        assertThat(restTemplate.withBasicAuth("email@gmail.com", "otra")
+                .getForEntity("/incidencias/usuarios/email@gmail.com", DUsuario.class).getStatusCode()).isEqualTo(HttpStatus.UNAUTHORIZED);
+        assertThat(restTemplate.withBasicAuth("admin.dae@ujaen.es", "admin")
+                .getForEntity("/incidencias/usuarios/email@gmail.com", DUsuario.class).getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+
+        // La clave nunca se devuelve
+        ResponseEntity<String> login = restTemplate.withBasicAuth("email@gmail.com", "clave")
+                .getForEntity("/incidencias/usuarios/email@gmail.com", String.class);
+        assertThat(login.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(login.getBody()).contains("\"email\":\"email@gmail.com\"").doesNotContain("clave");
+    }
+
+    @Test
+    @DirtiesContext
+    public void testIncidencias() {
+        TestRestTemplate admin = restTemplate.withBasicAuth("admin.dae@ujaen.es", "admin");
+        TestRestTemplate user = restTemplate.withBasicAuth("email@gmail.com", "clave");
+        restTemplate.postForEntity("/incidencias/usuarios",
+                new DUsuario("nombre", "apellido", LocalDate.of(2000, 1, 1), "direccion", "+34777123456", "email@gmail.com", "clave"), Void.class);
+
+        // Solo el administrador crea tipos; consultarlos no necesita credenciales
+        assertThat(user.postForEntity("/incidencias/tipos", new DTipoIncidencia("Bache"), Void.class).getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+        assertThat(admin.postForEntity("/incidencias/tipos", new DTipoIncidencia("Bache"), Void.class).getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        assertThat(restTemplate.getForObject("/incidencias/tipos", DTipoIncidencia[].class)).containsExactly(new DTipoIncidencia("Bache"));
+
+        // Registro con foto (multipart)
+        byte[] foto = new byte[32 * 1024];
+        new Random(1).nextBytes(foto);
+        DNuevaIncidencia datos = new DNuevaIncidencia(LocalDateTime.now(), "Bache", "Bache en la calzada", "Paseo de la Estación", 37.7796f, -3.7849f, "Vías y obras");
+        HttpHeaders cabecerasJson = new HttpHeaders();
+        cabecerasJson.setContentType(MediaType.APPLICATION_JSON);
+        MultiValueMap<String, Object> partes = new LinkedMultiValueMap<>();
+        partes.add("incidencia", new HttpEntity<>(datos, cabecerasJson));
+        partes.add("foto", new ByteArrayResource(foto) {
+            @Override
+            public String getFilename() {
+                return "foto.jpg";
+            }
+        });
+        ResponseEntity<DIncidencia> alta = user.postForEntity("/incidencias/incidencias", partes, DIncidencia.class);
+        assertThat(alta.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        DIncidencia incidencia = alta.getBody();
+        assertThat(incidencia.estado()).isEqualTo(EstadoIncidencia.PENDIENTE);
+        assertThat(incidencia.usuario()).isEqualTo("email@gmail.com");
+        assertThat(incidencia.imagen()).isTrue();
+        assertThat(alta.getHeaders().getLocation()).hasPath("/incidencias/incidencias/" + incidencia.id());
+        ResponseEntity<byte[]> imagen = user.getForEntity("/incidencias/incidencias/{id}/imagen", byte[].class, incidencia.id());
+        assertThat(imagen.getHeaders().getContentLength()).isEqualTo(foto.length);
+        assertThat(imagen.getBody()).isEqualTo(foto);
+
+        // Otra en el mismo sitio (sin foto, en JSON) es un duplicado
+        assertThat(user.postForEntity("/incidencias/incidencias", datos, DIncidencia.class).getStatusCode()).isEqualTo(HttpStatus.CONFLICT);
+        assertThat(user.postForEntity("/incidencias/incidencias", new DNuevaIncidencia(null, "Farola", "desc", "loc", 37.8f, -3.7f, "dpt"),
+                DIncidencia.class).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+
+        // Listados paginados
+        JsonNode pagina = user.getForObject("/incidencias/incidencias?estado=PENDIENTE&tamano=10", JsonNode.class);
+        assertThat(pagina.get("elementos")).hasSize(1);
+        assertThat(pagina.get("elementos").get(0).get("id").asInt()).isEqualTo(incidencia.id());
+        assertThat(user.getForObject("/incidencias/usuarios/email@gmail.com/incidencias", JsonNode.class).get("elementos")).hasSize(1);
+        assertThat(user.getForEntity("/incidencias/incidencias?tamano=100000", JsonNode.class).getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+
+        // Cambios de estado: solo el administrador y solo los permitidos
+        assertThat(cambiarEstado(user, incidencia.id(), EstadoIncidencia.RESUELTA)).isEqualTo(HttpStatus.FORBIDDEN);
+        assertThat(cambiarEstado(admin, incidencia.id(), EstadoIncidencia.RESUELTA)).isEqualTo(HttpStatus.NO_CONTENT);
+        assertThat(cambiarEstado(admin, incidencia.id(), EstadoIncidencia.PENDIENTE)).isEqualTo(HttpStatus.CONFLICT);
+        assertThat(user.getForObject("/incidencias/incidencias/{id}", DIncidencia.class, incidencia.id()).estado()).isEqualTo(EstadoIncidencia.RESUELTA);
+
+        // El tipo no se puede borrar mientras tenga incidencias
+        assertThat(admin.exchange("/incidencias/tipos/Bache", HttpMethod.DELETE, null, Void.class).getStatusCode()).isEqualTo(HttpStatus.CONFLICT);
+
+        // El usuario ya no puede borrarla (no está pendiente); el administrador sí
+        assertThat(user.exchange("/incidencias/incidencias/{id}", HttpMethod.DELETE, null, Void.class, incidencia.id()).getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+        assertThat(admin.exchange("/incidencias/incidencias/{id}", HttpMethod.DELETE, null, Void.class, incidencia.id()).getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+        assertThat(user.getForEntity("/incidencias/incidencias/{id}", DIncidencia.class, incidencia.id()).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+        assertThat(admin.exchange("/incidencias/tipos/Bache", HttpMethod.DELETE, null, Void.class).getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+    }
+
+    private static HttpStatusCode cambiarEstado(TestRestTemplate cliente, int id, EstadoIncidencia estado) {
+        return cliente.exchange("/incidencias/incidencias/{id}/estado", HttpMethod.PUT,
+                new HttpEntity<>(new DCambioEstado(estado)), Void.class, id).getStatusCode();
+    }
+}
@@ -0,0 +1,198 @@
+package es.ujaen.dae.incidenciasurbanas.servicio;
+
+import es.ujaen.dae.indicenciasurbanas.dto.EventoIncidencia;
+import es.ujaen.dae.indicenciasurbanas.dto.EventoIncidencia.Accion;
+import es.ujaen.dae.indicenciasurbanas.entidades.Incidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.TipoIncidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.Usuario;
+import es.ujaen.dae.indicenciasurbanas.excepciones.IncidenciaEnCurso;
+import es.ujaen.dae.indicenciasurbanas.excepciones.TransicionNoPermitida;
+import es.ujaen.dae.indicenciasurbanas.servicios.BusEventosIncidencia;
+import es.ujaen.dae.indicenciasurbanas.servicios.ServicioIncidencia;
+import es.ujaen.dae.indicenciasurbanas.utils.EstadoIncidencia;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(classes = es.ujaen.dae.indicenciasurbanas.app.DaePracticaApplication.class)
+@ActiveProfiles("test")
+public class TestBusEventosIncidencia {
+    private static final Logger log = LoggerFactory.getLogger(TestBusEventosIncidencia.class);
+
+    @Autowired
+    ServicioIncidencia servicioIncidencia;
+
+    @Autowired
+    BusEventosIncidencia bus;
+
+    @Test
+    @DirtiesContext
+    public void testEventosTrasConfirmar() {
+        List<EventoIncidencia> recibidos = Collections.synchronizedList(new ArrayList<>());
+        BusEventosIncidencia.Suscripcion suscripcion = bus.suscribir("prueba", recibidos::addAll);
+
+        Usuario admin = servicioIncidencia.login("admin.dae@ujaen.es", "admin").get();
+        servicioIncidencia.crearTipoIncidencia(admin, "Farola");
+        TipoIncidencia tipo = servicioIncidencia.obtenerTipoIncidencia("Farola").get();
+        Usuario usuario = new Usuario("nombre", "apellido", LocalDate.of(2000, 1, 1), "direccion", "+34777123456", "email@gmail.com", "clave");
+        servicioIncidencia.nuevoUsuario(usuario);
+        Usuario user = servicioIncidencia.login(usuario.email(), usuario.clave()).get();
+
+        Incidencia incidencia = servicioIncidencia.nuevaIncidencia(LocalDateTime.now(), tipo, "desc", "loc", 37.77f, -3.78f, "dpt", user, null);
+
+        // Las operaciones que se deshacen no publican nada
+        assertThatThrownBy(() -> servicioIncidencia.nuevaIncidencia(LocalDateTime.now(), tipo, "desc", "loc", 37.77f, -3.78f, "dpt", user, null))
+                .isInstanceOf(IncidenciaEnCurso.class);
+        servicioIncidencia.modificarEstadoIncidencia(admin, EstadoIncidencia.RESUELTA, incidencia);
+        assertThatThrownBy(() -> servicioIncidencia.modificarEstadoIncidencia(admin, EstadoIncidencia.PENDIENTE, incidencia))
+                .isInstanceOf(TransicionNoPermitida.class);
+
+        servicioIncidencia.borrarIncidencia(admin, incidencia);
+
+        assertThat(bus.esperarProcesados(Duration.ofSeconds(5))).isTrue();
+        assertThat(recibidos).extracting(EventoIncidencia::accion)
+                .containsExactly(Accion.REGISTRADA, Accion.ESTADO_CAMBIADO, Accion.BORRADA);
+        assertThat(recibidos).allMatch(evento -> evento.id() == incidencia.id() && evento.tipo().equals("Farola")
+                && evento.usuarioEmail().equals(user.email()));
+        assertThat(recibidos.get(1).estadoAnterior()).isEqualTo(EstadoIncidencia.PENDIENTE);
+        assertThat(recibidos.get(1).estado()).isEqualTo(EstadoIncidencia.RESUELTA);
+        assertThat(recibidos.get(2).estado()).isEqualTo(EstadoIncidencia.RESUELTA);
+
+        assertThat(suscripcion.procesados()).isEqualTo(3);
+        assertThat(suscripcion.retraso()).isZero();
+        assertThat(bus.descartados()).isZero();
+    }
+
+    @Test
+    public void testSuscriptorLento() throws Exception {
+        // Anillo de 8 eventos, sin esperar si se llena
+        BusEventosIncidencia anillo = new BusEventosIncidencia(8, 256, Duration.ZERO, List.of());
+        try {
+            CountDownLatch bloqueo = new CountDownLatch(1);
+            List<EventoIncidencia> recibidos = Collections.synchronizedList(new ArrayList<>());
+            BusEventosIncidencia.Suscripcion lento = anillo.suscribir("lento", lote -> {
+                try {
+                    bloqueo.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                recibidos.addAll(lote);
+            });
+
+            // El primer evento deja al suscriptor bloqueado; con el anillo lleno los demás se descartan
+            assertThat(anillo.publicar(evento(0))).isTrue();
+            assertThat(anillo.esperarProcesados(Duration.ofMillis(50))).isFalse();
+            for (int i = 1; i < 20; i++) {
+                anillo.publicar(evento(i));
+            }
+            assertThat(anillo.publicados()).isEqualTo(8);
+            assertThat(anillo.descartados()).isEqualTo(12);
+            assertThat(lento.retraso()).isEqualTo(8);
+
+            // Al desbloquearlo recupera el retraso en un solo lote
+            bloqueo.countDown();
+            assertThat(anillo.esperarProcesados(Duration.ofSeconds(5))).isTrue();
+            assertThat(recibidos).extracting(EventoIncidencia::id).containsExactly(0, 1, 2, 3, 4, 5, 6, 7);
+            assertThat(lento.lotes()).isEqualTo(2);
+            assertThat(lento.loteMaximo()).isEqualTo(7);
+            assertThat(anillo.retrasoMaximo()).isZero();
+        } finally {
+            anillo.detener();
+        }
+    }
+
+    @Test
+    public void testSuscriptorSinEventosDuerme() throws Exception {
+        BusEventosIncidencia anillo = new BusEventosIncidencia(8, 256, Duration.ZERO, List.of());
+        try {
+            List<EventoIncidencia> recibidos = Collections.synchronizedList(new ArrayList<>());
+            anillo.suscribir("ocioso", recibidos::addAll);
+            Thread hilo = Thread.getAllStackTraces().keySet().stream()
+                    .filter(t -> t.getName().equals("eventos-ocioso")).findFirst().orElseThrow();
+
+            // Sin eventos se duerme sin plazo (WAITING, no TIMED_WAITING), y se despierta al publicar
+            for (int i = 0; i < 2; i++) {
+                long limite = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+                while (hilo.getState() != Thread.State.WAITING && System.nanoTime() - limite < 0) {
+                    Thread.sleep(1);
+                }
+                assertThat(hilo.getState()).isEqualTo(Thread.State.WAITING);
+                anillo.publicar(evento(i));
+                assertThat(anillo.esperarProcesados(Duration.ofSeconds(5))).isTrue();
+            }
+            assertThat(recibidos).extracting(EventoIncidencia::id).containsExactly(0, 1);
+        } finally {
+            anillo.detener();
+        }
+    }
+
+    @Test
+    public void testPublicacionConcurrente() throws Exception {
+        // Anillo pequeño y publicando desde varios hilos: se espera a que haya sitio y no se pierde ni se repite nada
+        BusEventosIncidencia anillo = new BusEventosIncidencia(64, 16, Duration.ofSeconds(5), List.of());
+        int hilos = 4;
+        int porHilo = 5000;
+        List<List<EventoIncidencia>> recibidos = new ArrayList<>();
+        for (int s = 0; s < 2; s++) {
+            List<EventoIncidencia> propios = new ArrayList<>();
+            recibidos.add(propios);
+            anillo.suscribir("suscriptor-" + s, propios::addAll);
+        }
+
+        ExecutorService ejecutor = Executors.newFixedThreadPool(hilos);
+        long inicio = System.nanoTime();
+        try {
+            List<Future<?>> tareas = new ArrayList<>();
+            for (int hilo = 0; hilo < hilos; hilo++) {
+                int primero = hilo * porHilo;
+                tareas.add(ejecutor.submit(() -> {
+                    for (int i = 0; i < porHilo; i++) {
+                        anillo.publicar(evento(primero + i));
+                    }
+                }));
+            }
+            for (Future<?> tarea : tareas) {
+                tarea.get();
+            }
+            assertThat(anillo.esperarProcesados(Duration.ofSeconds(10))).isTrue();
+        } finally {
+            ejecutor.shutdown();
+            anillo.detener();
+        }
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+
+        log.debug(String.format("Bus de eventos: %d eventos en %.3f s (%.0f eventos/s con %d hilos), %d esperas por anillo lleno",
+                hilos * porHilo, segundos, hilos * porHilo / segundos, hilos, anillo.esperasLleno()));
+
+        assertThat(anillo.descartados()).isZero();
+        for (List<EventoIncidencia> propios : recibidos) {
+            assertThat(propios).hasSize(hilos * porHilo);
+            assertThat(propios).extracting(EventoIncidencia::id).doesNotHaveDuplicates();
+        }
+        assertThat(anillo.suscripciones()).allMatch(suscripcion -> suscripcion.loteMaximo() <= 16);
+    }
+
+    private static EventoIncidencia evento(int id) {
+        return new EventoIncidencia(Accion.REGISTRADA, id, "tipo", "dpt", "email@gmail.com", null,
+                EstadoIncidencia.PENDIENTE, Instant.now());
+    }
+}
@@ -0,0 +1,197 @@
+package es.ujaen.dae.incidenciasurbanas.servicio;
+
+import es.ujaen.dae.indicenciasurbanas.entidades.Incidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.InstantaneaIncidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.InstantaneaTipoIncidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.InstantaneaUsuario;
+import es.ujaen.dae.indicenciasurbanas.entidades.TipoIncidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.Usuario;
+import es.ujaen.dae.indicenciasurbanas.repositorios.RepositorioIncidencias;
+import es.ujaen.dae.indicenciasurbanas.repositorios.RepositorioTipoIncidencia;
+import es.ujaen.dae.indicenciasurbanas.servicios.ServicioIncidencia;
+import es.ujaen.dae.indicenciasurbanas.utils.EstadoIncidencia;
+import org.assertj.core.api.InstanceOfAssertFactories;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.interceptor.SimpleKey;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(classes = es.ujaen.dae.indicenciasurbanas.app.DaePracticaApplication.class)
+@ActiveProfiles("test")
+public class TestCacheIncidencias {
+    @Autowired
+    ServicioIncidencia servicioIncidencia;
+
+    @Autowired
+    CacheManager cacheManager;
+
+    @Autowired
+    RepositorioIncidencias repositorioIncidencias;
+
+    @Autowired
+    RepositorioTipoIncidencia repositorioTipoIncidencia;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Test
+    @DirtiesContext
+    public void testCachesSeActualizanSinVaciarse() {
+        Usuario admin = servicioIncidencia.login("admin.dae@ujaen.es", "admin").get();
+        servicioIncidencia.crearTipoIncidencia(admin, "Tipo");
+        TipoIncidencia tipo = servicioIncidencia.obtenerTipoIncidencia("Tipo").get();
+        Usuario user = crearUsuario("email@gmail.com");
+        Usuario otro = crearUsuario("otro@gmail.com");
+
+        Incidencia i1 = servicioIncidencia.nuevaIncidencia(LocalDateTime.now(), tipo, "desc", "loc", 37.77f, -3.78f, "dpt", user, null);
+
+        // Se cargan las listas en caché (también la de un usuario sin incidencias)
+        assertThat(servicioIncidencia.buscarIncidenciasTipoEstado(null, null)).containsExactly(i1);
+        assertThat(servicioIncidencia.obtenerListaIncidenciasUsuario(user)).containsExactly(i1);
+        assertThat(servicioIncidencia.obtenerListaIncidenciasUsuario(otro)).isEmpty();
+
+        // Alta: aparece en las listas cacheadas, que no se vacían
+        Incidencia i2 = servicioIncidencia.nuevaIncidencia(LocalDateTime.now(), tipo, "desc", "loc", 37.78f, -3.78f, "dpt", otro, null);
+        assertThat(listaCacheada("todasIncidencias", SimpleKey.EMPTY)).extracting(InstantaneaIncidencia::id).containsExactly(i1.id(), i2.id());
+        assertThat(listaCacheada("incidenciasPorEmail", otro.email())).extracting(InstantaneaIncidencia::id).containsExactly(i2.id());
+        assertThat(servicioIncidencia.buscarIncidenciasTipoEstado(null, null)).containsExactly(i1, i2);
+        assertThat(servicioIncidencia.obtenerListaIncidenciasUsuario(otro)).containsExactly(i2);
+
+        // Cambio de estado por dirty checking: se ve en la lista y en la caché por id, también con la incidencia ya en caché
+        servicioIncidencia.obtenerImagen(i1);
+        servicioIncidencia.modificarEstadoIncidencia(admin, EstadoIncidencia.EN_EVALUACION, i1);
+        servicioIncidencia.modificarEstadoIncidencia(admin, EstadoIncidencia.RESUELTA, i1);
+        assertThat(listaCacheada("todasIncidencias", SimpleKey.EMPTY).getFirst().estado()).isEqualTo(EstadoIncidencia.RESUELTA);
+        assertThat(servicioIncidencia.obtenerListaIncidenciasUsuario(user).getFirst().estado()).isEqualTo(EstadoIncidencia.RESUELTA);
+        assertThat(((InstantaneaIncidencia) cacheManager.getCache("incidenciasPorId").get(i1.id()).get()).estado()).isEqualTo(EstadoIncidencia.RESUELTA);
+        assertThat(servicioIncidencia.buscarIncidenciasTipoEstado(null, EstadoIncidencia.RESUELTA)).containsExactly(i1);
+
+        // Borrado
+        assertThat(servicioIncidencia.borrarIncidencia(otro, i2)).isTrue();
+        assertThat(listaCacheada("todasIncidencias", SimpleKey.EMPTY)).extracting(InstantaneaIncidencia::id).containsExactly(i1.id());
+        assertThat(listaCacheada("incidenciasPorEmail", otro.email())).isEmpty();
+        assertThat(cacheManager.getCache("incidenciasPorId").get(i2.id())).isNull();
+    }
+
+    @Test
+    @DirtiesContext
+    public void testCachesGuardanCopiasInmutables() {
+        Usuario admin = servicioIncidencia.login("admin.dae@ujaen.es", "admin").get();
+        servicioIncidencia.crearTipoIncidencia(admin, "Tipo");
+        TipoIncidencia tipo = servicioIncidencia.obtenerTipoIncidencia("Tipo").get();
+        Usuario user = crearUsuario("email@gmail.com");
+        Incidencia incidencia = servicioIncidencia.nuevaIncidencia(LocalDateTime.now(), tipo, "desc", "loc", 37.77f, -3.78f, "dpt", user, null);
+
+        // Modificar lo que devuelve una lectura no cambia lo que está en caché
+        Incidencia leida = servicioIncidencia.buscarIncidenciasTipoEstado(null, null).getFirst();
+        leida.estado(EstadoIncidencia.RESUELTA);
+        leida.usuario().nombre("otro nombre");
+        assertThat(servicioIncidencia.buscarIncidenciasTipoEstado(null, null).getFirst().estado()).isEqualTo(EstadoIncidencia.PENDIENTE);
+        assertThat(servicioIncidencia.obtenerListaIncidenciasUsuario(user).getFirst().usuario().nombre()).isEqualTo("nombre");
+        assertThat(servicioIncidencia.login(user.email(), user.clave()).get()).isNotSameAs(servicioIncidencia.login(user.email(), user.clave()).get());
+
+        // Las lecturas se pueden usar fuera de cualquier sesión y en otros hilos
+        assertThat(servicioIncidencia.obtenerListaIncidenciasUsuario(user).getFirst().tipo().nombre()).isEqualTo("Tipo");
+        assertThat(cacheManager.getCache("incidenciasPorEmail").get(user.email()).get()).asInstanceOf(InstanceOfAssertFactories.LIST)
+                .allMatch(InstantaneaIncidencia.class::isInstance);
+        assertThat(cacheManager.getCache("usuarios").get(user.email()).get()).isInstanceOf(InstantaneaUsuario.class);
+        assertThat(servicioIncidencia.obtenerTipoIncidencia("Tipo").get()).isEqualTo(tipo);
+        assertThat(cacheManager.getCache("tiposPorNombre").get("Tipo").get()).isInstanceOf(InstantaneaTipoIncidencia.class);
+        assertThat(incidencia.id()).isEqualTo(leida.id());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testVariantesImagenSeQuitanDeLaCacheTrasElCommit() {
+        Usuario admin = servicioIncidencia.login("admin.dae@ujaen.es", "admin").get();
+        servicioIncidencia.crearTipoIncidencia(admin, "Tipo");
+        TipoIncidencia tipo = servicioIncidencia.obtenerTipoIncidencia("Tipo").get();
+        Usuario user = crearUsuario("email@gmail.com");
+        Incidencia incidencia = servicioIncidencia.nuevaIncidencia(LocalDateTime.now(), tipo, "desc", "loc", 37.77f, -3.78f, "dpt", user, null);
+        assertThat(servicioIncidencia.buscarIncidencia(incidencia.id())).isPresent();
+
+        // Mientras la transacción no termina la copia cacheada sigue siendo la que ven los demás; se quita al confirmar
+        String hash = "a".repeat(64);
+        new TransactionTemplate(transactionManager).executeWithoutResult(estado -> {
+            repositorioIncidencias.actualizarVariantesImagen(incidencia.id(), hash, hash);
+            assertThat(cacheManager.getCache("incidenciasPorId").get(incidencia.id())).isNotNull();
+        });
+        assertThat(cacheManager.getCache("incidenciasPorId").get(incidencia.id())).isNull();
+        assertThat(servicioIncidencia.buscarIncidencia(incidencia.id()).get().hashMiniatura()).isEqualTo(hash);
+    }
+
+    @Test
+    @DirtiesContext
+    public void testLecturasEnTransaccionDeEscrituraNoSeCachean() {
+        // Lo que lee una transacción de escritura (aquí, un tipo que no llega a confirmarse) no lo ven los demás
+        new TransactionTemplate(transactionManager).executeWithoutResult(estado -> {
+            repositorioTipoIncidencia.guardar(new TipoIncidencia("Provisional"));
+            assertThat(repositorioTipoIncidencia.buscarPorNombre("Provisional")).isPresent();
+            assertThat(repositorioTipoIncidencia.buscarTodos()).extracting(TipoIncidencia::nombre).contains("Provisional");
+            estado.setRollbackOnly();
+        });
+        assertThat(cacheManager.getCache("tiposPorNombre").get("Provisional")).isNull();
+        assertThat(cacheManager.getCache("todosTipos").get(SimpleKey.EMPTY)).isNull();
+        assertThat(servicioIncidencia.obtenerTipoIncidencia("Provisional")).isEmpty();
+        assertThat(servicioIncidencia.obtenerTiposIncidencia()).extracting(TipoIncidencia::nombre).doesNotContain("Provisional");
+    }
+
+    @Test
+    @DirtiesContext
+    public void testCambiosEsperanALaCargaEnCurso() throws Exception {
+        Usuario admin = servicioIncidencia.login("admin.dae@ujaen.es", "admin").get();
+        servicioIncidencia.crearTipoIncidencia(admin, "Tipo");
+        TipoIncidencia tipo = servicioIncidencia.obtenerTipoIncidencia("Tipo").get();
+        Usuario user = crearUsuario("email@gmail.com");
+        Incidencia i1 = servicioIncidencia.nuevaIncidencia(LocalDateTime.now(), tipo, "desc", "loc", 37.77f, -3.78f, "dpt", user, null);
+        servicioIncidencia.buscarIncidenciasTipoEstado(null, null);
+        List<InstantaneaIncidencia> anterior = listaCacheada("todasIncidencias", SimpleKey.EMPTY);
+        cacheManager.getCache("todasIncidencias").evict(SimpleKey.EMPTY);
+
+        // Una carga de la lista que leyó la BBDD antes del alta y tarda en guardar el resultado
+        CountDownLatch cargando = new CountDownLatch(1);
+        CountDownLatch soltar = new CountDownLatch(1);
+        CompletableFuture<Object> carga = CompletableFuture.supplyAsync(() ->
+                cacheManager.getCache("todasIncidencias").get(SimpleKey.EMPTY, () -> {
+                    cargando.countDown();
+                    soltar.await();
+                    return anterior;
+                }));
+        assertThat(cargando.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // El alta confirma mientras tanto: su cambio tiene que esperar a la carga y aplicarse sobre lo cargado
+        CompletableFuture<Incidencia> alta = CompletableFuture.supplyAsync(() ->
+                servicioIncidencia.nuevaIncidencia(LocalDateTime.now(), tipo, "desc", "loc", 37.78f, -3.78f, "dpt", user, null));
+        Thread.sleep(200);
+        soltar.countDown();
+        carga.get(5, TimeUnit.SECONDS);
+        Incidencia i2 = alta.get(5, TimeUnit.SECONDS);
+
+        assertThat(listaCacheada("todasIncidencias", SimpleKey.EMPTY)).extracting(InstantaneaIncidencia::id).containsExactly(i1.id(), i2.id());
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<InstantaneaIncidencia> listaCacheada(String cache, Object clave) {
+        return (List<InstantaneaIncidencia>) cacheManager.getCache(cache).get(clave).get();
+    }
+
+    private Usuario crearUsuario(String email) {
+        Usuario usuario = new Usuario("nombre", "apellido", LocalDate.of(2000, 1, 1), "direccion", "+34777123456", email, "clave");
+        servicioIncidencia.nuevoUsuario(usuario);
+        return servicioIncidencia.login(usuario.email(), usuario.clave()).get();
+    }
+}
@@ -0,0 +1,119 @@
+package es.ujaen.dae.incidenciasurbanas.servicio;
+
+import es.ujaen.dae.indicenciasurbanas.entidades.Incidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.TipoIncidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.Usuario;
+import es.ujaen.dae.indicenciasurbanas.excepciones.IncidenciaEnConflicto;
+import es.ujaen.dae.indicenciasurbanas.repositorios.ContadoresIncidencias;
+import es.ujaen.dae.indicenciasurbanas.servicios.ServicioIncidencia;
+import es.ujaen.dae.indicenciasurbanas.servicios.TransicionesIncidencia;
+import es.ujaen.dae.indicenciasurbanas.utils.EstadoIncidencia;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Varios administradores cambiando a la vez el estado de las mismas pocas incidencias: mide el rendimiento y la
+ * proporción de intentos deshechos por conflicto, y comprueba que no se pierde ningún cambio
+ */
+@SpringBootTest(classes = es.ujaen.dae.indicenciasurbanas.app.DaePracticaApplication.class, properties = {
+        "incidencias.transiciones.bloqueo-pesimista=AL_AGOTAR_REINTENTOS"
+})
+@ActiveProfiles("test")
+public class TestConcurrenciaEstadoIncidencia {
+    private static final Logger log = LoggerFactory.getLogger(TestConcurrenciaEstadoIncidencia.class);
+
+    @Autowired
+    ServicioIncidencia servicioIncidencia;
+
+    @Autowired
+    TransicionesIncidencia transiciones;
+
+    @Autowired
+    ContadoresIncidencias contadores;
+
+    private static final int HILOS = 8;
+
+    @Test
+    @DirtiesContext
+    public void testCambiosEstadoSimultaneos() throws Exception {
+        Usuario admin = servicioIncidencia.login("admin.dae@ujaen.es", "admin").get();
+        servicioIncidencia.crearTipoIncidencia(admin, "Bache");
+        TipoIncidencia tipo = servicioIncidencia.obtenerTipoIncidencia("Bache").get();
+        Usuario usuario = new Usuario("nombre", "apellido", LocalDate.of(2000, 1, 1), "direccion", "+34777123456", "email@gmail.com", "clave");
+        servicioIncidencia.nuevoUsuario(usuario);
+        Usuario user = servicioIncidencia.login(usuario.email(), usuario.clave()).get();
+
+        // Pocas incidencias para muchos hilos: casi todos los cambios chocan con otro
+        List<Incidencia> incidencias = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            incidencias.add(servicioIncidencia.nuevaIncidencia(LocalDateTime.now(), tipo, "desc", "loc", 37.77f + i * 0.01f, -3.78f, "dpt", user, null));
+        }
+
+        // Cada hilo alterna entre pendiente y en evaluación (transiciones permitidas en los dos sentidos)
+        int porHilo = 50;
+        AtomicInteger fallidos = new AtomicInteger();
+        ExecutorService ejecutor = Executors.newFixedThreadPool(HILOS);
+        List<Future<?>> tareas = new ArrayList<>();
+        CyclicBarrier salida = new CyclicBarrier(HILOS);
+        long intentosAntes = transiciones.intentos();
+        long conflictosAntes = transiciones.conflictos();
+        long inicio = System.nanoTime();
+        try {
+            for (int hilo = 0; hilo < HILOS; hilo++) {
+                int primero = hilo;
+                tareas.add(ejecutor.submit(() -> {
+                    salida.await();
+                    for (int i = 0; i < porHilo; i++) {
+                        EstadoIncidencia estado = (primero + i) % 2 == 0 ? EstadoIncidencia.EN_EVALUACION : EstadoIncidencia.PENDIENTE;
+                        try {
+                            servicioIncidencia.modificarEstadoIncidencia(admin, estado, incidencias.get(i % incidencias.size()));
+                        } catch (IncidenciaEnConflicto e) {
+                            fallidos.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> tarea : tareas) {
+                tarea.get();
+            }
+        } finally {
+            ejecutor.shutdown();
+        }
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+        long intentos = transiciones.intentos() - intentosAntes;
+        long conflictos = transiciones.conflictos() - conflictosAntes;
+
+        log.debug(String.format("Cambios de estado simultáneos: %d en %.2f s (%.0f cambios/s con %d hilos), %d intentos, " +
+                        "%.1f%% deshechos por conflicto, %d con bloqueo pesimista",
+                HILOS * porHilo, segundos, HILOS * porHilo / segundos, HILOS, intentos,
+                100.0 * conflictos / intentos, transiciones.pesimistas()));
+
+        // Con el bloqueo pesimista como último recurso ningún cambio se abandona
+        assertThat(fallidos.get()).isZero();
+        assertThat(transiciones.agotadas()).isZero();
+        assertThat(intentos).isEqualTo(HILOS * porHilo + conflictos);
+
+        // Ningún cambio perdido: los contadores (que suman cada cambio confirmado) cuadran con la BBDD
+        Map<String, Map<EstadoIncidencia, Long>> recuento = servicioIncidencia.recuentoIncidenciasPorTipo();
+        contadores.cargar();
+        assertThat(servicioIncidencia.recuentoIncidenciasPorTipo()).isEqualTo(recuento);
+        assertThat(recuento.get("Bache").get(EstadoIncidencia.PENDIENTE) + recuento.get("Bache").get(EstadoIncidencia.EN_EVALUACION))
+                .isEqualTo(incidencias.size());
+    }
+}
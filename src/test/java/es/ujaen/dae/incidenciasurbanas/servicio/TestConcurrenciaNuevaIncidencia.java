@@ -0,0 +1,126 @@
+package es.ujaen.dae.incidenciasurbanas.servicio;
+
+import es.ujaen.dae.indicenciasurbanas.entidades.TipoIncidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.Usuario;
+import es.ujaen.dae.indicenciasurbanas.excepciones.IncidenciaEnCurso;
+import es.ujaen.dae.indicenciasurbanas.servicios.ServicioIncidencia;
+import es.ujaen.dae.indicenciasurbanas.utils.EstadoIncidencia;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(classes = es.ujaen.dae.indicenciasurbanas.app.DaePracticaApplication.class)
+@ActiveProfiles("test")
+public class TestConcurrenciaNuevaIncidencia {
+    private static final Logger log = LoggerFactory.getLogger(TestConcurrenciaNuevaIncidencia.class);
+
+    @Autowired
+    ServicioIncidencia servicioIncidencia;
+
+    private static final int HILOS = 8;
+
+    @Test
+    @DirtiesContext
+    public void testRegistrosSimultaneosMismoSitio() throws Exception {
+        TipoIncidencia tipo = crearTipo();
+        Usuario usuario = crearUsuario();
+
+        // Para cada sitio, todos los hilos intentan registrar a la vez una incidencia a menos de 5 metros
+        int sitios = 50;
+        AtomicInteger registradas = new AtomicInteger();
+        AtomicInteger rechazadas = new AtomicInteger();
+        ExecutorService ejecutor = Executors.newFixedThreadPool(HILOS);
+        try {
+            for (int sitio = 0; sitio < sitios; sitio++) {
+                float latitud = 37.7796f + sitio * 0.001f;
+                float longitud = -3.7849f;
+                CyclicBarrier salida = new CyclicBarrier(HILOS);
+                List<Future<?>> tareas = new ArrayList<>();
+                for (int hilo = 0; hilo < HILOS; hilo++) {
+                    float desplazamiento = hilo * 0.000005f; // ~0.5 metros entre hilos
+                    tareas.add(ejecutor.submit(() -> {
+                        salida.await();
+                        try {
+                            servicioIncidencia.nuevaIncidencia(LocalDateTime.now(), tipo, "desc", "loc",
+                                    latitud + desplazamiento, longitud, "dpt", usuario, "imagen.jpg".getBytes());
+                            registradas.incrementAndGet();
+                        } catch (IncidenciaEnCurso e) {
+                            rechazadas.incrementAndGet();
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> tarea : tareas) {
+                    tarea.get();
+                }
+            }
+        } finally {
+            ejecutor.shutdown();
+        }
+
+        // Solo una por sitio
+        assertThat(registradas.get()).isEqualTo(sitios);
+        assertThat(rechazadas.get()).isEqualTo(sitios * (HILOS - 1));
+        assertThat(servicioIncidencia.buscarIncidenciasTipoEstado(null, EstadoIncidencia.PENDIENTE)).hasSize(sitios);
+    }
+
+    @Test
+    @DirtiesContext
+    public void testRendimientoRegistrosZonasDistintas() throws Exception {
+        TipoIncidencia tipo = crearTipo();
+        Usuario usuario = crearUsuario();
+
+        // Cada hilo registra en su propia zona de la ciudad: no deben esperarse entre sí
+        int porHilo = 100;
+        ExecutorService ejecutor = Executors.newFixedThreadPool(HILOS);
+        List<Future<?>> tareas = new ArrayList<>();
+        long inicio = System.nanoTime();
+        try {
+            for (int hilo = 0; hilo < HILOS; hilo++) {
+                float latitudZona = 37.70f + hilo * 0.01f;
+                tareas.add(ejecutor.submit(() -> {
+                    for (int i = 0; i < porHilo; i++) {
+                        servicioIncidencia.nuevaIncidencia(LocalDateTime.now(), tipo, "desc", "loc",
+                                latitudZona, -3.80f + i * 0.001f, "dpt", usuario, "imagen.jpg".getBytes());
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> tarea : tareas) {
+                tarea.get();
+            }
+        } finally {
+            ejecutor.shutdown();
+        }
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+
+        log.debug(String.format("Registros concurrentes en zonas distintas: %d en %.2f s (%.0f registros/s con %d hilos)",
+                HILOS * porHilo, segundos, HILOS * porHilo / segundos, HILOS));
+        assertThat(servicioIncidencia.buscarIncidenciasTipoEstado(null, EstadoIncidencia.PENDIENTE)).hasSize(HILOS * porHilo);
+    }
+
+    private TipoIncidencia crearTipo() {
+        Usuario admin = servicioIncidencia.login("admin.dae@ujaen.es", "admin").get();
+        servicioIncidencia.crearTipoIncidencia(admin, "Bache");
+        return servicioIncidencia.obtenerTipoIncidencia("Bache").get();
+    }
+
+    private Usuario crearUsuario() {
+        Usuario usuario = new Usuario("nombre", "apellido", LocalDate.of(2000, 1, 1), "direccion", "+34777123456", "email@gmail.com", "clave");
+        servicioIncidencia.nuevoUsuario(usuario);
+        return servicioIncidencia.login(usuario.email(), usuario.clave()).get();
+    }
+}
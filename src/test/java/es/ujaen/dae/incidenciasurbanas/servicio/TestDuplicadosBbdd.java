@@ -0,0 +1,57 @@
+package es.ujaen.dae.incidenciasurbanas.servicio;
+
+import es.ujaen.dae.indicenciasurbanas.entidades.Incidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.TipoIncidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.Usuario;
+import es.ujaen.dae.indicenciasurbanas.excepciones.IncidenciaEnCurso;
+import es.ujaen.dae.indicenciasurbanas.servicios.ServicioIncidencia;
+import es.ujaen.dae.indicenciasurbanas.utils.EstadoIncidencia;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.*;
+
+@SpringBootTest(classes = es.ujaen.dae.indicenciasurbanas.app.DaePracticaApplication.class,
+        properties = "incidencias.duplicados.comprobar-en-bbdd=true")
+@ActiveProfiles("test")
+public class TestDuplicadosBbdd {
+    @Autowired
+    ServicioIncidencia servicioIncidencia;
+
+    @Test
+    @DirtiesContext
+    public void testNuevaIncidenciaComprobandoEnBbdd() {
+        Usuario admin = servicioIncidencia.login("admin.dae@ujaen.es", "admin").get();
+        servicioIncidencia.crearTipoIncidencia(admin, "Tipo");
+        TipoIncidencia tipo = servicioIncidencia.obtenerTipoIncidencia("Tipo").get();
+
+        Usuario usuario = new Usuario("nombre", "apellido", LocalDate.of(2000, 1, 1), "direccion", "+34777123456", "email@gmail.com", "clave");
+        servicioIncidencia.nuevoUsuario(usuario);
+        Usuario user = servicioIncidencia.login(usuario.email(), usuario.clave()).get();
+
+        LocalDateTime fecha = LocalDateTime.now();
+        Incidencia incidencia = servicioIncidencia.nuevaIncidencia(fecha, tipo, "desc", "loc", 40.416775f, -3.703790f, "dpt", user, "imagen.jpg".getBytes());
+
+        // A unos 7 metros de la anterior: duplicada
+        assertThatThrownBy(() -> servicioIncidencia.nuevaIncidencia(fecha, tipo, "desc", "loc", 40.41681991555875f, -3.703731005258922f, "dpt", user, "imagen.jpg".getBytes()))
+                .isInstanceOf(IncidenciaEnCurso.class);
+
+        // A unos 15 metros de la anterior: se registra
+        servicioIncidencia.nuevaIncidencia(fecha, tipo, "desc", "loc", 40.416775f, -3.703613f, "dpt", user, "imagen.jpg".getBytes());
+
+        // Una vez resuelta, ya no cuenta como duplicada
+        servicioIncidencia.modificarEstadoIncidencia(admin, EstadoIncidencia.RESUELTA, incidencia);
+        assertThatNoException().isThrownBy(() -> servicioIncidencia.nuevaIncidencia(fecha, tipo, "desc", "loc", 40.41681991555875f, -3.703731005258922f, "dpt", user, "imagen.jpg".getBytes()));
+
+        // Todas las comprobaciones se han hecho en la BBDD
+        assertThat(servicioIncidencia.estadisticasRegistro().comprobacionesEnBbdd()).isEqualTo(4);
+        assertThat(servicioIncidencia.estadisticasRegistro().candidatasEnBbdd()).isPositive();
+        assertThat(servicioIncidencia.estadisticasRegistro().rechazadasIndividuales()).isEqualTo(1);
+    }
+}
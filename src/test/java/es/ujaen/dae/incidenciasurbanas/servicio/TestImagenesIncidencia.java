@@ -0,0 +1,224 @@
+package es.ujaen.dae.incidenciasurbanas.servicio;
+
+import es.ujaen.dae.indicenciasurbanas.entidades.Incidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.TipoIncidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.Usuario;
+import es.ujaen.dae.indicenciasurbanas.repositorios.RepositorioImagenes;
+import es.ujaen.dae.indicenciasurbanas.servicios.MigracionImagenes;
+import es.ujaen.dae.indicenciasurbanas.servicios.ProcesadorImagenes;
+import es.ujaen.dae.indicenciasurbanas.servicios.ServicioIncidencia;
+import es.ujaen.dae.indicenciasurbanas.utils.VarianteImagen;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.Resource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(classes = es.ujaen.dae.indicenciasurbanas.app.DaePracticaApplication.class, properties = {
+        "incidencias.imagenes.procesado.maximo-pixeles=4000000"
+})
+@ActiveProfiles("test")
+public class TestImagenesIncidencia {
+    @Autowired
+    ServicioIncidencia servicioIncidencia;
+
+    @Autowired
+    RepositorioImagenes repositorioImagenes;
+
+    @Autowired
+    MigracionImagenes migracionImagenes;
+
+    @Autowired
+    ProcesadorImagenes procesadorImagenes;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Test
+    @DirtiesContext
+    public void testImagenPorContenido() throws Exception {
+        Usuario user = crearUsuario();
+        TipoIncidencia tipo = crearTipo();
+
+        byte[] foto = new byte[256 * 1024];
+        new Random(1).nextBytes(foto);
+
+        //Dos incidencias con la misma foto comparten la imagen guardada
+        Incidencia i1 = servicioIncidencia.nuevaIncidencia(LocalDateTime.now(), tipo, "desc", "loc", 37.77f, -3.78f, "dpt", user, foto);
+        Incidencia i2 = servicioIncidencia.nuevaIncidencia(LocalDateTime.now(), tipo, "desc", "loc", 37.78f, -3.78f, "dpt", user, foto.clone());
+        assertThat(i1.hashImagen()).hasSize(64).isEqualTo(i2.hashImagen());
+        assertThat(repositorioImagenes.tamano(i1.hashImagen())).isEqualTo(foto.length);
+
+        //La imagen se lee del almacén con el mismo contenido
+        Resource imagen = servicioIncidencia.obtenerImagen(i1).get();
+        assertThat(imagen.contentLength()).isEqualTo(foto.length);
+        assertThat(contenido(imagen)).isEqualTo(foto);
+
+        //Lectura por flujo y escritura por flujo con el mismo hash
+        ByteArrayOutputStream leida = new ByteArrayOutputStream();
+        try (ReadableByteChannel canal = repositorioImagenes.abrir(i1.hashImagen())) {
+            Channels.newInputStream(canal).transferTo(leida);
+        }
+        assertThat(leida.toByteArray()).isEqualTo(foto);
+        assertThat(repositorioImagenes.guardar(new ByteArrayInputStream(foto))).isEqualTo(i1.hashImagen());
+
+        //Incidencia sin foto
+        Incidencia sinFoto = servicioIncidencia.nuevaIncidencia(LocalDateTime.now(), tipo, "desc", "loc", 37.79f, -3.78f, "dpt", user, null);
+        assertThat(servicioIncidencia.obtenerImagen(sinFoto)).isEmpty();
+    }
+
+    @Test
+    @DirtiesContext
+    public void testImagenDeTransaccionDeshechaSeBorra() {
+        Usuario user = crearUsuario();
+        TipoIncidencia tipo = crearTipo();
+
+        byte[] guardada = "imagen ya guardada".getBytes();
+        byte[] nueva = ("imagen nueva " + System.nanoTime()).getBytes(); // El directorio de imágenes se conserva entre ejecuciones
+        String hashGuardada = repositorioImagenes.guardar(guardada);
+
+        // Si la transacción se deshace se borran las imágenes que ha creado, pero no las que ya estaban
+        new TransactionTemplate(transactionManager).executeWithoutResult(estado -> {
+            servicioIncidencia.nuevaIncidencia(LocalDateTime.now(), tipo, "desc", "loc", 37.77f, -3.78f, "dpt", user, nueva);
+            servicioIncidencia.nuevaIncidencia(LocalDateTime.now(), tipo, "desc", "loc", 37.78f, -3.78f, "dpt", user, guardada);
+            assertThat(repositorioImagenes.existe(repositorioImagenes.hash(nueva))).isTrue();
+            estado.setRollbackOnly();
+        });
+        assertThat(repositorioImagenes.existe(repositorioImagenes.hash(nueva))).isFalse();
+        assertThat(repositorioImagenes.existe(hashGuardada)).isTrue();
+
+        // Si se confirma, se quedan
+        Incidencia incidencia = servicioIncidencia.nuevaIncidencia(LocalDateTime.now(), tipo, "desc", "loc", 37.77f, -3.78f, "dpt", user, nueva);
+        assertThat(repositorioImagenes.existe(incidencia.hashImagen())).isTrue();
+    }
+
+    @Test
+    @DirtiesContext
+    public void testMigracionImagenes() {
+        Usuario user = crearUsuario();
+        TipoIncidencia tipo = crearTipo();
+
+        Incidencia incidencia = servicioIncidencia.nuevaIncidencia(LocalDateTime.now(), tipo, "desc", "loc", 37.77f, -3.78f, "dpt", user, null);
+
+        //Simulamos una fila antigua con la imagen guardada en la propia tabla
+        byte[] foto = "imagen antigua".getBytes();
+        jdbcTemplate.update("UPDATE incidencia SET imagen = ?, hash_imagen = NULL WHERE id = ?", foto, incidencia.id());
+        assertThat(contenido(servicioIncidencia.obtenerImagen(incidencia).get())).isEqualTo(foto);
+
+        assertThat(migracionImagenes.migrarTodas()).isEqualTo(1);
+        assertThat(migracionImagenes.migrarTodas()).isEqualTo(0);
+
+        String hash = jdbcTemplate.queryForObject("SELECT hash_imagen FROM incidencia WHERE id = ?", String.class, incidencia.id());
+        assertThat(repositorioImagenes.existe(hash)).isTrue();
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM incidencia WHERE imagen IS NOT NULL", Integer.class)).isZero();
+        assertThat(contenido(servicioIncidencia.obtenerImagen(incidencia).get())).isEqualTo(foto);
+    }
+
+    @Test
+    @DirtiesContext
+    public void testVariantesImagen() throws Exception {
+        Usuario user = crearUsuario();
+        TipoIncidencia tipo = crearTipo();
+
+        //Foto de 2000x1500 en PNG
+        BufferedImage imagen = new BufferedImage(2000, 1500, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = imagen.createGraphics();
+        g.setColor(Color.ORANGE);
+        g.fillRect(0, 0, 2000, 1500);
+        g.dispose();
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(imagen, "png", png);
+        byte[] foto = png.toByteArray();
+
+        Incidencia conFoto = servicioIncidencia.nuevaIncidencia(LocalDateTime.now(), tipo, "desc", "loc", 37.77f, -3.78f, "dpt", user, foto);
+        Incidencia noImagen = servicioIncidencia.nuevaIncidencia(LocalDateTime.now(), tipo, "desc", "loc", 37.78f, -3.78f, "dpt", user, "no es una imagen".getBytes());
+        esperarProcesado(2);
+
+        assertThat(procesadorImagenes.procesadas()).isEqualTo(1);
+        assertThat(procesadorImagenes.noSoportadas()).isEqualTo(1);
+        assertThat(procesadorImagenes.tamanoCola()).isZero();
+
+        //Las variantes son JPEG reducidos; la original no cambia
+        BufferedImage miniatura = ImageIO.read(new ByteArrayInputStream(contenido(servicioIncidencia.obtenerImagen(conFoto, VarianteImagen.MINIATURA).get())));
+        assertThat(miniatura.getWidth()).isEqualTo(160);
+        assertThat(miniatura.getHeight()).isEqualTo(120);
+        BufferedImage vistaPrevia = ImageIO.read(new ByteArrayInputStream(contenido(servicioIncidencia.obtenerImagen(conFoto, VarianteImagen.VISTA_PREVIA).get())));
+        assertThat(vistaPrevia.getWidth()).isEqualTo(800);
+        assertThat(vistaPrevia.getHeight()).isEqualTo(600);
+        assertThat(contenido(servicioIncidencia.obtenerImagen(conFoto).get())).isEqualTo(foto);
+
+        //Sin variantes se sirve la original
+        assertThat(contenido(servicioIncidencia.obtenerImagen(noImagen, VarianteImagen.MINIATURA).get())).isEqualTo("no es una imagen".getBytes());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testImagenDemasiadoGrande() throws Exception {
+        Usuario user = crearUsuario();
+        TipoIncidencia tipo = crearTipo();
+
+        //Foto de 3000x2000 (6 megapíxeles, por encima del máximo de la prueba): ocupa poco comprimida, pero no se decodifica
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(3000, 2000, BufferedImage.TYPE_BYTE_BINARY), "png", png);
+        byte[] foto = png.toByteArray();
+
+        Incidencia incidencia = servicioIncidencia.nuevaIncidencia(LocalDateTime.now(), tipo, "desc", "loc", 37.77f, -3.78f, "dpt", user, foto);
+        esperarProcesado(1);
+
+        assertThat(procesadorImagenes.demasiadoGrandes()).isEqualTo(1);
+        assertThat(procesadorImagenes.procesadas()).isZero();
+        assertThat(contenido(servicioIncidencia.obtenerImagen(incidencia, VarianteImagen.MINIATURA).get())).isEqualTo(foto);
+    }
+
+    private void esperarProcesado(int imagenes) throws InterruptedException {
+        long limite = System.currentTimeMillis() + 10000;
+        while (procesadorImagenes.procesadas() + procesadorImagenes.noSoportadas() + procesadorImagenes.demasiadoGrandes()
+                + procesadorImagenes.fallidas() < imagenes
+                && System.currentTimeMillis() < limite) {
+            Thread.sleep(20);
+        }
+    }
+
+    private static byte[] contenido(Resource imagen) {
+        try {
+            return imagen.getContentAsByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private TipoIncidencia crearTipo() {
+        Usuario admin = servicioIncidencia.login("admin.dae@ujaen.es", "admin").get();
+        servicioIncidencia.crearTipoIncidencia(admin, "Tipo");
+        return servicioIncidencia.obtenerTipoIncidencia("Tipo").get();
+    }
+
+    private Usuario crearUsuario() {
+        Usuario usuario = new Usuario("nombre", "apellido", LocalDate.of(2000, 1, 1), "direccion", "+34777123456", "email@gmail.com", "clave");
+        servicioIncidencia.nuevoUsuario(usuario);
+        return servicioIncidencia.login(usuario.email(), usuario.clave()).get();
+    }
+}
@@ -0,0 +1,161 @@
+package es.ujaen.dae.incidenciasurbanas.servicio;
+
+import es.ujaen.dae.incidenciasurbanas.repositorio.RegistroSentenciasSql;
+import es.ujaen.dae.indicenciasurbanas.dto.DatosIncidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.Incidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.TipoIncidencia;
+import es.ujaen.dae.indicenciasurbanas.entidades.Usuario;
+import es.ujaen.dae.indicenciasurbanas.servicios.ServicioIncidencia;
+import es.ujaen.dae.indicenciasurbanas.utils.EstadoIncidencia;
+import es.ujaen.dae.indicenciasurbanas.utils.VarianteImagen;
+import jakarta.persistence.EntityManagerFactory;
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Presupuesto de sentencias SQL de cada método público de ServicioIncidencia: cada llamada debe hacer exactamente
+ * las idas y vueltas a la BBDD indicadas, para que un cambio que añada consultas (p. ej. una carga por fila de las
+ * asociaciones de Incidencia) rompa el build. Los datos tienen varios usuarios y tipos mezclados para que esas cargas
+ * se noten. Las consultas se miden con las cachés vacías (de Spring y de segundo nivel de Hibernate) y repetidas ya
+ * con ellas cargadas; las modificaciones, con las cachés vacías. Si una llamada hace menos sentencias de las
+ * presupuestadas también falla, para que se baje el presupuesto.
+ */
+@SpringBootTest(classes = es.ujaen.dae.indicenciasurbanas.app.DaePracticaApplication.class, properties = {
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector=es.ujaen.dae.incidenciasurbanas.repositorio.RegistroSentenciasSql"
+})
+@ActiveProfiles("test")
+public class TestPresupuestoSentencias {
+    private static final int USUARIOS = 4;
+    private static final int TIPOS = 3;
+    private static final int INCIDENCIAS = 12;
+
+    @Autowired
+    ServicioIncidencia servicioIncidencia;
+
+    @Autowired
+    CacheManager cacheManager;
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    // Se comprueban todas las operaciones antes de fallar, para ver de una vez todas las que se salen del presupuesto
+    private final SoftAssertions presupuestos = new SoftAssertions();
+
+    @Test
+    @DirtiesContext
+    public void testPresupuestoSentencias() {
+        Usuario admin = servicioIncidencia.login("admin.dae@ujaen.es", "admin").get();
+        List<TipoIncidencia> tipos = new ArrayList<>();
+        for (int i = 0; i < TIPOS; i++) {
+            servicioIncidencia.crearTipoIncidencia(admin, "Tipo" + i);
+            tipos.add(servicioIncidencia.obtenerTipoIncidencia("Tipo" + i).get());
+        }
+        List<Usuario> usuarios = new ArrayList<>();
+        for (int i = 0; i < USUARIOS; i++) {
+            servicioIncidencia.nuevoUsuario(usuario(i));
+            usuarios.add(servicioIncidencia.login(usuario(i).email(), usuario(i).clave()).get());
+        }
+        List<Incidencia> incidencias = new ArrayList<>();
+        for (int i = 0; i < INCIDENCIAS; i++) {
+            incidencias.add(servicioIncidencia.nuevaIncidencia(LocalDateTime.now(), tipos.get(i % TIPOS), "desc", "loc",
+                    37.77f + i * 0.01f, -3.78f, "dpt" + i % 2, usuarios.get(i % USUARIOS), null));
+        }
+        Usuario usuario = usuarios.getFirst();
+        TipoIncidencia tipo = tipos.getFirst();
+        Incidencia incidencia = incidencias.getFirst();
+
+        // Consultas
+        consulta("login", 1, 0, () -> servicioIncidencia.login(usuario.email(), usuario.clave()));
+        consulta("login (administrador)", 0, 0, () -> servicioIncidencia.login(admin.email(), admin.clave()));
+        consulta("buscarIncidencia", 1, 0, () -> servicioIncidencia.buscarIncidencia(incidencia.id()));
+        consulta("obtenerImagen", 2, 1, () -> servicioIncidencia.obtenerImagen(incidencia));
+        consulta("obtenerImagen (miniatura)", 2, 1, () -> servicioIncidencia.obtenerImagen(incidencia, VarianteImagen.MINIATURA));
+        consulta("obtenerListaIncidenciasUsuario", 3, 0, () -> servicioIncidencia.obtenerListaIncidenciasUsuario(usuario));
+        consulta("obtenerListaIncidenciasUsuario (página)", 3, 1, () -> servicioIncidencia.obtenerListaIncidenciasUsuario(usuario, null, 10));
+        consulta("obtenerResumenesIncidenciasUsuario", 1, 1, () -> servicioIncidencia.obtenerResumenesIncidenciasUsuario(usuario, null, 10));
+        consulta("buscarIncidenciasTipoEstado (todas)", 3, 0, () -> servicioIncidencia.buscarIncidenciasTipoEstado(null, null));
+        consulta("buscarIncidenciasTipoEstado (tipo)", 3, 1, () -> servicioIncidencia.buscarIncidenciasTipoEstado(tipo, null));
+        consulta("buscarIncidenciasTipoEstado (estado)", 3, 1, () -> servicioIncidencia.buscarIncidenciasTipoEstado(null, EstadoIncidencia.PENDIENTE));
+        consulta("buscarIncidenciasTipoEstado (tipo y estado)", 3, 1, () -> servicioIncidencia.buscarIncidenciasTipoEstado(tipo, EstadoIncidencia.PENDIENTE));
+        consulta("buscarIncidenciasTipoEstado (página)", 3, 1, () -> servicioIncidencia.buscarIncidenciasTipoEstado(null, null, null, 10));
+        consulta("buscarResumenesTipoEstado", 1, 1, () -> servicioIncidencia.buscarResumenesTipoEstado(null, null, null, 10));
+        consulta("obtenerTiposIncidencia", 1, 0, () -> servicioIncidencia.obtenerTiposIncidencia());
+        consulta("obtenerTipoIncidencia", 1, 0, () -> servicioIncidencia.obtenerTipoIncidencia(tipo.nombre()));
+
+        // Los contadores y las estadísticas están en memoria
+        consulta("contarIncidencias", 0, 0, () -> servicioIncidencia.contarIncidencias(EstadoIncidencia.PENDIENTE));
+        consulta("contarIncidenciasTipo (estado)", 0, 0, () -> servicioIncidencia.contarIncidenciasTipo(tipo, EstadoIncidencia.PENDIENTE));
+        consulta("contarIncidenciasTipo", 0, 0, () -> servicioIncidencia.contarIncidenciasTipo(tipo));
+        consulta("contarIncidenciasDpto", 0, 0, () -> servicioIncidencia.contarIncidenciasDpto("dpt0", EstadoIncidencia.PENDIENTE));
+        consulta("recuentoIncidenciasPorTipo", 0, 0, () -> servicioIncidencia.recuentoIncidenciasPorTipo());
+        consulta("recuentoIncidenciasPorDpto", 0, 0, () -> servicioIncidencia.recuentoIncidenciasPorDpto());
+        consulta("estadisticasRegistro", 0, 0, () -> servicioIncidencia.estadisticasRegistro());
+        consulta("estadisticasLogin", 0, 0, () -> servicioIncidencia.estadisticasLogin());
+
+        // Modificaciones
+        modificacion("nuevoUsuario", 2, () -> servicioIncidencia.nuevoUsuario(usuario(USUARIOS)));
+        modificacion("crearTipoIncidencia", 2, () -> servicioIncidencia.crearTipoIncidencia(admin, "Otro"));
+        TipoIncidencia otro = servicioIncidencia.obtenerTipoIncidencia("Otro").get();
+        modificacion("borrarTipoIncidencia", 2, () -> servicioIncidencia.borrarTipoIncidencia(admin, otro));
+        modificacion("nuevaIncidencia", 2, () -> servicioIncidencia.nuevaIncidencia(LocalDateTime.now(), tipo, "desc", "loc",
+                38.0f, -3.78f, "dpt0", usuario, null));
+        modificacion("nuevasIncidencias", 2, () -> servicioIncidencia.nuevasIncidencias(List.of(
+                new DatosIncidencia(LocalDateTime.now(), tipos.get(0), "desc", "loc", 38.1f, -3.78f, "dpt0", usuarios.get(0), null),
+                new DatosIncidencia(LocalDateTime.now(), tipos.get(1), "desc", "loc", 38.2f, -3.78f, "dpt1", usuarios.get(1), null),
+                new DatosIncidencia(LocalDateTime.now(), tipos.get(2), "desc", "loc", 38.3f, -3.78f, "dpt0", usuarios.get(2), null))));
+        modificacion("modificarEstadoIncidencia", 2, () -> servicioIncidencia.modificarEstadoIncidencia(admin, EstadoIncidencia.EN_EVALUACION, incidencias.get(1)));
+        modificacion("modificarEstadoIncidencias (ids)", 3, () -> servicioIncidencia.modificarEstadoIncidencias(admin, EstadoIncidencia.EN_EVALUACION,
+                List.of(incidencias.get(2).id(), incidencias.get(3).id())));
+        modificacion("modificarEstadoIncidencias (filtro)", 3, () -> servicioIncidencia.modificarEstadoIncidencias(admin, EstadoIncidencia.RESUELTA,
+                null, null, EstadoIncidencia.EN_EVALUACION));
+        modificacion("borrarIncidencia", 2, () -> servicioIncidencia.borrarIncidencia(usuario, incidencia));
+
+        presupuestos.assertAll();
+    }
+
+    private static Usuario usuario(int i) {
+        return new Usuario("nombre", "apellido", LocalDate.of(2000, 1, 1), "direccion", "+34777123456", "email" + i + "@gmail.com", "clave");
+    }
+
+    /**
+     * Mide una consulta con las cachés vacías y repitiéndola con las cachés cargadas
+     */
+    private void consulta(String operacion, int cachesVacias, int cachesCargadas, Runnable llamada) {
+        vaciarCaches();
+        comprobar(operacion + " (cachés vacías)", cachesVacias, llamada);
+        comprobar(operacion + " (cachés cargadas)", cachesCargadas, llamada);
+    }
+
+    /**
+     * Mide una modificación con las cachés vacías
+     */
+    private void modificacion(String operacion, int presupuesto, Runnable llamada) {
+        vaciarCaches();
+        comprobar(operacion, presupuesto, llamada);
+    }
+
+    private void comprobar(String operacion, int presupuesto, Runnable llamada) {
+        RegistroSentenciasSql.limpiar();
+        llamada.run();
+        // Solo cuentan las de este hilo: los suscriptores de eventos y el procesado de imágenes van aparte
+        List<String> sentencias = RegistroSentenciasSql.sentencias(Thread.currentThread());
+        presupuestos.assertThat(sentencias)
+                .as("%s: %d sentencias, presupuesto %d", operacion, sentencias.size(), presupuesto)
+                .hasSize(presupuesto);
+    }
+
+    private void vaciarCaches() {
+        cacheManager.getCacheNames().forEach(nombre -> cacheManager.getCache(nombre).clear());
+        entityManagerFactory.getCache().evictAll();
+    }
+}
@@ -1,22 +1,39 @@
 package es.ujaen.dae.incidenciasurbanas.servicio;
 
+import es.ujaen.dae.indicenciasurbanas.dto.CursorIncidencias;
+import es.ujaen.dae.indicenciasurbanas.dto.DatosIncidencia;
+import es.ujaen.dae.indicenciasurbanas.dto.IncidenciaResumen;
+import es.ujaen.dae.indicenciasurbanas.dto.Pagina;
+import es.ujaen.dae.indicenciasurbanas.dto.ResultadoCambioEstado;
+import es.ujaen.dae.indicenciasurbanas.dto.ResultadoLote;
 import es.ujaen.dae.indicenciasurbanas.entidades.TipoIncidencia;
 import es.ujaen.dae.indicenciasurbanas.utils.EstadoIncidencia;
 import es.ujaen.dae.indicenciasurbanas.entidades.Incidencia;
 import es.ujaen.dae.indicenciasurbanas.entidades.Usuario;
 import es.ujaen.dae.indicenciasurbanas.excepciones.*;
+import es.ujaen.dae.indicenciasurbanas.repositorios.ContadoresIncidencias;
+import es.ujaen.dae.indicenciasurbanas.repositorios.IndiceEspacialIncidencias;
 import es.ujaen.dae.indicenciasurbanas.servicios.ServicioIncidencia;
+import jakarta.validation.ConstraintViolationException;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.support.StaticApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ActiveProfiles;
 
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
 
 import static org.assertj.core.api.Assertions.*;
 
@@ -26,6 +43,18 @@ public class TestServicioIncidencia {
     @Autowired
     ServicioIncidencia servicioIncidencia;
 
+    @Autowired
+    ContadoresIncidencias contadores;
+
+    @Autowired
+    IndiceEspacialIncidencias indiceEspacial;
+
+    @Autowired
+    ApplicationContext applicationContext;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
     @Test
     @DirtiesContext
     public void testNuevoUsuario() {
@@ -89,6 +118,42 @@ public class TestServicioIncidencia {
         assertThatThrownBy(() -> servicioIncidencia.nuevaIncidencia(fecha1, tipoIncidencia ,"desc", "loc", (float) 40.41681991555875, (float) -3.703731005258922, "dpt", user,"imagen.jpg".getBytes())).isInstanceOf(IncidenciaEnCurso.class);
     }
 
+    @Test
+    @DirtiesContext
+    public void testNuevasIncidencias(){
+        Optional<Usuario> admin = servicioIncidencia.login("admin.dae@ujaen.es", "admin");
+        servicioIncidencia.crearTipoIncidencia(admin.get(),"Tipo");
+        TipoIncidencia tipo = servicioIncidencia.obtenerTipoIncidencia("Tipo").get();
+
+        Usuario usuario=new Usuario("nombre", "apellido", LocalDate.of(2000, 1, 1), "direccion", "+34777123456", "email@gmail.com", "clave");
+        servicioIncidencia.nuevoUsuario(usuario);
+        Usuario user = servicioIncidencia.login(usuario.email(), usuario.clave()).get();
+
+        LocalDateTime fecha = LocalDateTime.now();
+        Incidencia existente = servicioIncidencia.nuevaIncidencia(fecha, tipo, "desc", "loc", (float) 40.416775, (float) -3.703790, "dpt", user, "imagen.jpg".getBytes());
+
+        DatosIncidencia cercaExistente = new DatosIncidencia(fecha, tipo, "desc", "loc", (float) 40.41681991555875, (float) -3.703731005258922, "dpt", user, "imagen.jpg".getBytes());
+        DatosIncidencia nueva1 = new DatosIncidencia(fecha, tipo, "desc", "loc", (float) 37.7796, (float) -3.7849, "dpt", user, "imagen.jpg".getBytes());
+        DatosIncidencia cercaNueva1 = new DatosIncidencia(fecha, tipo, "desc", "loc", (float) 37.77962, (float) -3.78492, "dpt", user, "imagen.jpg".getBytes());
+        DatosIncidencia nueva2 = new DatosIncidencia(fecha, tipo, "desc", "loc", (float) 37.7896, (float) -3.7749, "dpt", user, "imagen.jpg".getBytes());
+
+        //Comprobar que se rechazan las cercanas a una incidencia activa y a otra del mismo lote
+        ResultadoLote resultado = servicioIncidencia.nuevasIncidencias(List.of(cercaExistente, nueva1, cercaNueva1, nueva2));
+        assertThat(resultado.registradas()).hasSize(2);
+        assertThat(resultado.rechazadas()).containsExactly(cercaExistente, cercaNueva1);
+
+        List<Incidencia> incidencias = servicioIncidencia.obtenerListaIncidenciasUsuario(user);
+        assertThat(incidencias).hasSize(3);
+        assertThat(incidencias).containsExactly(existente, resultado.registradas().get(0), resultado.registradas().get(1));
+
+        //Las incidencias del lote cuentan como activas para los siguientes registros
+        assertThatThrownBy(() -> servicioIncidencia.nuevaIncidencia(fecha, tipo, "desc", "loc", (float) 37.77961, (float) -3.78491, "dpt", user, "imagen.jpg".getBytes())).isInstanceOf(IncidenciaEnCurso.class);
+
+        assertThat(servicioIncidencia.estadisticasRegistro().lotes()).isEqualTo(1);
+        assertThat(servicioIncidencia.estadisticasRegistro().incidenciasEnLotes()).isEqualTo(4);
+        assertThat(servicioIncidencia.estadisticasRegistro().rechazadasEnLotes()).isEqualTo(2);
+    }
+
     @Test
     @DirtiesContext
     public void testObtenerIncidenciasUsuario(){
@@ -193,6 +258,82 @@ public class TestServicioIncidencia {
 
     }
 
+    @Test
+    @DirtiesContext
+    public void testBuscarIncidenciasPaginadas(){
+        Usuario admin = servicioIncidencia.login("admin.dae@ujaen.es", "admin").get();
+        servicioIncidencia.crearTipoIncidencia(admin,"Suciedad");
+        TipoIncidencia suciedad = servicioIncidencia.obtenerTipoIncidencia("Suciedad").get();
+        servicioIncidencia.crearTipoIncidencia(admin,"Rotura en parque");
+        TipoIncidencia roturaEnParque = servicioIncidencia.obtenerTipoIncidencia("Rotura en parque").get();
+
+        Usuario user = new Usuario("Alberto","Jiménez Expósito",LocalDate.now(),"Av. Arjona 10","+34673826467","aje00009@red.ujaen.es","Passw0rD!");
+        servicioIncidencia.nuevoUsuario(user);
+        Usuario user1 = new Usuario("Carlos","Mayor Navarro",LocalDate.now(),"Av. Arjona 10","+34673826467","cmn00019@red.ujaen.es","Passw0rD!");
+        servicioIncidencia.nuevoUsuario(user1);
+
+        // 25 incidencias, varias con la misma fecha para comprobar el desempate por id
+        LocalDateTime fecha = LocalDateTime.of(2025, 10, 1, 12, 0);
+        List<Incidencia> todas = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            todas.add(servicioIncidencia.nuevaIncidencia(fecha.minusMinutes(i % 7), i % 2 == 0 ? suciedad : roturaEnParque,
+                    "desc", "loc", 37.70f + i * 0.001f, -3.78f, "dpt", i % 5 == 0 ? user1 : user, null));
+        }
+        for (int i = 0; i < 25; i += 3) {
+            servicioIncidencia.modificarEstadoIncidencia(admin, EstadoIncidencia.RESUELTA, todas.get(i));
+        }
+        Comparator<Incidencia> recientesPrimero = Comparator.comparing(Incidencia::fecha).thenComparing(Incidencia::id).reversed();
+
+        // Sin filtros, de 10 en 10: tres páginas con todas las incidencias, sin repetidas
+        List<Incidencia> paginadas = leerPaginas(desde -> servicioIncidencia.buscarIncidenciasTipoEstado(null, null, desde, 10));
+        assertThat(paginadas).containsExactlyElementsOf(todas.stream().sorted(recientesPrimero).toList());
+
+        // Con filtros
+        assertThat(leerPaginas(desde -> servicioIncidencia.buscarIncidenciasTipoEstado(suciedad, EstadoIncidencia.PENDIENTE, desde, 4)))
+                .containsExactlyElementsOf(servicioIncidencia.buscarIncidenciasTipoEstado(suciedad, EstadoIncidencia.PENDIENTE).stream().sorted(recientesPrimero).toList());
+        assertThat(leerPaginas(desde -> servicioIncidencia.buscarIncidenciasTipoEstado(roturaEnParque, null, desde, 4)))
+                .containsExactlyElementsOf(servicioIncidencia.buscarIncidenciasTipoEstado(roturaEnParque, null).stream().sorted(recientesPrimero).toList());
+        assertThat(leerPaginas(desde -> servicioIncidencia.buscarIncidenciasTipoEstado(null, EstadoIncidencia.RESUELTA, desde, 2)))
+                .hasSize(9)
+                .allMatch(incidencia -> incidencia.estado() == EstadoIncidencia.RESUELTA);
+        assertThat(leerPaginas(desde -> servicioIncidencia.obtenerListaIncidenciasUsuario(user1, desde, 2)))
+                .containsExactlyElementsOf(servicioIncidencia.obtenerListaIncidenciasUsuario(user1).stream().sorted(recientesPrimero).toList());
+
+        // Los resúmenes siguen el mismo orden y tienen los mismos datos que las entidades
+        List<IncidenciaResumen> resumenes = new ArrayList<>();
+        Pagina<IncidenciaResumen> paginaResumenes = servicioIncidencia.buscarResumenesTipoEstado(null, null, null, 10);
+        resumenes.addAll(paginaResumenes.elementos());
+        while (paginaResumenes.haySiguiente()) {
+            paginaResumenes = servicioIncidencia.buscarResumenesTipoEstado(null, null, paginaResumenes.siguiente(), 10);
+            resumenes.addAll(paginaResumenes.elementos());
+        }
+        assertThat(resumenes).containsExactlyElementsOf(paginadas.stream()
+                .map(i -> new IncidenciaResumen(i.id(), i.fecha(), i.tipo().nombre(), i.estado(), i.coordenadas().latitud(), i.coordenadas().longitud()))
+                .toList());
+        assertThat(servicioIncidencia.obtenerResumenesIncidenciasUsuario(user1, null, 10).elementos())
+                .extracting(IncidenciaResumen::id)
+                .containsExactlyElementsOf(servicioIncidencia.obtenerListaIncidenciasUsuario(user1).stream().sorted(recientesPrimero).map(Incidencia::id).toList());
+
+        // Tamaño exacto: la última página no tiene siguiente
+        Pagina<Incidencia> pagina = servicioIncidencia.buscarIncidenciasTipoEstado(null, null, null, 25);
+        assertThat(pagina.elementos()).hasSize(25);
+        assertThat(pagina.haySiguiente()).isFalse();
+
+        assertThatThrownBy(() -> servicioIncidencia.buscarIncidenciasTipoEstado(null, null, null, 0))
+                .isInstanceOf(ConstraintViolationException.class);
+    }
+
+    private static List<Incidencia> leerPaginas(Function<CursorIncidencias, Pagina<Incidencia>> siguientePagina) {
+        List<Incidencia> leidas = new ArrayList<>();
+        CursorIncidencias cursor = null;
+        do {
+            Pagina<Incidencia> pagina = siguientePagina.apply(cursor);
+            leidas.addAll(pagina.elementos());
+            cursor = pagina.siguiente();
+        } while (cursor != null);
+        return leidas;
+    }
+
     @Test
     @DirtiesContext
     public void testBorrarIncidencia(){
@@ -268,6 +409,144 @@ public class TestServicioIncidencia {
 
         // Porbar a modificar como usuario normal
         assertThatThrownBy(() -> servicioIncidencia.modificarEstadoIncidencia(user1.get(), EstadoIncidencia.RESUELTA, incidencia2)).isInstanceOf(AccionNoAutorizada.class);
+
+        // Una incidencia resuelta ya no cambia de estado
+        servicioIncidencia.modificarEstadoIncidencia(admin.get(), EstadoIncidencia.RESUELTA, incidencia2);
+        assertThatThrownBy(() -> servicioIncidencia.modificarEstadoIncidencia(admin.get(), EstadoIncidencia.PENDIENTE, incidencia2)).isInstanceOf(TransicionNoPermitida.class);
+        assertThat(servicioIncidencia.buscarIncidenciasTipoEstado(null, EstadoIncidencia.RESUELTA)).hasSize(1);
+    }
+
+    @Test
+    @DirtiesContext
+    public void testModificarEstadoIncidencias(){
+        Usuario admin = servicioIncidencia.login("admin.dae@ujaen.es", "admin").get();
+        servicioIncidencia.crearTipoIncidencia(admin, "tipo1");
+        TipoIncidencia tipo = servicioIncidencia.obtenerTipoIncidencia("tipo1").get();
+
+        Usuario usuario = new Usuario("Alberto","Jiménez Expósito",LocalDate.now(),"Av. Arjona 10","+34673826467","aje00009@red.ujaen.es","Passw0rD!");
+        servicioIncidencia.nuevoUsuario(usuario);
+        Usuario user = servicioIncidencia.login(usuario.email(), usuario.clave()).get();
+
+        LocalDateTime fecha = LocalDateTime.now();
+        Incidencia incidencia1 = servicioIncidencia.nuevaIncidencia(fecha, tipo, "desc", "loc", 20.0f, 30.0f, "dpt1", user, null);
+        Incidencia incidencia2 = servicioIncidencia.nuevaIncidencia(fecha, tipo, "desc", "loc", 21.0f, 30.0f, "dpt1", user, null);
+        Incidencia incidencia3 = servicioIncidencia.nuevaIncidencia(fecha, tipo, "desc", "loc", 22.0f, 30.0f, "dpt2", user, null);
+        servicioIncidencia.modificarEstadoIncidencia(admin, EstadoIncidencia.RESUELTA, incidencia3);
+
+        // Se cargan las listas en caché antes del cambio en bloque
+        assertThat(servicioIncidencia.obtenerListaIncidenciasUsuario(user)).hasSize(3);
+        assertThat(servicioIncidencia.buscarIncidenciasTipoEstado(null, null)).hasSize(3);
+
+        // Solo el administrador
+        assertThatThrownBy(() -> servicioIncidencia.modificarEstadoIncidencias(user, EstadoIncidencia.RESUELTA, List.of(incidencia1.id())))
+                .isInstanceOf(AccionNoAutorizada.class);
+
+        // Resultado por id, en el orden recibido
+        assertThat(servicioIncidencia.modificarEstadoIncidencias(admin, EstadoIncidencia.RESUELTA,
+                List.of(incidencia2.id(), incidencia3.id(), 9999, incidencia1.id())))
+                .containsExactly(
+                        entry(incidencia2.id(), ResultadoCambioEstado.MODIFICADA),
+                        entry(incidencia3.id(), ResultadoCambioEstado.SIN_CAMBIOS),
+                        entry(9999, ResultadoCambioEstado.NO_EXISTE),
+                        entry(incidencia1.id(), ResultadoCambioEstado.MODIFICADA));
+
+        // Cachés, contadores e índice espacial al día
+        assertThat(servicioIncidencia.obtenerListaIncidenciasUsuario(user)).allMatch(i -> i.estado() == EstadoIncidencia.RESUELTA);
+        assertThat(servicioIncidencia.buscarIncidenciasTipoEstado(null, null)).allMatch(i -> i.estado() == EstadoIncidencia.RESUELTA);
+        assertThat(servicioIncidencia.buscarIncidenciasTipoEstado(tipo, EstadoIncidencia.RESUELTA)).hasSize(3);
+        assertThat(servicioIncidencia.contarIncidencias(EstadoIncidencia.RESUELTA)).isEqualTo(3);
+        assertThat(servicioIncidencia.contarIncidencias(EstadoIncidencia.PENDIENTE)).isZero();
+        servicioIncidencia.nuevaIncidencia(fecha, tipo, "desc", "loc", 20.0f, 30.0f, "dpt1", user, null);
+
+        // Se incrementa la versión
+        Incidencia modificada = servicioIncidencia.obtenerListaIncidenciasUsuario(user).getFirst();
+        assertThat(modificada.version()).isEqualTo(incidencia1.version() + 1);
+
+        // Por filtro: las de dpt1 pasan a evaluación, salvo las resueltas, que ya no pueden cambiar
+        Incidencia incidencia4 = servicioIncidencia.obtenerListaIncidenciasUsuario(user).getLast();
+        assertThat(servicioIncidencia.modificarEstadoIncidencias(admin, EstadoIncidencia.EN_EVALUACION, tipo, "dpt1", null))
+                .containsExactly(
+                        entry(incidencia1.id(), ResultadoCambioEstado.NO_PERMITIDA),
+                        entry(incidencia2.id(), ResultadoCambioEstado.NO_PERMITIDA),
+                        entry(incidencia4.id(), ResultadoCambioEstado.MODIFICADA));
+        assertThat(servicioIncidencia.contarIncidenciasDpto("dpt1", EstadoIncidencia.EN_EVALUACION)).isEqualTo(1);
+        assertThat(servicioIncidencia.contarIncidenciasDpto("dpt1", EstadoIncidencia.RESUELTA)).isEqualTo(2);
+        assertThat(servicioIncidencia.buscarIncidenciasTipoEstado(null, EstadoIncidencia.EN_EVALUACION)).containsExactly(incidencia4);
+    }
+
+    @Test
+    @DirtiesContext
+    public void testContadoresIncidencias(){
+        Usuario admin = servicioIncidencia.login("admin.dae@ujaen.es", "admin").get();
+        servicioIncidencia.crearTipoIncidencia(admin, "tipo1");
+        servicioIncidencia.crearTipoIncidencia(admin, "tipo2");
+        TipoIncidencia tipo1 = servicioIncidencia.obtenerTipoIncidencia("tipo1").get();
+        TipoIncidencia tipo2 = servicioIncidencia.obtenerTipoIncidencia("tipo2").get();
+
+        Usuario usuario = new Usuario("Alberto","Jiménez Expósito",LocalDate.now(),"Av. Arjona 10","+34673826467","aje00009@red.ujaen.es","Passw0rD!");
+        servicioIncidencia.nuevoUsuario(usuario);
+        Usuario user = servicioIncidencia.login(usuario.email(), usuario.clave()).get();
+
+        LocalDateTime fecha = LocalDateTime.now();
+        Incidencia incidencia1 = servicioIncidencia.nuevaIncidencia(fecha, tipo1, "desc", "loc", 20.0f, 30.0f, "dpt1", user, null);
+        Incidencia incidencia2 = servicioIncidencia.nuevaIncidencia(fecha, tipo1, "desc", "loc", 21.0f, 30.0f, "dpt2", user, null);
+        servicioIncidencia.nuevasIncidencias(List.of(
+                new DatosIncidencia(fecha, tipo2, "desc", "loc", 22.0f, 30.0f, "dpt1", user, null)));
+
+        // Altas
+        assertThat(servicioIncidencia.contarIncidencias(EstadoIncidencia.PENDIENTE)).isEqualTo(3);
+        assertThat(servicioIncidencia.contarIncidenciasTipo(tipo1, EstadoIncidencia.PENDIENTE)).isEqualTo(2);
+        assertThat(servicioIncidencia.contarIncidenciasDpto("dpt1", EstadoIncidencia.PENDIENTE)).isEqualTo(2);
+        assertThat(servicioIncidencia.contarIncidenciasDpto("otro", EstadoIncidencia.PENDIENTE)).isZero();
+
+        // Cambios de estado (el rechazado no cuenta)
+        servicioIncidencia.modificarEstadoIncidencia(admin, EstadoIncidencia.EN_EVALUACION, incidencia1);
+        servicioIncidencia.modificarEstadoIncidencia(admin, EstadoIncidencia.RESUELTA, incidencia1);
+        servicioIncidencia.modificarEstadoIncidencia(admin, EstadoIncidencia.EN_EVALUACION, incidencia2);
+        assertThatThrownBy(() -> servicioIncidencia.modificarEstadoIncidencia(user, EstadoIncidencia.RESUELTA, incidencia2))
+                .isInstanceOf(AccionNoAutorizada.class);
+        assertThat(servicioIncidencia.contarIncidenciasTipo(tipo1, EstadoIncidencia.PENDIENTE)).isZero();
+        assertThat(servicioIncidencia.contarIncidenciasTipo(tipo1, EstadoIncidencia.EN_EVALUACION)).isEqualTo(1);
+        assertThat(servicioIncidencia.contarIncidenciasDpto("dpt1", EstadoIncidencia.RESUELTA)).isEqualTo(1);
+
+        // Borrado
+        assertThat(servicioIncidencia.borrarIncidencia(admin, incidencia2)).isTrue();
+        assertThat(servicioIncidencia.contarIncidencias(EstadoIncidencia.EN_EVALUACION)).isZero();
+
+        Map<String, Map<EstadoIncidencia, Long>> porTipo = servicioIncidencia.recuentoIncidenciasPorTipo();
+        Map<String, Map<EstadoIncidencia, Long>> porDpto = servicioIncidencia.recuentoIncidenciasPorDpto();
+        assertThat(porTipo.get("tipo1")).containsEntry(EstadoIncidencia.RESUELTA, 1L).containsEntry(EstadoIncidencia.PENDIENTE, 0L);
+        assertThat(porTipo.get("tipo2")).containsEntry(EstadoIncidencia.PENDIENTE, 1L);
+
+        // Al recargar de la BBDD se obtienen los mismos recuentos
+        contadores.cargar();
+        assertThat(servicioIncidencia.recuentoIncidenciasPorTipo()).isEqualTo(porTipo);
+        assertThat(servicioIncidencia.recuentoIncidenciasPorDpto()).isEqualTo(porDpto);
+    }
+
+    @Test
+    @DirtiesContext
+    public void testRecargaSoloConElContextoDeLaAplicacion(){
+        Usuario admin = servicioIncidencia.login("admin.dae@ujaen.es", "admin").get();
+        servicioIncidencia.crearTipoIncidencia(admin, "tipo1");
+        TipoIncidencia tipo1 = servicioIncidencia.obtenerTipoIncidencia("tipo1").get();
+        Usuario usuario = new Usuario("Alberto","Jiménez Expósito",LocalDate.now(),"Av. Arjona 10","+34673826467","aje00009@red.ujaen.es","Passw0rD!");
+        servicioIncidencia.nuevoUsuario(usuario);
+        Usuario user = servicioIncidencia.login(usuario.email(), usuario.clave()).get();
+        Incidencia incidencia = servicioIncidencia.nuevaIncidencia(LocalDateTime.now(), tipo1, "desc", "loc", 20.0f, 30.0f, "dpt1", user, null);
+
+        // Un cambio hecho directamente en la BBDD solo se ve en memoria si se recarga
+        jdbcTemplate.update("UPDATE incidencia SET estado = 'RESUELTA' WHERE id = ?", incidencia.id());
+
+        // El refresco de otro contexto (p. ej. el hijo del servidor de gestión) no recarga
+        applicationContext.publishEvent(new ContextRefreshedEvent(new StaticApplicationContext()));
+        assertThat(indiceEspacial.tamano()).isEqualTo(1);
+        assertThat(servicioIncidencia.contarIncidencias(EstadoIncidencia.PENDIENTE)).isEqualTo(1);
+
+        applicationContext.publishEvent(new ContextRefreshedEvent(applicationContext));
+        assertThat(indiceEspacial.tamano()).isZero();
+        assertThat(servicioIncidencia.contarIncidencias(EstadoIncidencia.PENDIENTE)).isZero();
+        assertThat(servicioIncidencia.contarIncidencias(EstadoIncidencia.RESUELTA)).isEqualTo(1);
     }
 
     @Test
@@ -320,10 +599,14 @@ public class TestServicioIncidencia {
 
         Optional<Usuario> opt1 = servicioIncidencia.login(user1.email(),user1.clave());
 
-        servicioIncidencia.nuevaIncidencia(fecha, roturaEnParque, "desc", "loc", (float) 1.0, (float) 50.0, "dpt", opt1.get(),"imagen.jpg".getBytes());
+        Incidencia enParque = servicioIncidencia.nuevaIncidencia(fecha, roturaEnParque, "desc", "loc", (float) 1.0, (float) 50.0, "dpt", opt1.get(),"imagen.jpg".getBytes());
 
         Optional<Usuario> opt2 = servicioIncidencia.login("admin.dae@ujaen.es","admin");
 
+        // Número de incidencias que usan cada tipo
+        assertThat(servicioIncidencia.contarIncidenciasTipo(suciedad)).isEqualTo(1);
+        assertThat(servicioIncidencia.contarIncidenciasTipo(roturaEnMobiliarioUrbano)).isZero();
+
         // Probar a borrar como admin con incidencias en us;
         assertThatThrownBy(() -> servicioIncidencia.borrarTipoIncidencia(opt2.get(), suciedad)).isInstanceOf(TipoIncidenciaEnUso.class);
         assertThat(servicioIncidencia.obtenerTiposIncidencia()).hasSize(3);
@@ -340,6 +623,12 @@ public class TestServicioIncidencia {
         // Probar a borrar como admin incidencia sin uso
         servicioIncidencia.borrarTipoIncidencia(resultado.get(), roturaEnMobiliarioUrbano);
         assertThat(servicioIncidencia.obtenerTiposIncidencia()).hasSize(2); //Hemos borrado un tipo de incidencia, debería haber uno menos
+
+        // Un tipo deja de estar en uso al borrar su última incidencia
+        assertThat(servicioIncidencia.borrarIncidencia(opt2.get(), enParque)).isTrue();
+        assertThat(servicioIncidencia.contarIncidenciasTipo(roturaEnParque)).isZero();
+        servicioIncidencia.borrarTipoIncidencia(opt2.get(), roturaEnParque);
+        assertThat(servicioIncidencia.obtenerTiposIncidencia()).hasSize(1);
     }
 
     @Test
@@ -0,0 +1,67 @@
+package es.ujaen.dae.incidenciasurbanas.utils;
+
+import es.ujaen.dae.indicenciasurbanas.utils.BloqueoCeldasGeograficas;
+import es.ujaen.dae.indicenciasurbanas.utils.CoordenadasGps;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class TestBloqueoCeldasGeograficas {
+
+    private static final List<CoordenadasGps> JAEN = List.of(new CoordenadasGps(37.7796f, -3.7849f));
+    private static final List<CoordenadasGps> LINARES = List.of(new CoordenadasGps(38.0950f, -3.6360f));
+
+    @Test
+    public void testBloqueoAnidadoNoLiberaLoDelExterior() throws Exception {
+        BloqueoCeldasGeograficas bloqueoCeldas = new BloqueoCeldasGeograficas(1024);
+
+        BloqueoCeldasGeograficas.Bloqueo exterior = bloqueoCeldas.bloquear(JAEN, 10);
+        bloqueoCeldas.bloquear(JAEN, 10).liberar();
+
+        // La zona sigue bloqueada hasta que se libera el bloqueo exterior
+        CompletableFuture<Void> otroHilo = CompletableFuture.runAsync(() -> bloqueoCeldas.bloquear(JAEN, 10).liberar());
+        assertThatThrownBy(() -> otroHilo.get(200, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+        exterior.liberar();
+        otroHilo.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testBloqueosAnidadosCruzadosNoSeInterbloquean() throws Exception {
+        BloqueoCeldasGeograficas bloqueoCeldas = new BloqueoCeldasGeograficas(1024);
+
+        // Cada hilo tiene una celda (radio 0) y pide la del otro: el que tiene la franja más alta abandona en lugar
+        // de esperar, y el otro consigue la suya en cuanto la libera
+        CountDownLatch ambosBloqueados = new CountDownLatch(2);
+        CompletableFuture<Boolean> primero = CompletableFuture.supplyAsync(() -> cruzar(bloqueoCeldas, JAEN, LINARES, ambosBloqueados));
+        CompletableFuture<Boolean> segundo = CompletableFuture.supplyAsync(() -> cruzar(bloqueoCeldas, LINARES, JAEN, ambosBloqueados));
+
+        assertThat(List.of(primero.get(5, TimeUnit.SECONDS), segundo.get(5, TimeUnit.SECONDS))).containsExactlyInAnyOrder(true, false);
+    }
+
+    /**
+     * @return true si ha conseguido la segunda zona, false si ha abandonado
+     */
+    private static boolean cruzar(BloqueoCeldasGeograficas bloqueoCeldas, List<CoordenadasGps> propia, List<CoordenadasGps> ajena,
+                                  CountDownLatch ambosBloqueados) {
+        BloqueoCeldasGeograficas.Bloqueo bloqueo = bloqueoCeldas.bloquear(propia, 0);
+        try {
+            ambosBloqueados.countDown();
+            ambosBloqueados.await();
+            bloqueoCeldas.bloquear(ajena, 0).liberar();
+            return true;
+        } catch (IllegalStateException e) {
+            return false;
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            bloqueo.liberar();
+        }
+    }
+}
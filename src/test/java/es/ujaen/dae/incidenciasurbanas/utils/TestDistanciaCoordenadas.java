@@ -0,0 +1,108 @@
+package es.ujaen.dae.incidenciasurbanas.utils;
+
+import es.ujaen.dae.indicenciasurbanas.utils.CoordenadasGps;
+import es.ujaen.dae.indicenciasurbanas.utils.DistanciaCoordenadas;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestDistanciaCoordenadas {
+
+    private static final int N = 20000;
+
+    @Test
+    public void testDistanciasPorLotes() {
+        Random random = new Random(42);
+        float latitud = 37.7796f;
+        float longitud = -3.7849f;
+        float[] latitudes = new float[N];
+        float[] longitudes = new float[N];
+        for (int i = 0; i < N; i++) {
+            latitudes[i] = (float) (random.nextDouble() * 180 - 90);
+            longitudes[i] = (float) (random.nextDouble() * 360 - 180);
+        }
+
+        double[] cosenos = new double[N];
+        DistanciaCoordenadas.precalcularCosenos(latitudes, N, cosenos);
+        double[] conCosenos = new double[N];
+        DistanciaCoordenadas.calcularDistanciasMetros(latitud, longitud, latitudes, longitudes, cosenos, N, conCosenos);
+        double[] sinCosenos = new double[N];
+        DistanciaCoordenadas.calcularDistanciasMetros(latitud, longitud, latitudes, longitudes, null, N, sinCosenos);
+
+        // Mismo resultado que el cálculo entre dos puntos, bit a bit
+        CoordenadasGps punto = new CoordenadasGps(latitud, longitud);
+        for (int i = 0; i < N; i++) {
+            double esperada = DistanciaCoordenadas.calcularDistanciaMetros(punto, new CoordenadasGps(latitudes[i], longitudes[i]));
+            assertThat(conCosenos[i]).isEqualTo(esperada);
+            assertThat(sinCosenos[i]).isEqualTo(esperada);
+        }
+    }
+
+    @Test
+    public void testPrecisionAproximacion() {
+        Random random = new Random(7);
+        float[] latitudes = new float[N];
+        float[] longitudes = new float[N];
+        double[] aproximadas = new double[N];
+
+        // Puntos a menos de 1 km alrededor de centros entre -80 y 80 grados de latitud, incluido el antimeridiano
+        for (float latitud : new float[]{-80f, -45.5f, 0f, 37.7796f, 60.1f, 80f}) {
+            for (float longitud : new float[]{-179.9999f, -3.7849f, 179.9999f}) {
+                for (int i = 0; i < N; i++) {
+                    latitudes[i] = latitud + (float) ((random.nextDouble() * 2 - 1) * 0.006);
+                    longitudes[i] = longitud + (float) ((random.nextDouble() * 2 - 1) * 0.006 / Math.cos(Math.toRadians(latitud)));
+                }
+                DistanciaCoordenadas.calcularDistanciasAproximadasMetros(latitud, longitud, latitudes, longitudes, N, aproximadas);
+
+                for (int i = 0; i < N; i++) {
+                    double exacta = DistanciaCoordenadas.calcularDistanciaMetros(latitud, longitud, latitudes[i], longitudes[i]);
+                    if (exacta <= 1000 && exacta > 0) {
+                        assertThat(Math.abs(aproximadas[i] - exacta) / exacta).isLessThan(DistanciaCoordenadas.ERROR_RELATIVO_APROXIMACION);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMarcarCercanas() {
+        Random random = new Random(1234);
+        float[] latitudes = new float[N];
+        float[] longitudes = new float[N];
+        long[] marcas = new long[(N + 63) / 64];
+
+        for (float latitud : new float[]{-89.99995f, -60f, 0f, 37.7796f, 85f, 12903f}) {
+            float longitud = -3.7849f;
+            for (int i = 0; i < N; i++) {
+                if (i % 100 == 0) {
+                    // Coordenadas fuera de rango, como las que admite el servicio
+                    latitudes[i] = latitud + 360;
+                    longitudes[i] = longitud - 720;
+                } else {
+                    // Puntos alrededor de los 10 metros, para forzar la franja dudosa
+                    double distancia = 9.9 + random.nextDouble() * 0.2;
+                    double rumbo = random.nextDouble() * 2 * Math.PI;
+                    double difLat = Math.toDegrees(distancia * Math.cos(rumbo) / 6371000.0);
+                    double difLon = Math.toDegrees(distancia * Math.sin(rumbo) / 6371000.0) / Math.max(1e-6, Math.cos(Math.toRadians(latitud)));
+                    latitudes[i] = (float) (latitud + difLat);
+                    longitudes[i] = (float) (longitud + difLon);
+                }
+            }
+
+            int marcados = DistanciaCoordenadas.marcarCercanas(latitud, longitud, latitudes, longitudes, N, 10, marcas);
+
+            // Mismo resultado que comparar una a una con haversine
+            int esperados = 0;
+            for (int i = 0; i < N; i++) {
+                boolean cercana = DistanciaCoordenadas.calcularDistanciaMetros(latitud, longitud, latitudes[i], longitudes[i]) < 10;
+                assertThat((marcas[i >>> 6] & (1L << i)) != 0).isEqualTo(cercana);
+                if (cercana) {
+                    esperados++;
+                }
+            }
+            assertThat(marcados).isEqualTo(esperados);
+        }
+    }
+}